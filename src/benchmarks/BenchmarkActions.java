@@ -0,0 +1,122 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.IStreamDeckListener;
+import org.golde.streamdeck.StreamDeckKeyState.State;
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.actions.ActionBinding;
+import org.golde.streamdeck.actions.ActionExecutor;
+import org.golde.streamdeck.emulator.VirtualStreamDeck;
+
+/**
+ * Taps keys on a emulated deck whose actions take 30 seconds each, and measures how long it takes a press to get from
+ * the reader thread to a listener that comes after the action executor, while thousands of actions are in flight.
+ * Every key shows a busy color while its actions run, so every press also queues a key image.
+ * Then checks that timeouts and cancelling on a second press work.
+ *
+ * Arguments: [taps]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkActions {
+
+	public static void main(String[] args) throws Exception {
+
+		int taps = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+
+		VirtualStreamDeck virtual = new VirtualStreamDeck();
+		IStreamDeck deck = new StreamDeckXL(virtual);
+		deck.connect();
+
+		Probe probe = new Probe(taps);
+		deck.registerKeyListener(probe);
+		tap(virtual, taps);
+		System.out.println("Without actions:      " + probe.result());
+
+		ActionExecutor actions = new ActionExecutor(deck);
+		System.out.println("Actions run on " + (actions.isUsingVirtualThreads() ? "virtual threads" : "platform threads, no virtual threads on this JVM"));
+		for(int key = 0; key < StreamDeckXL.NUMBER_OF_KEYS; key++) {
+			ActionBinding binding = actions.bind(key, context -> Thread.sleep(30_000));
+			binding.setMaxConcurrent(taps);
+			binding.setBusyColor(Color.ORANGE);
+		}
+		//The executor has to come before the probe, so the probe sees what it costs
+		deck.unRegisterKeyListener(probe);
+		actions.start();
+		probe = new Probe(taps);
+		deck.registerKeyListener(probe);
+		tap(virtual, taps);
+		String result = probe.result();
+		System.out.println(String.format("With %5d in flight: %s", actions.getRunning(), result));
+
+		actions.shutdown();
+		Thread.sleep(500);
+		System.out.println("After shutdown: " + actions.getCancelled() + " cancelled, " + actions.getRunning() + " running");
+
+		//Timeouts and cancelling on a second press
+		ActionExecutor checks = new ActionExecutor(deck);
+		checks.bind(0, context -> Thread.sleep(10_000)).setTimeout(100);
+		checks.bind(1, context -> Thread.sleep(10_000)).setCancelOnRepress(true);
+		checks.bind(2, context -> {});
+		checks.trigger(0);
+		checks.trigger(1);
+		checks.trigger(1);
+		checks.trigger(2);
+		Thread.sleep(300);
+		System.out.println(String.format("Checks: %d timed out, %d cancelled, %d completed, %d running (expected 1, 1, 1, 0)",
+				checks.getTimedOut(), checks.getCancelled(), checks.getCompleted(), checks.getRunning()));
+
+		deck.disconnect();
+		System.exit(0);
+	}
+
+	private static void tap(VirtualStreamDeck virtual, int taps) throws InterruptedException {
+		for(int i = 0; i < taps; i++) {
+			virtual.tap(i % StreamDeckXL.NUMBER_OF_KEYS);
+			if(i % 10 == 0) {
+				Thread.sleep(1);
+			}
+		}
+	}
+
+	/**
+	 * Measures how long after the report was read a press gets here
+	 */
+	private static class Probe implements IStreamDeckListener {
+
+		private final long[] delays;
+		private volatile int count = 0;
+
+		Probe(int presses) {
+			this.delays = new long[presses];
+		}
+
+		@Override
+		public void keyStateChanged(int key, State state) {
+		}
+
+		@Override
+		public void keyStateChanged(int key, State state, int mask, long nanoTime) {
+			if(state == State.PRESSED && count < delays.length) {
+				delays[count++] = System.nanoTime() - nanoTime;
+			}
+		}
+
+		String result() throws InterruptedException {
+			//Wait for the reader to catch up
+			for(int i = 0; i < 300 && count < delays.length; i++) {
+				Thread.sleep(100);
+			}
+			int count = this.count;
+			long[] sorted = Arrays.copyOf(delays, count);
+			Arrays.sort(sorted);
+			return String.format("%d presses, listener reached after median %.1f us, p99 %.1f us, worst %.1f us", count,
+					sorted[count / 2] / 1e3, sorted[(int) (count * 0.99)] / 1e3, sorted[count - 1] / 1e3);
+		}
+
+	}
+
+}
@@ -0,0 +1,111 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.golde.streamdeck.BandwidthGovernor;
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.WritePriority;
+
+/**
+ * One key animating as fast as it can with big frames, next to a few keys animating at a normal speed with small frames.
+ * Shows the frame rate every key gets without a {@link BandwidthGovernor}, and with one that has a ceiling.
+ *
+ * Arguments: [seconds per run] [link bytes per second] [ceiling bytes per second]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkBandwidthGovernor {
+
+	private static final int FAST_KEY = 0;
+	private static final int FAST_FPS = 200;
+	private static final int SLOW_KEYS = 7;
+	private static final int SLOW_FPS = 20;
+
+	public static void main(String[] args) throws Exception {
+
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		long linkSpeed = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000;
+		long ceiling = args.length > 2 ? Long.parseLong(args[2]) : 600_000;
+
+		//Noise compresses badly, so these are about as big as key images get
+		EncodedKeyImage big = encode(new NullStreamDeck(0), 255);
+		EncodedKeyImage small = encode(new NullStreamDeck(0), 16);
+		System.out.println("Fast key frames: " + big.getLength() + " bytes, other keys: " + small.getLength() + " bytes");
+
+		System.out.println("No governor:");
+		run(new NullStreamDeck(linkSpeed), null, big, small, seconds);
+
+		System.out.println("Governor, ceiling " + ceiling + " bytes/s:");
+		NullStreamDeck deck = new NullStreamDeck(linkSpeed);
+		BandwidthGovernor governor = new BandwidthGovernor(StreamDeckXL.NUMBER_OF_KEYS, ceiling);
+		run(deck, governor, big, small, seconds);
+	}
+
+	private static void run(NullStreamDeck deck, BandwidthGovernor governor, EncodedKeyImage big, EncodedKeyImage small, int seconds) throws InterruptedException {
+		deck.getWriteScheduler().setGovernor(governor);
+
+		Thread[] producers = new Thread[SLOW_KEYS + 1];
+		producers[0] = producer(deck, FAST_KEY, big, FAST_FPS);
+		for(int i = 1; i <= SLOW_KEYS; i++) {
+			producers[i] = producer(deck, FAST_KEY + i, small, SLOW_FPS);
+		}
+		for(Thread producer : producers) {
+			producer.start();
+		}
+
+		Thread.sleep(seconds * 1000L);
+		long bytes = deck.getBytesSent();
+		for(Thread producer : producers) {
+			producer.interrupt();
+			producer.join();
+		}
+
+		for(int key = FAST_KEY; key <= FAST_KEY + SLOW_KEYS; key++) {
+			String line = String.format("  key %d: requested %5.1f fps, achieved %5.1f fps", key, (double) (key == FAST_KEY ? FAST_FPS : SLOW_FPS), deck.getKeysSent(key) / (double) seconds);
+			if(governor != null) {
+				line += String.format(", allowed %5.1f fps", governor.getAllowedFps(key));
+			}
+			System.out.println(line);
+		}
+		System.out.println(String.format("  total %.0f bytes/s", bytes / (double) seconds));
+		if(governor != null) {
+			System.out.println(String.format("  measured link %.0f bytes/s", governor.getMeasuredThroughput()));
+		}
+		deck.disconnect();
+	}
+
+	private static Thread producer(NullStreamDeck deck, int key, EncodedKeyImage frame, int fps) {
+		return new Thread(() -> {
+			long interval = 1_000_000_000L / fps;
+			long next = System.nanoTime();
+			while(!Thread.currentThread().isInterrupted()) {
+				deck.submitKey(key, frame, WritePriority.BACKGROUND);
+				next += interval;
+				long sleep = next - System.nanoTime();
+				if(sleep > 0) {
+					try {
+						Thread.sleep(sleep / 1_000_000L, (int) (sleep % 1_000_000L));
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		});
+	}
+
+	private static EncodedKeyImage encode(NullStreamDeck deck, int noise) {
+		Random random = new Random(noise);
+		BufferedImage img = new BufferedImage(StreamDeckXL.IMG_SIZE, StreamDeckXL.IMG_SIZE, StreamDeckXL.IMG_TYPE);
+		for(int y = 0; y < img.getHeight(); y++) {
+			for(int x = 0; x < img.getWidth(); x++) {
+				int v = 128 + random.nextInt(noise) - noise / 2;
+				img.setRGB(x, y, v << 16 | v << 8 | v);
+			}
+		}
+		return deck.encodeKey(img);
+	}
+
+}
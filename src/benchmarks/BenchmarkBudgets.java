@@ -0,0 +1,461 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.golde.streamdeck.IStreamDeckListener;
+import org.golde.streamdeck.KeyCanvas;
+import org.golde.streamdeck.StreamDeckKeyState.State;
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.helpers.Gif;
+import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.helpers.TileView;
+import org.golde.streamdeck.screencast.ScreenCastPipeline;
+import org.golde.streamdeck.screencast.SyntheticFrameSource;
+
+/**
+ * Runs what the examples do against a StreamDeckXL on a {@link DiscardingTransport}, and checks every scenario against the budgets
+ * in budgets.properties: how many bytes every key update may allocate, summed over every thread, and how many key updates
+ * per second it has to manage at least. Exits with 1 if anything is over budget, so it can run in a build.
+ *
+ * With "soak", runs every scenario on a new deck over and over, and checks that the heap after a GC and the number of threads
+ * stop growing, to catch listeners, caches and threads that are never let go of.
+ *
+ * Run it from the project folder, the GIF scenario reads test-images.
+ *
+ * Arguments: [seconds per scenario] or soak [minutes]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkBudgets {
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+	//How much the heap may grow from the start to the end of a soak, on top of the noise
+	private static final long SOAK_HEAP_SLACK = 8L * 1024 * 1024;
+
+	private static final Random RANDOM = new Random(1);
+
+	public static void main(String[] args) throws Exception {
+		if(args.length > 0 && args[0].equals("soak")) {
+			double minutes = args.length > 1 ? Double.parseDouble(args[1]) : 10;
+			System.exit(soak((long) (minutes * 60_000)) ? 0 : 1);
+		}
+
+		double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+		Properties budgets = loadBudgets();
+
+		boolean passed = true;
+		for(Scenario scenario : scenarios()) {
+			Deck deck = new Deck();
+			//Once to warm up, once to measure
+			measure(scenario, deck, seconds / 2);
+			Result result = measure(scenario, deck, seconds);
+			deck.disconnect();
+
+			long maxBytes = Long.parseLong(budgets.getProperty(scenario.name + ".bytesPerUpdate", "-1"));
+			double minRate = Double.parseDouble(budgets.getProperty(scenario.name + ".updatesPerSecond", "-1"));
+			boolean bytesOk = maxBytes < 0 || result.bytesPerUpdate() <= maxBytes;
+			boolean rateOk = minRate < 0 || result.updatesPerSecond() >= minRate;
+			passed &= bytesOk && rateOk;
+
+			System.out.println(String.format("%-16s %8.0f bytes per update (budget %s) %8.0f updates/sec (budget %s)  %s",
+					scenario.name, result.bytesPerUpdate(), maxBytes < 0 ? "none" : String.valueOf(maxBytes),
+					result.updatesPerSecond(), minRate < 0 ? "none" : String.valueOf(minRate),
+					bytesOk && rateOk ? "ok" : "OVER BUDGET"));
+		}
+
+		System.out.println(passed ? "Every scenario is within budget" : "Over budget");
+		System.exit(passed ? 0 : 1);
+	}
+
+	///////////////////////// [ Scenarios ] ////////////////////////////////
+
+	/**
+	 * A deck and everything a scenario needs to drive it
+	 */
+	private static class Deck {
+
+		final DiscardingTransport transport = new DiscardingTransport();
+		final StreamDeckXL deck = new StreamDeckXL(transport);
+
+		Deck() {
+			deck.connect();
+		}
+
+		void disconnect() {
+			deck.disconnect();
+		}
+
+	}
+
+	private static abstract class Scenario {
+
+		final String name;
+
+		Scenario(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Get ready, outside of the measurement
+		 */
+		void start(Deck deck) throws Exception {}
+
+		/**
+		 * Update some keys
+		 * @return how many key updates were sent
+		 */
+		abstract long step(Deck deck) throws Exception;
+
+		/**
+		 * Let go of everything start made
+		 */
+		void stop(Deck deck) throws Exception {}
+
+	}
+
+	private static List<Scenario> scenarios() {
+		List<Scenario> scenarios = new ArrayList<Scenario>();
+
+		//ExampleRandomFlashingSquares
+		scenarios.add(new Scenario("flashingSquares") {
+			@Override
+			long step(Deck deck) {
+				for(int key = 0; key < StreamDeckXL.NUMBER_OF_KEYS; key++) {
+					deck.deck.setKey(key, new Color(RANDOM.nextInt(255), RANDOM.nextInt(255), RANDOM.nextInt(255)));
+				}
+				return StreamDeckXL.NUMBER_OF_KEYS;
+			}
+		});
+
+		//ExampleGifSupport, without waiting for the frame delays
+		scenarios.add(new Scenario("gif") {
+			BufferedImage[] single;
+			BufferedImage[] multi;
+			TileView[] split;
+			int frame;
+
+			@Override
+			void start(Deck deck) throws IOException {
+				if(single == null) {
+					Gif graph = new Gif(new File("test-images/graph.gif"));
+					graph.resize(StreamDeckXL.IMG_SIZE, StreamDeckXL.IMG_SIZE);
+					single = graph.getFrames();
+					Gif cat = new Gif(new File("test-images/cat.gif"));
+					cat.resize(StreamDeckXL.IMG_SIZE * 2, StreamDeckXL.IMG_SIZE * 2);
+					multi = cat.getFrames();
+				}
+			}
+
+			@Override
+			long step(Deck deck) {
+				frame++;
+				deck.deck.setKey(0, single[frame % single.length]);
+				split = ImageUtilities.splitImage(multi[frame % multi.length], 2, 2, split);
+				deck.deck.setKey(22, split[0]);
+				deck.deck.setKey(23, split[1]);
+				deck.deck.setKey(30, split[2]);
+				deck.deck.setKey(31, split[3]);
+				return 5;
+			}
+		});
+
+		//ExampleImageCoveringDeck, with the rainbow moving so every key has to be encoded again
+		scenarios.add(new Scenario("fullDeckImage") {
+			final int width = StreamDeckXL.COLS * StreamDeckXL.IMG_SIZE;
+			final int height = StreamDeckXL.ROWS * StreamDeckXL.IMG_SIZE;
+			final BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			final int[] data = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+			TileView[] views;
+			int shift;
+
+			@Override
+			long step(Deck deck) {
+				shift += 8;
+				int index = 0;
+				for(int y = 0; y < height; y++) {
+					int red = (y * 255) / (height - 1);
+					for(int x = 0; x < width; x++) {
+						int green = (((x + shift) % width) * 255) / (width - 1);
+						data[index++] = (red << 16) | (green << 8) | 128;
+					}
+				}
+				views = ImageUtilities.splitImage(img, StreamDeckXL.ROWS, StreamDeckXL.COLS, views);
+				for(int key = 0; key < StreamDeckXL.NUMBER_OF_KEYS; key++) {
+					deck.deck.setKey(key, views[key]);
+				}
+				return StreamDeckXL.NUMBER_OF_KEYS;
+			}
+		});
+
+		//ExampleScreenCast, from a synthetic screen instead of the real one
+		scenarios.add(new Scenario("screenCast") {
+			ScreenCastPipeline pipeline;
+			long counted;
+
+			@Override
+			void start(Deck deck) {
+				pipeline = new ScreenCastPipeline(deck.deck, new SyntheticFrameSource(StreamDeckXL.COLS * StreamDeckXL.IMG_SIZE, StreamDeckXL.ROWS * StreamDeckXL.IMG_SIZE));
+				pipeline.start();
+				counted = 0;
+			}
+
+			@Override
+			long step(Deck deck) throws InterruptedException {
+				Thread.sleep(20);
+				long sent = pipeline.getStats().getTilesSent();
+				long updates = sent - counted;
+				counted = sent;
+				return updates;
+			}
+
+			@Override
+			void stop(Deck deck) {
+				pipeline.stop();
+			}
+		});
+
+		//ExampleDetectButtonPresses: every press puts a new color and the key number on the key
+		scenarios.add(new Scenario("buttonEcho") {
+			final AtomicLong echoed = new AtomicLong();
+			IStreamDeckListener listener;
+			int key;
+
+			@Override
+			void start(Deck deck) {
+				listener = (key, state) -> {
+					if(state == State.RELEASED) {
+						return;
+					}
+					Color randomColor = Color.getHSBColor(RANDOM.nextFloat(), RANDOM.nextFloat(), 1);
+					BufferedImage img = ImageUtilities.createSolidColorImage(randomColor);
+					ImageUtilities.drawTextOnImage(img, "" + key, ImageUtilities.invertColor(randomColor));
+					deck.deck.setKey(key, img);
+					synchronized (echoed) {
+						echoed.incrementAndGet();
+						echoed.notifyAll();
+					}
+				};
+				deck.deck.registerKeyListener(listener);
+			}
+
+			@Override
+			long step(Deck deck) throws InterruptedException {
+				key = (key + 1) % StreamDeckXL.NUMBER_OF_KEYS;
+				long before = echoed.get();
+				deck.transport.setKeyState(key, true);
+				deck.transport.setKeyState(key, false);
+				synchronized (echoed) {
+					while(echoed.get() == before) {
+						echoed.wait();
+					}
+				}
+				return 1;
+			}
+
+			@Override
+			void stop(Deck deck) {
+				deck.deck.unRegisterKeyListener(listener);
+			}
+		});
+
+		//A counter drawn on a pooled KeyCanvas, the way that should not create any images
+		scenarios.add(new Scenario("keyCanvas") {
+			int count;
+
+			@Override
+			long step(Deck deck) {
+				KeyCanvas canvas = deck.deck.acquireCanvas(count % StreamDeckXL.NUMBER_OF_KEYS);
+				canvas.fill(Color.DARK_GRAY);
+				canvas.drawText(String.valueOf(count++), Color.WHITE);
+				canvas.commit();
+				return 1;
+			}
+		});
+
+		return scenarios;
+	}
+
+	///////////////////////// [ Measuring ] ////////////////////////////////
+
+	private static class Result {
+
+		long updates;
+		long bytes;
+		long nanos;
+
+		double bytesPerUpdate() {
+			return updates == 0 ? 0 : bytes / (double) updates;
+		}
+
+		double updatesPerSecond() {
+			return updates / (nanos / 1e9);
+		}
+
+	}
+
+	/**
+	 * Run a scenario for a while, counting what every thread allocates in the mean time
+	 */
+	private static Result measure(Scenario scenario, Deck deck, double seconds) throws Exception {
+		scenario.start(deck);
+		Map<Long, Long> before = allocatedPerThread();
+		Result result = new Result();
+		long start = System.nanoTime();
+		long end = start + (long) (seconds * 1e9);
+		while(System.nanoTime() < end) {
+			result.updates += scenario.step(deck);
+		}
+		//Images that are still queued count too
+		while(deck.deck.getWriteScheduler().getPendingCount() > 0) {
+			Thread.sleep(1);
+		}
+		result.nanos = System.nanoTime() - start;
+		result.bytes = allocatedSince(before);
+		scenario.stop(deck);
+		return result;
+	}
+
+	private static Map<Long, Long> allocatedPerThread() {
+		long[] ids = THREADS.getAllThreadIds();
+		long[] bytes = THREADS.getThreadAllocatedBytes(ids);
+		Map<Long, Long> allocated = new HashMap<Long, Long>();
+		for(int i = 0; i < ids.length; i++) {
+			if(bytes[i] >= 0) {
+				allocated.put(ids[i], bytes[i]);
+			}
+		}
+		return allocated;
+	}
+
+	/**
+	 * Bytes allocated by every thread that is still alive. Threads that were started in the mean time count from 0.
+	 */
+	private static long allocatedSince(Map<Long, Long> before) {
+		long total = 0;
+		for(Map.Entry<Long, Long> thread : allocatedPerThread().entrySet()) {
+			Long start = before.get(thread.getKey());
+			total += thread.getValue() - (start == null ? 0 : start);
+		}
+		return total;
+	}
+
+	///////////////////////// [ Soak ] ////////////////////////////////
+
+	/**
+	 * Run every scenario on a new deck over and over. After every round nothing should be left over: the heap after a GC
+	 * should stay flat, and so should the number of threads.
+	 * @return true if nothing leaked
+	 */
+	private static boolean soak(long millis) throws Exception {
+		List<Scenario> scenarios = scenarios();
+		List<Long> heap = new ArrayList<Long>();
+		List<Integer> threads = new ArrayList<Integer>();
+		long start = System.currentTimeMillis();
+		long updates = 0;
+
+		for(int round = 0; round == 0 || System.currentTimeMillis() - start < millis; round++) {
+			Deck deck = new Deck();
+			for(Scenario scenario : scenarios) {
+				updates += measure(scenario, deck, 0.25).updates;
+			}
+			deck.disconnect();
+
+			long used = usedHeapAfterGc();
+			heap.add(used);
+			//Count threads, not names: leaked threads often share a name with the live ones
+			threads.add(THREADS.getThreadCount());
+			System.out.println(String.format("Round %d: %d updates so far, %.1f MB heap after GC, %d threads",
+					round + 1, updates, used / 1048576.0, threads.get(threads.size() - 1)));
+		}
+
+		if(heap.size() < 6) {
+			System.out.println("Soak was too short to tell, run it for longer");
+			return true;
+		}
+
+		//The first rounds load classes and fill caches, so compare the second quarter to the last quarter
+		int quarter = heap.size() / 4;
+		long early = median(heap.subList(quarter, 2 * quarter));
+		long late = median(heap.subList(heap.size() - quarter, heap.size()));
+		boolean heapOk = late - early <= SOAK_HEAP_SLACK;
+		int earlyThreads = threads.get(quarter);
+		int lateThreads = threads.get(threads.size() - 1);
+		boolean threadsOk = lateThreads <= earlyThreads;
+
+		System.out.println(String.format("Heap after GC: %.1f MB early, %.1f MB late, %s", early / 1048576.0, late / 1048576.0, heapOk ? "ok" : "LEAKING"));
+		System.out.println(String.format("Threads: %d early, %d late, %s", earlyThreads, lateThreads, threadsOk ? "ok" : "LEAKING"));
+		if(!threadsOk) {
+			System.out.println("Threads alive: " + threadNames());
+		}
+		return heapOk && threadsOk;
+	}
+
+	private static long usedHeapAfterGc() throws InterruptedException {
+		for(int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return MEMORY.getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * Names of every live thread, with duplicates, only for telling which ones leaked
+	 */
+	private static List<String> threadNames() {
+		List<String> names = new ArrayList<String>();
+		for(Thread thread : Thread.getAllStackTraces().keySet()) {
+			names.add(thread.getName());
+		}
+		names.sort(null);
+		return names;
+	}
+
+	private static long median(List<Long> values) {
+		List<Long> sorted = new ArrayList<Long>(values);
+		sorted.sort(null);
+		return sorted.get(sorted.size() / 2);
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	/**
+	 * budgets.properties next to this class, or in src/benchmarks when running out of a folder that does not have the resources copied
+	 */
+	private static Properties loadBudgets() throws IOException {
+		Properties budgets = new Properties();
+		InputStream in = BenchmarkBudgets.class.getResourceAsStream("budgets.properties");
+		if(in == null) {
+			File file = new File("src/benchmarks/budgets.properties");
+			if(!file.exists()) {
+				System.out.println("No budgets.properties, only measuring");
+				return budgets;
+			}
+			in = new FileInputStream(file);
+		}
+		try {
+			budgets.load(in);
+		}
+		finally {
+			in.close();
+		}
+		return budgets;
+	}
+
+}
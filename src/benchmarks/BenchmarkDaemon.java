@@ -0,0 +1,175 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.IStreamDeckListener;
+import org.golde.streamdeck.StreamDeckKeyState.State;
+import org.golde.streamdeck.WritePriority;
+import org.golde.streamdeck.daemon.DeckDaemon;
+import org.golde.streamdeck.daemon.RemoteStreamDeck;
+import org.golde.streamdeck.helpers.ImageUtilities;
+
+/**
+ * Shares a deck between clients through a {@link DeckDaemon}, checks that leases keep them apart,
+ * then measures how much longer sending a tile takes through the daemon than sending it to the deck in the same program.
+ *
+ * Arguments: [tiles]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkDaemon {
+
+	public static void main(String[] args) throws Exception {
+		int tiles = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+		Path socket = Files.createTempDirectory("streamdeck").resolve("deck.sock");
+		NullStreamDeck deck = new NullStreamDeck(0);
+		DeckDaemon daemon = new DeckDaemon(deck, socket);
+		daemon.start();
+		System.out.println("Daemon on " + socket);
+
+		RemoteStreamDeck a = new RemoteStreamDeck(socket, "a", range(0, 16));
+		RemoteStreamDeck b = new RemoteStreamDeck(socket, "b", range(16, 32));
+		RemoteStreamDeck c = new RemoteStreamDeck(socket, "c", 0);
+		a.connect();
+		b.connect();
+		c.connect();
+		check("a has keys 0-15", a.getLeasedKeys() == 0xFFFFL);
+		check("b has keys 16-31", b.getLeasedKeys() == 0xFFFF0000L);
+		check("c did not get key 0", c.getLeasedKeys() == 0 && "a".equals(daemon.getLeaseHolder(0)));
+
+		EncodedKeyImage red = a.encodeKey(ImageUtilities.createSolidColorImage(Color.RED));
+		check("a can draw on key 0", succeeds(a, 0, red));
+		check("a can't draw on key 20", !succeeds(a, 20, red));
+		check("c can't draw on key 0", !succeeds(c, 0, red));
+		long before = deck.getKeysSent(1);
+		a.submitRawKey(1, ImageUtilities.createSolidColorImage(Color.BLUE), WritePriority.NORMAL).join();
+		check("raw images are encoded by the daemon", deck.getKeysSent(1) == before + 1);
+
+		List<String> heardByA = new CopyOnWriteArrayList<String>();
+		List<String> heardByB = new CopyOnWriteArrayList<String>();
+		a.registerKeyListener(recorder(heardByA));
+		b.registerKeyListener(recorder(heardByB));
+		Thread.sleep(50);
+		deck.injectKeyState(3, State.PRESSED);
+		deck.injectKeyState(3, State.RELEASED);
+		a.injectKeyState(5, State.PRESSED);
+		Thread.sleep(50);
+		check("a hears its own keys", heardByA.equals(Arrays.asList("3 PRESSED", "3 RELEASED", "5 PRESSED")));
+		check("b does not hear a's keys", heardByB.isEmpty());
+
+		//Drawing from a listener waits for the daemon's answer, which the reader has to be free to take
+		List<String> drawn = new CopyOnWriteArrayList<String>();
+		IStreamDeckListener echo = new IStreamDeckListener() {
+			@Override
+			public void keyStateChanged(int key, State state) {
+				a.setKey(key, state == State.PRESSED ? Color.GREEN : Color.BLACK);
+				drawn.add(key + " " + state);
+			}
+		};
+		a.registerKeyListener(echo);
+		long echoedBefore = deck.getKeysSent(6);
+		deck.injectKeyState(6, State.PRESSED);
+		deck.injectKeyState(6, State.RELEASED);
+		Thread.sleep(200);
+		check("a listener can draw and wait for it", drawn.equals(Arrays.asList("6 PRESSED", "6 RELEASED")) && deck.getKeysSent(6) == echoedBefore + 2);
+		a.unRegisterKeyListener(echo);
+
+		//Same thread, one tile at a time, so this is the round trip and not the throughput
+		for(int round = 0; round < 2; round++) {
+			long[] local = time(deck, red, tiles, 0);
+			long[] remote = time(a, red, tiles, 0);
+			if(round == 1) {
+				System.out.println(String.format("Tile round trip, %d tiles: in process %.1f us median %.1f us p99, through the daemon %.1f us median %.1f us p99, %.1f us added",
+						tiles, local[0] / 1e3, local[1] / 1e3, remote[0] / 1e3, remote[1] / 1e3, (remote[0] - local[0]) / 1e3));
+			}
+		}
+
+		//Both clients animate all their keys at once, as fast as the daemon takes it
+		long sentBefore = deck.getKeysSent();
+		long start = System.nanoTime();
+		Thread animateB = new Thread(() -> animate(b, red, 16, 32, start));
+		animateB.start();
+		animate(a, red, 0, 16, start);
+		animateB.join();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("Two clients animating 16 keys each: %.0f tiles/sec written to the deck", (deck.getKeysSent() - sentBefore) / seconds));
+
+		a.disconnect();
+		Thread.sleep(50);
+		check("a's keys are free once it disconnects", daemon.getLeaseHolder(0) == null);
+		check("c can lease key 0 now", c.lease(0) && succeeds(c, 0, red));
+
+		b.disconnect();
+		c.disconnect();
+		daemon.stop();
+		deck.disconnect();
+		check("the socket file is gone", !Files.exists(socket));
+		Files.delete(socket.getParent());
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	/**
+	 * @return median and 99th percentile nanos of sending a tile and waiting for it to be written
+	 */
+	private static long[] time(IStreamDeck deck, EncodedKeyImage img, int tiles, int key) {
+		long[] nanos = new long[tiles];
+		for(int i = 0; i < tiles; i++) {
+			long start = System.nanoTime();
+			deck.submitKey(key, img, WritePriority.NORMAL).join();
+			nanos[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(nanos);
+		return new long[] {nanos[tiles / 2], nanos[tiles * 99 / 100]};
+	}
+
+	private static void animate(IStreamDeck deck, EncodedKeyImage img, int from, int to, long start) {
+		while(System.nanoTime() - start < 2_000_000_000L) {
+			for(int key = from; key < to; key++) {
+				deck.submitKey(key, img, WritePriority.BACKGROUND);
+			}
+			deck.submitKey(from, img, WritePriority.BACKGROUND).join();
+		}
+	}
+
+	private static boolean succeeds(IStreamDeck deck, int key, EncodedKeyImage img) {
+		try {
+			deck.submitKey(key, img, WritePriority.NORMAL).join();
+			return true;
+		}
+		catch (CompletionException e) {
+			return false;
+		}
+	}
+
+	private static IStreamDeckListener recorder(List<String> heard) {
+		return new IStreamDeckListener() {
+			@Override
+			public void keyStateChanged(int key, State state) {
+				heard.add(key + " " + state);
+			}
+		};
+	}
+
+	private static int[] range(int from, int to) {
+		int[] keys = new int[to - from];
+		for(int i = 0; i < keys.length; i++) {
+			keys[i] = from + i;
+		}
+		return keys;
+	}
+
+	private static void check(String what, boolean ok) {
+		System.out.println("  " + (ok ? "ok    " : "FAILED") + " " + what);
+	}
+
+}
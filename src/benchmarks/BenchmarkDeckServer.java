@@ -0,0 +1,282 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.IStreamDeckListener;
+import org.golde.streamdeck.StreamDeckKeyState.State;
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.WritePriority;
+import org.golde.streamdeck.emulator.VirtualStreamDeck;
+import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.server.DeckServer;
+
+/**
+ * Checks every route of the {@link DeckServer} against a emulated deck, then connects hundreds of MJPEG viewers
+ * and animates every key as fast as the server takes it, to measure frames per second and how much memory a viewer costs.
+ *
+ * Arguments: [viewers] [seconds]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkDeckServer {
+
+	public static void main(String[] args) throws Exception {
+		int viewers = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		routes();
+		load(viewers, seconds);
+	}
+
+	private static void routes() throws Exception {
+		VirtualStreamDeck virtual = new VirtualStreamDeck();
+		IStreamDeck deck = new StreamDeckXL(virtual);
+		deck.connect();
+		DeckServer server = new DeckServer(deck, 0);
+		server.start();
+		String base = "http://127.0.0.1:" + server.getPort();
+		System.out.println("Routes, server on " + base);
+
+		EncodedKeyImage red = deck.encodeKey(ImageUtilities.createSolidColorImage(Color.RED));
+		deck.submitKey(0, red, WritePriority.NORMAL).join();
+		Thread.sleep(50);
+
+		System.out.println("  /info: " + new String(get(base + "/info"), StandardCharsets.UTF_8));
+		check("/ is the dashboard", new String(get(base + "/"), StandardCharsets.UTF_8).contains("EventSource"));
+		check("/key/0 is the bytes that went to the device", Arrays.equals(get(base + "/key/0"), red.toByteArray()));
+		check("/key/1 is 404 before anything was sent", status(base + "/key/1", "GET", null, null) == 404);
+		check("/nothing is 404", status(base + "/nothing", "GET", null, null) == 404);
+
+		List<String> presses = new CopyOnWriteArrayList<String>();
+		deck.registerKeyListener(new IStreamDeckListener() {
+			@Override
+			public void keyStateChanged(int key, State state) {
+				presses.add(key + " " + state);
+			}
+		});
+
+		try(Socket events = new Socket("127.0.0.1", server.getPort())) {
+			events.getOutputStream().write(("GET /events HTTP/1.1\r\nHost: 127.0.0.1:" + server.getPort() + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			Thread.sleep(50);
+
+			//What a web page in the same browser, or a DNS rebinding attack, would send
+			check("a press from a page on another origin is 403", rawStatus(server.getPort(),
+					"POST /key/3/press HTTP/1.1\r\nHost: 127.0.0.1:" + server.getPort() + "\r\nOrigin: http://evil.example\r\nContent-Length: 0\r\n\r\n") == 403);
+			check("a request for another host name is 403", rawStatus(server.getPort(),
+					"GET /info HTTP/1.1\r\nHost: evil.example:" + server.getPort() + "\r\n\r\n") == 403);
+			check("a press from the dashboard is 204", rawStatus(server.getPort(),
+					"POST /key/3/down HTTP/1.1\r\nHost: localhost:" + server.getPort() + "\r\nOrigin: http://localhost:" + server.getPort() + "\r\nContent-Length: 0\r\n\r\n") == 204);
+			check("POST /key/3/up is 204", status(base + "/key/3/up", "POST", null, null) == 204);
+			Thread.sleep(50);
+			check("listeners saw the press, and nothing from the other origin", presses.equals(Arrays.asList("3 PRESSED", "3 RELEASED")));
+
+			ByteArrayOutputStream png = new ByteArrayOutputStream();
+			ImageIO.write(ImageUtilities.createSolidColorImage(Color.BLUE), "png", png);
+			check("PUT /key/5/image is 204", status(base + "/key/5/image", "PUT", "image/png", png.toByteArray()) == 204);
+			check("PUT of something that is not a image is 415", status(base + "/key/6/image", "PUT", "image/png", new byte[10]) == 415);
+			Thread.sleep(100);
+			BufferedImage key5 = virtual.getKeyImage(5);
+			Color center = new Color(key5.getRGB(key5.getWidth() / 2, key5.getHeight() / 2));
+			check("the upload made it to the device", center.getBlue() > 200 && center.getRed() < 50);
+
+			events.setSoTimeout(2000);
+			String stream = readUntil(events.getInputStream(), "event: image");
+			check("/events got the press and the image", stream.contains("event: key") && stream.contains("\"key\":5"));
+		}
+
+		server.stop();
+		deck.disconnect();
+	}
+
+	private static void load(int viewers, int seconds) throws Exception {
+		NullStreamDeck deck = new NullStreamDeck(0);
+		DeckServer server = new DeckServer(deck, 0);
+		server.start();
+		int keys = deck.getProfile().getNumberOfKeys();
+		System.out.println("Load, " + viewers + " MJPEG viewers over " + keys + " keys, " + seconds + " seconds");
+
+		//A few frames per key, encoded once, so the benchmark measures the server and not the encoder
+		EncodedKeyImage[] animation = new EncodedKeyImage[16];
+		for(int i = 0; i < animation.length; i++) {
+			animation[i] = deck.encodeKey(ImageUtilities.createSolidColorImage(Color.getHSBColor(i / 16f, 1, 1)));
+		}
+		for(int key = 0; key < keys; key++) {
+			deck.submitKey(key, animation[0], WritePriority.NORMAL).join();
+		}
+
+		long heapBefore = usedHeap();
+		Selector selector = Selector.open();
+		List<SocketChannel> channels = new ArrayList<SocketChannel>();
+		for(int i = 0; i < viewers; i++) {
+			SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.getPort()));
+			channel.write(ByteBuffer.wrap(("GET /key/" + (i % keys) + "/stream HTTP/1.1\r\nHost: 127.0.0.1:" + server.getPort() + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII)));
+			channels.add(channel);
+		}
+		while(server.getFramesSent() < viewers) {
+			Thread.sleep(10);
+		}
+		//Both ends of the connections live in this JVM, so this is a upper bound of what the server spends on a viewer
+		long heapAfter = usedHeap();
+		System.out.println(String.format("  %.1f KB of heap per viewer, both ends of the socket counted", (heapAfter - heapBefore) / 1024.0 / viewers));
+
+		AtomicLong received = new AtomicLong();
+		Thread reader = new Thread(() -> {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+			try {
+				for(SocketChannel channel : channels) {
+					channel.configureBlocking(false);
+					channel.register(selector, SelectionKey.OP_READ);
+				}
+				while(!Thread.currentThread().isInterrupted()) {
+					selector.select(100);
+					Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+					while(it.hasNext()) {
+						SelectionKey key = it.next();
+						it.remove();
+						int read;
+						while((read = ((SocketChannel) key.channel()).read(buffer)) > 0) {
+							received.addAndGet(read);
+							buffer.clear();
+						}
+					}
+				}
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+			}
+		});
+		reader.setDaemon(true);
+		reader.start();
+
+		long serverThread = findThread("StreamDeck server");
+		long cpuBefore = ManagementFactory.getThreadMXBean().getThreadCpuTime(serverThread);
+		long framesBefore = server.getFramesSent();
+		long bytesBefore = server.getBytesSent();
+		long updates = 0;
+		long start = System.nanoTime();
+		long end = start + seconds * 1_000_000_000L;
+		while(System.nanoTime() < end) {
+			//60 updates per second on every key
+			for(int key = 0; key < keys; key++) {
+				deck.submitKey(key, animation[(int) (updates % animation.length)], WritePriority.NORMAL);
+			}
+			updates++;
+			long next = start + updates * 1_000_000_000L / 60;
+			while(System.nanoTime() < next) {
+				Thread.sleep(1);
+			}
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		long cpu = ManagementFactory.getThreadMXBean().getThreadCpuTime(serverThread) - cpuBefore;
+		long frames = server.getFramesSent() - framesBefore;
+		long bytes = server.getBytesSent() - bytesBefore;
+
+		System.out.println(String.format("  %d key updates/sec, %.0f frames/sec sent to viewers, %.1f MB/sec, %.1f MB/sec read by the viewers",
+				(long) (updates * keys / elapsed), frames / elapsed, bytes / elapsed / 1e6, received.get() / elapsed / 1e6));
+		System.out.println(String.format("  server thread: %.1f%% of a core, %.2f us per frame, %d clients",
+				cpu / 1e7 / elapsed, frames == 0 ? 0 : cpu / 1e3 / frames, server.getClientCount()));
+
+		reader.interrupt();
+		reader.join();
+		for(SocketChannel channel : channels) {
+			channel.close();
+		}
+		selector.close();
+		server.stop();
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private static byte[] get(String url) throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		try(InputStream in = connection.getInputStream()) {
+			return in.readAllBytes();
+		}
+	}
+
+	private static int status(String url, String method, String contentType, byte[] body) throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestMethod(method);
+		if(body != null) {
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", contentType);
+			try(OutputStream out = connection.getOutputStream()) {
+				out.write(body);
+			}
+		}
+		return connection.getResponseCode();
+	}
+
+	/**
+	 * Send a request as it is, HttpURLConnection does not let Host and Origin be set
+	 */
+	private static int rawStatus(int port, String request) throws Exception {
+		try(Socket socket = new Socket("127.0.0.1", port)) {
+			socket.setSoTimeout(2000);
+			socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+			String status = readUntil(socket.getInputStream(), "\r\n");
+			return Integer.parseInt(status.substring(9, 12));
+		}
+	}
+
+	private static String readUntil(InputStream in, String text) throws Exception {
+		StringBuilder read = new StringBuilder();
+		byte[] buffer = new byte[1024];
+		while(read.indexOf(text) < 0) {
+			int n = in.read(buffer);
+			if(n < 0) {
+				break;
+			}
+			read.append(new String(buffer, 0, n, StandardCharsets.UTF_8));
+		}
+		return read.toString();
+	}
+
+	private static void check(String what, boolean ok) {
+		System.out.println("  " + (ok ? "ok    " : "FAILED") + " " + what);
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		for(int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static long findThread(String name) {
+		for(ThreadInfo info : ManagementFactory.getThreadMXBean().dumpAllThreads(false, false)) {
+			if(info.getThreadName().equals(name)) {
+				return info.getThreadId();
+			}
+		}
+		throw new IllegalStateException("No thread called " + name);
+	}
+
+}
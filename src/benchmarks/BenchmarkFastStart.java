@@ -0,0 +1,122 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.golde.streamdeck.DeviceProfile;
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.FastStart;
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.WritePriority;
+import org.golde.streamdeck.helpers.ImageUtilities;
+
+/**
+ * Measures how long it takes from starting Java to the first key being sent to a deck, in new JVMs:
+ * without anything, with {@link FastStart#start()}, and with FastStart and a class data sharing archive made from {@link FastStart#main(String[])}.
+ * The program pretends to spend some time starting up on its own, like reading its config, before it draws the first key.
+ * Also measures how long the first key takes by its self, with and without {@link FastStart#warmUp(DeviceProfile)}.
+ * The deck is a StreamDeckXL on a transport that throws the reports away.
+ *
+ * Class data sharing only works with jars, so run this from a jar to get the CDS numbers.
+ *
+ * Arguments: [runs] [program startup millis]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkFastStart {
+
+	public static void main(String[] args) throws Exception {
+		if(args.length > 0 && args[0].equals("child")) {
+			child(args[1], Integer.parseInt(args[2]));
+			return;
+		}
+
+		int runs = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+		int startupMillis = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String classPath = System.getProperty("java.class.path");
+		File archive = File.createTempFile("streamdeck", ".jsa");
+		archive.delete();
+
+		//The training run
+		long start = System.nanoTime();
+		Process training = new ProcessBuilder(java, "-XX:ArchiveClassesAtExit=" + archive, "-cp", classPath, FastStart.class.getName()).inheritIO().start();
+		training.waitFor();
+		System.out.println(String.format("Made a class data sharing archive in %.0f ms, %d KB", (System.nanoTime() - start) / 1e6, archive.length() / 1024));
+
+		List<String[]> setups = new ArrayList<String[]>();
+		setups.add(new String[] {"cold", "plain"});
+		setups.add(new String[] {"FastStart.start()", "fast"});
+		if(archive.length() > 0) {
+			setups.add(new String[] {"FastStart.start() + CDS", "fast", "-XX:SharedArchiveFile=" + archive});
+		}
+		else {
+			System.out.println("No class data sharing archive, the class path has directories on it");
+		}
+		setups.add(new String[] {"FastStart.start() + warmUp()", "warm"});
+
+		for(int millis : new int[] {0, startupMillis}) {
+			System.out.println("Program startup " + millis + " ms:");
+			for(String[] setup : setups) {
+				long[] toKey = new long[runs];
+				long[] keyOnly = new long[runs];
+				for(int run = 0; run < runs; run++) {
+					List<String> command = new ArrayList<String>(Arrays.asList(java, "-cp", classPath));
+					command.addAll(Arrays.asList(setup).subList(2, setup.length));
+					command.addAll(Arrays.asList(BenchmarkFastStart.class.getName(), "child", setup[1], String.valueOf(millis)));
+
+					long launched = System.nanoTime();
+					Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+					BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+					String line;
+					while((line = in.readLine()) != null && !line.startsWith("KEY ")) {
+						System.out.println("  " + line);
+					}
+					toKey[run] = System.nanoTime() - launched;
+					keyOnly[run] = line == null ? -1 : Long.parseLong(line.substring(4));
+					process.waitFor();
+				}
+				Arrays.sort(toKey);
+				Arrays.sort(keyOnly);
+				System.out.println(String.format("  %-30s first key after %6.1f ms median (%6.1f - %6.1f), the key its self %5.1f ms",
+						setup[0], toKey[runs / 2] / 1e6, toKey[0] / 1e6, toKey[runs - 1] / 1e6, keyOnly[runs / 2] / 1e6));
+			}
+		}
+		Files.deleteIfExists(archive.toPath());
+	}
+
+	/**
+	 * A program that starts up, then draws some text on the first key
+	 */
+	private static void child(String mode, int startupMillis) throws Exception {
+		if(!mode.equals("plain")) {
+			FastStart.start();
+		}
+		StreamDeckXL deck = new StreamDeckXL(new DiscardingTransport());
+		deck.connect();
+
+		//The rest of the program starting up
+		Thread.sleep(startupMillis);
+		if(mode.equals("warm")) {
+			FastStart.warmUp(DeviceProfile.XL);
+		}
+
+		long start = System.nanoTime();
+		BufferedImage img = ImageUtilities.createSolidColorImage(Color.RED);
+		ImageUtilities.drawTextOnImage(img, "Hello", Color.WHITE);
+		EncodedKeyImage encoded = deck.encodeKey(img);
+		deck.submitKey(0, encoded, WritePriority.INTERACTIVE).join();
+		System.out.println("KEY " + (System.nanoTime() - start));
+		System.out.flush();
+		Runtime.getRuntime().halt(0);
+	}
+
+}
@@ -0,0 +1,140 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.golde.streamdeck.StreamDeckKeyState.State;
+import org.golde.streamdeck.gestures.GestureEngine;
+import org.golde.streamdeck.gestures.GestureType;
+
+/**
+ * Plays taps, double taps, long presses and chords into a gesture engine with real timing, checks that every gesture is
+ * recognised, and measures how late the gestures that wait for a deadline are decided, and how much is allocated.
+ *
+ * Arguments: [rounds]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkGestures {
+
+	private static final long LONG_PRESS_MILLIS = 100;
+	private static final long DOUBLE_TAP_MILLIS = 80;
+	private static final long CHORD_MILLIS = 30;
+
+	private static final int[] counts = new int[GestureType.values().length];
+	private static final long[] lateness = new long[100_000];
+	private static int latenessCount = 0;
+	//When the next timed gesture is due
+	private static volatile long deadline;
+	private static int mask;
+
+	public static void main(String[] args) throws Exception {
+
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+
+		GestureEngine engine = new GestureEngine(new NullStreamDeck(0));
+		engine.setLongPressTime(LONG_PRESS_MILLIS);
+		engine.setDoubleTapTime(DOUBLE_TAP_MILLIS);
+		engine.setChordTime(CHORD_MILLIS);
+		engine.addListener((type, key, keys, nanoTime) -> {
+			long now = System.nanoTime();
+			synchronized (counts) {
+				counts[type.ordinal()]++;
+				if(type == GestureType.LONG_PRESS || type == GestureType.TAP || type == GestureType.CHORD) {
+					lateness[latenessCount++] = now - deadline;
+				}
+			}
+		});
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+		//Warm up
+		play(engine, 5);
+		synchronized (counts) {
+			latenessCount = 0;
+			Arrays.fill(counts, 0);
+		}
+
+		long[] ids = threads.getAllThreadIds();
+		long allocated = sum(threads.getThreadAllocatedBytes(ids));
+		play(engine, rounds);
+		allocated = sum(threads.getThreadAllocatedBytes(ids)) - allocated;
+
+		System.out.println(rounds + " rounds of tap, double tap, long press and chord");
+		Map<GestureType, Integer> recognised = new EnumMap<GestureType, Integer>(GestureType.class);
+		for(GestureType type : GestureType.values()) {
+			recognised.put(type, counts[type.ordinal()]);
+		}
+		System.out.println("  Recognised: " + recognised);
+		long[] sorted = Arrays.copyOf(lateness, latenessCount);
+		Arrays.sort(sorted);
+		System.out.println(String.format("  Timed gestures: %d, decided after the deadline by median %.3f ms, p99 %.3f ms, worst %.3f ms",
+				sorted.length, sorted[sorted.length / 2] / 1e6, sorted[(int) (sorted.length * 0.99)] / 1e6, sorted[sorted.length - 1] / 1e6));
+		System.out.println(String.format("  %d bytes allocated by every thread, %.1f per gesture", allocated,
+				(double) allocated / Arrays.stream(counts).sum()));
+
+		engine.stop();
+	}
+
+	private static void play(GestureEngine engine, int rounds) throws InterruptedException {
+		for(int round = 0; round < rounds; round++) {
+			int key = round % 30;
+
+			//Tap, sent once the double tap time is over
+			press(engine, key);
+			Thread.sleep(20);
+			deadline = release(engine, key) + DOUBLE_TAP_MILLIS * 1_000_000L;
+			Thread.sleep(DOUBLE_TAP_MILLIS + 40);
+
+			//Double tap
+			press(engine, key);
+			Thread.sleep(20);
+			release(engine, key);
+			Thread.sleep(20);
+			press(engine, key);
+			Thread.sleep(20);
+			release(engine, key);
+			Thread.sleep(20);
+
+			//Long press
+			deadline = press(engine, key) + LONG_PRESS_MILLIS * 1_000_000L;
+			Thread.sleep(LONG_PRESS_MILLIS + 30);
+			release(engine, key);
+			Thread.sleep(20);
+
+			//Chord of two keys, decided once the chord time is over
+			press(engine, key);
+			Thread.sleep(5);
+			deadline = press(engine, key + 1) + CHORD_MILLIS * 1_000_000L;
+			Thread.sleep(CHORD_MILLIS + 30);
+			release(engine, key);
+			release(engine, key + 1);
+			Thread.sleep(20);
+		}
+	}
+
+	private static long press(GestureEngine engine, int key) {
+		long now = System.nanoTime();
+		mask |= 1 << key;
+		engine.keyStateChanged(key, State.PRESSED, mask, now);
+		return now;
+	}
+
+	private static long release(GestureEngine engine, int key) {
+		long now = System.nanoTime();
+		mask &= ~(1 << key);
+		engine.keyStateChanged(key, State.RELEASED, mask, now);
+		return now;
+	}
+
+	private static long sum(long[] values) {
+		long sum = 0;
+		for(long value : values) {
+			sum += Math.max(value, 0);
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,104 @@
+package benchmarks;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import org.golde.streamdeck.StreamDeckGetter;
+import org.golde.streamdeck.transport.HidTransport;
+import org.golde.streamdeck.transport.HidrawDevice;
+import org.golde.streamdeck.transport.HidrawTransport;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+
+/**
+ * Sends image sized packets as fast as possible and measures packets per second and CPU time per packet, for:
+ * the hidraw transport writing to /dev/null, libc write() called through JNA with a byte array the way hid4java hands
+ * packets to hidapi, and if a deck is connected, the hid4java and hidraw transports on the real device.
+ *
+ * Arguments: [packets]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkHidraw {
+
+	private static final int PACKET_SIZE = 1024;
+
+	private interface LibC extends Library {
+		int open(String path, int flags);
+		int write(int fd, byte[] data, int length);
+		int close(int fd);
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		int packets = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+		byte[] data = new byte[PACKET_SIZE - 1];
+		data[0] = 0x07;
+
+		HidrawTransport devNull = new HidrawTransport(new File("/dev/null"), new File("/dev/null"), null);
+		devNull.open();
+		run("hidraw channel, /dev/null", packets, () -> devNull.write(data, data.length, (byte) 2));
+		devNull.close();
+
+		//What every packet costs on the hid4java path before hidapi: a new array with the report ID, then JNA copies it to native memory
+		LibC libc = (LibC) Native.loadLibrary("c", LibC.class);
+		int fd = libc.open("/dev/null", 1);
+		run("JNA write(), /dev/null", packets, () -> {
+			byte[] report = new byte[data.length + 1];
+			report[0] = 2;
+			System.arraycopy(data, 0, report, 1, data.length);
+			libc.write(fd, report, report.length);
+		});
+		libc.close(fd);
+
+		//A real device is a lot slower than /dev/null, so send fewer packets. They are not valid images, the device ignores them.
+		int devicePackets = Math.min(packets, 2000);
+		HidTransport[] hid4java;
+		try {
+			hid4java = StreamDeckGetter.getAllConnectedTransports();
+		}
+		catch(RuntimeException | LinkageError e) {
+			System.out.println("hid4java could not start: " + e.getMessage());
+			hid4java = new HidTransport[0];
+		}
+		if(hid4java.length > 0 && hid4java[0].open()) {
+			HidTransport transport = hid4java[0];
+			run("hid4java, device", devicePackets, () -> transport.write(data, data.length, (byte) 2));
+			transport.close();
+		}
+		List<HidrawDevice> hidraw = HidrawDevice.findAll();
+		if(!hidraw.isEmpty()) {
+			HidrawTransport transport = hidraw.get(0).open();
+			if(transport.open()) {
+				run("hidraw channel, device", devicePackets, () -> transport.write(data, data.length, (byte) 2));
+				transport.close();
+			}
+		}
+		if(hid4java.length == 0 && hidraw.isEmpty()) {
+			System.out.println("No deck connected, skipped the real device");
+		}
+	}
+
+	private static void run(String name, int packets, Runnable write) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		//Warm up
+		for(int i = 0; i < packets / 10; i++) {
+			write.run();
+		}
+
+		long cpu = threads.getCurrentThreadCpuTime();
+		long start = System.nanoTime();
+		for(int i = 0; i < packets; i++) {
+			write.run();
+		}
+		long nanos = System.nanoTime() - start;
+		cpu = threads.getCurrentThreadCpuTime() - cpu;
+
+		System.out.println(String.format("%-26s %10.0f packets/sec, %6.0f ns CPU per packet", name, packets / (nanos / 1e9), (double) cpu / packets));
+	}
+
+}
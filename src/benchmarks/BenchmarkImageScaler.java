@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.helpers.ImageScaler;
+import org.golde.streamdeck.screencast.SyntheticFrameSource;
+
+/**
+ * Compares {@link ImageScaler} against the old getScaledInstance + drawImage way of scaling.
+ *
+ * Arguments: [iterations]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkImageScaler {
+
+	public static void main(String[] args) {
+
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+
+		BufferedImage screen = new SyntheticFrameSource(1920, 1080).capture();
+		BufferedImage icon = new SyntheticFrameSource(512, 512).capture();
+
+		run("1920x1080 -> 768x384", screen, StreamDeckXL.COLS * StreamDeckXL.IMG_SIZE, StreamDeckXL.ROWS * StreamDeckXL.IMG_SIZE, iterations);
+		run("1920x1080 -> 96x96", screen, StreamDeckXL.IMG_SIZE, StreamDeckXL.IMG_SIZE, iterations);
+		run("512x512 -> 96x96", icon, StreamDeckXL.IMG_SIZE, StreamDeckXL.IMG_SIZE, iterations);
+	}
+
+	private static void run(String name, BufferedImage src, int width, int height, int iterations) {
+		System.out.println(name);
+
+		//SCALE_DEFAULT is what ImageUtilities used to do, it picks the nearest pixel like our NEAREST filter.
+		//SCALE_AREA_AVERAGING is the same idea as our AREA_AVERAGE filter.
+		for(int hint : new int[] {Image.SCALE_DEFAULT, Image.SCALE_AREA_AVERAGING}) {
+			time("  getScaledInstance " + (hint == Image.SCALE_DEFAULT ? "DEFAULT" : "AREA"), iterations, () -> {
+				Image scaled = src.getScaledInstance(width, height, hint);
+				BufferedImage out = new BufferedImage(width, height, StreamDeckXL.IMG_TYPE);
+				out.getGraphics().drawImage(scaled, 0, 0, null);
+			});
+		}
+
+		for(ImageScaler.Filter filter : ImageScaler.Filter.values()) {
+			for(boolean parallel : new boolean[] {false, true}) {
+				ImageScaler scaler = new ImageScaler(filter, parallel);
+				BufferedImage dst = new BufferedImage(width, height, StreamDeckXL.IMG_TYPE);
+				time("  " + filter + (parallel ? " (parallel)" : ""), iterations, () -> scaler.scale(src, dst));
+			}
+		}
+	}
+
+	private static void time(String name, int iterations, Runnable task) {
+		//Warm up
+		for(int i = 0; i < Math.max(5, iterations / 5); i++) {
+			task.run();
+		}
+
+		long start = System.nanoTime();
+		for(int i = 0; i < iterations; i++) {
+			task.run();
+		}
+		double ms = (System.nanoTime() - start) / 1e6 / iterations;
+		System.out.println(String.format("%-32s %8.3f ms", name, ms));
+	}
+
+}
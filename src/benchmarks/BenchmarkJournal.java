@@ -0,0 +1,110 @@
+package benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.emulator.VirtualStreamDeck;
+import org.golde.streamdeck.journal.KeyJournal;
+import org.golde.streamdeck.journal.KeyJournalReader;
+
+/**
+ * Measures what writing a event to a key journal costs, then writes millions of events into a small ring while another
+ * JVM tails it, and checks that the other side never reads a half written or overwritten event.
+ * Last, records some key presses of a emulated deck and reads them back.
+ *
+ * Arguments: [events]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkJournal {
+
+	public static void main(String[] args) throws Exception {
+
+		if(args.length > 0 && args[0].equals("--tail")) {
+			tail(new File(args[1]), Long.parseLong(args[2]));
+			return;
+		}
+
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+		File file = File.createTempFile("keys", ".sdkj");
+		file.deleteOnExit();
+
+		//Cost per event, nobody reading
+		KeyJournal journal = new KeyJournal(file, 1 << 16);
+		write(journal, 0, events);
+		long start = System.nanoTime();
+		write(journal, events, events);
+		long nanos = System.nanoTime() - start;
+		System.out.println(String.format("Writing: %.1f ns per event, %d events", (double) nanos / events, events));
+		journal.close();
+
+		//Small ring, so the reader in the other JVM gets overwritten now and then
+		file.delete();
+		journal = new KeyJournal(file, 4096);
+		Process reader = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(), "-cp", System.getProperty("java.class.path"),
+				BenchmarkJournal.class.getName(), "--tail", file.getPath(), String.valueOf(events)).inheritIO().start();
+		//Give the other JVM time to start tailing
+		Thread.sleep(1000);
+		start = System.nanoTime();
+		for(int i = 0; i < events; i += 10_000) {
+			write(journal, i, 10_000);
+			Thread.sleep(0, 100_000);
+		}
+		System.out.println(String.format("Writing with a reader in another JVM: %d events in %.0f ms", events, (System.nanoTime() - start) / 1e6));
+		reader.waitFor(60, TimeUnit.SECONDS);
+		journal.close();
+
+		//Real key presses
+		file.delete();
+		journal = new KeyJournal(file, 1024);
+		VirtualStreamDeck virtual = new VirtualStreamDeck();
+		IStreamDeck deck = new StreamDeckXL(virtual);
+		deck.connect();
+		journal.attach(deck);
+		virtual.press(3);
+		virtual.press(4);
+		virtual.release(3);
+		virtual.release(4);
+		Thread.sleep(200);
+		KeyJournalReader keys = new KeyJournalReader(file);
+		KeyJournalReader.Entry entry;
+		while((entry = keys.poll()) != null) {
+			System.out.println("  " + entry);
+		}
+		journal.close();
+		deck.disconnect();
+		System.exit(0);
+	}
+
+	/**
+	 * Write events that can be checked on the other side: the time and the mask are made from the sequence number
+	 */
+	private static void write(KeyJournal journal, long first, int count) {
+		for(long seq = first; seq < first + count; seq++) {
+			journal.record(0, (int) (seq & 31), (seq & 1) == 0, (int) seq, seq * 3);
+		}
+	}
+
+	private static void tail(File file, long events) throws Exception {
+		KeyJournalReader reader = new KeyJournalReader(file);
+		long received = 0;
+		long broken = 0;
+		long last = -1;
+		while(last < events - 1) {
+			KeyJournalReader.Entry entry = reader.take(5000);
+			if(entry == null) {
+				break;
+			}
+			received++;
+			long seq = entry.getSequence();
+			if(seq <= last || entry.getNanoTime() != seq * 3 || entry.getMask() != (int) seq || entry.getKey() != (seq & 31)) {
+				broken++;
+			}
+			last = seq;
+		}
+		System.out.println(String.format("Reader in another JVM: %d events read, %d lost to the ring going around, %d broken", received, reader.getLost(), broken));
+	}
+
+}
@@ -0,0 +1,150 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.golde.streamdeck.DeviceProfile;
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.KeyCanvas;
+import org.golde.streamdeck.KeyCanvasPool;
+import org.golde.streamdeck.StreamDeck;
+import org.golde.streamdeck.WritePriority;
+import org.golde.streamdeck.helpers.ImageUtilities;
+
+/**
+ * Checks that drawing rectangles, images and text on a {@link KeyCanvas} gives the same image as drawing them on a BufferedImage
+ * and encoding it, on every model,
+ * then updates a key with a counter on it over and over both ways, and measures the time and memory every update takes.
+ * The deck is a StreamDeckXL on a transport that throws the reports away.
+ *
+ * Arguments: [updates]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkKeyCanvas {
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception {
+		int updates = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+		for(DeviceProfile profile : DeviceProfile.values()) {
+			StreamDeck deck = new StreamDeck(profile, new DiscardingTransport());
+			int size = profile.getKeySize();
+
+			BufferedImage reference = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = reference.createGraphics();
+			drawShapes(g, size);
+			g.dispose();
+			KeyCanvas canvas = deck.acquireCanvas(1);
+			drawShapes(canvas.getGraphics(), size);
+			boolean shapesSame = Arrays.equals(deck.encodeKey(reference).toByteArray(), canvas.encode().toByteArray());
+
+			reference = ImageUtilities.createSolidColorImage(size, size, Color.BLUE);
+			ImageUtilities.drawTextOnImage(reference, "Text", Color.WHITE);
+			canvas = deck.acquireCanvas(1);
+			canvas.fill(Color.BLUE);
+			canvas.drawText("Text", Color.WHITE);
+			int textDifference = difference(deck.encodeKey(reference), canvas.encode());
+
+			System.out.println(String.format("%-25s shapes %s, text: %d of %d pixels visibly different", profile, shapesSame ? "identical" : "DIFFERENT", textDifference, size * size));
+			deck.disconnect();
+		}
+
+		StreamDeck deck = new StreamDeck(DeviceProfile.XL, new DiscardingTransport());
+		deck.connect();
+		//The same as deck.acquireCanvas, but this one can tell how many canvases it made
+		KeyCanvasPool pool = new KeyCanvasPool(deck);
+		for(int round = 0; round < 2; round++) {
+			boolean print = round == 1;
+			run("new image per update", deck, updates, print, i -> {
+				BufferedImage img = ImageUtilities.createSolidColorImage(Color.DARK_GRAY);
+				ImageUtilities.drawTextOnImage(img, String.valueOf(i), Color.WHITE);
+				deck.submitKey(0, deck.encodeKey(img), WritePriority.NORMAL);
+			});
+			run("pooled canvas", deck, updates, print, i -> {
+				KeyCanvas canvas = pool.acquire(0);
+				canvas.fill(Color.DARK_GRAY);
+				canvas.drawText(String.valueOf(i), Color.WHITE);
+				canvas.commit();
+			});
+		}
+		System.out.println("Canvases created for " + updates * 2 + " pooled updates: " + pool.getCreated());
+		deck.disconnect();
+	}
+
+	private interface Update {
+		void run(int i);
+	}
+
+	private static void run(String name, StreamDeck deck, int updates, boolean print, Update update) throws Exception {
+		long gcs = gcCount();
+		long allocated = THREADS.getCurrentThreadAllocatedBytes();
+		long start = System.nanoTime();
+		for(int i = 0; i < updates; i++) {
+			update.run(i);
+		}
+		long time = System.nanoTime() - start;
+		allocated = THREADS.getCurrentThreadAllocatedBytes() - allocated;
+		gcs = gcCount() - gcs;
+		deck.submitKey(0, deck.encodeKey(ImageUtilities.createSolidColorImage(Color.BLACK)), WritePriority.NORMAL).join();
+
+		if(print) {
+			System.out.println(String.format("%-22s %6.1f us per update, %6.0f bytes allocated per update, %d GCs",
+					name, time / 1e3 / updates, allocated / (double) updates, gcs));
+		}
+	}
+
+	private static void drawShapes(Graphics2D g, int size) {
+		g.setColor(Color.ORANGE);
+		g.fillRect(0, 0, size, size);
+		g.setColor(Color.RED);
+		g.fillRect(3, 5, size / 3, size / 5);
+		g.setColor(Color.GREEN);
+		g.fillRect(size / 2, size - 10, size / 2 - 1, 7);
+		BufferedImage icon = new BufferedImage(20, 16, BufferedImage.TYPE_INT_ARGB);
+		for(int i = 0; i < 20 * 16; i++) {
+			icon.setRGB(i % 20, i / 20, (i * 4 << 24) | i * 4111);
+		}
+		g.drawImage(icon, size / 2, 9, null);
+	}
+
+	/**
+	 * @return how many pixels have a color channel that is more than 64 off, a lot more than JPEG gets wrong
+	 */
+	private static int difference(EncodedKeyImage a, EncodedKeyImage b) throws Exception {
+		BufferedImage imgA = ImageIO.read(new ByteArrayInputStream(a.toByteArray()));
+		BufferedImage imgB = ImageIO.read(new ByteArrayInputStream(b.toByteArray()));
+		int different = 0;
+		for(int y = 0; y < imgA.getHeight(); y++) {
+			for(int x = 0; x < imgA.getWidth(); x++) {
+				int pa = imgA.getRGB(x, y);
+				int pb = imgB.getRGB(x, y);
+				int max = 0;
+				for(int shift = 0; shift < 24; shift += 8) {
+					max = Math.max(max, Math.abs(((pa >> shift) & 0xFF) - ((pb >> shift) & 0xFF)));
+				}
+				if(max > 64) {
+					different++;
+				}
+			}
+		}
+		return different;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += gc.getCollectionCount();
+		}
+		return count;
+	}
+
+}
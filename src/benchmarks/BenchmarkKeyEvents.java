@@ -0,0 +1,141 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.KeyEvent;
+import org.golde.streamdeck.KeyEventPublisher;
+import org.golde.streamdeck.OverflowStrategy;
+import org.golde.streamdeck.StreamDeckKeyState.State;
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.emulator.VirtualStreamDeck;
+
+/**
+ * Publishes key events to more and more subscribers and measures how much the publishing thread allocates per event,
+ * then taps keys on a emulated deck with a slow subscriber next to a fast one, once for every overflow strategy.
+ *
+ * Arguments: [events]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkKeyEvents {
+
+	public static void main(String[] args) throws Exception {
+
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		System.out.println("Fan-out, " + events + " events");
+		for(int subscribers : new int[] {1, 4, 16}) {
+			KeyEventPublisher publisher = new KeyEventPublisher();
+			Counter[] counters = new Counter[subscribers];
+			for(int i = 0; i < subscribers; i++) {
+				//Counts the warm up too
+				counters[i] = new Counter(events + events / 10);
+				//Big enough that the buffer never has to grow, so growing it doesn't count as allocating per event
+				publisher.subscribe(counters[i], OverflowStrategy.BUFFER, events + events / 10);
+			}
+			KeyEvent event = new KeyEvent(null, 0, 0, State.PRESSED, 1);
+
+			//Warm up
+			for(int i = 0; i < events / 10; i++) {
+				publisher.publish(event);
+			}
+
+			long allocated = threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			for(int i = 0; i < events; i++) {
+				publisher.publish(event);
+			}
+			for(Counter counter : counters) {
+				counter.done.await();
+			}
+			long nanos = System.nanoTime() - start;
+			allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+
+			System.out.println(String.format("  %2d subscribers: %10.0f events/sec delivered to each, %.2f bytes allocated per publish",
+					subscribers, events / (nanos / 1e9), (double) allocated / events));
+			publisher.close();
+		}
+
+		System.out.println("Slow subscriber, 200 taps on a emulated deck");
+		for(OverflowStrategy strategy : OverflowStrategy.values()) {
+			VirtualStreamDeck virtual = new VirtualStreamDeck();
+			IStreamDeck deck = new StreamDeckXL(virtual);
+			deck.connect();
+
+			Counter fast = new Counter(400);
+			Counter slow = new Counter(Long.MAX_VALUE);
+			slow.sleepMillis = 20;
+			deck.getKeyEvents().subscribe(fast);
+			deck.getKeyEvents().subscribe(slow, strategy, 16);
+
+			long start = System.nanoTime();
+			for(int i = 0; i < 200; i++) {
+				virtual.tap(i % StreamDeckXL.NUMBER_OF_KEYS);
+				Thread.sleep(1);
+			}
+			fast.done.await();
+			long fastNanos = System.nanoTime() - start;
+			//Let the slow subscriber catch up with what it kept
+			Thread.sleep(20 * 450);
+
+			System.out.println(String.format("  %-11s fast got %d events in %.0f ms, slow got %d, %d dropped",
+					strategy, fast.count.get(), fastNanos / 1e6, slow.count.get(), deck.getKeyEvents().getDroppedEvents()));
+			deck.getKeyEvents().close();
+			deck.disconnect();
+		}
+
+		System.exit(0);
+	}
+
+	/**
+	 * Asks for everything and counts what it gets
+	 */
+	private static class Counter implements Flow.Subscriber<KeyEvent> {
+
+		private final long expected;
+		private final AtomicLong count = new AtomicLong();
+		private final CountDownLatch done = new CountDownLatch(1);
+		private long sleepMillis = 0;
+
+		Counter(long expected) {
+			this.expected = expected;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(KeyEvent item) {
+			if(sleepMillis > 0) {
+				try {
+					Thread.sleep(sleepMillis);
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+			}
+			if(count.incrementAndGet() == expected) {
+				done.countDown();
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			throwable.printStackTrace();
+		}
+
+		@Override
+		public void onComplete() {
+		}
+
+	}
+
+}
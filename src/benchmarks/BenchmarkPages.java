@@ -0,0 +1,75 @@
+package benchmarks;
+
+import java.awt.Color;
+
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.pages.Page;
+import org.golde.streamdeck.pages.PageManager;
+import org.golde.streamdeck.pages.PageTile;
+
+/**
+ * Flips between pages full of text keys, once by drawing every key with setKey like before, and once with a {@link PageManager}.
+ *
+ * Arguments: [flips] [link bytes per second]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkPages {
+
+	private static final int PAGES = 4;
+	private static final Color[] COLORS = {Color.RED, Color.BLUE, Color.DARK_GRAY, Color.ORANGE};
+
+	public static void main(String[] args) throws Exception {
+
+		int flips = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		long linkSpeed = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000;
+
+		NullStreamDeck deck = new NullStreamDeck(linkSpeed);
+
+		//Before: every flip draws, encodes and sends all 32 keys
+		long start = System.nanoTime();
+		long bytes = deck.getBytesSent();
+		for(int flip = 0; flip < flips; flip++) {
+			int page = flip % PAGES;
+			for(int key = 0; key < StreamDeckXL.NUMBER_OF_KEYS; key++) {
+				//Same drawing code as setKey(int, String, Color) on a real deck
+				deck.setKey(key, PageTile.text(label(page, key), COLORS[page]).render());
+			}
+		}
+		report("setKey", flips, System.nanoTime() - start, deck.getBytesSent() - bytes, linkSpeed);
+
+		PageManager manager = new PageManager(deck);
+		for(int page = 0; page < PAGES; page++) {
+			Page p = manager.createPage("page" + page);
+			for(int key = 0; key < StreamDeckXL.NUMBER_OF_KEYS; key++) {
+				p.setKey(key, PageTile.text(label(page, key), COLORS[page]));
+			}
+		}
+		for(int page = 0; page < PAGES; page++) {
+			while(!manager.getPage("page" + page).isReady()) {
+				Thread.sleep(10);
+			}
+		}
+
+		start = System.nanoTime();
+		bytes = deck.getBytesSent();
+		for(int flip = 0; flip < flips; flip++) {
+			manager.showPage("page" + (flip % PAGES));
+		}
+		report("PageManager", flips, System.nanoTime() - start, deck.getBytesSent() - bytes, linkSpeed);
+
+		manager.shutdown();
+		deck.disconnect();
+	}
+
+	private static String label(int page, int key) {
+		return "P" + page + "K" + key;
+	}
+
+	private static void report(String name, int flips, long nanos, long bytes, long linkSpeed) {
+		double ms = nanos / 1e6 / flips;
+		double transferMs = linkSpeed > 0 ? bytes * 1000.0 / linkSpeed / flips : 0;
+		System.out.println(String.format("%-12s %7.2f ms per flip, %7.2f ms of that is USB transfer", name, ms, transferMs));
+	}
+
+}
@@ -0,0 +1,49 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+import org.golde.streamdeck.DeviceProfile;
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.helpers.TileView;
+
+/**
+ * Encodes a key image for every model, to compare what the native format of each model costs.
+ * BMP models only reorder the pixels, JPEG models run the JPEG encoder.
+ *
+ * Arguments: [iterations]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkProfiles {
+
+	public static void main(String[] args) {
+
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+		for(DeviceProfile profile : DeviceProfile.values()) {
+			int size = profile.getKeySize();
+			BufferedImage img = ImageUtilities.createSolidColorImage(size, size, Color.DARK_GRAY);
+			ImageUtilities.drawTextOnImage(img, "42%", Color.WHITE);
+			TileView view = TileView.of(img);
+
+			//Warm up
+			for(int i = 0; i < iterations / 4; i++) {
+				profile.encode(view);
+			}
+
+			long bytes = 0;
+			long start = System.nanoTime();
+			for(int i = 0; i < iterations; i++) {
+				EncodedKeyImage encoded = profile.encode(view);
+				bytes += encoded.getLength();
+			}
+			long nanos = System.nanoTime() - start;
+
+			System.out.println(String.format("%-24s %-4s %3dpx %8.1f us per key, %6d bytes per key", profile.getName(), profile.getImageFormat(), size,
+					nanos / 1e3 / iterations, bytes / iterations));
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Random;
+
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.emulator.VirtualStreamDeck;
+import org.golde.streamdeck.transport.HidRecording;
+import org.golde.streamdeck.transport.HidReplayer;
+import org.golde.streamdeck.transport.RecordingTransport;
+
+/**
+ * Replays a HID recording into a emulated deck, as fast as possible and with the original timing, and checks that
+ * both replays end up with the same screen. Without a recording, it records a session of random keys on a emulated deck first.
+ *
+ * Arguments: [recording file] [speed]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkReplay {
+
+	public static void main(String[] args) throws Exception {
+
+		File file;
+		BufferedImage original = null;
+		if(args.length > 0) {
+			file = new File(args[0]);
+		}
+		else {
+			file = File.createTempFile("session", ".sdhr");
+			file.deleteOnExit();
+			original = record(file, 500);
+		}
+		double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+
+		HidRecording recording = HidRecording.load(file);
+		System.out.println(String.format("%s: %d records, %.1f ms long, %d bytes on disk", file.getName(), recording.size(),
+				recording.getDurationNanos() / 1e6, file.length()));
+
+		BufferedImage fast = replay(recording, HidReplayer.MAX_SPEED, "max speed");
+		BufferedImage timed = replay(recording, speed, speed + "x speed");
+
+		if(original != null) {
+			System.out.println("Max speed replay matches the recorded session: " + same(original, fast));
+		}
+		System.out.println("Both replays end on the same screen: " + same(fast, timed));
+	}
+
+	/**
+	 * Draw random keys on a emulated deck while recording it
+	 */
+	private static BufferedImage record(File file, int images) throws Exception {
+		VirtualStreamDeck virtual = new VirtualStreamDeck();
+		RecordingTransport recorder = new RecordingTransport(virtual, file);
+		IStreamDeck deck = new StreamDeckXL(recorder);
+		deck.connect();
+		deck.setBrightness(75);
+
+		Random random = new Random(1);
+		for(int i = 0; i < images; i++) {
+			deck.setKey(random.nextInt(StreamDeckXL.NUMBER_OF_KEYS), "" + i, Color.getHSBColor(random.nextFloat(), 0.8f, 1));
+		}
+		deck.disconnect();
+		System.out.println("Recorded " + recorder.getRecordCount() + " reports");
+		return virtual.snapshot();
+	}
+
+	private static BufferedImage replay(HidRecording recording, double speed, String name) {
+		VirtualStreamDeck virtual = new VirtualStreamDeck();
+		virtual.open();
+		HidReplayer replayer = new HidReplayer(recording);
+		replayer.setInputSink(virtual::sendInputReport);
+
+		long nanos = replayer.replay(virtual, speed);
+		double seconds = nanos / 1e9;
+		System.out.println(String.format("%-10s %8.1f ms, %9.0f packets/sec, %6.1f MB/s, %d errors, %d protocol errors", name, nanos / 1e6,
+				virtual.getPacketsReceived() / seconds, replayer.getBytesReplayed() / seconds / 1e6, replayer.getErrors(), virtual.getProtocolErrors()));
+		return virtual.snapshot();
+	}
+
+	private static boolean same(BufferedImage a, BufferedImage b) {
+		for(int y = 0; y < a.getHeight(); y++) {
+			for(int x = 0; x < a.getWidth(); x++) {
+				if(a.getRGB(x, y) != b.getRGB(x, y)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+}
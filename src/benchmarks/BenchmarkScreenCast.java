@@ -0,0 +1,35 @@
+package benchmarks;
+
+import org.golde.streamdeck.screencast.ScreenCastPipeline;
+import org.golde.streamdeck.screencast.SyntheticFrameSource;
+
+/**
+ * Runs the screencast pipeline headless, with a synthetic 1080p source and a simulated deck.
+ *
+ * Arguments: [seconds] [source fps] [link bytes per second]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkScreenCast {
+
+	public static void main(String[] args) throws Exception {
+
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int fps = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+		long linkSpeed = args.length > 2 ? Long.parseLong(args[2]) : 1_000_000;
+
+		NullStreamDeck deck = new NullStreamDeck(linkSpeed);
+		ScreenCastPipeline pipeline = new ScreenCastPipeline(deck, new SyntheticFrameSource(1920, 1080, fps));
+
+		pipeline.start();
+		for(int i = 0; i < seconds; i++) {
+			Thread.sleep(1000);
+			System.out.println(pipeline.getStats());
+		}
+		pipeline.stop();
+
+		System.out.println("Final: " + pipeline.getStats());
+		System.out.println("Keys sent: " + deck.getKeysSent() + ", bytes sent: " + deck.getBytesSent());
+	}
+
+}
@@ -0,0 +1,125 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.emulator.VirtualStreamDeck;
+import org.golde.streamdeck.framebuffer.SharedFramebufferCaster;
+import org.golde.streamdeck.framebuffer.SharedFramebufferWriter;
+import org.golde.streamdeck.screencast.SyntheticFrameSource;
+
+/**
+ * Checks that tiles drawn into a shared framebuffer end up on a emulated deck, then has another JVM draw into the framebuffer at 60 fps
+ * while this one casts it to a deck, and measures tiles per second, latency from the producer to the deck, and CPU.
+ *
+ * Arguments: [seconds] [fps]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkSharedFramebuffer {
+
+	public static void main(String[] args) throws Exception {
+
+		if(args.length > 0 && args[0].equals("--produce")) {
+			produce(new File(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+			return;
+		}
+
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int fps = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+		File file = File.createTempFile("deck", ".sdfb");
+		file.deleteOnExit();
+
+		correctness(file);
+
+		//Another JVM draws, this one casts
+		file.delete();
+		NullStreamDeck deck = new NullStreamDeck(0);
+		SharedFramebufferCaster caster = new SharedFramebufferCaster(deck, file);
+		caster.start();
+
+		com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+		long cpu = os.getProcessCpuTime();
+		Thread.sleep(1000);
+		System.out.println(String.format("Idle, nothing drawn: %.2f%% of a core", (os.getProcessCpuTime() - cpu) / 1e7));
+
+		Process producer = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(), "-cp", System.getProperty("java.class.path"),
+				BenchmarkSharedFramebuffer.class.getName(), "--produce", file.getPath(), String.valueOf(seconds), String.valueOf(fps)).inheritIO().start();
+		cpu = os.getProcessCpuTime();
+		long start = System.nanoTime();
+		producer.waitFor(seconds + 30, TimeUnit.SECONDS);
+		Thread.sleep(200);
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		cpu = os.getProcessCpuTime() - cpu;
+		caster.stop();
+
+		System.out.println(String.format("Caster: %d frames seen, %d tiles sent (%.0f/sec), %d torn reads, latency %.2f ms average %.2f ms max, %.1f%% of a core, %.0f us CPU per tile",
+				caster.getFramesSeen(), caster.getTilesSent(), caster.getTilesSent() / elapsed, caster.getTornReads(),
+				caster.getAverageLatencyNanos() / 1e6, caster.getMaxLatencyNanos() / 1e6, cpu / 1e7 / elapsed,
+				caster.getTilesSent() == 0 ? 0 : cpu / 1e3 / caster.getTilesSent()));
+		deck.disconnect();
+	}
+
+	/**
+	 * Draw a different color on every tile, and check the emulated deck shows them
+	 */
+	private static void correctness(File file) throws Exception {
+		VirtualStreamDeck virtual = new VirtualStreamDeck();
+		IStreamDeck deck = new StreamDeckXL(virtual);
+		deck.connect();
+		SharedFramebufferCaster caster = new SharedFramebufferCaster(deck, file);
+		caster.start();
+		SharedFramebufferWriter writer = new SharedFramebufferWriter(file);
+
+		BufferedImage frame = new BufferedImage(writer.getWidth(), writer.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = frame.createGraphics();
+		for(int key = 0; key < StreamDeckXL.NUMBER_OF_KEYS; key++) {
+			g.setColor(Color.getHSBColor(key / 32f, 1, 1));
+			g.fillRect((key % StreamDeckXL.COLS) * StreamDeckXL.IMG_SIZE, (key / StreamDeckXL.COLS) * StreamDeckXL.IMG_SIZE, StreamDeckXL.IMG_SIZE, StreamDeckXL.IMG_SIZE);
+		}
+		g.dispose();
+		int first = writer.writeFrame(frame);
+		int again = writer.writeFrame(frame);
+		Thread.sleep(500);
+
+		int matching = 0;
+		for(int key = 0; key < StreamDeckXL.NUMBER_OF_KEYS; key++) {
+			Color expected = Color.getHSBColor(key / 32f, 1, 1);
+			Color shown = new Color(virtual.getKeyImage(key).getRGB(StreamDeckXL.IMG_SIZE / 2, StreamDeckXL.IMG_SIZE / 2));
+			if(Math.abs(expected.getRed() - shown.getRed()) + Math.abs(expected.getGreen() - shown.getGreen()) + Math.abs(expected.getBlue() - shown.getBlue()) < 30) {
+				matching++;
+			}
+		}
+		System.out.println(String.format("Correctness: %d tiles written, then %d for the same frame again, %d of %d keys show the right color, %d images sent",
+				first, again, matching, StreamDeckXL.NUMBER_OF_KEYS, virtual.getImagesReceived()));
+		caster.stop();
+		deck.disconnect();
+	}
+
+	/**
+	 * The producer, in the other JVM
+	 */
+	private static void produce(File file, int seconds, int fps) throws Exception {
+		SharedFramebufferWriter writer = new SharedFramebufferWriter(file);
+		SyntheticFrameSource source = new SyntheticFrameSource(writer.getWidth(), writer.getHeight(), fps);
+		long end = System.nanoTime() + seconds * 1_000_000_000L;
+		int frames = 0;
+		long writeNanos = 0;
+		while(System.nanoTime() < end) {
+			BufferedImage frame = source.capture();
+			long start = System.nanoTime();
+			writer.writeFrame(frame);
+			writeNanos += System.nanoTime() - start;
+			frames++;
+		}
+		System.out.println(String.format("Producer: %d frames (%.1f fps), %d tiles written, %.0f us to write a frame",
+				frames, frames / (double) seconds, writer.getTilesWritten(), writeNanos / 1e3 / frames));
+	}
+
+}
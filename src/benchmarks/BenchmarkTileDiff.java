@@ -0,0 +1,76 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.helpers.TileDiff;
+import org.golde.streamdeck.helpers.TileView;
+import org.golde.streamdeck.screencast.SyntheticFrameSource;
+
+/**
+ * Compares the cost of checking every tile of a frame with {@link TileDiff} against encoding every tile,
+ * which is what we would have to do without the diff.
+ *
+ * Arguments: [iterations]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkTileDiff {
+
+	public static void main(String[] args) {
+
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+		SyntheticFrameSource source = new SyntheticFrameSource(StreamDeckXL.COLS * StreamDeckXL.IMG_SIZE, StreamDeckXL.ROWS * StreamDeckXL.IMG_SIZE);
+		BufferedImage frame = source.capture();
+		TileView[] tiles = ImageUtilities.splitImage(frame, StreamDeckXL.ROWS, StreamDeckXL.COLS, null);
+
+		NullStreamDeck deck = new NullStreamDeck(0);
+		double encode = time("encode every tile", iterations / 10, () -> {
+			for(TileView tile : tiles) {
+				deck.encodeKey(tile);
+			}
+		});
+
+		TileDiff[] diffs = {
+				TileDiff.exact(tiles.length),
+				TileDiff.maxChannelDelta(tiles.length, 8),
+				TileDiff.changedFraction(tiles.length, 8, 0.02)
+		};
+		String[] names = {"exact", "max channel delta", "changed fraction"};
+
+		for(int i = 0; i < diffs.length; i++) {
+			TileDiff diff = diffs[i];
+			for(int key = 0; key < tiles.length; key++) {
+				diff.update(key, tiles[key]);
+			}
+
+			//Nothing changed, so every pixel of every tile has to be looked at. This is the worst case for the diff.
+			double ms = time("diff " + names[i], iterations, () -> {
+				for(int key = 0; key < tiles.length; key++) {
+					if(diff.hasChanged(key, tiles[key])) {
+						throw new IllegalStateException("Tile " + key + " should not have changed");
+					}
+				}
+			});
+			System.out.println(String.format("%-32s %7.2f %% of encoding", "", ms * 100 / encode));
+		}
+	}
+
+	private static double time(String name, int iterations, Runnable task) {
+		//Warm up
+		for(int i = 0; i < Math.max(5, iterations / 5); i++) {
+			task.run();
+		}
+
+		long start = System.nanoTime();
+		for(int i = 0; i < iterations; i++) {
+			task.run();
+		}
+		double ms = (System.nanoTime() - start) / 1e6 / iterations;
+		System.out.println(String.format("%-32s %8.3f ms", name, ms));
+		return ms;
+	}
+
+}
@@ -0,0 +1,116 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.widgets.BackgroundWidget;
+import org.golde.streamdeck.widgets.KeyView;
+import org.golde.streamdeck.widgets.LabelWidget;
+import org.golde.streamdeck.widgets.ProgressWidget;
+import org.golde.streamdeck.widgets.WidgetScreen;
+
+/**
+ * A dashboard where every key shows a value and a progress bar, and dozens of values change every tick.
+ * Most changes are too small to show up, like a value that creeps up by 0.1% or is rounded to the same text.
+ * Once every key is drawn and sent every tick, like before, and once with a {@link WidgetScreen}.
+ *
+ * Arguments: [ticks] [updates per tick] [link bytes per second]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkWidgets {
+
+	public static void main(String[] args) throws Exception {
+
+		int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		int updates = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+		long linkSpeed = args.length > 2 ? Long.parseLong(args[2]) : 1_000_000;
+
+		NullStreamDeck deck = new NullStreamDeck(linkSpeed);
+		double[] values = new double[StreamDeckXL.NUMBER_OF_KEYS];
+
+		//Before: redraw and send the whole dashboard every tick
+		Random random = new Random(1);
+		long start = System.nanoTime();
+		long bytes = deck.getBytesSent();
+		for(int tick = 0; tick < ticks; tick++) {
+			update(values, random, updates);
+			for(int key = 0; key < values.length; key++) {
+				deck.setKey(key, draw(values[key]));
+			}
+		}
+		report("redraw all", ticks, System.nanoTime() - start, deck.getBytesSent() - bytes, 0, linkSpeed);
+
+		WidgetScreen screen = new WidgetScreen(deck);
+		LabelWidget[] labels = new LabelWidget[values.length];
+		ProgressWidget[] bars = new ProgressWidget[values.length];
+		for(int key = 0; key < values.length; key++) {
+			KeyView view = screen.getKey(key);
+			view.add(new BackgroundWidget(Color.DARK_GRAY));
+			labels[key] = view.add(new LabelWidget("", Color.WHITE, 4, 8, 88, 60));
+			bars[key] = view.add(new ProgressWidget(Color.GREEN, Color.BLACK));
+		}
+		screen.flush();
+
+		random = new Random(1);
+		start = System.nanoTime();
+		bytes = deck.getBytesSent();
+		long sent = screen.getKeysSent();
+		for(int tick = 0; tick < ticks; tick++) {
+			update(values, random, updates);
+			for(int key = 0; key < values.length; key++) {
+				labels[key].setText(format(values[key]));
+				bars[key].setValue(values[key]);
+			}
+			screen.flush();
+		}
+		report("WidgetScreen", ticks, System.nanoTime() - start, deck.getBytesSent() - bytes, screen.getKeysSent() - sent, linkSpeed);
+		System.out.println("composited " + screen.getKeysComposited() + " keys, " + screen.getKeysUnchanged() + " came out the same and were not sent");
+
+		deck.disconnect();
+	}
+
+	/**
+	 * Nudge random values. Most nudges are tiny, every now and then one jumps.
+	 */
+	private static void update(double[] values, Random random, int updates) {
+		for(int i = 0; i < updates; i++) {
+			int key = random.nextInt(values.length);
+			double delta = random.nextInt(10) == 0 ? random.nextDouble() * 0.2 - 0.1 : random.nextDouble() * 0.002 - 0.001;
+			values[key] = Math.max(0, Math.min(1, values[key] + delta));
+		}
+	}
+
+	private static String format(double value) {
+		return Math.round(value * 100) + "%";
+	}
+
+	/**
+	 * The same key, drawn from scratch like a program without widgets would
+	 */
+	private static BufferedImage draw(double value) {
+		BufferedImage img = ImageUtilities.createSolidColorImage(Color.DARK_GRAY);
+		ImageUtilities.drawTextOnImage(img, format(value), Color.WHITE);
+		Graphics2D g = img.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(Color.BLACK);
+		g.fillRoundRect(8, 78, 80, 10, 10, 10);
+		g.setColor(Color.GREEN);
+		g.fillRoundRect(8, 78, (int) Math.round(value * 80), 10, 10, 10);
+		g.dispose();
+		return img;
+	}
+
+	private static void report(String name, int ticks, long nanos, long bytes, long keysSent, long linkSpeed) {
+		double ms = nanos / 1e6 / ticks;
+		double transferMs = linkSpeed > 0 ? bytes * 1000.0 / linkSpeed / ticks : 0;
+		String keys = keysSent > 0 ? String.format(", %5.1f keys sent per tick", (double) keysSent / ticks) : "";
+		System.out.println(String.format("%-12s %7.2f ms per tick, %7.2f ms of that is USB transfer%s", name, ms, transferMs, keys));
+	}
+
+}
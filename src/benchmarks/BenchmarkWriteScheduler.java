@@ -0,0 +1,87 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.WritePriority;
+import org.golde.streamdeck.screencast.SyntheticFrameSource;
+
+/**
+ * Measures how long a key press takes to show up on the deck while a animation is running on every key.
+ * The press is sent once with {@link WritePriority#INTERACTIVE}, and once with the same priority as the animation,
+ * which is how every write was handled before there was a scheduler.
+ *
+ * Arguments: [presses] [link bytes per second]
+ * @author Eric Golde
+ *
+ */
+public class BenchmarkWriteScheduler {
+
+	public static void main(String[] args) throws Exception {
+
+		int presses = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+		long linkSpeed = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000;
+
+		NullStreamDeck deck = new NullStreamDeck(linkSpeed);
+
+		//A few different frames, so the animation is not free to send
+		SyntheticFrameSource source = new SyntheticFrameSource(StreamDeckXL.IMG_SIZE, StreamDeckXL.IMG_SIZE);
+		EncodedKeyImage[] frames = new EncodedKeyImage[8];
+		for(int i = 0; i < frames.length; i++) {
+			BufferedImage frame = source.capture();
+			frames[i] = deck.encodeKey(frame);
+		}
+		EncodedKeyImage pressed = deck.encodeKey(source.capture());
+
+		System.out.println("Idle deck:");
+		run(deck, frames, pressed, presses, WritePriority.INTERACTIVE, false);
+
+		System.out.println("Full deck animation:");
+		run(deck, frames, pressed, presses, WritePriority.BACKGROUND, true);
+		run(deck, frames, pressed, presses, WritePriority.INTERACTIVE, true);
+
+		deck.disconnect();
+	}
+
+	private static void run(NullStreamDeck deck, EncodedKeyImage[] frames, EncodedKeyImage pressed, int presses, WritePriority priority, boolean animate) throws InterruptedException {
+		Thread animation = new Thread(() -> {
+			int frame = 0;
+			while(!Thread.currentThread().isInterrupted()) {
+				//Keep a frame queued for every key, like a animation that renders faster than the link can keep up with.
+				//The press goes on the last key, so the animation never replaces it.
+				for(int key = 0; key < StreamDeckXL.NUMBER_OF_KEYS - 1; key++) {
+					deck.submitKey(key, frames[(frame + key) % frames.length], WritePriority.BACKGROUND);
+				}
+				frame++;
+				try {
+					Thread.sleep(5);
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+			}
+		});
+		if(animate) {
+			animation.start();
+			Thread.sleep(200);
+		}
+
+		long total = 0;
+		long max = 0;
+		for(int i = 0; i < presses; i++) {
+			long start = System.nanoTime();
+			deck.setKey(StreamDeckXL.NUMBER_OF_KEYS - 1, pressed, priority);
+			long latency = System.nanoTime() - start;
+			total += latency;
+			max = Math.max(max, latency);
+			Thread.sleep(20);
+		}
+
+		animation.interrupt();
+		animation.join();
+
+		System.out.println(String.format("  %-12s press to visible: avg %6.2f ms, max %6.2f ms", priority, total / 1e6 / presses, max / 1e6));
+	}
+
+}
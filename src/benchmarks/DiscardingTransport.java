@@ -0,0 +1,116 @@
+package benchmarks;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.golde.streamdeck.DeviceProfile;
+import org.golde.streamdeck.DeviceProfile.Protocol;
+import org.golde.streamdeck.transport.HidTransport;
+
+/**
+ * A device that accepts every report and sends them nowhere. Keys are only pressed when {@link #setKeyState(int, boolean)} says so.
+ * @author Eric Golde
+ *
+ */
+public class DiscardingTransport implements HidTransport {
+
+	private final DeviceProfile profile;
+	private final boolean[] keyStates;
+	private final LinkedBlockingQueue<byte[]> inputReports = new LinkedBlockingQueue<byte[]>();
+	private volatile boolean open;
+
+	/**
+	 * A XL
+	 */
+	public DiscardingTransport() {
+		this(DeviceProfile.XL);
+	}
+
+	/**
+	 * @param profile the model, for the layout of the key reports
+	 */
+	public DiscardingTransport(DeviceProfile profile) {
+		this.profile = profile;
+		this.keyStates = new boolean[profile.getNumberOfKeys()];
+	}
+
+	/**
+	 * Press or let go of a key, the same way as {@link org.golde.streamdeck.emulator.VirtualStreamDeck#setKeyState(int, boolean)}
+	 * @param key the key
+	 * @param pressed true if the key is down
+	 */
+	public void setKeyState(int key, boolean pressed) {
+		Protocol protocol = profile.getProtocol();
+		int header = protocol.getInputHeaderLength();
+		byte[] report = new byte[header + keyStates.length];
+		synchronized (this) {
+			keyStates[key] = pressed;
+			report[0] = 0x01;
+			if(protocol == Protocol.GEN2) {
+				report[2] = (byte) keyStates.length;
+			}
+			for(int i = 0; i < keyStates.length; i++) {
+				report[header + profile.toDeviceKey(i)] = (byte) (keyStates[i] ? 1 : 0);
+			}
+		}
+		inputReports.add(report);
+	}
+
+	@Override
+	public boolean open() {
+		open = true;
+		return true;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() {
+		open = false;
+	}
+
+	@Override
+	public int write(byte[] data, int length, byte reportId) {
+		return length + 1;
+	}
+
+	@Override
+	public int read(byte[] data, int timeoutMillis) {
+		if(!open) {
+			return -1;
+		}
+		byte[] report;
+		try {
+			report = inputReports.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 0;
+		}
+		if(report == null) {
+			return 0;
+		}
+		int length = Math.min(report.length, data.length);
+		System.arraycopy(report, 0, data, 0, length);
+		return length;
+	}
+
+	@Override
+	public int getFeatureReport(byte[] data, byte reportId) {
+		return data.length;
+	}
+
+	@Override
+	public int sendFeatureReport(byte[] data, byte reportId) {
+		return data.length + 1;
+	}
+
+	@Override
+	public String getSerialNumber() {
+		return null;
+	}
+
+}
@@ -0,0 +1,243 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.imageio.ImageIO;
+
+import org.golde.streamdeck.DeviceProfile;
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.IStreamDeckListener;
+import org.golde.streamdeck.KeyCanvas;
+import org.golde.streamdeck.KeyCanvasPool;
+import org.golde.streamdeck.KeyEventPublisher;
+import org.golde.streamdeck.StreamDeckKeyState.State;
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.WritePriority;
+import org.golde.streamdeck.WriteScheduler;
+import org.golde.streamdeck.helpers.Gif;
+import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.helpers.TileView;
+
+/**
+ * A stream deck that is not there. Images are encoded like a real deck would, and sending them takes
+ * as long as it would over a link of the given speed, but nothing is actually sent anywhere.
+ * @author Eric Golde
+ *
+ */
+public class NullStreamDeck implements IStreamDeck {
+
+	private final long bytesPerSecond;
+	private final AtomicLong keysSent = new AtomicLong();
+	private final AtomicLongArray keysSentPerKey = new AtomicLongArray(StreamDeckXL.NUMBER_OF_KEYS);
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final CopyOnWriteArrayList<IStreamDeckListener> listeners = new CopyOnWriteArrayList<IStreamDeckListener>();
+	private final KeyEventPublisher keyEvents = new KeyEventPublisher(this);
+	private final WriteScheduler scheduler = new WriteScheduler("NullStreamDeck writer", StreamDeckXL.NUMBER_OF_KEYS, this::writeImage);
+	private final KeyCanvasPool canvases = new KeyCanvasPool(this);
+
+	/**
+	 * @param bytesPerSecond simulated link speed. 0 to send instantly
+	 */
+	public NullStreamDeck(long bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	public long getKeysSent() {
+		return keysSent.get();
+	}
+
+	public long getKeysSent(int key) {
+		return keysSentPerKey.get(key);
+	}
+
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	@Override
+	public boolean connect() {
+		return true;
+	}
+
+	@Override
+	public void disconnect() {
+		scheduler.stop();
+	}
+
+	@Override
+	public String getSerialNumber() {
+		return "NULL";
+	}
+
+	@Override
+	public String getFirmwareVersion() {
+		return "0.0.0";
+	}
+
+	@Override
+	public void setKey(int key, Color color) {
+		setKey(key, color.getRGB());
+	}
+
+	@Override
+	public void setKey(int key, int hexColor) {
+		setKey(key, ImageUtilities.createSolidColorImage(StreamDeckXL.IMG_SIZE, StreamDeckXL.IMG_SIZE, hexColor));
+	}
+
+	@Override
+	public void setKey(int key, String text, Color backgroundColor) {
+		setKey(key, text, backgroundColor, ImageUtilities.getTextColorForBG(backgroundColor));
+	}
+
+	@Override
+	public void setKey(int key, String text, Color backgroundColor, Color textColor) {
+		BufferedImage img = ImageUtilities.createSolidColorImage(StreamDeckXL.IMG_SIZE, StreamDeckXL.IMG_SIZE, backgroundColor);
+		ImageUtilities.drawTextOnImage(img, text, textColor);
+		setKey(key, img);
+	}
+
+	@Override
+	public void setKey(int key, Gif img) {
+		if(img.hasTimeElapsed()) {
+			setKey(key, img.getNextAnimatableFrame());
+		}
+	}
+
+	@Override
+	public void setKey(int key, BufferedImage img) {
+		setKey(key, encodeKey(img));
+	}
+
+	@Override
+	public void setKey(int key, EncodedKeyImage img) {
+		setKey(key, img, WritePriority.NORMAL);
+	}
+
+	@Override
+	public void setKey(int key, EncodedKeyImage img, WritePriority priority) {
+		submitKey(key, img, priority).join();
+	}
+
+	@Override
+	public CompletableFuture<Void> submitKey(int key, EncodedKeyImage img, WritePriority priority) {
+		return scheduler.submit(key, img, priority);
+	}
+
+	@Override
+	public WriteScheduler getWriteScheduler() {
+		return scheduler;
+	}
+
+	private void writeImage(int key, EncodedKeyImage img) {
+		if(bytesPerSecond > 0) {
+			long nanos = img.getLength() * 1_000_000_000L / bytesPerSecond;
+			long end = System.nanoTime() + nanos;
+			while(System.nanoTime() < end) {
+				Thread.yield();
+			}
+		}
+		keysSent.incrementAndGet();
+		keysSentPerKey.incrementAndGet(key);
+		bytesSent.addAndGet(img.getLength());
+	}
+
+	@Override
+	public EncodedKeyImage encodeKey(BufferedImage img) {
+		return encodeKey(TileView.of(img));
+	}
+
+	@Override
+	public void setKey(int key, TileView view) {
+		setKey(key, encodeKey(view));
+	}
+
+	@Override
+	public EncodedKeyImage encodeKey(TileView view) {
+		BufferedImage img = new BufferedImage(view.getWidth(), view.getHeight(), StreamDeckXL.IMG_TYPE);
+		view.copyRotated180To(((DataBufferInt) img.getRaster().getDataBuffer()).getData(), 0, view.getWidth());
+		try {
+			ByteArrayOutputStream bao = new ByteArrayOutputStream();
+			ImageIO.write(img, "jpg", bao);
+			return EncodedKeyImage.of(bao.toByteArray());
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void setKey(int key, byte[] jpeg) {
+		setKey(key, encodeKey(jpeg));
+	}
+
+	@Override
+	public EncodedKeyImage encodeKey(byte[] jpeg) {
+		return StreamDeckXL.encodeKeyImage(jpeg);
+	}
+
+	@Override
+	public DeviceProfile getProfile() {
+		return DeviceProfile.XL;
+	}
+
+	@Override
+	public KeyCanvas acquireCanvas(int key) {
+		return canvases.acquire(key);
+	}
+
+	public KeyCanvasPool getCanvasPool() {
+		return canvases;
+	}
+
+	@Override
+	public void clearKey(int key) {
+		setKey(key, Color.BLACK);
+	}
+
+	@Override
+	public void clearDeck() {
+		for(int i = 0; i < StreamDeckXL.NUMBER_OF_KEYS; i++) {
+			clearKey(i);
+		}
+	}
+
+	@Override
+	public void resetToLogo() {}
+
+	@Override
+	public void setBrightness(int percentage) {}
+
+	@Override
+	public void registerKeyListener(IStreamDeckListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void unRegisterKeyListener(IStreamDeckListener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public void injectKeyState(int key, State state) {
+		long now = System.nanoTime();
+		for(IStreamDeckListener listener : listeners) {
+			listener.keyStateChanged(key, state, state == State.PRESSED ? 1 << key : 0, now);
+		}
+	}
+
+	@Override
+	public KeyEventPublisher getKeyEvents() {
+		return keyEvents;
+	}
+
+}
@@ -1,6 +1,5 @@
 package examples;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 
@@ -8,6 +7,7 @@ import org.golde.streamdeck.IStreamDeck;
 import org.golde.streamdeck.StreamDeckXL;
 import org.golde.streamdeck.helpers.Gif;
 import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.helpers.TileView;
 
 /**
  * Example showcasing gifs on a single and mutiple buttons
@@ -18,6 +18,7 @@ public class ExampleGifSupport extends AbstractExample {
 
 	private Gif singleSquareGif;
 	private Gif multiSquareGif;
+	private TileView[] split;
 	
 	public ExampleGifSupport(IStreamDeck deck) {
 		super(deck);
@@ -44,7 +45,7 @@ public class ExampleGifSupport extends AbstractExample {
 		
 		//Only split the gif up when we know we need to redraw it.
 		if(multiSquareGif.hasTimeElapsed()) {
-			BufferedImage[] split = ImageUtilities.splitImage(multiSquareGif.getNextAnimatableFrame(), 2, 2);
+			split = ImageUtilities.splitImage(multiSquareGif.getNextAnimatableFrame(), 2, 2, split);
 			deck.setKey(22, split[0]);
 			deck.setKey(23, split[1]);
 			deck.setKey(30, split[2]);
@@ -6,6 +6,7 @@ import java.awt.image.BufferedImage;
 import org.golde.streamdeck.IStreamDeck;
 import org.golde.streamdeck.StreamDeckXL;
 import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.helpers.TileView;
 
 /**
  * Example of a image covering the entire stream deck
@@ -39,12 +40,11 @@ public class ExampleImageCoveringDeck extends AbstractExample {
 		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
 		img.setRGB(0, 0, width, height, data, 0, width);
 
-		//split the image
-		BufferedImage[] splitImages = ImageUtilities.splitImage(img, StreamDeckXL.ROWS, StreamDeckXL.COLS);
+		//split the image into views, this doesn't copy any pixels
+		TileView[] splitImages = ImageUtilities.splitImage(img, StreamDeckXL.ROWS, StreamDeckXL.COLS, null);
 		for(int i = 0; i < StreamDeckXL.NUMBER_OF_KEYS; i++) {
 			// Get part of screenshot corresponding to key, and set each key to it
-			BufferedImage image = splitImages[i];
-			deck.setKey(i, image);
+			deck.setKey(i, splitImages[i]);
 		}
 	}
 
@@ -1,14 +1,10 @@
 package examples;
 
 import java.awt.AWTException;
-import java.awt.Rectangle;
-import java.awt.Robot;
-import java.awt.Toolkit;
-import java.awt.image.BufferedImage;
 
 import org.golde.streamdeck.IStreamDeck;
-import org.golde.streamdeck.StreamDeckXL;
-import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.screencast.RobotFrameSource;
+import org.golde.streamdeck.screencast.ScreenCastPipeline;
 
 /**
  * Example to showcase screen capturing and displaying on all the buttons on th streamdeck
@@ -17,27 +13,26 @@ import org.golde.streamdeck.helpers.ImageUtilities;
  */
 public class ExampleScreenCast extends AbstractExample {
 
-	private final Robot robot;
-	
+	private final ScreenCastPipeline pipeline;
+
 	public ExampleScreenCast(IStreamDeck deck) throws AWTException {
 		super(deck);
-		robot = new Robot();
+		pipeline = new ScreenCastPipeline(deck, new RobotFrameSource());
 	}
 
+	@Override
+	protected void start() {
+		pipeline.start();
+	}
 
 	@Override
 	protected void loop() {
-		BufferedImage screenshot = robot.createScreenCapture(new Rectangle(Toolkit.getDefaultToolkit().getScreenSize()));
-		BufferedImage outputImage = ImageUtilities.scaleImage(screenshot, StreamDeckXL.COLS * StreamDeckXL.IMG_SIZE, StreamDeckXL.ROWS * StreamDeckXL.IMG_SIZE);
-
-		BufferedImage[] splitImages = ImageUtilities.splitImage(outputImage, StreamDeckXL.ROWS, StreamDeckXL.COLS);
-		for(int i = 0; i < StreamDeckXL.NUMBER_OF_KEYS; i++)
-		{
-			// Get part of screenshot corresponding to key
-			BufferedImage image = splitImages[i];
-			// Set the key bitmap
-			deck.setKey(i, image);
+		try {
+			Thread.sleep(1000);
 		}
+		catch (InterruptedException e) {}
+
+		System.out.println(pipeline.getStats());
 	}
 
 }
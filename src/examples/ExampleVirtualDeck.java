@@ -0,0 +1,50 @@
+package examples;
+
+import java.awt.Color;
+import java.io.File;
+
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.emulator.VirtualStreamDeck;
+
+/**
+ * Runs the button press example on a emulated deck, presses a few keys and saves what the screen looks like to a PNG.
+ * No hardware needed.
+ *
+ * Arguments: [png file]
+ * @author Eric Golde
+ *
+ */
+public class ExampleVirtualDeck {
+
+	public static void main(String[] args) throws Exception {
+
+		File png = new File(args.length > 0 ? args[0] : "virtual-deck.png");
+
+		VirtualStreamDeck virtual = new VirtualStreamDeck();
+		IStreamDeck deck = new StreamDeckXL(virtual);
+		deck.connect();
+
+		System.out.println("Serial Number: " + deck.getSerialNumber());
+		System.out.println("Firmware Version: " + deck.getFirmwareVersion());
+
+		deck.setBrightness(80);
+		deck.clearDeck();
+		new ExampleDetectButtonPresses(deck).start();
+		deck.setKey(StreamDeckXL.NUMBER_OF_KEYS - 1, "Virtual", Color.BLUE);
+
+		for(int key = 0; key < StreamDeckXL.NUMBER_OF_KEYS; key += 5) {
+			virtual.tap(key);
+		}
+		//Give the listener thread a moment to answer the key presses
+		Thread.sleep(500);
+
+		virtual.snapshot(png);
+		System.out.println("Saved " + png + ": " + virtual.getImagesReceived() + " images in " + virtual.getPacketsReceived() + " packets, "
+				+ virtual.getProtocolErrors() + " protocol errors");
+
+		deck.disconnect();
+		System.exit(0);
+	}
+
+}
@@ -12,6 +12,7 @@ import org.golde.streamdeck.StreamDeckGetter;
  * ExamplePrintStreamDeckInformation - Prints firmware & Serial number
  * ExampleRandomFlashingSquares - Showcases driving mutiple buttons at once individually
  * ExampleScreenCast - "Cast" your PC screen to the stream deck
+ * ExampleVirtualDeck - Runs without hardware on a emulated deck (has its own main)
  * 
  * @author Eric Golde
  *
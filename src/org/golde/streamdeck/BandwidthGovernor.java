@@ -0,0 +1,310 @@
+package org.golde.streamdeck;
+
+/**
+ * Shares the bandwidth of the USB link fairly between keys, so one fast animation can't freeze the others.
+ * Plug it into a deck with {@link WriteScheduler#setGovernor(BandwidthGovernor)}.
+ *
+ * The governor times every image the scheduler writes to work out what the link can really do, and remembers
+ * how big the images of every key are and how often they come in. A few times a second it splits the link
+ * (or the ceiling set with {@link #setCeiling(long)}, if that is lower) between the keys that are sending:
+ * keys that need less than their share get everything they need, and whatever is left is split between the rest
+ * by {@link #setWeight(int, double)}. A key that is over its share has its next frame held back, and if a newer
+ * frame comes in while it waits, the held back one is dropped.
+ *
+ * {@link WritePriority#INTERACTIVE} writes are never held back, but they still count against the key's share.
+ * @author Eric Golde
+ *
+ */
+public class BandwidthGovernor {
+
+	private static final long RECOMPUTE_NANOS = 200_000_000L;
+	private static final long IDLE_NANOS = 1_000_000_000L;
+	//How much of the last measurement is kept when a new one comes in
+	private static final double SMOOTHING = 0.7;
+	//How many seconds of unused bandwidth a key can save up, to send a burst
+	private static final double BURST_SECONDS = 0.25;
+	private static final double HEADROOM = 1.25;
+
+	private final int numberOfKeys;
+	private long ceiling;
+
+	private final double[] weights;
+	private final double[] averageSize;
+	private final double[] requestedFps;
+	private final double[] achievedFps;
+	private final double[] allowedRate;
+	private final double[] tokens;
+	private final long[] lastSubmit;
+	private final int[] submitCount;
+	private final int[] writeCount;
+
+	private double measuredThroughput;
+	private long busyNanos;
+	private long busyBytes;
+	private long windowStart;
+	private long lastRefill;
+
+	/**
+	 * Create a governor that only uses as much bandwidth as the link can do
+	 * @param numberOfKeys number of keys on the deck
+	 */
+	public BandwidthGovernor(int numberOfKeys) {
+		this(numberOfKeys, 0);
+	}
+
+	/**
+	 * Create a governor with a bandwidth ceiling
+	 * @param numberOfKeys number of keys on the deck
+	 * @param ceiling most bytes per second to send, or 0 to use as much as the link can do
+	 */
+	public BandwidthGovernor(int numberOfKeys, long ceiling) {
+		this.numberOfKeys = numberOfKeys;
+		this.weights = new double[numberOfKeys];
+		this.averageSize = new double[numberOfKeys];
+		this.requestedFps = new double[numberOfKeys];
+		this.achievedFps = new double[numberOfKeys];
+		this.allowedRate = new double[numberOfKeys];
+		this.tokens = new double[numberOfKeys];
+		this.lastSubmit = new long[numberOfKeys];
+		this.submitCount = new int[numberOfKeys];
+		this.writeCount = new int[numberOfKeys];
+		for(int key = 0; key < numberOfKeys; key++) {
+			weights[key] = 1;
+			allowedRate[key] = Double.POSITIVE_INFINITY;
+		}
+		setCeiling(ceiling);
+		this.windowStart = System.nanoTime();
+		this.lastRefill = windowStart;
+	}
+
+	/**
+	 * Set the most bytes per second to send. The governor never sends more than the link can do, even if the ceiling is higher.
+	 * @param ceiling bytes per second, or 0 to use as much as the link can do
+	 */
+	public synchronized void setCeiling(long ceiling) {
+		if(ceiling < 0) {
+			throw new IllegalArgumentException("Expected ceiling to be 0 or more");
+		}
+		this.ceiling = ceiling;
+	}
+
+	/**
+	 * @return the most bytes per second to send, or 0 if there is no ceiling
+	 */
+	public synchronized long getCeiling() {
+		return ceiling;
+	}
+
+	/**
+	 * Give a key a bigger or smaller share of the bandwidth. A key with weight 2 gets twice as much as a key with weight 1,
+	 * if both want more than they can get. Every key starts with weight 1.
+	 * @param key the key
+	 * @param weight the weight, more than 0
+	 */
+	public synchronized void setWeight(int key, double weight) {
+		if(weight <= 0) {
+			throw new IllegalArgumentException("Expected weight to be more than 0");
+		}
+		weights[key] = weight;
+	}
+
+	/**
+	 * @param key the key
+	 * @return the weight of the key
+	 */
+	public synchronized double getWeight(int key) {
+		return weights[key];
+	}
+
+	/**
+	 * Get how many frames per second actually made it to a key, over the last few hundred millis
+	 * @param key the key
+	 * @return frames per second
+	 */
+	public synchronized double getAchievedFps(int key) {
+		return achievedFps[key];
+	}
+
+	/**
+	 * Get how many frames per second are being sent to a key, whether they make it or not
+	 * @param key the key
+	 * @return frames per second
+	 */
+	public synchronized double getRequestedFps(int key) {
+		return requestedFps[key];
+	}
+
+	/**
+	 * Get how many frames per second a key is allowed, with the size its images have been
+	 * @param key the key
+	 * @return frames per second, or {@link Double#POSITIVE_INFINITY} if there is no limit yet
+	 */
+	public synchronized double getAllowedFps(int key) {
+		if(averageSize[key] <= 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return allowedRate[key] / averageSize[key];
+	}
+
+	/**
+	 * @param key the key
+	 * @return the average size of the encoded images sent to a key, in bytes
+	 */
+	public synchronized double getAverageImageSize(int key) {
+		return averageSize[key];
+	}
+
+	/**
+	 * Get how fast the link is, measured from how long writes take
+	 * @return bytes per second, or 0 if nothing was written yet
+	 */
+	public synchronized double getMeasuredThroughput() {
+		return measuredThroughput;
+	}
+
+	/**
+	 * @return the bandwidth that is being shared between the keys right now, in bytes per second. 0 if it is not known yet
+	 */
+	public synchronized double getBudget() {
+		if(measuredThroughput <= 0) {
+			return ceiling;
+		}
+		return ceiling > 0 ? Math.min(ceiling, measuredThroughput) : measuredThroughput;
+	}
+
+	///////////////////////// [ Scheduler hooks ] ////////////////////////////////
+
+	/**
+	 * A image was queued for a key
+	 */
+	synchronized void submitted(int key, int bytes, long now) {
+		averageSize[key] = averageSize[key] == 0 ? bytes : averageSize[key] * SMOOTHING + bytes * (1 - SMOOTHING);
+		if(now - lastSubmit[key] > IDLE_NANOS) {
+			//Coming back from idle, start with a full bucket
+			tokens[key] = allowedRate[key] == Double.POSITIVE_INFINITY ? 0 : allowedRate[key] * BURST_SECONDS;
+		}
+		lastSubmit[key] = now;
+		submitCount[key]++;
+	}
+
+	/**
+	 * @return how long a key has to wait before it may send, 0 if it may send now
+	 */
+	synchronized long delayNanos(int key, long now) {
+		update(now);
+		if(tokens[key] >= 0) {
+			return 0;
+		}
+		double rate = allowedRate[key];
+		if(rate == Double.POSITIVE_INFINITY) {
+			return 0;
+		}
+		if(rate <= 0) {
+			return RECOMPUTE_NANOS;
+		}
+		return (long) Math.ceil(-tokens[key] / rate * 1e9);
+	}
+
+	/**
+	 * A image was written to the device
+	 */
+	synchronized void written(int key, int bytes, long start, long end) {
+		update(end);
+		busyNanos += end - start;
+		busyBytes += bytes;
+		writeCount[key]++;
+		if(allowedRate[key] != Double.POSITIVE_INFINITY) {
+			tokens[key] -= bytes;
+		}
+	}
+
+	/**
+	 * Refill the buckets, and split the bandwidth again every now and then
+	 */
+	private void update(long now) {
+		double seconds = (now - lastRefill) / 1e9;
+		if(seconds > 0) {
+			for(int key = 0; key < numberOfKeys; key++) {
+				if(allowedRate[key] != Double.POSITIVE_INFINITY) {
+					tokens[key] = Math.min(tokens[key] + allowedRate[key] * seconds, allowedRate[key] * BURST_SECONDS);
+				}
+			}
+			lastRefill = now;
+		}
+
+		long window = now - windowStart;
+		if(window < RECOMPUTE_NANOS) {
+			return;
+		}
+		double windowSeconds = window / 1e9;
+
+		if(busyNanos > 0) {
+			double throughput = busyBytes / (busyNanos / 1e9);
+			measuredThroughput = measuredThroughput == 0 ? throughput : measuredThroughput * SMOOTHING + throughput * (1 - SMOOTHING);
+		}
+		for(int key = 0; key < numberOfKeys; key++) {
+			requestedFps[key] = requestedFps[key] * SMOOTHING + submitCount[key] / windowSeconds * (1 - SMOOTHING);
+			achievedFps[key] = achievedFps[key] * SMOOTHING + writeCount[key] / windowSeconds * (1 - SMOOTHING);
+			submitCount[key] = 0;
+			writeCount[key] = 0;
+		}
+		busyNanos = 0;
+		busyBytes = 0;
+		windowStart = now;
+
+		share(now);
+	}
+
+	/**
+	 * Split the budget between the active keys. Keys that want less than a even share get what they want,
+	 * and the rest is split again between everyone else, until nobody is left that wants less than their share.
+	 */
+	private void share(long now) {
+		double budget = getBudget();
+		if(budget <= 0) {
+			return;
+		}
+
+		boolean[] open = new boolean[numberOfKeys];
+		double openWeight = 0;
+		for(int key = 0; key < numberOfKeys; key++) {
+			if(now - lastSubmit[key] <= IDLE_NANOS && lastSubmit[key] != 0) {
+				open[key] = true;
+				openWeight += weights[key];
+			}
+			else {
+				//Idle keys are not limited, they get a share as soon as they start sending
+				allowedRate[key] = Double.POSITIVE_INFINITY;
+				tokens[key] = 0;
+			}
+		}
+
+		double remaining = budget;
+		boolean changed = true;
+		while(changed && openWeight > 0) {
+			changed = false;
+			for(int key = 0; key < numberOfKeys; key++) {
+				if(!open[key]) {
+					continue;
+				}
+				//A little more than the key asked for, so it doesn't get held back by a single frame that is bigger than usual
+				double demand = requestedFps[key] * averageSize[key] * HEADROOM;
+				double fairShare = remaining * weights[key] / openWeight;
+				if(demand <= fairShare) {
+					allowedRate[key] = demand;
+					remaining -= demand;
+					openWeight -= weights[key];
+					open[key] = false;
+					changed = true;
+				}
+			}
+		}
+
+		for(int key = 0; key < numberOfKeys; key++) {
+			if(open[key]) {
+				allowedRate[key] = remaining * weights[key] / openWeight;
+			}
+		}
+	}
+
+}
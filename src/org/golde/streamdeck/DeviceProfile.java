@@ -0,0 +1,532 @@
+package org.golde.streamdeck;
+
+import java.awt.geom.AffineTransform;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.golde.streamdeck.helpers.TileView;
+
+/**
+ * Everything that is different between the Stream Deck models: how many keys there are, how big their images are,
+ * which way up the device wants them, in which format, and how the reports are laid out.
+ *
+ * Every profile encodes images in the cheapest way its model accepts. Models that take BMPs don't need a JPEG encoder at all,
+ * the pixels are just copied into the file in the order the device wants them. Models that take JPEGs upside down get the
+ * same fast path the XL always had, and already encoded JPEGs are rotated without being decoded.
+ * @author Eric Golde
+ *
+ */
+public final class DeviceProfile {
+
+	public static final int VENDOR_ID = 0x0fd9;
+
+	/**
+	 * The format the device wants key images in
+	 */
+	public enum ImageFormat {
+		JPEG, BMP
+	}
+
+	/**
+	 * How the reports of a model are laid out. There are two generations: the first Original and the Mini,
+	 * and everything that came after them.
+	 */
+	public enum Protocol {
+
+		/**
+		 * Original (v1) and Mini: 16 byte image headers without a body length, 17 byte feature reports,
+		 * and input reports with only the report ID in front of the keys
+		 */
+		GEN1(16, 1, 17, (byte) 0x04, 4, (byte) 0x03, 4),
+
+		/**
+		 * Original v2, MK.2, XL and Plus: 8 byte image headers, 32 byte feature reports,
+		 * and input reports with a 4 byte header in front of the keys
+		 */
+		GEN2(8, 4, 32, (byte) 0x05, 5, (byte) 0x06, 6);
+
+		public static final byte IMAGE_REPORT_ID = 0x02;
+
+		private final int packetHeaderLength;
+		private final int inputHeaderLength;
+		private final int featureReportLength;
+		private final byte firmwareReportId;
+		private final int firmwareOffset;
+		private final byte serialReportId;
+		private final int serialOffset;
+
+		private Protocol(int packetHeaderLength, int inputHeaderLength, int featureReportLength, byte firmwareReportId, int firmwareOffset, byte serialReportId, int serialOffset) {
+			this.packetHeaderLength = packetHeaderLength;
+			this.inputHeaderLength = inputHeaderLength;
+			this.featureReportLength = featureReportLength;
+			this.firmwareReportId = firmwareReportId;
+			this.firmwareOffset = firmwareOffset;
+			this.serialReportId = serialReportId;
+			this.serialOffset = serialOffset;
+		}
+
+		/**
+		 * @return length of the header in front of every image packet, including the report ID
+		 */
+		public int getPacketHeaderLength() {
+			return packetHeaderLength;
+		}
+
+		/**
+		 * @return length of the header in front of the key states in a input report, including the report ID
+		 */
+		public int getInputHeaderLength() {
+			return inputHeaderLength;
+		}
+
+		/**
+		 * @return length of feature reports, without the report ID
+		 */
+		public int getFeatureReportLength() {
+			return featureReportLength;
+		}
+
+		/**
+		 * @return the feature report to ask for the firmware version
+		 */
+		public byte getFirmwareReportId() {
+			return firmwareReportId;
+		}
+
+		/**
+		 * @return where the firmware version string starts in its feature report
+		 */
+		public int getFirmwareOffset() {
+			return firmwareOffset;
+		}
+
+		/**
+		 * @return the feature report to ask for the serial number
+		 */
+		public byte getSerialReportId() {
+			return serialReportId;
+		}
+
+		/**
+		 * @return where the serial number string starts in its feature report
+		 */
+		public int getSerialOffset() {
+			return serialOffset;
+		}
+
+		/**
+		 * @return the feature report that sets the brightness
+		 */
+		public byte getBrightnessReportId() {
+			return this == GEN1 ? (byte) 0x05 : (byte) 0x03;
+		}
+
+		/**
+		 * @param percentage 0-100
+		 * @return the data of the feature report that sets the brightness
+		 */
+		public byte[] createBrightnessCommand(int percentage) {
+			byte[] cmd = new byte[featureReportLength];
+			if(this == GEN1) {
+				cmd[0] = 0x55;
+				cmd[1] = (byte) 0xaa;
+				cmd[2] = (byte) 0xd1;
+				cmd[3] = 0x01;
+				cmd[4] = (byte) percentage;
+			}
+			else {
+				cmd[0] = 0x08;
+				cmd[1] = (byte) percentage;
+			}
+			return cmd;
+		}
+
+		/**
+		 * @return the feature report that shows the logo
+		 */
+		public byte getResetReportId() {
+			return this == GEN1 ? (byte) 0x0b : (byte) 0x03;
+		}
+
+		/**
+		 * @return the data of the feature report that shows the logo
+		 */
+		public byte[] createResetCommand() {
+			byte[] cmd = new byte[featureReportLength];
+			cmd[0] = this == GEN1 ? (byte) 0x63 : (byte) 0x02;
+			return cmd;
+		}
+
+		/**
+		 * Create the image command header
+		 * @param buffer buffer to write data to, starting with the report ID
+		 * @param deviceKey the key index, the way the device counts keys
+		 * @param page the page index, the way the device counts pages
+		 * @param isLast is this the last one
+		 * @param bodyLength length of the body
+		 */
+		public void writeImageHeader(ByteBuffer buffer, int deviceKey, int page, boolean isLast, int bodyLength) {
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.put(IMAGE_REPORT_ID);
+			if(this == GEN1) {
+				buffer.put((byte) 0x01);
+				buffer.put((byte) page);
+				buffer.put((byte) 0);
+				buffer.put((byte) (isLast ? 1 : 0));
+				buffer.put((byte) (deviceKey + 1));
+				buffer.put(new byte[packetHeaderLength - 6]);
+			}
+			else {
+				buffer.put((byte) 0x07);
+				buffer.put((byte) deviceKey);
+				buffer.put((byte) (isLast ? 1 : 0));
+				buffer.putShort((short) bodyLength);
+				buffer.putShort((short) page);
+			}
+		}
+
+	}
+
+	/**
+	 * The first Stream Deck, with 15 keys
+	 */
+	public static final DeviceProfile ORIGINAL = new DeviceProfile("Stream Deck Original", new int[] {0x0060}, 3, 5, 72, ImageFormat.BMP, 0, true, true, true, Protocol.GEN1, 8191, 1);
+
+	/**
+	 * The second version of the Stream Deck with 15 keys, which takes JPEGs
+	 */
+	public static final DeviceProfile ORIGINAL_V2 = new DeviceProfile("Stream Deck Original v2", new int[] {0x006d}, 3, 5, 72, ImageFormat.JPEG, 0, true, true, false, Protocol.GEN2, 1024, 0);
+
+	/**
+	 * The Stream Deck MK.2, with 15 keys
+	 */
+	public static final DeviceProfile MK2 = new DeviceProfile("Stream Deck MK.2", new int[] {0x0080}, 3, 5, 72, ImageFormat.JPEG, 0, true, true, false, Protocol.GEN2, 1024, 0);
+
+	/**
+	 * The Stream Deck Mini, with 6 keys
+	 */
+	public static final DeviceProfile MINI = new DeviceProfile("Stream Deck Mini", new int[] {0x0063, 0x0090}, 2, 3, 80, ImageFormat.BMP, 90, false, true, false, Protocol.GEN1, 1024, 0);
+
+	/**
+	 * The Stream Deck XL, with 32 keys
+	 */
+	public static final DeviceProfile XL = new DeviceProfile("Stream Deck XL", new int[] {0x006c, 0x008f}, 4, 8, 96, ImageFormat.JPEG, 0, true, true, false, Protocol.GEN2, 1024, 0);
+
+	/**
+	 * The Stream Deck +, with 8 keys. Only the keys are supported, not the dials or the touch strip.
+	 */
+	public static final DeviceProfile PLUS = new DeviceProfile("Stream Deck +", new int[] {0x0084}, 2, 4, 120, ImageFormat.JPEG, 0, false, false, false, Protocol.GEN2, 1024, 0);
+
+	private static final List<DeviceProfile> VALUES = Collections.unmodifiableList(Arrays.asList(ORIGINAL, ORIGINAL_V2, MK2, MINI, XL, PLUS));
+
+	private final String name;
+	private final int[] productIds;
+	private final int rows;
+	private final int cols;
+	private final int keySize;
+	private final ImageFormat imageFormat;
+	private final int rotation;
+	private final boolean flipHorizontal;
+	private final boolean flipVertical;
+	private final boolean mirroredKeys;
+	private final Protocol protocol;
+	private final int packetSize;
+	private final int firstPage;
+
+	//For every pixel of the image the device gets, in the order it is sent, where it comes from in the original image
+	private final int[] rasterMap;
+
+	private DeviceProfile(String name, int[] productIds, int rows, int cols, int keySize, ImageFormat imageFormat, int rotation,
+			boolean flipHorizontal, boolean flipVertical, boolean mirroredKeys, Protocol protocol, int packetSize, int firstPage) {
+		this.name = name;
+		this.productIds = productIds;
+		this.rows = rows;
+		this.cols = cols;
+		this.keySize = keySize;
+		this.imageFormat = imageFormat;
+		this.rotation = rotation;
+		this.flipHorizontal = flipHorizontal;
+		this.flipVertical = flipVertical;
+		this.mirroredKeys = mirroredKeys;
+		this.protocol = protocol;
+		this.packetSize = packetSize;
+		this.firstPage = firstPage;
+		this.rasterMap = createRasterMap();
+	}
+
+	/**
+	 * Find the profile of a model by its USB product ID
+	 * @param productId the product ID
+	 * @return the profile, or null if the model is not supported
+	 */
+	public static DeviceProfile forProductId(int productId) {
+		for(DeviceProfile profile : VALUES) {
+			for(int id : profile.productIds) {
+				if(id == productId) {
+					return profile;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return every supported model
+	 */
+	public static List<DeviceProfile> values() {
+		return VALUES;
+	}
+
+	/**
+	 * Rotate and encode a image into the format this model expects. Images that are not the size of a key are scaled first.
+	 * Safe to call from many threads at once.
+	 * @param view the image to encode
+	 * @return the encoded image
+	 */
+	public EncodedKeyImage encode(TileView view) {
+		return KeyImageEncoder.encode(this, view);
+	}
+
+	/**
+	 * Turn a JPEG file into the format this model expects. Baseline JPEGs the size of a key are rotated without being decoded
+	 * on models that take JPEGs, anything else is decoded, scaled and encoded.
+	 * @param jpeg the JPEG file
+	 * @return the encoded image
+	 */
+	public EncodedKeyImage encode(byte[] jpeg) {
+		return KeyImageEncoder.encode(this, jpeg);
+	}
+
+	/**
+	 * Convert a key index to the index the device uses for it. The first Original counts its keys from the right.
+	 * @param key the key, counting from the top left
+	 * @return the key as the device counts it
+	 */
+	public int toDeviceKey(int key) {
+		if(!mirroredKeys) {
+			return key;
+		}
+		int col = key % cols;
+		return key - col + (cols - 1 - col);
+	}
+
+	/**
+	 * Convert a key index the device uses to one counting from the top left
+	 * @param deviceKey the key as the device counts it
+	 * @return the key, counting from the top left
+	 */
+	public int fromDeviceKey(int deviceKey) {
+		//Mirroring twice gets you back where you started
+		return toDeviceKey(deviceKey);
+	}
+
+	/**
+	 * Get where every pixel of a image that is sent to the device comes from. Index i of the array is the i-th pixel in the order
+	 * the device gets them, the value is the index of the pixel in the original image, counting rows from the top.
+	 * @return a new array of {@link #getKeySize()} * {@link #getKeySize()} indices
+	 */
+	public int[] getRasterMap() {
+		return rasterMap.clone();
+	}
+
+	/**
+	 * Get the transform that puts a key image the way the device wants it. Drawing with this transform on a {@link java.awt.Graphics2D}
+	 * draws straight into the pixel layout the device expects, like {@link KeyCanvas} does. BMP models store the rows from the bottom up,
+	 * that is left to the encoder and is not part of the transform.
+	 * @return a new transform, from key coordinates to device coordinates
+	 */
+	public AffineTransform getDeviceTransform() {
+		double[] origin = toDevice(0, 0);
+		double[] right = toDevice(1, 0);
+		double[] down = toDevice(0, 1);
+		return new AffineTransform(right[0] - origin[0], right[1] - origin[1], down[0] - origin[0], down[1] - origin[1], origin[0], origin[1]);
+	}
+
+	/**
+	 * @return true if the device wants images rotated by 180 degrees, and nothing else
+	 */
+	public boolean isRotated180() {
+		return (rotation == 180 && !flipHorizontal && !flipVertical) || (rotation == 0 && flipHorizontal && flipVertical);
+	}
+
+	/**
+	 * @return true if the device wants images the way they are
+	 */
+	public boolean isUpright() {
+		return rotation == 0 && !flipHorizontal && !flipVertical;
+	}
+
+	/**
+	 * @return the name of the model
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the USB product IDs of the model
+	 */
+	public int[] getProductIds() {
+		return productIds.clone();
+	}
+
+	/**
+	 * @return number of rows of keys
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return number of columns of keys
+	 */
+	public int getCols() {
+		return cols;
+	}
+
+	/**
+	 * @return number of keys
+	 */
+	public int getNumberOfKeys() {
+		return rows * cols;
+	}
+
+	/**
+	 * @return width and height of a key image, in pixels
+	 */
+	public int getKeySize() {
+		return keySize;
+	}
+
+	/**
+	 * @return the format the device wants key images in
+	 */
+	public ImageFormat getImageFormat() {
+		return imageFormat;
+	}
+
+	/**
+	 * @return how many degrees counter clockwise images are turned before they are sent, before they are flipped
+	 */
+	public int getRotation() {
+		return rotation;
+	}
+
+	/**
+	 * @return true if images are flipped left to right before they are sent
+	 */
+	public boolean isFlippedHorizontally() {
+		return flipHorizontal;
+	}
+
+	/**
+	 * @return true if images are flipped top to bottom before they are sent
+	 */
+	public boolean isFlippedVertically() {
+		return flipVertical;
+	}
+
+	/**
+	 * @return how the reports are laid out
+	 */
+	public Protocol getProtocol() {
+		return protocol;
+	}
+
+	/**
+	 * @return size of a image packet, including the header and the report ID
+	 */
+	public int getPacketSize() {
+		return packetSize;
+	}
+
+	/**
+	 * @return the index the device uses for the first packet of a image
+	 */
+	public int getFirstPage() {
+		return firstPage;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	/**
+	 * @return the raster map, without copying it
+	 */
+	int[] rasterMap() {
+		return rasterMap;
+	}
+
+	/**
+	 * Where a point of the key image ends up on the device, the reverse of {@link #createRasterMap()} with pixel edges instead of pixels
+	 */
+	private double[] toDevice(double sx, double sy) {
+		int s = keySize;
+		double fx;
+		double fy;
+		switch(rotation) {
+		case 90:
+			fx = sy;
+			fy = s - sx;
+			break;
+		case 180:
+			fx = s - sx;
+			fy = s - sy;
+			break;
+		case 270:
+			fx = s - sy;
+			fy = sx;
+			break;
+		default:
+			fx = sx;
+			fy = sy;
+		}
+		return new double[] {flipHorizontal ? s - fx : fx, flipVertical ? s - fy : fy};
+	}
+
+	/**
+	 * Work out where every pixel comes from, by undoing the flips and the rotation.
+	 * BMPs are stored from the bottom row up, so for BMP models the rows are reversed too.
+	 */
+	private int[] createRasterMap() {
+		int s = keySize;
+		int[] map = new int[s * s];
+		for(int y = 0; y < s; y++) {
+			//BMP rows go from the bottom up
+			int row = imageFormat == ImageFormat.BMP ? s - 1 - y : y;
+			for(int x = 0; x < s; x++) {
+				int fx = flipHorizontal ? s - 1 - x : x;
+				int fy = flipVertical ? s - 1 - row : row;
+				int sx;
+				int sy;
+				switch(rotation) {
+				case 90:
+					sx = s - 1 - fy;
+					sy = fx;
+					break;
+				case 180:
+					sx = s - 1 - fx;
+					sy = s - 1 - fy;
+					break;
+				case 270:
+					sx = fy;
+					sy = s - 1 - fx;
+					break;
+				default:
+					sx = fx;
+					sy = fy;
+				}
+				map[y * s + x] = sy * s + sx;
+			}
+		}
+		return map;
+	}
+
+}
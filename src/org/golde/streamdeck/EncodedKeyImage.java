@@ -0,0 +1,65 @@
+package org.golde.streamdeck;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A key image that has already been rotated and encoded into the format the device expects.
+ * Encoding is the expensive part of setting a key, so holding onto one of these lets you send the same image
+ * again (or to another key) without paying for it twice.
+ * @author Eric Golde
+ *
+ */
+public final class EncodedKeyImage {
+
+	private final ByteBuffer data;
+
+	private EncodedKeyImage(ByteBuffer data) {
+		this.data = data;
+	}
+
+	/**
+	 * Wrap already encoded image bytes. The array is not copied, so don't modify it afterwards.
+	 * @param data encoded image bytes
+	 * @return a EncodedKeyImage
+	 */
+	public static EncodedKeyImage of(byte[] data) {
+		return new EncodedKeyImage(ByteBuffer.wrap(data).asReadOnlyBuffer());
+	}
+
+	/**
+	 * Wrap already encoded image bytes. Everything between the position and the limit of the buffer is used.
+	 * The buffer is not copied, so don't modify it afterwards.
+	 * @param data encoded image bytes
+	 * @return a EncodedKeyImage
+	 */
+	public static EncodedKeyImage of(ByteBuffer data) {
+		return new EncodedKeyImage(data.slice().asReadOnlyBuffer());
+	}
+
+	/**
+	 * Get the encoded image data
+	 * @return a new read only view of the encoded bytes, positioned at the start
+	 */
+	public ByteBuffer getData() {
+		return data.duplicate();
+	}
+
+	/**
+	 * Get the length of the encoded image
+	 * @return length in bytes
+	 */
+	public int getLength() {
+		return data.remaining();
+	}
+
+	/**
+	 * Copy the encoded image into a new byte array
+	 * @return the encoded bytes
+	 */
+	public byte[] toByteArray() {
+		byte[] arr = new byte[data.remaining()];
+		data.duplicate().get(arr);
+		return arr;
+	}
+
+}
@@ -0,0 +1,174 @@
+package org.golde.streamdeck;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.helpers.TileView;
+import org.golde.streamdeck.transport.HidrawDevice;
+import org.hid4java.HidManager;
+
+/**
+ * Gets a program that uses a deck to its first key quicker. Most of the time before the first key shows up goes into
+ * starting Java2D, scanning the ImageIO plugins for a JPEG writer, loading fonts, and loading JNA and hidapi to find the deck.
+ * None of that depends on the rest, so {@link #start()} does each of them on its own background thread, while the program
+ * gets on with starting up. Call it first thing in main.
+ *
+ * {@link #warmUp(DeviceProfile)} runs the encoder over and over so it is compiled before the first real key, and {@link #main(String[])}
+ * does all of it once, as a training run for a class data sharing archive or the GraalVM tracing agent. See the README.
+ * @author Eric Golde
+ *
+ */
+public final class FastStart {
+
+	private static final List<Thread> threads = new ArrayList<Thread>();
+	private static CountDownLatch done;
+
+	private FastStart() {}
+
+	/**
+	 * Switch to headless AWT, unless java.awt.headless was set already, and start the slow parts of the library on background threads.
+	 * Only the first call does anything. Headless AWT can't capture the screen, so don't use this with a
+	 * {@link org.golde.streamdeck.screencast.RobotFrameSource}, or start Java with -Djava.awt.headless=false.
+	 */
+	public static synchronized void start() {
+		if(done != null) {
+			return;
+		}
+		if(System.getProperty("java.awt.headless") == null) {
+			System.setProperty("java.awt.headless", "true");
+		}
+
+		done = new CountDownLatch(3);
+		background("encoder", () -> {
+			//Finds the JPEG writer, which scans every ImageIO plugin on the class path, and starts the Java2D loops
+			BufferedImage black = ImageUtilities.createSolidColorImage(DeviceProfile.XL.getKeySize(), DeviceProfile.XL.getKeySize(), Color.BLACK);
+			DeviceProfile.XL.encode(TileView.of(black));
+		});
+		background("fonts", () -> {
+			BufferedImage img = new BufferedImage(72, 72, BufferedImage.TYPE_INT_RGB);
+			ImageUtilities.drawTextOnImage(img, "A", Color.WHITE);
+		});
+		background("hid", () -> {
+			//On Linux the decks can be found without hid4java, see findFirstDeck()
+			if(HidrawDevice.isSupported()) {
+				HidrawDevice.findAll();
+			}
+			else {
+				HidManager.getHidServices().getAttachedHidDevices();
+			}
+		});
+	}
+
+	/**
+	 * Wait for the background work of {@link #start()} to finish. Nothing has to wait for it, the library just waits for whatever
+	 * it needs on its own, this is for measuring.
+	 * @param timeoutMillis most time to wait
+	 * @return true if everything finished
+	 */
+	public static boolean await(long timeoutMillis) {
+		CountDownLatch done;
+		synchronized (FastStart.class) {
+			done = FastStart.done;
+		}
+		if(done == null) {
+			return false;
+		}
+		try {
+			return done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Find the first deck the quickest way there is. On Linux it looks in /sys/class/hidraw, which needs neither JNA nor hidapi
+	 * or a scan of the USB bus, and falls back to hid4java if nothing is found there.
+	 * @return the first deck, or null if there is none
+	 */
+	public static IStreamDeck findFirstDeck() {
+		if(HidrawDevice.isSupported()) {
+			IStreamDeck[] decks = StreamDeckGetter.getAllHidrawStreamDecks();
+			if(decks.length > 0) {
+				return decks[0];
+			}
+		}
+		return StreamDeckGetter.getFirstDeck();
+	}
+
+	/**
+	 * Encode a few hundred keys the way a deck of this model does, so the hot code is compiled before the first real key.
+	 * Takes up to a second of CPU time, so only do it if the program has time to spare before the first key. Nothing is sent.
+	 * @param profile the model
+	 */
+	public static void warmUp(DeviceProfile profile) {
+		warmUp(profile, 300);
+	}
+
+	/**
+	 * Encode keys the way a deck of this model does, so the hot code is compiled before the first real key. Nothing is sent.
+	 * @param profile the model
+	 * @param rounds how many keys to encode
+	 */
+	public static void warmUp(DeviceProfile profile, int rounds) {
+		int size = profile.getKeySize();
+		BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		byte[] jpeg = null;
+		for(int i = 0; i < rounds; i++) {
+			img.setRGB(i % size, i / size % size, Color.HSBtoRGB(i / (float) rounds, 1, 1));
+			EncodedKeyImage encoded = profile.encode(TileView.of(img));
+			if(jpeg == null && profile.getImageFormat() == DeviceProfile.ImageFormat.JPEG) {
+				jpeg = encoded.toByteArray();
+			}
+			if(jpeg != null) {
+				//The lossless rotation of JPEGs that come in ready made
+				profile.encode(jpeg);
+			}
+		}
+		ImageUtilities.drawTextOnImage(img, "Warm", Color.WHITE);
+		profile.encode(TileView.of(img));
+	}
+
+	/**
+	 * A training run: starts everything, and warms up every model. Run it with -XX:ArchiveClassesAtExit=streamdeck.jsa to make
+	 * a class data sharing archive, then start the real program with -XX:SharedArchiveFile=streamdeck.jsa.
+	 * Also what to run the GraalVM native-image tracing agent on, to add to the metadata in META-INF/native-image.
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		long start = System.nanoTime();
+		start();
+		await(TimeUnit.MINUTES.toMillis(1));
+		for(DeviceProfile profile : DeviceProfile.values()) {
+			warmUp(profile, 50);
+		}
+		System.out.println(String.format("Started and warmed up in %.0f ms", (System.nanoTime() - start) / 1e6));
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private static void background(String name, Runnable task) {
+		Thread thread = new Thread(() -> {
+			try {
+				task.run();
+			}
+			catch (RuntimeException | LinkageError e) {
+				//Whatever failed here fails again where it is really used, and is reported there
+			}
+			finally {
+				done.countDown();
+			}
+		});
+		thread.setName("StreamDeck fast start " + name);
+		thread.setDaemon(true);
+		threads.add(thread);
+		thread.start();
+	}
+
+}
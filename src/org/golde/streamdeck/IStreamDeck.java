@@ -2,9 +2,11 @@ package org.golde.streamdeck;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
 
 import org.golde.streamdeck.helpers.Gif;
 import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.helpers.TileView;
 
 public interface IStreamDeck {
 
@@ -63,7 +65,7 @@ public interface IStreamDeck {
 	public void setKey(int key, String text, Color backgroundColor, Color textColor);
 	
 	/**
-	 * Set the gif to a buffered image. GIF must be the size defined in the constant {@value StreamDeckXL#IMG_SIZE}
+	 * Set the gif to a buffered image. GIF should be the size of a key, see {@link DeviceProfile#getKeySize()}
 	 * You can use {@value Gif#resize(int, int) to resize the gif if needed}
 	 * You MUST call this function often to have the GIF animate properly.
 	 * @param key key to change
@@ -72,12 +74,99 @@ public interface IStreamDeck {
 	public void setKey(int key, Gif img);
 	
 	/**
-	 * Set the key to a buffered image. Image must be the size defined in the constant {@value StreamDeckXL#IMG_SIZE}
+	 * Set the key to a buffered image. Image should be the size of a key, see {@link DeviceProfile#getKeySize()}
 	 * @param key key to change
 	 * @param img the buffered image
 	 */
 	public void setKey(int key, BufferedImage img);
-	
+
+	/**
+	 * Set the key to a image that was already encoded with {@link #encodeKey(BufferedImage)}
+	 * @param key key to change
+	 * @param img the encoded image
+	 */
+	public void setKey(int key, EncodedKeyImage img);
+
+	/**
+	 * Set the key to a image that was already encoded, with a priority. More urgent images are sent first, see {@link WriteScheduler}.
+	 * Blocks until the image is on the device, or until a newer image for the same key replaced it.
+	 * @param key key to change
+	 * @param img the encoded image
+	 * @param priority how urgent the image is
+	 */
+	public void setKey(int key, EncodedKeyImage img, WritePriority priority);
+
+	/**
+	 * Queue a image that was already encoded for a key, and return right away. More urgent images are sent first, see {@link WriteScheduler}.
+	 * @param key key to change
+	 * @param img the encoded image
+	 * @param priority how urgent the image is
+	 * @return a future that completes once the image is on the device, or once a newer image for the same key replaced it
+	 */
+	public CompletableFuture<Void> submitKey(int key, EncodedKeyImage img, WritePriority priority);
+
+	/**
+	 * Get the scheduler that sends key images to the device, for example to plug in a {@link BandwidthGovernor}
+	 * @return the write scheduler
+	 */
+	public WriteScheduler getWriteScheduler();
+
+	/**
+	 * Rotate and encode a image into the format the device expects, without sending it.
+	 * This does not talk to the device, so it is safe to call from many threads at once.
+	 * Image should be the size of a key, see {@link DeviceProfile#getKeySize()}
+	 * @param img the buffered image
+	 * @return the encoded image, ready to be passed to {@link #setKey(int, EncodedKeyImage)}
+	 */
+	public EncodedKeyImage encodeKey(BufferedImage img);
+
+	/**
+	 * Set the key to part of a bigger image. The pixels are read straight out of the view, without making a copy first.
+	 * View should be the size of a key, see {@link DeviceProfile#getKeySize()}
+	 * @param key key to change
+	 * @param view the part of the image to show
+	 */
+	public void setKey(int key, TileView view);
+
+	/**
+	 * Rotate and encode part of a bigger image into the format the device expects, without sending it.
+	 * This does not talk to the device, so it is safe to call from many threads at once.
+	 * View should be the size of a key, see {@link DeviceProfile#getKeySize()}
+	 * @param view the part of the image to encode
+	 * @return the encoded image, ready to be passed to {@link #setKey(int, EncodedKeyImage)}
+	 */
+	public EncodedKeyImage encodeKey(TileView view);
+
+	/**
+	 * Set the key to a JPEG file. If the JPEG is a baseline JPEG the size of a key ({@link DeviceProfile#getKeySize()}),
+	 * it is rotated without being decoded, so it does not lose any quality and costs a lot less CPU.
+	 * Any other JPEG is decoded, scaled and encoded like a normal image.
+	 * @param key key to change
+	 * @param jpeg the JPEG file
+	 */
+	public void setKey(int key, byte[] jpeg);
+
+	/**
+	 * Rotate a JPEG file into the format the device expects, without sending it. See {@link #setKey(int, byte[])}
+	 * @param jpeg the JPEG file
+	 * @return the encoded image, ready to be passed to {@link #setKey(int, EncodedKeyImage)}
+	 */
+	public EncodedKeyImage encodeKey(byte[] jpeg);
+
+	/**
+	 * Get a black canvas to draw a key on. The canvas draws straight into the pixels the encoder reads, already turned the way the device wants them,
+	 * and goes back to the deck once it is committed, so updating keys this way does not create any images. See {@link KeyCanvas}
+	 * @param key the key to draw
+	 * @return the canvas
+	 */
+	public KeyCanvas acquireCanvas(int key);
+
+	/**
+	 * Get the model of the device: how many keys it has, how big they are and what format it wants images in
+	 * @return the device profile
+	 */
+	public DeviceProfile getProfile();
+
 	/**
 	 * Clear a specific key
 	 * @param key the key id
@@ -112,5 +201,19 @@ public interface IStreamDeck {
 	 * @param listener the listener to unregister
 	 */
     public void unRegisterKeyListener(IStreamDeckListener listener);
+
+    /**
+	 * Get the key presses of the deck as a {@link java.util.concurrent.Flow.Publisher}, with a buffer per subscriber
+	 * so a slow subscriber doesn't hold up the deck
+	 * @return the publisher, always the same one
+	 */
+    public KeyEventPublisher getKeyEvents();
+
+    /**
+	 * Tell the listeners a key changed, like it was pressed on the deck. For remote control and tests.
+	 * @param key the key
+	 * @param state the new state
+	 */
+    public void injectKeyState(int key, StreamDeckKeyState.State state);
 	
 }
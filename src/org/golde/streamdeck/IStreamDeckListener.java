@@ -10,4 +10,16 @@ public interface IStreamDeckListener {
 	 * @param state state, wither PRESSED or RELEASED
 	 */
     public void keyStateChanged(int key, State state);
+
+	/**
+	 * Called whenever a key state is changed, with the state of every key and when it happened.
+	 * Calls {@link #keyStateChanged(int, State)} unless it is overridden.
+	 * @param key key that changed
+	 * @param state state, wither PRESSED or RELEASED
+	 * @param mask every key that is down, one bit per key
+	 * @param nanoTime {@link System#nanoTime()} when the key changed
+	 */
+    public default void keyStateChanged(int key, State state, int mask, long nanoTime) {
+    	keyStateChanged(key, state);
+    }
 }
@@ -0,0 +1,184 @@
+package org.golde.streamdeck;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import org.golde.streamdeck.helpers.ImageUtilities;
+
+/**
+ * A key image to draw on, that goes straight to the encoder. The graphics already has the rotation the device wants in its transform,
+ * so what is drawn lands in the pixels in the order the device wants them, and {@link #commit()} encodes them without copying them first.
+ * Canvases come from {@link IStreamDeck#acquireCanvas(int)} and go back to the deck once they are committed or released,
+ * so a loop that updates keys this way does not create any images.
+ * <pre>
+ * KeyCanvas canvas = deck.acquireCanvas(0);
+ * canvas.fill(Color.RED);
+ * canvas.drawText("Hello", Color.WHITE);
+ * canvas.commit();
+ * </pre>
+ * Rectangles, images and text come out exactly the way they would on a BufferedImage. Lines and curves drawn without antialiasing
+ * can land a pixel over, since Java2D rounds them differently when they are turned around. Turn on antialiasing and
+ * {@link RenderingHints#VALUE_STROKE_PURE} if that matters.
+ *
+ * A canvas belongs to one thread until it is committed, and must not be used afterwards.
+ * @author Eric Golde
+ *
+ */
+public final class KeyCanvas {
+
+	private final KeyCanvasPool pool;
+	private final DeviceProfile profile;
+	private final int size;
+
+	private final BufferedImage image;
+	//Blue, green, red. The JPEG writer takes these as they are, and they are already what a BMP file has in it
+	private final byte[] pixels;
+	private final Graphics2D g;
+	private final AffineTransform deviceTransform;
+	private final Font font;
+	private final Stroke stroke;
+	private final RenderingHints hints;
+
+	private int key = -1;
+
+	KeyCanvas(KeyCanvasPool pool, DeviceProfile profile) {
+		this.pool = pool;
+		this.profile = profile;
+		this.size = profile.getKeySize();
+		this.image = new BufferedImage(size, size, BufferedImage.TYPE_3BYTE_BGR);
+		this.pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		this.g = image.createGraphics();
+		this.deviceTransform = profile.getDeviceTransform();
+		this.font = g.getFont();
+		this.stroke = g.getStroke();
+		this.hints = (RenderingHints) g.getRenderingHints().clone();
+	}
+
+	/**
+	 * Get the graphics to draw on the key with. 0,0 is the top left of the key as you look at it, the rotation is taken care of.
+	 * Changing the transform is fine, but build on top of it with translate, scale or rotate instead of replacing it with setTransform.
+	 * @return the graphics, don't dispose it
+	 */
+	public Graphics2D getGraphics() {
+		checkInUse();
+		return g;
+	}
+
+	/**
+	 * Fill the whole key with a color
+	 * @param color the color
+	 */
+	public void fill(Color color) {
+		checkInUse();
+		//Every pixel, no matter which way the key is turned. One pixel, then keep doubling it.
+		int rgb = color.getRGB();
+		pixels[0] = (byte) rgb;
+		pixels[1] = (byte) (rgb >> 8);
+		pixels[2] = (byte) (rgb >> 16);
+		for(int filled = 3; filled < pixels.length; filled *= 2) {
+			System.arraycopy(pixels, 0, pixels, filled, Math.min(filled, pixels.length - filled));
+		}
+	}
+
+	/**
+	 * Write text in the middle of the key, the same way as {@link IStreamDeck#setKey(int, String, Color, Color)}
+	 * @param text text to write
+	 * @param color color of the text
+	 */
+	public void drawText(String text, Color color) {
+		checkInUse();
+		ImageUtilities.drawText(g, size, size, text, color);
+	}
+
+	/**
+	 * @return the key the canvas is for
+	 */
+	public int getKey() {
+		return key;
+	}
+
+	/**
+	 * @return width and height of the key in pixels
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Encode the canvas and send it with {@link WritePriority#NORMAL}. See {@link #commit(WritePriority)}
+	 * @return a future that completes once the image is on the device, or once a newer image for the same key replaced it
+	 */
+	public CompletableFuture<Void> commit() {
+		return commit(WritePriority.NORMAL);
+	}
+
+	/**
+	 * Encode the canvas on this thread, give it back to the deck, and queue the image for the key.
+	 * The canvas can't be used after this.
+	 * @param priority how urgent the image is
+	 * @return a future that completes once the image is on the device, or once a newer image for the same key replaced it
+	 */
+	public CompletableFuture<Void> commit(WritePriority priority) {
+		checkInUse();
+		int key = this.key;
+		EncodedKeyImage img = KeyImageEncoder.encodeDeviceOrder(profile, image);
+		release();
+		return pool.getDeck().submitKey(key, img, priority);
+	}
+
+	/**
+	 * Encode the canvas and give it back to the deck without sending it, for example to keep the image for later
+	 * @return the encoded image
+	 */
+	public EncodedKeyImage encode() {
+		checkInUse();
+		EncodedKeyImage img = KeyImageEncoder.encodeDeviceOrder(profile, image);
+		release();
+		return img;
+	}
+
+	/**
+	 * Give the canvas back to the deck without sending anything. Does nothing if it was already given back.
+	 */
+	public void release() {
+		if(key != -1) {
+			key = -1;
+			pool.release(this);
+		}
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	/**
+	 * Get the canvas ready for a key: black, with the graphics set back to how it started
+	 */
+	void reset(int key) {
+		this.key = key;
+		Arrays.fill(pixels, (byte) 0);
+		g.setTransform(deviceTransform);
+		g.setClip(null);
+		g.setComposite(AlphaComposite.SrcOver);
+		g.setPaintMode();
+		g.setColor(Color.WHITE);
+		g.setBackground(Color.BLACK);
+		g.setFont(font);
+		g.setStroke(stroke);
+		g.setRenderingHints(hints);
+	}
+
+	private void checkInUse() {
+		if(key == -1) {
+			throw new IllegalStateException("Canvas was already committed or released");
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package org.golde.streamdeck;
+
+import java.util.ArrayDeque;
+
+/**
+ * Hands out {@link KeyCanvas}es for a deck, and takes them back once they are committed. A new canvas is only created when
+ * every canvas is in use, so there are never more than the most keys that were drawn at the same time.
+ * Decks have one of these behind {@link IStreamDeck#acquireCanvas(int)}.
+ * @author Eric Golde
+ *
+ */
+public class KeyCanvasPool {
+
+	private final IStreamDeck deck;
+	private final DeviceProfile profile;
+	private final ArrayDeque<KeyCanvas> idle = new ArrayDeque<KeyCanvas>();
+	private int created;
+
+	/**
+	 * Create a pool for a deck
+	 * @param deck the deck the canvases are sent to
+	 */
+	public KeyCanvasPool(IStreamDeck deck) {
+		this.deck = deck;
+		this.profile = deck.getProfile();
+	}
+
+	/**
+	 * Get a black canvas for a key. See {@link IStreamDeck#acquireCanvas(int)}
+	 * @param key the key
+	 * @return the canvas
+	 */
+	public KeyCanvas acquire(int key) {
+		if(key < 0 || key >= profile.getNumberOfKeys()) {
+			throw new IllegalArgumentException("Key " + key + " is not on a " + profile.getName());
+		}
+
+		KeyCanvas canvas;
+		synchronized (this) {
+			canvas = idle.pollLast();
+			if(canvas == null) {
+				created++;
+			}
+		}
+		if(canvas == null) {
+			canvas = new KeyCanvas(this, profile);
+		}
+		canvas.reset(key);
+		return canvas;
+	}
+
+	/**
+	 * @return how many canvases were ever created
+	 */
+	public synchronized int getCreated() {
+		return created;
+	}
+
+	/**
+	 * @return how many canvases are waiting to be used
+	 */
+	public synchronized int getIdle() {
+		return idle.size();
+	}
+
+	/**
+	 * @return the deck the canvases are sent to
+	 */
+	public IStreamDeck getDeck() {
+		return deck;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	synchronized void release(KeyCanvas canvas) {
+		//Last in first out, so the canvas that was just used, and is still in the CPU cache, is used again next
+		idle.addLast(canvas);
+	}
+
+}
@@ -0,0 +1,96 @@
+package org.golde.streamdeck;
+
+import org.golde.streamdeck.StreamDeckKeyState.State;
+
+/**
+ * A key that was pressed or released, as published by a {@link KeyEventPublisher}.
+ * Events are immutable, and one event is shared by every subscriber.
+ * @author Eric Golde
+ *
+ */
+public final class KeyEvent {
+
+	private final IStreamDeck deck;
+	private final long nanoTime;
+	private final int key;
+	private final State state;
+	private final int mask;
+
+	/**
+	 * Create a key event
+	 * @param deck the deck the key is on
+	 * @param nanoTime {@link System#nanoTime()} when the report was read from the deck
+	 * @param key the key that changed
+	 * @param state the new state of the key
+	 * @param mask every key that is down, one bit per key
+	 */
+	public KeyEvent(IStreamDeck deck, long nanoTime, int key, State state, int mask) {
+		this.deck = deck;
+		this.nanoTime = nanoTime;
+		this.key = key;
+		this.state = state;
+		this.mask = mask;
+	}
+
+	/**
+	 * @return the deck the key is on
+	 */
+	public IStreamDeck getDeck() {
+		return deck;
+	}
+
+	/**
+	 * @return {@link System#nanoTime()} when the report was read from the deck
+	 */
+	public long getNanoTime() {
+		return nanoTime;
+	}
+
+	/**
+	 * @return the key that changed
+	 */
+	public int getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the new state of the key
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return true if the key was pressed, false if it was released
+	 */
+	public boolean isPressed() {
+		return state == State.PRESSED;
+	}
+
+	/**
+	 * Get every key that is down on the deck, right after this event. Bit 0 is key 0.
+	 * Only the first 32 keys fit, which is every key of every model.
+	 * @return the state of every key
+	 */
+	public int getMask() {
+		return mask;
+	}
+
+	/**
+	 * Check if a key is down on the deck, right after this event
+	 * @param key the key
+	 * @return true if the key is down
+	 */
+	public boolean isDown(int key) {
+		return key >= 0 && key < 32 && (mask & (1 << key)) != 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "KeyEvent[key=" + key + ", state=" + state + ", mask=" + Integer.toBinaryString(mask) + ", nanoTime=" + nanoTime + "]";
+	}
+
+}
@@ -0,0 +1,407 @@
+package org.golde.streamdeck;
+
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.golde.streamdeck.StreamDeckKeyState.State;
+
+/**
+ * Publishes the key presses of one or more decks as a {@link Flow.Publisher}. Get the publisher of a single deck with
+ * {@link IStreamDeck#getKeyEvents()}, or merge several decks with {@link #merge(IStreamDeck...)}.
+ *
+ * Every subscriber has its own buffer and its own delivery thread, so a slow subscriber never holds up the thread that
+ * reads the deck, or the other subscribers. What happens when a subscriber falls behind is picked with a {@link OverflowStrategy}.
+ * A event is created once, and the same event is put in the buffer of every subscriber, so having more subscribers
+ * doesn't allocate anything more per event.
+ *
+ * The decks are only listened to while something is subscribed.
+ * @author Eric Golde
+ *
+ */
+public class KeyEventPublisher implements Flow.Publisher<KeyEvent> {
+
+	private static final int DEFAULT_CAPACITY = 64;
+	private static final KeySubscription[] NONE = new KeySubscription[0];
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	private final Source[] sources;
+	//Copied on every change, so publishing doesn't have to lock or allocate a iterator
+	private volatile KeySubscription[] subscriptions = NONE;
+	private boolean listening = false;
+	private boolean closed = false;
+
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Create a publisher for the key presses of some decks
+	 * @param decks the decks to listen to
+	 */
+	public KeyEventPublisher(IStreamDeck... decks) {
+		this.sources = new Source[decks.length];
+		for(int i = 0; i < decks.length; i++) {
+			sources[i] = new Source(decks[i]);
+		}
+	}
+
+	/**
+	 * Merge the key presses of several decks into one stream. Use {@link KeyEvent#getDeck()} to tell them apart.
+	 * @param decks the decks
+	 * @return the publisher
+	 */
+	public static KeyEventPublisher merge(IStreamDeck... decks) {
+		return new KeyEventPublisher(decks);
+	}
+
+	/**
+	 * Subscribe, keeping every event if the subscriber falls behind
+	 * @param subscriber the subscriber
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super KeyEvent> subscriber) {
+		subscribe(subscriber, OverflowStrategy.BUFFER);
+	}
+
+	/**
+	 * Subscribe, with a buffer of {@value #DEFAULT_CAPACITY} events
+	 * @param subscriber the subscriber
+	 * @param strategy what to do with events when the subscriber falls behind
+	 */
+	public void subscribe(Flow.Subscriber<? super KeyEvent> subscriber, OverflowStrategy strategy) {
+		subscribe(subscriber, strategy, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Subscribe
+	 * @param subscriber the subscriber
+	 * @param strategy what to do with events when the subscriber falls behind
+	 * @param capacity how many events to hold for the subscriber before the strategy kicks in. With {@link OverflowStrategy#BUFFER} this is only where the buffer starts
+	 */
+	public void subscribe(Flow.Subscriber<? super KeyEvent> subscriber, OverflowStrategy strategy, int capacity) {
+		if(subscriber == null || strategy == null) {
+			throw new NullPointerException();
+		}
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("Expected capacity to be more than 0");
+		}
+
+		KeySubscription subscription = new KeySubscription(subscriber, strategy, capacity);
+		boolean wasClosed;
+		synchronized (this) {
+			wasClosed = closed;
+		}
+		subscriber.onSubscribe(subscription);
+		if(wasClosed) {
+			subscription.complete();
+			subscription.run();
+			return;
+		}
+
+		synchronized (this) {
+			if(closed) {
+				subscription.complete();
+			}
+			else {
+				KeySubscription[] now = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+				now[now.length - 1] = subscription;
+				subscriptions = now;
+				if(!listening) {
+					listening = true;
+					for(Source source : sources) {
+						source.deck.registerKeyListener(source);
+					}
+				}
+			}
+		}
+
+		Thread thread = new Thread(subscription);
+		thread.setName("StreamDeck key events #" + threadCount.incrementAndGet());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Send a event to every subscriber. Events from the decks are published for you, this is for events that come from
+	 * somewhere else, like a emulator or a test.
+	 * @param event the event
+	 */
+	public void publish(KeyEvent event) {
+		KeySubscription[] subs = subscriptions;
+		for(int i = 0; i < subs.length; i++) {
+			subs[i].offer(event);
+		}
+		published.incrementAndGet();
+	}
+
+	/**
+	 * Stop listening to the decks, and complete every subscriber once it has received the events it is still waiting for
+	 */
+	public void close() {
+		KeySubscription[] subs;
+		synchronized (this) {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			subs = subscriptions;
+			subscriptions = NONE;
+			stopListening();
+		}
+		for(KeySubscription sub : subs) {
+			sub.complete();
+		}
+	}
+
+	/**
+	 * @return true if {@link #close()} was called
+	 */
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return number of subscribers
+	 */
+	public int getSubscriberCount() {
+		return subscriptions.length;
+	}
+
+	/**
+	 * @return number of events published
+	 */
+	public long getPublishedEvents() {
+		return published.get();
+	}
+
+	/**
+	 * @return number of events a subscriber never got because it fell behind, added up over every subscriber
+	 */
+	public long getDroppedEvents() {
+		return dropped.get();
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private synchronized void remove(KeySubscription subscription) {
+		KeySubscription[] subs = subscriptions;
+		for(int i = 0; i < subs.length; i++) {
+			if(subs[i] == subscription) {
+				KeySubscription[] now = new KeySubscription[subs.length - 1];
+				System.arraycopy(subs, 0, now, 0, i);
+				System.arraycopy(subs, i + 1, now, i, subs.length - i - 1);
+				subscriptions = now;
+				if(now.length == 0) {
+					stopListening();
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock
+	 */
+	private void stopListening() {
+		if(listening) {
+			listening = false;
+			for(Source source : sources) {
+				source.deck.unRegisterKeyListener(source);
+			}
+		}
+	}
+
+	/**
+	 * Listens to one deck and turns what it hears into events
+	 */
+	private class Source implements IStreamDeckListener {
+
+		private final IStreamDeck deck;
+		//Only used by decks that don't pass the mask along
+		private int mask;
+
+		Source(IStreamDeck deck) {
+			this.deck = deck;
+		}
+
+		@Override
+		public void keyStateChanged(int key, State state) {
+			if(key < 32) {
+				mask = state == State.PRESSED ? mask | (1 << key) : mask & ~(1 << key);
+			}
+			keyStateChanged(key, state, mask, System.nanoTime());
+		}
+
+		@Override
+		public void keyStateChanged(int key, State state, int mask, long nanoTime) {
+			this.mask = mask;
+			if(subscriptions.length > 0) {
+				publish(new KeyEvent(deck, nanoTime, key, state, mask));
+			}
+		}
+
+	}
+
+	/**
+	 * The buffer of one subscriber, and the thread that empties it as fast as the subscriber asks for events
+	 */
+	private class KeySubscription implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super KeyEvent> subscriber;
+		private final OverflowStrategy strategy;
+
+		private KeyEvent[] buffer;
+		private int head = 0;
+		private int size = 0;
+		private long demand = 0;
+		private boolean done = false;
+		private boolean cancelled = false;
+		private boolean waiting = false;
+		private Throwable error;
+
+		KeySubscription(Flow.Subscriber<? super KeyEvent> subscriber, OverflowStrategy strategy, int capacity) {
+			this.subscriber = subscriber;
+			this.strategy = strategy;
+			this.buffer = new KeyEvent[capacity];
+		}
+
+		@Override
+		public void request(long n) {
+			synchronized (this) {
+				if(n <= 0) {
+					error = new IllegalArgumentException("Expected to request more than 0 events, got " + n);
+				}
+				else {
+					demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+				}
+				notify();
+			}
+		}
+
+		@Override
+		public void cancel() {
+			synchronized (this) {
+				if(cancelled) {
+					return;
+				}
+				cancelled = true;
+				Arrays.fill(buffer, null);
+				size = 0;
+				notify();
+			}
+			remove(this);
+		}
+
+		synchronized void complete() {
+			done = true;
+			notify();
+		}
+
+		synchronized void offer(KeyEvent event) {
+			if(cancelled || done) {
+				return;
+			}
+
+			if(strategy == OverflowStrategy.COALESCE) {
+				for(int i = 0; i < size; i++) {
+					int index = (head + i) % buffer.length;
+					KeyEvent waiting = buffer[index];
+					if(waiting.getKey() == event.getKey() && waiting.getDeck() == event.getDeck()) {
+						buffer[index] = event;
+						dropped.incrementAndGet();
+						return;
+					}
+				}
+			}
+
+			if(size == buffer.length) {
+				if(strategy == OverflowStrategy.BUFFER) {
+					KeyEvent[] bigger = new KeyEvent[buffer.length * 2];
+					for(int i = 0; i < size; i++) {
+						bigger[i] = buffer[(head + i) % buffer.length];
+					}
+					buffer = bigger;
+					head = 0;
+				}
+				else {
+					buffer[head] = null;
+					head = (head + 1) % buffer.length;
+					size--;
+					dropped.incrementAndGet();
+				}
+			}
+
+			buffer[(head + size) % buffer.length] = event;
+			size++;
+			if(waiting && demand > 0) {
+				notify();
+			}
+		}
+
+		/**
+		 * Hand events to the subscriber, one at a time, until it cancels or the publisher is closed
+		 */
+		@Override
+		public void run() {
+			while(true) {
+				KeyEvent event = null;
+				Throwable failed = null;
+				synchronized (this) {
+					try {
+						while(!cancelled && error == null && (size == 0 || demand == 0) && !(done && size == 0)) {
+							waiting = true;
+							wait();
+							waiting = false;
+						}
+					}
+					catch(InterruptedException e) {
+						return;
+					}
+					if(cancelled) {
+						return;
+					}
+					if(error != null) {
+						failed = error;
+					}
+					else if(size > 0 && demand > 0) {
+						event = buffer[head];
+						buffer[head] = null;
+						head = (head + 1) % buffer.length;
+						size--;
+						if(demand != Long.MAX_VALUE) {
+							demand--;
+						}
+					}
+					if(event == null) {
+						//Finished, either with a error or because the publisher was closed
+						cancelled = true;
+					}
+				}
+
+				if(event == null) {
+					remove(this);
+					if(failed != null) {
+						subscriber.onError(failed);
+					}
+					else {
+						subscriber.onComplete();
+					}
+					return;
+				}
+
+				try {
+					subscriber.onNext(event);
+				}
+				catch(Throwable t) {
+					//Subscribers are not allowed to throw, so treat it like they cancelled
+					t.printStackTrace();
+					cancel();
+					return;
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,298 @@
+package org.golde.streamdeck;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+import org.golde.streamdeck.DeviceProfile.ImageFormat;
+import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.helpers.JpegRotator;
+import org.golde.streamdeck.helpers.TileView;
+
+/**
+ * Turns key images into the format a {@link DeviceProfile} wants. Every thread gets its own, so the JPEG writer
+ * and the pixel buffers are reused instead of created for every key.
+ * @author Eric Golde
+ *
+ */
+final class KeyImageEncoder {
+
+	private static final ThreadLocal<KeyImageEncoder> ENCODER = ThreadLocal.withInitial(KeyImageEncoder::new);
+
+	private static final int BMP_HEADER_LENGTH = 54;
+	//72 DPI, what the Elgato software puts in its BMPs
+	private static final int BMP_PIXELS_PER_METER = 2835;
+
+	//Only looked up once the first JPEG is encoded, finding it scans every ImageIO plugin and models that take BMPs never need it
+	private ImageWriter jpgWriter;
+	private JPEGImageWriteParam jpegParams;
+
+	//Where the JPEG writer writes to, reused for every key
+	private byte[] jpegBuffer = new byte[16 * 1024];
+
+	private BufferedImage target;
+	private int[] targetPixels;
+	private int[] source = new int[0];
+
+	private KeyImageEncoder() {}
+
+	static EncodedKeyImage encode(DeviceProfile profile, TileView view) {
+		int size = profile.getKeySize();
+		if(view.getWidth() != size || view.getHeight() != size) {
+			BufferedImage copy = new BufferedImage(view.getWidth(), view.getHeight(), BufferedImage.TYPE_INT_RGB);
+			view.copyTo(((DataBufferInt) copy.getRaster().getDataBuffer()).getData(), 0, view.getWidth());
+			view = TileView.of(ImageUtilities.scaleImage(copy, size, size));
+		}
+
+		KeyImageEncoder encoder = ENCODER.get();
+		return profile.getImageFormat() == ImageFormat.BMP ? encoder.encodeBmp(profile, view) : encoder.encodeJpeg(profile, view);
+	}
+
+	static EncodedKeyImage encode(DeviceProfile profile, byte[] jpeg) {
+		int size = profile.getKeySize();
+		if(profile.getImageFormat() == ImageFormat.JPEG) {
+			int[] jpegSize = JpegRotator.getSize(jpeg);
+			if(jpegSize != null && jpegSize[0] == size && jpegSize[1] == size) {
+				if(profile.isUpright()) {
+					return EncodedKeyImage.of(jpeg);
+				}
+				if(profile.isRotated180()) {
+					byte[] rotated = JpegRotator.rotate180(jpeg);
+					if(rotated != null) {
+						return EncodedKeyImage.of(rotated);
+					}
+				}
+			}
+		}
+
+		//Progressive, the wrong size, a BMP model, or something else we can't rotate without decoding it
+		BufferedImage img;
+		try {
+			img = ImageIO.read(new ByteArrayInputStream(jpeg));
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("Failed to read JPEG", e);
+		}
+		if(img == null) {
+			throw new IllegalArgumentException("Not a JPEG");
+		}
+		if(img.getWidth() != size || img.getHeight() != size) {
+			img = ImageUtilities.scaleImage(img, size, size);
+		}
+		return encode(profile, TileView.of(img));
+	}
+
+	/**
+	 * Encode a key size TYPE_3BYTE_BGR image whose pixels are already the way the device wants them, like a {@link KeyCanvas}.
+	 * Nothing is copied first: the JPEG writer takes BGR bytes as they are, and a BMP is the same rows from the bottom up.
+	 */
+	static EncodedKeyImage encodeDeviceOrder(DeviceProfile profile, BufferedImage img) {
+		if(profile.getImageFormat() == ImageFormat.JPEG) {
+			return ENCODER.get().writeJpeg(img);
+		}
+
+		int size = profile.getKeySize();
+		byte[] pixels = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+		byte[] bmp = createBmp(size);
+		int rowLength = (size * 3 + 3) & ~3;
+		for(int y = 0; y < size; y++) {
+			//BMP rows go from the bottom up
+			System.arraycopy(pixels, (size - 1 - y) * size * 3, bmp, BMP_HEADER_LENGTH + y * rowLength, size * 3);
+		}
+		return EncodedKeyImage.of(bmp);
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private EncodedKeyImage encodeJpeg(DeviceProfile profile, TileView view) {
+		int size = profile.getKeySize();
+		if(target == null || target.getWidth() != size) {
+			target = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+			targetPixels = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+		}
+
+		//Put the pixels the way the device wants them. This is the only time the pixels get copied.
+		if(profile.isRotated180()) {
+			view.copyRotated180To(targetPixels, 0, size);
+		}
+		else if(profile.isUpright()) {
+			view.copyTo(targetPixels, 0, size);
+		}
+		else {
+			int[] src = copySource(view);
+			int[] map = profile.rasterMap();
+			for(int i = 0; i < map.length; i++) {
+				targetPixels[i] = src[map[i]];
+			}
+		}
+
+		return writeJpeg(target);
+	}
+
+	private EncodedKeyImage writeJpeg(BufferedImage img) {
+		if(jpgWriter == null) {
+			jpgWriter = ImageIO.getImageWritersByFormatName("jpg").next();
+			jpegParams = new JPEGImageWriteParam(null);
+			//Make the JPEG we output have 100% quality. Its 70% by default using ImageIO
+			jpegParams.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			jpegParams.setCompressionQuality(1f);
+		}
+
+		BufferOutput out = new BufferOutput(jpegBuffer);
+		jpgWriter.setOutput(out);
+
+		try {
+			jpgWriter.write(null, new IIOImage(img, null, null), jpegParams);
+			out.close();
+		} catch (IOException e1) {
+			e1.printStackTrace();
+		}
+
+		//Keep the buffer if it had to grow, so the next key fits in it right away
+		jpegBuffer = out.data;
+		return EncodedKeyImage.of(Arrays.copyOf(out.data, out.length));
+	}
+
+	/**
+	 * A BMP is just a header and the pixels, so there is nothing to compress. The pixels are read in the order the device
+	 * wants them, straight into the file.
+	 */
+	private EncodedKeyImage encodeBmp(DeviceProfile profile, TileView view) {
+		int size = profile.getKeySize();
+		int rowLength = (size * 3 + 3) & ~3;
+		byte[] bmp = createBmp(size);
+
+		int[] src = copySource(view);
+		int[] map = profile.rasterMap();
+		int i = 0;
+		for(int y = 0; y < size; y++) {
+			int out = BMP_HEADER_LENGTH + y * rowLength;
+			for(int x = 0; x < size; x++) {
+				int rgb = src[map[i++]];
+				bmp[out++] = (byte) rgb;
+				bmp[out++] = (byte) (rgb >> 8);
+				bmp[out++] = (byte) (rgb >> 16);
+			}
+		}
+
+		return EncodedKeyImage.of(bmp);
+	}
+
+	/**
+	 * @return a BMP file with the headers filled in, and room for the pixels
+	 */
+	private static byte[] createBmp(int size) {
+		int rowLength = (size * 3 + 3) & ~3;
+		int imageLength = rowLength * size;
+		byte[] bmp = new byte[BMP_HEADER_LENGTH + imageLength];
+
+		//File header
+		bmp[0] = 'B';
+		bmp[1] = 'M';
+		putInt(bmp, 2, bmp.length);
+		putInt(bmp, 10, BMP_HEADER_LENGTH);
+		//Info header, a positive height means the rows are stored from the bottom up
+		putInt(bmp, 14, 40);
+		putInt(bmp, 18, size);
+		putInt(bmp, 22, size);
+		bmp[26] = 1;
+		bmp[28] = 24;
+		putInt(bmp, 34, imageLength);
+		putInt(bmp, 38, BMP_PIXELS_PER_METER);
+		putInt(bmp, 42, BMP_PIXELS_PER_METER);
+		return bmp;
+	}
+
+	private int[] copySource(TileView view) {
+		int length = view.getWidth() * view.getHeight();
+		if(source.length < length) {
+			source = new int[length];
+		}
+		view.copyTo(source, 0, view.getWidth());
+		return source;
+	}
+
+	private static void putInt(byte[] data, int offset, int value) {
+		data[offset] = (byte) value;
+		data[offset + 1] = (byte) (value >> 8);
+		data[offset + 2] = (byte) (value >> 16);
+		data[offset + 3] = (byte) (value >> 24);
+	}
+
+	/**
+	 * A image output stream that writes into a array. ImageIO's MemoryCacheImageOutputStream copies everything into blocks first,
+	 * and the ByteArrayOutputStream behind it grows a few times for every key.
+	 */
+	private static class BufferOutput extends ImageOutputStreamImpl {
+
+		private byte[] data;
+		private int length;
+
+		BufferOutput(byte[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			flushBits();
+			ensureCapacity(streamPos + 1);
+			data[(int) streamPos++] = (byte) b;
+			length = Math.max(length, (int) streamPos);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			flushBits();
+			ensureCapacity(streamPos + len);
+			System.arraycopy(b, off, data, (int) streamPos, len);
+			streamPos += len;
+			length = Math.max(length, (int) streamPos);
+		}
+
+		@Override
+		public int read() throws IOException {
+			checkClosed();
+			bitOffset = 0;
+			if(streamPos >= length) {
+				return -1;
+			}
+			return data[(int) streamPos++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			checkClosed();
+			bitOffset = 0;
+			if(streamPos >= length) {
+				return -1;
+			}
+			len = Math.min(len, length - (int) streamPos);
+			System.arraycopy(data, (int) streamPos, b, off, len);
+			streamPos += len;
+			return len;
+		}
+
+		@Override
+		public long length() {
+			return length;
+		}
+
+		private void ensureCapacity(long needed) {
+			if(needed > data.length) {
+				data = Arrays.copyOf(data, (int) Math.max(needed, data.length * 2L));
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,26 @@
+package org.golde.streamdeck;
+
+/**
+ * What a {@link KeyEventPublisher} does with events that come in faster than a subscriber asks for them.
+ * @author Eric Golde
+ *
+ */
+public enum OverflowStrategy {
+
+	/**
+	 * Keep every event, no matter how far behind the subscriber is. The buffer grows when it is full.
+	 */
+	BUFFER,
+
+	/**
+	 * Keep the newest events. Once the buffer is full, the oldest event is thrown away to make room.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Keep only the latest state of every key. A event that is still waiting is replaced by a newer event for the same key,
+	 * so a subscriber that falls behind sees where every key ended up, but can miss a quick press and release.
+	 */
+	COALESCE;
+
+}
@@ -0,0 +1,556 @@
+package org.golde.streamdeck;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.golde.streamdeck.StreamDeckKeyState.State;
+import org.golde.streamdeck.helpers.ByteArray;
+import org.golde.streamdeck.helpers.Gif;
+import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.helpers.TileView;
+import org.golde.streamdeck.transport.HidTransport;
+
+/**
+ * Implementation of every Stream Deck model. What is different between the models is described by a {@link DeviceProfile}.
+ * @author Eric Golde
+ *
+ */
+public class StreamDeck implements IStreamDeck {
+
+	private final DeviceProfile profile;
+	private final HidTransport device;
+
+	private ArrayList<IStreamDeckListener> listeners = new ArrayList<IStreamDeckListener>();
+	private volatile Thread keyListenTask = null;
+
+	private final WriteScheduler scheduler;
+	private boolean isListening = false;
+	private final KeyEventPublisher keyEvents = new KeyEventPublisher(this);
+	private final KeyCanvasPool canvases;
+	//Guarded by listeners. What the deck says is down, and what was injected with injectKeyState
+	private int deviceMask = 0;
+	private int injectedMask = 0;
+
+	/**
+	 * Creates a stream deck that talks to the device through a transport.
+	 * Please use {@value StreamDeckGetter#getFirstDeck()} {@value StreamDeckGetter#getAllConnectedStreamDecks()} or {@value StreamDeckGetter#getBySerialNumber(String)} to find real devices
+	 * @param profile the model of the device
+	 * @param transport the HID connection
+	 */
+	public StreamDeck(DeviceProfile profile, HidTransport transport) {
+		this.profile = profile;
+		this.device = transport;
+		this.scheduler = new WriteScheduler("StreamDeck writer", profile.getNumberOfKeys(), this::writeImage);
+		this.canvases = new KeyCanvasPool(this);
+	}
+
+	/**
+	 * Connects to the StremaDeck
+	 * @return Did we successfully connect to it?
+	 */
+	@Override
+	public boolean connect() {
+
+		if(!device.isOpen()) {
+			return device.open();
+		}
+
+		return device.isOpen();
+	}
+
+	/**
+	 * Disconnect from the stream deck
+	 */
+	@Override
+	public void disconnect() {
+		scheduler.stop();
+		device.close();
+	}
+
+	/**
+	 * Get the firware version number of the device, from the device its self
+	 * @return the firmware version number
+	 */
+	@Override
+	public String getFirmwareVersion() {
+		ByteArray data = this.getFeatureReport(profile.getProtocol().getFirmwareReportId());
+		data.slice(profile.getProtocol().getFirmwareOffset());
+		int end = data.indexOf((byte) 0);
+		if(end != -1) {
+			data.section(0, end);
+		}
+		return data.toStringObj();
+	}
+
+	/**
+	 * Get the serial number of the device, from the device its self
+	 * @return the serial number
+	 */
+	@Override
+	public String getSerialNumber() {
+		ByteArray data = this.getFeatureReport(profile.getProtocol().getSerialReportId());
+		data.slice(profile.getProtocol().getSerialOffset());
+		int end = data.indexOf((byte) 0);
+		if(end != -1) {
+			data.section(0, end);
+		}
+		return data.toStringObj();
+	}
+
+	/**
+	 * Show the stream deck logo on screen
+	 */
+	@Override
+	public void resetToLogo() {
+		this.sendFeatureReport(profile.getProtocol().getResetReportId(), ByteArray.of(profile.getProtocol().createResetCommand()));
+	}
+
+	/**
+	 * Set the brightness of the display
+	 * @param percentage 0-100
+	 */
+	@Override
+	public void setBrightness(int percentage) {
+
+		if (percentage < 0 || percentage > 100) {
+			throw new IndexOutOfBoundsException("Expected brightness percentage to be between 0 and 100");
+		}
+
+		this.sendFeatureReport(profile.getProtocol().getBrightnessReportId(), ByteArray.of(profile.getProtocol().createBrightnessCommand(percentage)));
+	}
+	
+	/**
+	 * Clear the entire stream deck.
+	 * Shortcut for doing a for loop over all keys, and calling clearKey(key)
+	 */
+	@Override
+	public void clearDeck() {
+		for(int i = 0; i < profile.getNumberOfKeys(); i++) {
+			clearKey(i);
+		}
+	}
+
+	/**
+	 * Clear a specific key
+	 * @param key the key id
+	 */
+	@Override
+	public void clearKey(int key) {
+		checkKey(key);
+		setKey(key, Color.BLACK);
+	}
+
+	/**
+	 * Fill a key with a specific color
+	 * @param key key to change
+	 * @param color Color to fill the screen
+	 */
+	@Override
+	public void setKey(int key, Color color) {
+		checkKey(key);
+		this.setKey(key, color.getRGB());
+	}
+
+	/**
+	 * Fill a key with a specific color
+	 * @param key key to change
+	 * @param hexColor Color to fill the screen
+	 */
+	@Override
+	public void setKey(int key, int hexColor) {
+		checkKey(key);
+		this.setKey(key, ImageUtilities.createSolidColorImage(profile.getKeySize(), profile.getKeySize(), hexColor));
+	}
+	
+	/**
+	 * Write text on a specific key. Font size is automatically handled. The text color is defined by {@value ImageUtilities#getTextColorForBG(Color)}
+	 * @param key key to change
+	 * @param text text to write on the key
+	 * @param backgroundColor background color
+	 */
+	@Override
+	public void setKey(int key, String text, Color backgroundColor) {
+		checkKey(key);
+		this.setKey(key, text, backgroundColor, ImageUtilities.getTextColorForBG(backgroundColor));
+	}
+	
+	/**
+	 * Write text on a specific key. Font size is automatically handled.
+	 * @param key key to change
+	 * @param text text to write on the key
+	 * @param backgroundColor background color
+	 * @param textColor text color
+	 */
+	@Override
+	public void setKey(int key, String text, Color backgroundColor, Color textColor) {
+		checkKey(key);
+		BufferedImage img = ImageUtilities.createSolidColorImage(profile.getKeySize(), profile.getKeySize(), backgroundColor);
+		ImageUtilities.drawTextOnImage(img, text, textColor);
+		this.setKey(key, img);
+	}
+	
+	/**
+	 * Set the gif to a buffered image. GIF should be the size of a key, see {@link DeviceProfile#getKeySize()}
+	 * You can use {@value Gif#resize(int, int) to resize the gif if needed}
+	 * You MUST call this function often to have the GIF animate properly.
+	 * @param key key to change
+	 * @param img the buffered image
+	 */
+	@Override
+	public void setKey(int key, Gif img) {
+		
+		//Check if time has elapsed. No need to send the same image to the deck twice
+		//Unsure if this is needed tbh.
+		if(img.hasTimeElapsed()) {
+			this.setKey(key, img.getNextAnimatableFrame());
+		}
+	}
+
+	/**
+	 * Set the key to a buffered image. Image should be the size of a key, see {@link DeviceProfile#getKeySize()}. Other sizes are scaled.
+	 * @param key key to change
+	 * @param img the buffered image
+	 */
+	@Override
+	public void setKey(int key, BufferedImage img) {
+		checkKey(key);
+		this.setKey(key, encodeKey(img));
+	}
+
+	/**
+	 * Set the key to a image that was already encoded with {@link #encodeKey(BufferedImage)}
+	 * @param key key to change
+	 * @param img the encoded image
+	 */
+	@Override
+	public void setKey(int key, EncodedKeyImage img) {
+		//Feedback from inside a key listener should not wait behind animations
+		setKey(key, img, Thread.currentThread() == keyListenTask ? WritePriority.INTERACTIVE : WritePriority.NORMAL);
+	}
+
+	/**
+	 * Set the key to a image that was already encoded, with a priority. More urgent images are sent first, see {@link WriteScheduler}.
+	 * Blocks until the image is on the device, or until a newer image for the same key replaced it.
+	 * @param key key to change
+	 * @param img the encoded image
+	 * @param priority how urgent the image is
+	 */
+	@Override
+	public void setKey(int key, EncodedKeyImage img, WritePriority priority) {
+		submitKey(key, img, priority).join();
+	}
+
+	/**
+	 * Queue a image that was already encoded for a key, and return right away. More urgent images are sent first, see {@link WriteScheduler}.
+	 * @param key key to change
+	 * @param img the encoded image
+	 * @param priority how urgent the image is
+	 * @return a future that completes once the image is on the device, or once a newer image for the same key replaced it
+	 */
+	@Override
+	public CompletableFuture<Void> submitKey(int key, EncodedKeyImage img, WritePriority priority) {
+		checkKey(key);
+		return scheduler.submit(key, img, priority);
+	}
+
+	/**
+	 * Get the scheduler that sends key images to the device, for example to plug in a {@link BandwidthGovernor}
+	 * @return the write scheduler
+	 */
+	@Override
+	public WriteScheduler getWriteScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Encode a image into the format the device expects, without sending it.
+	 * This does not talk to the device, so it is safe to call from many threads at once.
+	 * Image should be the size of a key, see {@link DeviceProfile#getKeySize()}. Other sizes are scaled.
+	 * @param img the buffered image
+	 * @return the encoded image, ready to be passed to {@link #setKey(int, EncodedKeyImage)}
+	 */
+	@Override
+	public EncodedKeyImage encodeKey(BufferedImage img) {
+		return encodeKey(TileView.of(img));
+	}
+
+	/**
+	 * Set the key to part of a bigger image. The pixels are read straight out of the view, without making a copy first.
+	 * View should be the size of a key, see {@link DeviceProfile#getKeySize()}
+	 * @param key key to change
+	 * @param view the part of the image to show
+	 */
+	@Override
+	public void setKey(int key, TileView view) {
+		checkKey(key);
+		this.setKey(key, encodeKey(view));
+	}
+
+	/**
+	 * Encode part of a bigger image into the format the device expects, without sending it.
+	 * This does not talk to the device, so it is safe to call from many threads at once.
+	 * View should be the size of a key, see {@link DeviceProfile#getKeySize()}
+	 * @param view the part of the image to encode
+	 * @return the encoded image, ready to be passed to {@link #setKey(int, EncodedKeyImage)}
+	 */
+	@Override
+	public EncodedKeyImage encodeKey(TileView view) {
+		return profile.encode(view);
+	}
+
+	/**
+	 * Get a black canvas to draw a key on, that goes straight to the encoder once it is committed. See {@link KeyCanvas}
+	 * @param key the key to draw
+	 * @return the canvas
+	 */
+	@Override
+	public KeyCanvas acquireCanvas(int key) {
+		return canvases.acquire(key);
+	}
+
+	/**
+	 * Set the key to a JPEG file. On models that take JPEGs, a baseline JPEG the size of a key is rotated
+	 * without being decoded, so it does not lose any quality and costs a lot less CPU.
+	 * Any other JPEG is decoded, scaled and encoded like a normal image.
+	 * @param key key to change
+	 * @param jpeg the JPEG file
+	 */
+	@Override
+	public void setKey(int key, byte[] jpeg) {
+		checkKey(key);
+		this.setKey(key, encodeKey(jpeg));
+	}
+
+	/**
+	 * Turn a JPEG file into the format the device expects, without sending it. See {@link #setKey(int, byte[])}
+	 * @param jpeg the JPEG file
+	 * @return the encoded image, ready to be passed to {@link #setKey(int, EncodedKeyImage)}
+	 */
+	@Override
+	public EncodedKeyImage encodeKey(byte[] jpeg) {
+		return profile.encode(jpeg);
+	}
+
+	/**
+	 * Get the model of the device
+	 * @return the device profile
+	 */
+	@Override
+	public DeviceProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Register a IStreamDeckListener, to listen for events
+	 * @param listener the listener to register
+	 */
+	@Override
+	public void registerKeyListener(IStreamDeckListener listener) {
+		synchronized (listeners) {
+			listeners.add(listener);
+			if (keyListenTask == null) {
+				isListening = true;
+				keyListenTask = new Thread(new ThreadKeypressListener());
+				keyListenTask.setName("StreamDeck button listener");
+				keyListenTask.setDaemon(true);
+				keyListenTask.start();
+			}
+		}
+	}
+
+	/**
+	 * UnRegister a IStreamDeckListener, to no longer have it listen to events
+	 * @param listener the listener to unregister
+	 */
+	@Override
+	public void unRegisterKeyListener(IStreamDeckListener listener) {
+		synchronized (listeners) {
+			listeners.remove(listener);
+			if (listeners.isEmpty() && keyListenTask != null) {
+				isListening = false;
+				keyListenTask = null;
+			}
+		}
+	}
+
+	/**
+	 * Tell the listeners a key changed, like it was pressed on the deck. For remote control and tests.
+	 * @param key the key
+	 * @param state the new state
+	 */
+	@Override
+	public void injectKeyState(int key, State state) {
+		checkKey(key);
+		long now = System.nanoTime();
+		synchronized (listeners) {
+			if(key < 32) {
+				injectedMask = state == State.PRESSED ? injectedMask | (1 << key) : injectedMask & ~(1 << key);
+			}
+			int mask = deviceMask | injectedMask;
+			for (IStreamDeckListener listener : listeners) {
+				listener.keyStateChanged(key, state, mask, now);
+			}
+		}
+	}
+
+	/**
+	 * Get the key presses of the deck as a {@link java.util.concurrent.Flow.Publisher}
+	 * @return the publisher, always the same one
+	 */
+	@Override
+	public KeyEventPublisher getKeyEvents() {
+		return keyEvents;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+	
+	/**
+	 * Double check that the given key is between 0 and the number of keys - 1
+	 * Throws a IndexOutOfBoundsException if the key provided is out of range
+	 * @param key the key the user provided
+	 */
+	private void checkKey(int key) {
+		if (key < 0 || key >= profile.getNumberOfKeys()) {
+			throw new IndexOutOfBoundsException("Expected key to be between 0 and " + (profile.getNumberOfKeys() - 1));
+		}
+	}
+	
+	/**
+	 * Write data to the device
+	 * @param arr ByteArray of data
+	 * @param reportId the report id
+	 */
+	private void write(ByteArray arr, int reportId) {
+		this.device.write(arr.toPrimitive(), arr.getLength(), (byte) reportId);
+	}
+
+	/**
+	 * Write data to the device
+	 * @param arr ByteArray of data, with the first byte of the array being the report ID
+	 */
+	private void write(ByteArray arr) {
+		byte reportId = arr.get(0);
+		arr.slice(1);
+		write(arr, reportId);
+	}
+
+	/**
+	 * Send a key image to the device. Called by the {@link WriteScheduler} thread.
+	 * Other commands can only go out between two images, never in the middle of one.
+	 * @param key the key to change
+	 * @param img the encoded image
+	 */
+	private void writeImage(int key, EncodedKeyImage img) {
+		ByteArray[] packets = generateImagePackets(key, img.getData());
+		synchronized (this) {
+			for(ByteArray packet : packets) {
+				write(packet);
+			}
+		}
+	}
+
+	/**
+	 * Ask the device for a Feature report, given the report number
+	 * @param reportNumber the report number
+	 * @return the feature report given the report number
+	 */
+	private ByteArray getFeatureReport(byte reportNumber) {
+		synchronized (this) {
+			byte[] arr = new byte[profile.getProtocol().getFeatureReportLength()];
+			device.getFeatureReport(arr, reportNumber);
+			return ByteArray.of(arr);
+		}
+	}
+
+	/**
+	 * Send the device a Feature report, given the report number and data
+	 * @param reportNumber the report number
+	 * @param arr the data to send to the device
+	 */
+	private void sendFeatureReport(byte reportNumber, ByteArray arr) {
+		synchronized (this) {
+			device.sendFeatureReport(arr.toPrimitive(), reportNumber);
+		}
+	}
+
+	/**
+	 * Generates an array of image packets to send to the device
+	 * @param key the key to change
+	 * @param image the encoded image, from its position to its limit
+	 * @return
+	 */
+	private ByteArray[] generateImagePackets(int key, ByteBuffer image) {
+
+		final int packetSize = profile.getPacketSize();
+		final int maxPayloadSize = packetSize - profile.getProtocol().getPacketHeaderLength();
+		final int deviceKey = profile.toDeviceKey(key);
+
+		int remainingBytes = image.remaining();
+
+		List<ByteArray> results = new ArrayList<ByteArray>();
+
+		for (int part = 0; remainingBytes > 0; part++) {
+			ByteBuffer packet = ByteBuffer.allocate(packetSize);
+			int byteCount = Math.min(remainingBytes, maxPayloadSize);
+			profile.getProtocol().writeImageHeader(packet, deviceKey, part + profile.getFirstPage(), remainingBytes <= maxPayloadSize, byteCount);
+			remainingBytes -= byteCount;
+
+			ByteBuffer body = image.duplicate();
+			body.limit(body.position() + byteCount);
+			packet.put(body);
+			image.position(image.position() + byteCount);
+
+			results.add(ByteArray.of(packet));
+		}
+
+		return results.toArray(new ByteArray[0]);
+
+	}
+
+	public class ThreadKeypressListener implements Runnable {
+
+		private final int reportLength = profile.getProtocol().getInputHeaderLength() + profile.getNumberOfKeys();
+		private StreamDeckKeyState prevState = new StreamDeckKeyState(new byte[reportLength], profile);
+
+		@Override
+		public void run() {
+			while(isListening) {
+
+				if(device.isOpen()) {
+					byte[] data = new byte[reportLength];
+					device.read(data, 1000);
+					long now = System.nanoTime();
+
+					synchronized (listeners) {
+						if (!listeners.isEmpty()) {
+							StreamDeckKeyState state = new StreamDeckKeyState(data, profile);
+
+							if(!state.isInvalid() && !state.equals(prevState)) {
+								deviceMask = state.getMask();
+								int mask = deviceMask | injectedMask;
+								for(int key = 0; key < profile.getNumberOfKeys(); key++) {
+									if(prevState.getKeyState(key) != state.getKeyState(key)) {
+										for (IStreamDeckListener listener : listeners) {
+											listener.keyStateChanged(key, State.fromBoolean(state.getKeyState(key)), mask, now);
+										}
+									}
+								}
+							}
+
+							if(!state.isInvalid()) {
+								prevState = state;
+							}
+						}
+					}
+				}
+
+			}
+		}
+
+	}
+
+}
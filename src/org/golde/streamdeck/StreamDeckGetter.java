@@ -3,12 +3,16 @@ package org.golde.streamdeck;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.golde.streamdeck.transport.Hid4JavaTransport;
+import org.golde.streamdeck.transport.HidTransport;
+import org.golde.streamdeck.transport.HidrawDevice;
+import org.golde.streamdeck.transport.RecordingTransport;
 import org.hid4java.HidDevice;
 import org.hid4java.HidManager;
 import org.hid4java.HidServices;
 
 /**
- * Class to create the StreamDeckXL Object
+ * Class to create the stream deck Objects. Every model in {@link DeviceProfile#values()} is found, XLs are created as a {@link StreamDeckXL}.
  * @author Eric Golde
  *
  */
@@ -16,11 +20,8 @@ public class StreamDeckGetter {
 
 	private StreamDeckGetter() {}
 
-	private static final Integer VENDOR_ID = 0xfd9;
-	private static final Integer PRODUCT_ID = 0x6c;
-
 	/**
-	 * Get a stream deck XL by its serial number
+	 * Get a stream deck by its serial number
 	 * @param serialNumber serial number of the device
 	 * @return the stream deck, or null if no device was found
 	 */
@@ -29,14 +30,21 @@ public class StreamDeckGetter {
 
 		hidServices.start();
 
-		HidDevice hidDevice = hidServices.getHidDevice(VENDOR_ID, PRODUCT_ID, serialNumber);
+		IStreamDeck deck = null;
+		for(HidDevice device : hidServices.getAttachedHidDevices()) {
+			DeviceProfile profile = getProfile(device);
+			if(profile != null && serialNumber.equals(device.getSerialNumber())) {
+				deck = createDeck(profile, new Hid4JavaTransport(device));
+				break;
+			}
+		}
 
 		hidServices.stop();
-		return hidDevice == null ? null : new StreamDeckXL(hidDevice);
+		return deck;
 	}
 	
 	/**
-	 * Get the first stream deck XL we can find, or null if no deck was found.
+	 * Get the first stream deck we can find, or null if no deck was found.
 	 * @return  the first stream deck we find, or null if no deck was found.
 	 */
 	public static IStreamDeck getFirstDeck() {
@@ -50,7 +58,7 @@ public class StreamDeckGetter {
 	}
 
 	/**
-	 * Get every stream deck that is connected to the device
+	 * Get every stream deck that is connected to the device, of every supported model
 	 * @return an array of stream decks, or a empty list if none are found.
 	 */
 	public static IStreamDeck[] getAllConnectedStreamDecks() {
@@ -61,8 +69,9 @@ public class StreamDeckGetter {
 		List<IStreamDeck> decks = new ArrayList<IStreamDeck>();
 
 		for(HidDevice device : hidServices.getAttachedHidDevices()) {
-			if(device.getVendorId() == VENDOR_ID && device.getProductId() == PRODUCT_ID) {
-				decks.add(new StreamDeckXL(device));
+			DeviceProfile profile = getProfile(device);
+			if(profile != null) {
+				decks.add(createDeck(profile, new Hid4JavaTransport(device)));
 			}
 		}
 		
@@ -71,4 +80,66 @@ public class StreamDeckGetter {
 		return decks.toArray(new IStreamDeck[0]);
 	}
 
+	/**
+	 * Get the raw HID connection of every stream deck that is connected, to wrap it before creating the deck,
+	 * for example with a {@link RecordingTransport}: <code>StreamDeckGetter.createDeck(profile, new RecordingTransport(transport, file))</code>
+	 * Use {@link #getProfile(HidDevice)} on the device of the transport to find out which model it is.
+	 * @return an array of transports, or a empty list if none are found.
+	 */
+	public static Hid4JavaTransport[] getAllConnectedTransports() {
+		HidServices hidServices = HidManager.getHidServices();
+
+		hidServices.start();
+
+		List<Hid4JavaTransport> transports = new ArrayList<Hid4JavaTransport>();
+
+		for(HidDevice device : hidServices.getAttachedHidDevices()) {
+			if(getProfile(device) != null) {
+				transports.add(new Hid4JavaTransport(device));
+			}
+		}
+
+		hidServices.stop();
+
+		return transports.toArray(new Hid4JavaTransport[0]);
+	}
+
+	/**
+	 * Get every stream deck that is connected, talking to them through /dev/hidrawN directly instead of hid4java.
+	 * Only works on Linux, and the user needs to be allowed to open the hidraw nodes, for example with a udev rule.
+	 * @return an array of stream decks, or a empty list if none are found.
+	 */
+	public static IStreamDeck[] getAllHidrawStreamDecks() {
+		List<IStreamDeck> decks = new ArrayList<IStreamDeck>();
+		for(HidrawDevice device : HidrawDevice.findAll()) {
+			decks.add(createDeck(device.getProfile(), device.open()));
+		}
+		return decks.toArray(new IStreamDeck[0]);
+	}
+
+	/**
+	 * Get the model of a HID device
+	 * @param device the device
+	 * @return the profile, or null if the device is not a supported stream deck
+	 */
+	public static DeviceProfile getProfile(HidDevice device) {
+		if((device.getVendorId() & 0xFFFF) != DeviceProfile.VENDOR_ID) {
+			return null;
+		}
+		return DeviceProfile.forProductId(device.getProductId() & 0xFFFF);
+	}
+
+	/**
+	 * Create a stream deck for a model, talking to it through a transport
+	 * @param profile the model
+	 * @param transport the HID connection
+	 * @return the stream deck. XLs are a {@link StreamDeckXL}
+	 */
+	public static IStreamDeck createDeck(DeviceProfile profile, HidTransport transport) {
+		if(profile == DeviceProfile.XL) {
+			return new StreamDeckXL(transport);
+		}
+		return new StreamDeck(profile, transport);
+	}
+
 }
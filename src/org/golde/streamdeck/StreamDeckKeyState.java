@@ -1,13 +1,13 @@
 package org.golde.streamdeck;
 
 /**
- * A class to hold the key states of the stream deck XL
+ * A class to hold the key states of a stream deck
  * @author Eric Golde
  *
  */
 public class StreamDeckKeyState {
 
-	private boolean[] keyState = new boolean[StreamDeckXL.NUMBER_OF_KEYS];
+	private final boolean[] keyState;
 	private boolean invalid = false;
 
 	//DATA: 
@@ -15,16 +15,29 @@ public class StreamDeckKeyState {
 	//    1, 0, 32, 0, [keys]
 
 	/**
-	 * Create a key state object based on the raw data we get from the stream deck
+	 * Create a key state object based on the raw data we get from the stream deck XL
 	 * @param rawData
 	 */
 	public StreamDeckKeyState(byte[] rawData) {
-		if (rawData[0] == 0) {
+		this(rawData, DeviceProfile.XL);
+	}
+
+	/**
+	 * Create a key state object based on the raw data we get from a stream deck
+	 * @param rawData
+	 * @param profile the model of the stream deck
+	 */
+	public StreamDeckKeyState(byte[] rawData, DeviceProfile profile) {
+		int header = profile.getProtocol().getInputHeaderLength();
+		keyState = new boolean[profile.getNumberOfKeys()];
+
+		//Nothing was read, or a report that is not about the keys, like a dial on the Stream Deck +
+		if (rawData[0] == 0 || (header > 1 && rawData[1] != 0)) {
 			invalid = true;
 		}
 
-		for (int i = 0; i < 32; i++) {
-			keyState[i] = rawData[i + 4] == 1;
+		for (int i = 0; i < keyState.length; i++) {
+			keyState[profile.fromDeviceKey(i)] = rawData[i + header] == 1;
 		}
 	}
 
@@ -92,14 +105,28 @@ public class StreamDeckKeyState {
 		}
 	}
 
+	/**
+	 * Get the state of every key as one number. Bit 0 is key 0, only the first 32 keys fit.
+	 * @return a bit for every key that is down
+	 */
+	public int getMask() {
+		int mask = 0;
+		for (int i = 0; i < keyState.length && i < 32; i++) {
+			if (keyState[i]) {
+				mask |= 1 << i;
+			}
+		}
+		return mask;
+	}
+
 	/**
 	 * Return the current state of a given key
 	 * @param key key to get the state
 	 * @return the current state of the given key
 	 */
 	public boolean getKeyState(int key) {
-		if (key < 0 || key > StreamDeckXL.NUMBER_OF_KEYS) {
-			throw new IndexOutOfBoundsException("Expected key to be between 0 and " + (StreamDeckXL.NUMBER_OF_KEYS - 1));
+		if (key < 0 || key >= keyState.length) {
+			throw new IndexOutOfBoundsException("Expected key to be between 0 and " + (keyState.length - 1));
 		}
 		return keyState[key];
 	}
@@ -0,0 +1,444 @@
+package org.golde.streamdeck;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.golde.streamdeck.StreamDeckKeyState.State;
+import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.helpers.TileView;
+
+/**
+ * A "video wall" made out of multiple stream decks mounted next to each other.
+ * You draw one big canvas image, and the wall splits it up, encodes every key in parallel
+ * and sends it to all the decks at the same time, so the whole frame shows up together.
+ *
+ * Keys on the wall are numbered like a single big deck: left to right, top to bottom.
+ * So two XL's side by side make a wall that is 16 keys wide and 4 keys tall.
+ * Every deck on a wall has to have the same layout of keys, like all XL's, or any mix of Originals and MK.2's.
+ * @author Eric Golde
+ *
+ */
+public class StreamDeckWall {
+
+	private final DeviceProfile profile;
+	private final int gridCols;
+	private final int gridRows;
+	private final IStreamDeck[][] decks;
+
+	private int bezelX = 0;
+	private int bezelY = 0;
+	private int keyGap = 0;
+
+	private final List<IStreamDeckListener> listeners = new CopyOnWriteArrayList<IStreamDeckListener>();
+	private final List<DeckListener> deckListeners = new ArrayList<DeckListener>();
+
+	private final ExecutorService encodeService;
+
+	/**
+	 * Create a empty wall of StreamDeck XL's. Use {@link #addDeck(IStreamDeck, int, int)} to place decks on it.
+	 * @param gridCols how many decks wide the wall is
+	 * @param gridRows how many decks tall the wall is
+	 */
+	public StreamDeckWall(int gridCols, int gridRows) {
+		this(gridCols, gridRows, DeviceProfile.XL);
+	}
+
+	/**
+	 * Create a empty wall. Use {@link #addDeck(IStreamDeck, int, int)} to place decks on it.
+	 * @param gridCols how many decks wide the wall is
+	 * @param gridRows how many decks tall the wall is
+	 * @param profile the model of the decks, every deck on the wall needs to have the same rows, columns and key size as it
+	 */
+	public StreamDeckWall(int gridCols, int gridRows, DeviceProfile profile) {
+		if(gridCols < 1 || gridRows < 1) {
+			throw new IllegalArgumentException("A wall needs at least one deck in each direction");
+		}
+		this.profile = profile;
+		this.gridCols = gridCols;
+		this.gridRows = gridRows;
+		this.decks = new IStreamDeck[gridCols][gridRows];
+
+		this.encodeService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new WallThreadFactory("StreamDeck wall encoder"));
+	}
+
+	/**
+	 * Place a deck on the wall
+	 * @param deck the deck
+	 * @param gridX column of the wall the deck is mounted in, starting at 0 on the left
+	 * @param gridY row of the wall the deck is mounted in, starting at 0 on the top
+	 */
+	public void addDeck(IStreamDeck deck, int gridX, int gridY) {
+		if (gridX < 0 || gridX >= gridCols || gridY < 0 || gridY >= gridRows) {
+			throw new IndexOutOfBoundsException("Expected deck position to be inside a " + gridCols + "x" + gridRows + " wall");
+		}
+		DeviceProfile deckProfile = deck.getProfile();
+		if(deckProfile.getCols() != profile.getCols() || deckProfile.getRows() != profile.getRows() || deckProfile.getKeySize() != profile.getKeySize()) {
+			throw new IllegalArgumentException("A " + deckProfile.getName() + " does not fit on a wall of " + profile.getName() + "s");
+		}
+
+		synchronized (listeners) {
+			for(int i = deckListeners.size() - 1; i >= 0; i--) {
+				DeckListener old = deckListeners.get(i);
+				if(old.gridX == gridX && old.gridY == gridY) {
+					old.deck.unRegisterKeyListener(old);
+					deckListeners.remove(i);
+				}
+			}
+			decks[gridX][gridY] = deck;
+			if(!listeners.isEmpty()) {
+				listenTo(deck, gridX, gridY);
+			}
+		}
+	}
+
+	/**
+	 * Set how many pixels are hidden between two decks that are mounted next to each other.
+	 * Those pixels of the canvas are skipped, so lines that cross from one deck to another still line up.
+	 * @param bezelX pixels hidden between decks that are next to each other horizontally
+	 * @param bezelY pixels hidden between decks that are above each other
+	 */
+	public void setBezel(int bezelX, int bezelY) {
+		if(bezelX < 0 || bezelY < 0) {
+			throw new IllegalArgumentException("Expected bezel to be positive");
+		}
+		this.bezelX = bezelX;
+		this.bezelY = bezelY;
+	}
+
+	/**
+	 * Set how many pixels are hidden in the gap between two keys on the same deck.
+	 * @param keyGap pixels hidden between keys
+	 */
+	public void setKeyGap(int keyGap) {
+		if(keyGap < 0) {
+			throw new IllegalArgumentException("Expected key gap to be positive");
+		}
+		this.keyGap = keyGap;
+	}
+
+	/**
+	 * @return the model of the decks on the wall
+	 */
+	public DeviceProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Get how many keys wide the wall is
+	 * @return number of key columns
+	 */
+	public int getColumns() {
+		return gridCols * profile.getCols();
+	}
+
+	/**
+	 * Get how many keys tall the wall is
+	 * @return number of key rows
+	 */
+	public int getRows() {
+		return gridRows * profile.getRows();
+	}
+
+	/**
+	 * Get the total amount of keys on the wall, including keys of decks that are not placed yet
+	 * @return number of keys
+	 */
+	public int getNumberOfKeys() {
+		return getColumns() * getRows();
+	}
+
+	/**
+	 * Get the width a canvas passed to {@link #commitFrame(BufferedImage)} should have, including bezels and key gaps
+	 * @return width in pixels
+	 */
+	public int getCanvasWidth() {
+		return canvasSize(gridCols, profile.getCols(), bezelX);
+	}
+
+	/**
+	 * Get the height a canvas passed to {@link #commitFrame(BufferedImage)} should have, including bezels and key gaps
+	 * @return height in pixels
+	 */
+	public int getCanvasHeight() {
+		return canvasSize(gridRows, profile.getRows(), bezelY);
+	}
+
+	/**
+	 * Create a empty canvas that is the correct size for this wall
+	 * @return a new canvas image
+	 */
+	public BufferedImage createCanvas() {
+		return new BufferedImage(getCanvasWidth(), getCanvasHeight(), StreamDeckXL.IMG_TYPE);
+	}
+
+	/**
+	 * Split the canvas into keys, encode them in parallel and send them to every deck at the same time.
+	 * This blocks until every deck received its part of the frame.
+	 * @param canvas the canvas, should be {@link #getCanvasWidth()} by {@link #getCanvasHeight()}
+	 */
+	public void commitFrame(BufferedImage canvas) {
+
+		if(canvas.getWidth() < getCanvasWidth() || canvas.getHeight() < getCanvasHeight()) {
+			throw new IllegalArgumentException("Expected canvas to be at least " + getCanvasWidth() + "x" + getCanvasHeight());
+		}
+
+		int[] xOffsets = keyOffsets(gridCols, profile.getCols(), bezelX);
+		int[] yOffsets = keyOffsets(gridRows, profile.getRows(), bezelY);
+
+		final TileView[] tiles = ImageUtilities.splitImageViews(canvas, xOffsets, yOffsets, profile.getKeySize(), profile.getKeySize());
+		final EncodedKeyImage[] encoded = new EncodedKeyImage[tiles.length];
+
+		//Encode every key on every core we have
+		List<Callable<Void>> encodeTasks = new ArrayList<Callable<Void>>();
+		for(int key = 0; key < tiles.length; key++) {
+			final int wallKey = key;
+			final IStreamDeck deck = getDeckForKey(wallKey);
+			if(deck == null) {
+				continue;
+			}
+			encodeTasks.add(() -> {
+				encoded[wallKey] = deck.encodeKey(tiles[wallKey]);
+				return null;
+			});
+		}
+		waitFor(invokeAll(encodeService, encodeTasks));
+
+		//Then queue the whole frame on every deck at once. Every deck has its own writer thread, so they all send at the same time,
+		//and key presses still get to go first
+		List<CompletableFuture<Void>> writes = new ArrayList<CompletableFuture<Void>>();
+		for(int gridX = 0; gridX < gridCols; gridX++) {
+			for(int gridY = 0; gridY < gridRows; gridY++) {
+				IStreamDeck deck = decks[gridX][gridY];
+				if(deck == null) {
+					continue;
+				}
+				for(int key = 0; key < profile.getNumberOfKeys(); key++) {
+					writes.add(deck.submitKey(key, encoded[toWallKey(gridX, gridY, key)], WritePriority.BACKGROUND));
+				}
+			}
+		}
+		waitFor(CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])));
+	}
+
+	/**
+	 * Register a IStreamDeckListener, to listen for events from every deck on the wall.
+	 * The key passed to the listener is a wall key, not the key of the deck that was pressed.
+	 * @param listener the listener to register
+	 */
+	public void registerKeyListener(IStreamDeckListener listener) {
+		synchronized (listeners) {
+			if(listeners.isEmpty()) {
+				for(int gridX = 0; gridX < gridCols; gridX++) {
+					for(int gridY = 0; gridY < gridRows; gridY++) {
+						if(decks[gridX][gridY] != null) {
+							listenTo(decks[gridX][gridY], gridX, gridY);
+						}
+					}
+				}
+			}
+			listeners.add(listener);
+		}
+	}
+
+	/**
+	 * UnRegister a IStreamDeckListener, to no longer have it listen to events
+	 * @param listener the listener to unregister
+	 */
+	public void unRegisterKeyListener(IStreamDeckListener listener) {
+		synchronized (listeners) {
+			listeners.remove(listener);
+			if(listeners.isEmpty()) {
+				for(DeckListener deckListener : deckListeners) {
+					deckListener.deck.unRegisterKeyListener(deckListener);
+				}
+				deckListeners.clear();
+			}
+		}
+	}
+
+	/**
+	 * Stop the worker threads of the wall. The decks themselves are not disconnected.
+	 */
+	public void shutdown() {
+		encodeService.shutdown();
+	}
+
+	/**
+	 * Get the deck a wall key is on
+	 * @param wallKey key on the wall
+	 * @return the deck, or null if no deck is placed there
+	 */
+	public IStreamDeck getDeckForKey(int wallKey) {
+		checkKey(wallKey);
+		int col = wallKey % getColumns();
+		int row = wallKey / getColumns();
+		return decks[col / profile.getCols()][row / profile.getRows()];
+	}
+
+	/**
+	 * Convert a wall key into the key on the deck it belongs to
+	 * @param wallKey key on the wall
+	 * @return the key on its deck
+	 */
+	public int toDeckKey(int wallKey) {
+		checkKey(wallKey);
+		int col = wallKey % getColumns();
+		int row = wallKey / getColumns();
+		return (row % profile.getRows()) * profile.getCols() + (col % profile.getCols());
+	}
+
+	/**
+	 * Convert a key on a deck into a wall key
+	 * @param gridX column of the wall the deck is mounted in
+	 * @param gridY row of the wall the deck is mounted in
+	 * @param deckKey key on the deck
+	 * @return the key on the wall
+	 */
+	public int toWallKey(int gridX, int gridY, int deckKey) {
+		int col = gridX * profile.getCols() + deckKey % profile.getCols();
+		int row = gridY * profile.getRows() + deckKey / profile.getCols();
+		return row * getColumns() + col;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	/**
+	 * Double check that the given key is on the wall
+	 * Throws a IndexOutOfBoundsException if the key provided is out of range
+	 * @param key the key the user provided
+	 */
+	private void checkKey(int key) {
+		if (key < 0 || key >= getNumberOfKeys()) {
+			throw new IndexOutOfBoundsException("Expected key to be between 0 and " + (getNumberOfKeys() - 1));
+		}
+	}
+
+	/**
+	 * Start forwarding key events of a deck to the wall listeners
+	 * Must be called while holding the listeners lock
+	 */
+	private void listenTo(IStreamDeck deck, int gridX, int gridY) {
+		DeckListener deckListener = new DeckListener(deck, gridX, gridY);
+		deckListeners.add(deckListener);
+		deck.registerKeyListener(deckListener);
+	}
+
+	/**
+	 * Size of the canvas in one direction
+	 * @param decks number of decks in that direction
+	 * @param keys number of keys per deck in that direction
+	 * @param bezel pixels hidden between decks
+	 * @return size in pixels
+	 */
+	private int canvasSize(int decks, int keys, int bezel) {
+		int keysTotal = decks * keys;
+		return keysTotal * profile.getKeySize() + (keysTotal - decks) * keyGap + (decks - 1) * bezel;
+	}
+
+	/**
+	 * Pixel offset of every key in one direction, skipping over bezels and key gaps
+	 * @param decks number of decks in that direction
+	 * @param keys number of keys per deck in that direction
+	 * @param bezel pixels hidden between decks
+	 * @return pixel offset of every key
+	 */
+	private int[] keyOffsets(int decks, int keys, int bezel) {
+		int[] offsets = new int[decks * keys];
+		int pos = 0;
+		for(int deck = 0; deck < decks; deck++) {
+			for(int key = 0; key < keys; key++) {
+				offsets[deck * keys + key] = pos;
+				pos += profile.getKeySize() + (key == keys - 1 ? bezel : keyGap);
+			}
+		}
+		return offsets;
+	}
+
+	private static <T> List<Future<T>> invokeAll(ExecutorService service, List<Callable<T>> tasks) {
+		try {
+			return service.invokeAll(tasks);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while committing a frame", e);
+		}
+	}
+
+	private static <T> void waitFor(List<Future<T>> futures) {
+		for(Future<T> future : futures) {
+			waitFor(future);
+		}
+	}
+
+	private static void waitFor(Future<?> future) {
+		try {
+			future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while committing a frame", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to commit a frame", e.getCause());
+		}
+	}
+
+	/**
+	 * Forwards key events of a single deck to the wall listeners, translated into wall keys
+	 */
+	private class DeckListener implements IStreamDeckListener {
+
+		private final IStreamDeck deck;
+		private final int gridX;
+		private final int gridY;
+
+		DeckListener(IStreamDeck deck, int gridX, int gridY) {
+			this.deck = deck;
+			this.gridX = gridX;
+			this.gridY = gridY;
+		}
+
+		@Override
+		public void keyStateChanged(int key, State state) {
+			int wallKey = toWallKey(gridX, gridY, key);
+			//Not locking here, the deck calls us while holding its own listener lock
+			for (IStreamDeckListener listener : listeners) {
+				listener.keyStateChanged(wallKey, state);
+			}
+		}
+
+	}
+
+	/**
+	 * Names the worker threads and makes sure they don't keep the JVM alive
+	 */
+	private static class WallThreadFactory implements ThreadFactory {
+
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger();
+
+		WallThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r);
+			thread.setName(name + " #" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
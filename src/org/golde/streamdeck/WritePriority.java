@@ -0,0 +1,27 @@
+package org.golde.streamdeck;
+
+/**
+ * How urgent a key image is. The {@link WriteScheduler} always sends the most urgent image next,
+ * so a key lighting up when it is pressed doesn't have to wait behind a whole animation.
+ * @author Eric Golde
+ *
+ */
+public enum WritePriority {
+
+	/**
+	 * Feedback for something the user just did, like pressing a key. Writes made from inside a {@link IStreamDeckListener} use this by default.
+	 */
+	INTERACTIVE,
+
+	/**
+	 * Normal key updates. This is what setKey uses by default.
+	 */
+	NORMAL,
+
+	/**
+	 * Animations, screencasts and anything else that sends a lot of frames. Background writes get more urgent the longer they wait,
+	 * so they are never starved.
+	 */
+	BACKGROUND;
+
+}
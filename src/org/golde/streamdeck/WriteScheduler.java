@@ -0,0 +1,328 @@
+package org.golde.streamdeck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends key images to a deck from a single writer thread, most urgent image first.
+ *
+ * Every image is already split into its own packets, so the scheduler picks what to send next after every image.
+ * A interactive image only ever waits for the one image that is being sent at the time, no matter how many
+ * animation frames are queued up.
+ *
+ * Only the newest image for every key is kept. If a key gets a new image before the old one was sent, the old one
+ * is dropped, since it would be overwritten right away anyways. The new image keeps the place in line of the old one,
+ * and the more urgent of the two priorities, so a key that is updated all the time still gets its turn.
+ *
+ * Writes that wait get more urgent over time: every {@link #getAgingMillis()} millis of waiting moves a write
+ * up one {@link WritePriority}, so background work is never starved.
+ * @author Eric Golde
+ *
+ */
+public class WriteScheduler {
+
+	/**
+	 * Default time a write has to wait before it moves up one priority
+	 */
+	public static final long DEFAULT_AGING_MILLIS = 50;
+
+	/**
+	 * Sends one key image to the device
+	 */
+	public interface KeyWriter {
+
+		/**
+		 * Send one key image to the device. Only ever called from the writer thread.
+		 * @param key key to change
+		 * @param img the encoded image
+		 */
+		public void write(int key, EncodedKeyImage img);
+
+	}
+
+	private final String name;
+	private final KeyWriter writer;
+	private final long agingNanos;
+
+	private final Object lock = new Object();
+	private final Write[] pending;
+	private Thread thread;
+	private boolean running;
+	private volatile BandwidthGovernor governor;
+	private volatile KeyWriter[] observers = new KeyWriter[0];
+	//Set by pickNext, when every pending write is held back by the governor
+	private long waitNanos;
+
+	/**
+	 * Create a scheduler. The writer thread is only started once something is submitted.
+	 * @param name name of the writer thread
+	 * @param numberOfKeys number of keys on the deck
+	 * @param writer sends a image to the device
+	 */
+	public WriteScheduler(String name, int numberOfKeys, KeyWriter writer) {
+		this(name, numberOfKeys, writer, DEFAULT_AGING_MILLIS);
+	}
+
+	/**
+	 * Create a scheduler. The writer thread is only started once something is submitted.
+	 * @param name name of the writer thread
+	 * @param numberOfKeys number of keys on the deck
+	 * @param writer sends a image to the device
+	 * @param agingMillis how long a write has to wait before it moves up one priority
+	 */
+	public WriteScheduler(String name, int numberOfKeys, KeyWriter writer, long agingMillis) {
+		if(agingMillis <= 0) {
+			throw new IllegalArgumentException("Expected aging time to be more than 0");
+		}
+		this.name = name;
+		this.writer = writer;
+		this.agingNanos = agingMillis * 1_000_000L;
+		this.pending = new Write[numberOfKeys];
+	}
+
+	/**
+	 * Queue a image for a key
+	 * @param key key to change
+	 * @param img the encoded image
+	 * @param priority how urgent the image is
+	 * @return a future that completes once the image is on the device, or once a newer image for the same key replaced it
+	 */
+	public CompletableFuture<Void> submit(int key, EncodedKeyImage img, WritePriority priority) {
+		Write write = new Write(key, img, priority, System.nanoTime());
+		Write replaced;
+
+		synchronized (lock) {
+			BandwidthGovernor governor = this.governor;
+			if(governor != null) {
+				governor.submitted(key, img.getLength(), write.enqueuedAt);
+			}
+
+			replaced = pending[key];
+			if(replaced != null) {
+				//Keep its place in line
+				write.enqueuedAt = replaced.enqueuedAt;
+				if(replaced.priority.ordinal() < write.priority.ordinal()) {
+					write.priority = replaced.priority;
+				}
+			}
+			pending[key] = write;
+
+			if(!running) {
+				startThread();
+			}
+			lock.notifyAll();
+		}
+
+		if(replaced != null) {
+			replaced.future.complete(null);
+		}
+		return write.future;
+	}
+
+	/**
+	 * Stop the writer thread. Images that were not sent yet are dropped, and their futures fail.
+	 * Submitting something after this starts a new writer thread.
+	 */
+	public void stop() {
+		List<Write> dropped = new ArrayList<Write>();
+		synchronized (lock) {
+			running = false;
+			thread = null;
+			for(int key = 0; key < pending.length; key++) {
+				if(pending[key] != null) {
+					dropped.add(pending[key]);
+					pending[key] = null;
+				}
+			}
+			lock.notifyAll();
+		}
+
+		for(Write write : dropped) {
+			write.future.completeExceptionally(new IllegalStateException("Write scheduler was stopped"));
+		}
+	}
+
+	/**
+	 * @return number of images waiting to be sent
+	 */
+	public int getPendingCount() {
+		synchronized (lock) {
+			int count = 0;
+			for(Write write : pending) {
+				if(write != null) {
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Share the bandwidth between keys with a governor, see {@link BandwidthGovernor}
+	 * @param governor the governor, or null to send everything as fast as possible
+	 */
+	public void setGovernor(BandwidthGovernor governor) {
+		this.governor = governor;
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Get told about every image that made it to the device, for example to show the deck somewhere else.
+	 * Observers are called on the writer thread after the image was sent, so they should return quickly.
+	 * @param observer gets the key and the image
+	 */
+	public synchronized void addObserver(KeyWriter observer) {
+		KeyWriter[] now = Arrays.copyOf(observers, observers.length + 1);
+		now[now.length - 1] = observer;
+		observers = now;
+	}
+
+	/**
+	 * Stop telling a observer about images
+	 * @param observer the observer
+	 */
+	public synchronized void removeObserver(KeyWriter observer) {
+		List<KeyWriter> now = new ArrayList<KeyWriter>(Arrays.asList(observers));
+		now.remove(observer);
+		observers = now.toArray(new KeyWriter[0]);
+	}
+
+	/**
+	 * @return the governor, or null if there is none
+	 */
+	public BandwidthGovernor getGovernor() {
+		return governor;
+	}
+
+	/**
+	 * @return how long a write has to wait before it moves up one priority
+	 */
+	public long getAgingMillis() {
+		return agingNanos / 1_000_000L;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private void run() {
+		Thread self = Thread.currentThread();
+		while(true) {
+			Write next = null;
+			synchronized (lock) {
+				while(thread == self) {
+					next = pickNext(System.nanoTime());
+					if(next != null) {
+						break;
+					}
+					try {
+						if(waitNanos > 0) {
+							//Something is waiting for the governor
+							lock.wait(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+						}
+						else {
+							lock.wait();
+						}
+					}
+					catch (InterruptedException e) {
+						//Someone interrupted the writer thread. Let it go, and hand what is still pending to a new one
+						if(thread == self) {
+							running = false;
+							thread = null;
+							for(Write write : pending) {
+								if(write != null) {
+									startThread();
+									break;
+								}
+							}
+						}
+						return;
+					}
+				}
+				if(thread != self) {
+					return;
+				}
+				pending[next.key] = null;
+			}
+
+			try {
+				long start = System.nanoTime();
+				writer.write(next.key, next.image);
+				BandwidthGovernor governor = this.governor;
+				if(governor != null) {
+					governor.written(next.key, next.image.getLength(), start, System.nanoTime());
+				}
+				for(KeyWriter observer : observers) {
+					try {
+						observer.write(next.key, next.image);
+					}
+					catch (RuntimeException e) {
+						e.printStackTrace();
+					}
+				}
+				next.future.complete(null);
+			}
+			catch (RuntimeException e) {
+				next.future.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * Start a new writer thread. Only called while holding the lock.
+	 */
+	private void startThread() {
+		running = true;
+		thread = new Thread(this::run);
+		thread.setName(name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Find the most urgent write, counting how long every write waited. Ties go to the write that waited the longest.
+	 * Writes the governor holds back are skipped.
+	 */
+	private Write pickNext(long now) {
+		BandwidthGovernor governor = this.governor;
+		Write best = null;
+		long bestLevel = Long.MAX_VALUE;
+		waitNanos = 0;
+		for(Write write : pending) {
+			if(write == null) {
+				continue;
+			}
+			if(governor != null && write.priority != WritePriority.INTERACTIVE) {
+				long delay = governor.delayNanos(write.key, now);
+				if(delay > 0) {
+					waitNanos = waitNanos == 0 ? delay : Math.min(waitNanos, delay);
+					continue;
+				}
+			}
+			long level = Math.max(0, write.priority.ordinal() - (now - write.enqueuedAt) / agingNanos);
+			if(level < bestLevel || (level == bestLevel && write.enqueuedAt - best.enqueuedAt < 0)) {
+				best = write;
+				bestLevel = level;
+			}
+		}
+		return best;
+	}
+
+	private static class Write {
+		final int key;
+		final EncodedKeyImage image;
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+		WritePriority priority;
+		long enqueuedAt;
+
+		Write(int key, EncodedKeyImage image, WritePriority priority, long enqueuedAt) {
+			this.key = key;
+			this.image = image;
+			this.priority = priority;
+			this.enqueuedAt = enqueuedAt;
+		}
+	}
+
+}
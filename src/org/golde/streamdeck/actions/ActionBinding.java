@@ -0,0 +1,159 @@
+package org.golde.streamdeck.actions;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.helpers.ImageUtilities;
+
+/**
+ * The action of one key, and how it runs. Created with {@link ActionExecutor#bind(int, KeyAction)}.
+ *
+ * By default a key runs one action at a time, without a timeout, and presses while it runs are ignored.
+ * @author Eric Golde
+ *
+ */
+public class ActionBinding {
+
+	private final IStreamDeck deck;
+	private final int key;
+	private final KeyAction action;
+
+	private volatile long timeoutMillis = 0;
+	private volatile boolean cancelOnRepress = false;
+	private volatile int maxConcurrent = 1;
+	private volatile EncodedKeyImage busyImage;
+	private volatile EncodedKeyImage idleImage;
+
+	//Guarded by this
+	final List<ActionExecutor.RunningAction> running = new ArrayList<ActionExecutor.RunningAction>();
+
+	ActionBinding(IStreamDeck deck, int key, KeyAction action) {
+		this.deck = deck;
+		this.key = key;
+		this.action = action;
+	}
+
+	/**
+	 * @return the key
+	 */
+	public int getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the action
+	 */
+	public KeyAction getAction() {
+		return action;
+	}
+
+	/**
+	 * Cancel the action if it runs longer than this
+	 * @param millis timeout in millis, or 0 for no timeout
+	 */
+	public void setTimeout(long millis) {
+		if(millis < 0) {
+			throw new IllegalArgumentException("Expected timeout to be 0 or more");
+		}
+		this.timeoutMillis = millis;
+	}
+
+	/**
+	 * @return the timeout in millis, 0 if there is none
+	 */
+	public long getTimeout() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * Pressing the key while its action runs cancels the action, instead of starting another one
+	 * @param cancelOnRepress true to cancel on a second press
+	 */
+	public void setCancelOnRepress(boolean cancelOnRepress) {
+		this.cancelOnRepress = cancelOnRepress;
+	}
+
+	/**
+	 * @return true if pressing the key while its action runs cancels the action
+	 */
+	public boolean isCancelOnRepress() {
+		return cancelOnRepress;
+	}
+
+	/**
+	 * Set how many times the action can run at the same time. Presses over the limit are ignored.
+	 * @param maxConcurrent 1 or more
+	 */
+	public void setMaxConcurrent(int maxConcurrent) {
+		if(maxConcurrent <= 0) {
+			throw new IllegalArgumentException("Expected max concurrent to be more than 0");
+		}
+		this.maxConcurrent = maxConcurrent;
+	}
+
+	/**
+	 * @return how many times the action can run at the same time
+	 */
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	/**
+	 * Show a image on the key while the action runs. It is encoded right away, so showing it costs nothing on a press.
+	 * @param img a image the size of a key, or null to leave the key alone
+	 */
+	public void setBusyImage(BufferedImage img) {
+		this.busyImage = img == null ? null : deck.encodeKey(img);
+	}
+
+	/**
+	 * Fill the key with a color while the action runs
+	 * @param color the color
+	 */
+	public void setBusyColor(Color color) {
+		setBusyImage(solid(color));
+	}
+
+	/**
+	 * Show a image on the key once the action is done. If there is a busy image but no idle image, the busy image stays on the key.
+	 * @param img a image the size of a key, or null to leave the key alone
+	 */
+	public void setIdleImage(BufferedImage img) {
+		this.idleImage = img == null ? null : deck.encodeKey(img);
+	}
+
+	/**
+	 * Fill the key with a color once the action is done
+	 * @param color the color
+	 */
+	public void setIdleColor(Color color) {
+		setIdleImage(solid(color));
+	}
+
+	/**
+	 * @return how many times the action is running right now
+	 */
+	public synchronized int getRunning() {
+		return running.size();
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	EncodedKeyImage getBusyImage() {
+		return busyImage;
+	}
+
+	EncodedKeyImage getIdleImage() {
+		return idleImage;
+	}
+
+	private BufferedImage solid(Color color) {
+		int size = deck.getProfile().getKeySize();
+		return ImageUtilities.createSolidColorImage(size, size, color);
+	}
+
+}
@@ -0,0 +1,55 @@
+package org.golde.streamdeck.actions;
+
+import org.golde.streamdeck.IStreamDeck;
+
+/**
+ * What a running {@link KeyAction} knows about its self
+ * @author Eric Golde
+ *
+ */
+public final class ActionContext {
+
+	private final IStreamDeck deck;
+	private final int key;
+	private final long startNanos;
+	private volatile boolean cancelled = false;
+
+	ActionContext(IStreamDeck deck, int key, long startNanos) {
+		this.deck = deck;
+		this.key = key;
+		this.startNanos = startNanos;
+	}
+
+	/**
+	 * @return the deck the key is on
+	 */
+	public IStreamDeck getDeck() {
+		return deck;
+	}
+
+	/**
+	 * @return the key that was pressed
+	 */
+	public int getKey() {
+		return key;
+	}
+
+	/**
+	 * @return {@link System#nanoTime()} when the key was pressed
+	 */
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	/**
+	 * @return true if the action timed out, or was cancelled by pressing the key again or by {@link ActionExecutor#cancel(int)}
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	void cancel() {
+		cancelled = true;
+	}
+
+}
@@ -0,0 +1,454 @@
+package org.golde.streamdeck.actions;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.IStreamDeckListener;
+import org.golde.streamdeck.StreamDeckKeyState.State;
+import org.golde.streamdeck.WritePriority;
+
+/**
+ * Runs a {@link KeyAction} when a key is pressed, off the thread that reads the deck, so a slow action like a HTTP call
+ * never holds up key presses.
+ *
+ * Every action runs on its own virtual thread when the JVM has them (Java 21 and newer), and on a pooled daemon thread otherwise,
+ * which is started from a launcher thread, since starting a platform thread is slow.
+ * All the listener does on a press is some bookkeeping and handing the action to the executor, so thousands of actions
+ * can be in flight without slowing down the keys. Timeouts, cancelling on a second press, a limit of how many times an action
+ * can run at once and a busy image are set per key on the {@link ActionBinding}.
+ * @author Eric Golde
+ *
+ */
+public class ActionExecutor implements IStreamDeckListener {
+
+	private final IStreamDeck deck;
+	private final ActionBinding[] bindings;
+	private final ExecutorService executor;
+	private final boolean virtualThreads;
+	//Starting a platform thread takes long enough to hold up key presses, so they are started from here instead
+	private final ExecutorService launcher;
+	private final ScheduledThreadPoolExecutor timeouts;
+	private boolean started = false;
+
+	private final AtomicLong startedCount = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong cancelled = new AtomicLong();
+	private final AtomicLong timedOut = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicInteger running = new AtomicInteger();
+
+	/**
+	 * Create a action executor for a deck. Call {@link #start()} to start listening to it.
+	 * @param deck the deck
+	 */
+	public ActionExecutor(IStreamDeck deck) {
+		this.deck = deck;
+		this.bindings = new ActionBinding[deck.getProfile().getNumberOfKeys()];
+
+		ExecutorService virtual = newVirtualThreadExecutor();
+		this.virtualThreads = virtual != null;
+		this.executor = virtual != null ? virtual : Executors.newCachedThreadPool(new ActionThreadFactory("StreamDeck action #"));
+		this.launcher = virtual != null ? null : Executors.newSingleThreadExecutor(new ActionThreadFactory("StreamDeck action launcher #"));
+
+		this.timeouts = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r);
+			thread.setName("StreamDeck action timeouts");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timeouts.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Set what a key does. Replaces the action that was bound to the key before, without cancelling it if it is running.
+	 * @param key the key
+	 * @param action the action
+	 * @return the binding, to set the timeout and the rest on
+	 */
+	public ActionBinding bind(int key, KeyAction action) {
+		checkKey(key);
+		ActionBinding binding = new ActionBinding(deck, key, action);
+		synchronized (bindings) {
+			bindings[key] = binding;
+		}
+		return binding;
+	}
+
+	/**
+	 * Make a key do nothing. If its action is running, it keeps running.
+	 * @param key the key
+	 */
+	public void unbind(int key) {
+		checkKey(key);
+		synchronized (bindings) {
+			bindings[key] = null;
+		}
+	}
+
+	/**
+	 * @param key the key
+	 * @return the binding of a key, or null if nothing is bound to it
+	 */
+	public ActionBinding getBinding(int key) {
+		checkKey(key);
+		synchronized (bindings) {
+			return bindings[key];
+		}
+	}
+
+	/**
+	 * Start listening to the deck
+	 */
+	public synchronized void start() {
+		if(!started) {
+			started = true;
+			deck.registerKeyListener(this);
+		}
+	}
+
+	/**
+	 * Stop listening to the deck. Actions that are running keep running.
+	 */
+	public synchronized void stop() {
+		if(started) {
+			started = false;
+			deck.unRegisterKeyListener(this);
+		}
+	}
+
+	/**
+	 * Stop listening to the deck, cancel every running action and stop the threads. The executor can't be used afterwards.
+	 */
+	public void shutdown() {
+		stop();
+		for(int key = 0; key < bindings.length; key++) {
+			cancel(key);
+		}
+		executor.shutdownNow();
+		if(launcher != null) {
+			launcher.shutdownNow();
+		}
+		timeouts.shutdownNow();
+	}
+
+	/**
+	 * Run the action of a key, like the key was pressed
+	 * @param key the key
+	 * @return true if the action was started
+	 */
+	public boolean trigger(int key) {
+		ActionBinding binding = getBinding(key);
+		if(binding == null) {
+			return false;
+		}
+
+		RunningAction run;
+		synchronized (binding) {
+			if(binding.isCancelOnRepress() && !binding.running.isEmpty()) {
+				for(RunningAction other : binding.running) {
+					other.cancel(false);
+				}
+				return false;
+			}
+			if(binding.running.size() >= binding.getMaxConcurrent()) {
+				rejected.incrementAndGet();
+				return false;
+			}
+			run = new RunningAction(binding, new ActionContext(deck, key, System.nanoTime()));
+			binding.running.add(run);
+			running.incrementAndGet();
+			startedCount.incrementAndGet();
+
+			//Queued under the lock and before the action can run, so the idle image of a fast action always comes after it.
+			//Only queued, this runs on the thread that reads the keys, which must not wait for the USB transfer
+			EncodedKeyImage img = binding.getBusyImage();
+			if(binding.running.size() == 1 && img != null) {
+				deck.submitKey(key, img, WritePriority.INTERACTIVE);
+			}
+
+			//Still holding the lock, so the action can't finish and look for its timeout before the timeout is set
+			try {
+				if(launcher == null) {
+					executor.execute(run);
+				}
+				else {
+					launcher.execute(() -> launch(run));
+				}
+			}
+			catch(RejectedExecutionException e) {
+				//Shut down
+				binding.running.remove(run);
+				running.decrementAndGet();
+				return false;
+			}
+			long timeout = binding.getTimeout();
+			if(timeout > 0) {
+				run.timeout = timeouts.schedule(() -> run.cancel(true), timeout, TimeUnit.MILLISECONDS);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Cancel every action that is running on a key
+	 * @param key the key
+	 * @return how many actions were cancelled
+	 */
+	public int cancel(int key) {
+		ActionBinding binding = getBinding(key);
+		if(binding == null) {
+			return 0;
+		}
+		List<RunningAction> runs;
+		synchronized (binding) {
+			runs = new ArrayList<RunningAction>(binding.running);
+		}
+		for(RunningAction run : runs) {
+			run.cancel(false);
+		}
+		return runs.size();
+	}
+
+	/**
+	 * @return true if actions run on virtual threads, false if they run on platform threads because the JVM is too old
+	 */
+	public boolean isUsingVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * @return how many actions are running right now, on every key
+	 */
+	public int getRunning() {
+		return running.get();
+	}
+
+	/**
+	 * @return how many actions were started
+	 */
+	public long getStarted() {
+		return startedCount.get();
+	}
+
+	/**
+	 * @return how many actions finished without throwing
+	 */
+	public long getCompleted() {
+		return completed.get();
+	}
+
+	/**
+	 * @return how many actions threw something
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * @return how many actions were cancelled, not counting timeouts
+	 */
+	public long getCancelled() {
+		return cancelled.get();
+	}
+
+	/**
+	 * @return how many actions timed out
+	 */
+	public long getTimedOut() {
+		return timedOut.get();
+	}
+
+	/**
+	 * @return how many presses were ignored because the action was already running as many times as it may
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * Called by the deck when a key changes. Starts the action of the key when it is pressed.
+	 */
+	@Override
+	public void keyStateChanged(int key, State state) {
+		if(state == State.PRESSED && key >= 0 && key < bindings.length) {
+			trigger(key);
+		}
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	/**
+	 * Double check that the given key is between 0 and the number of keys - 1
+	 * Throws a IndexOutOfBoundsException if the key provided is out of range
+	 * @param key the key the user provided
+	 */
+	private void checkKey(int key) {
+		if (key < 0 || key >= bindings.length) {
+			throw new IndexOutOfBoundsException("Expected key to be between 0 and " + (bindings.length - 1));
+		}
+	}
+
+	/**
+	 * Start a action on a platform thread, from the launcher thread
+	 */
+	private void launch(RunningAction run) {
+		try {
+			executor.execute(run);
+		}
+		catch(RejectedExecutionException e) {
+			//Shut down, run it here so it is counted as cancelled and cleaned up
+			run.cancel(false);
+			run.run();
+		}
+	}
+
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor() is only there on Java 21 and newer, and this has to run on older JVMs too
+	 * @return the executor, or null if there are no virtual threads
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		}
+		catch(ReflectiveOperationException | RuntimeException e) {
+			//Not there, or a preview feature that is not turned on
+			return null;
+		}
+	}
+
+	/**
+	 * One press of a key, from handing it to the executor until the action returns
+	 */
+	class RunningAction implements Runnable {
+
+		private final ActionBinding binding;
+		private final ActionContext context;
+		//Guarded by this
+		private Thread thread;
+		private boolean done = false;
+		private boolean timedOut = false;
+		//Set while holding the lock of the binding
+		ScheduledFuture<?> timeout;
+
+		RunningAction(ActionBinding binding, ActionContext context) {
+			this.binding = binding;
+			this.context = context;
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				if(context.isCancelled()) {
+					//Cancelled before it even started
+					done = true;
+				}
+				else {
+					thread = Thread.currentThread();
+				}
+			}
+
+			Throwable error = null;
+			if(thread != null) {
+				try {
+					binding.getAction().run(context);
+				}
+				catch(Throwable t) {
+					error = t;
+				}
+				synchronized (this) {
+					done = true;
+					thread = null;
+					//A cancel that came in right as the action returned must not hit the next task on this thread
+					Thread.interrupted();
+				}
+			}
+
+			boolean wasTimedOut;
+			synchronized (this) {
+				wasTimedOut = timedOut;
+			}
+			if(wasTimedOut) {
+				ActionExecutor.this.timedOut.incrementAndGet();
+			}
+			else if(context.isCancelled()) {
+				cancelled.incrementAndGet();
+			}
+			else if(error != null) {
+				failed.incrementAndGet();
+				error.printStackTrace();
+			}
+			else {
+				completed.incrementAndGet();
+			}
+			finish();
+		}
+
+		/**
+		 * Cancel the action, interrupting its thread if it is running
+		 * @param timeout true if this is because the action timed out
+		 */
+		synchronized void cancel(boolean timeout) {
+			if(done || context.isCancelled()) {
+				return;
+			}
+			timedOut = timeout;
+			context.cancel();
+			if(thread != null) {
+				thread.interrupt();
+			}
+		}
+
+		private void finish() {
+			synchronized (binding) {
+				binding.running.remove(this);
+				if(timeout != null) {
+					timeout.cancel(false);
+				}
+				//Under the lock, so a trigger that starts the key again queues its busy image after this
+				EncodedKeyImage img = binding.getIdleImage();
+				if(binding.running.isEmpty() && img != null && getBinding(binding.getKey()) == binding) {
+					deck.submitKey(binding.getKey(), img, WritePriority.INTERACTIVE);
+				}
+			}
+			running.decrementAndGet();
+		}
+
+	}
+
+	/**
+	 * Names the action threads and makes sure they don't keep the JVM alive
+	 */
+	private static class ActionThreadFactory implements ThreadFactory {
+
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger();
+
+		ActionThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r);
+			thread.setName(name + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
@@ -0,0 +1,20 @@
+package org.golde.streamdeck.actions;
+
+/**
+ * Something a key does when it is pressed, like calling a web hook or running a script.
+ * Runs on its own thread, so it may block as long as it wants.
+ * @author Eric Golde
+ *
+ */
+@FunctionalInterface
+public interface KeyAction {
+
+	/**
+	 * Run the action. If it is cancelled or times out, the thread is interrupted, so blocking calls throw
+	 * {@link InterruptedException}. Long loops should check {@link ActionContext#isCancelled()}.
+	 * @param context the key that was pressed, and whether the action was cancelled
+	 * @throws Exception anything the action throws is printed, unless the action was cancelled
+	 */
+	public void run(ActionContext context) throws Exception;
+
+}
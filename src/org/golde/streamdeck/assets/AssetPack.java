@@ -0,0 +1,226 @@
+package org.golde.streamdeck.assets;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.golde.streamdeck.DeviceProfile;
+import org.golde.streamdeck.EncodedKeyImage;
+
+/**
+ * A file full of icons and animations that are already rotated and encoded for the stream deck.
+ * Build one with {@link AssetPackBuilder}, then load it at startup with {@link #load(File)}.
+ *
+ * A pack is encoded for one model of deck, see {@link #getProfile()}. Images out of it can only be sent to decks of that model,
+ * or models that take the exact same images, which {@link #load(File, DeviceProfile)} checks.
+ *
+ * Loading memory maps the file, nothing gets decoded. Every frame is a view into the mapped file,
+ * so the images live in the OS page cache instead of the heap, and {@link org.golde.streamdeck.IStreamDeck#setKey(int, EncodedKeyImage)}
+ * sends straight from it.
+ *
+ * File layout, big endian:
+ * <pre>
+ * int    magic "SDAP"
+ * short  version
+ * short  image size in pixels
+ * short  product id of the model the images are encoded for, version 2 and up. Version 1 packs are for the XL
+ * int    number of assets
+ * for every asset:
+ *   short  name length, then the name in UTF-8
+ *   int    number of frames
+ *   for every frame:
+ *     int  offset of the image from the start of the file
+ *     int  length of the image
+ *     int  delay in millis
+ * image data, JPEG or BMP depending on the model
+ * </pre>
+ * @author Eric Golde
+ *
+ */
+public class AssetPack {
+
+	static final int MAGIC = 0x53444150; //SDAP
+	static final short VERSION = 2;
+
+	private final File file;
+	private final DeviceProfile profile;
+	private final int imageSize;
+	private final Map<String, KeyAsset> assets;
+
+	private AssetPack(File file, DeviceProfile profile, int imageSize, Map<String, KeyAsset> assets) {
+		this.file = file;
+		this.profile = profile;
+		this.imageSize = imageSize;
+		this.assets = assets;
+	}
+
+	/**
+	 * Memory map a asset pack, and make sure its images can be sent to a model of deck
+	 * @param file the pack file
+	 * @param profile the model the images are going to be sent to, see {@link org.golde.streamdeck.IStreamDeck#getProfile()}
+	 * @return the loaded pack
+	 * @throws IOException thrown if the file can't be read, is not a valid asset pack, or was built for a different model
+	 */
+	public static AssetPack load(File file, DeviceProfile profile) throws IOException {
+		AssetPack pack = load(file);
+		if(!pack.fits(profile)) {
+			throw new IOException("Asset pack " + file + " was built for a " + pack.getProfile().getName() + ", not a " + profile.getName());
+		}
+		return pack;
+	}
+
+	/**
+	 * Memory map a asset pack. The file must not be changed while the pack is in use.
+	 * @param file the pack file
+	 * @return the loaded pack
+	 * @throws IOException thrown if the file can't be read, or is not a valid asset pack
+	 */
+	public static AssetPack load(File file) throws IOException {
+		MappedByteBuffer map;
+		//The mapping stays valid after the channel is closed
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Asset pack " + file + " is bigger than 2GB");
+			}
+			map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		try {
+			if(map.getInt() != MAGIC) {
+				throw new IOException(file + " is not a asset pack");
+			}
+			short version = map.getShort();
+			if(version < 1 || version > VERSION) {
+				throw new IOException("Unsupported asset pack version " + version + " in " + file);
+			}
+			int imageSize = map.getShort();
+			DeviceProfile profile = DeviceProfile.XL;
+			if(version >= 2) {
+				int productId = map.getShort() & 0xFFFF;
+				profile = DeviceProfile.forProductId(productId);
+				if(profile == null) {
+					throw new IOException("Asset pack " + file + " is for a unknown model, product id " + productId);
+				}
+			}
+			int count = map.getInt();
+
+			Map<String, KeyAsset> assets = new LinkedHashMap<String, KeyAsset>();
+			for(int i = 0; i < count; i++) {
+				byte[] nameBytes = new byte[map.getShort() & 0xFFFF];
+				map.get(nameBytes);
+				String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+				int frameCount = map.getInt();
+				if(frameCount <= 0) {
+					throw new IOException("Asset " + name + " in " + file + " has no frames");
+				}
+				//Every frame takes 12 bytes of index, a bigger count can only come from a broken file
+				if(frameCount > map.remaining() / 12) {
+					throw new IOException("Asset pack " + file + " is corrupt, asset " + name + " says it has " + frameCount + " frames");
+				}
+				EncodedKeyImage[] frames = new EncodedKeyImage[frameCount];
+				int[] delays = new int[frameCount];
+				for(int f = 0; f < frameCount; f++) {
+					int offset = map.getInt();
+					int length = map.getInt();
+					delays[f] = map.getInt();
+					frames[f] = EncodedKeyImage.of(slice(map, offset, length));
+				}
+
+				assets.put(name, new KeyAsset(name, frames, delays));
+			}
+
+			return new AssetPack(file, profile, imageSize, Collections.unmodifiableMap(assets));
+		}
+		catch(RuntimeException e) {
+			//BufferUnderflowException or IndexOutOfBoundsException, the index points outside the file
+			throw new IOException("Asset pack " + file + " is corrupt", e);
+		}
+	}
+
+	/**
+	 * Get a asset by name
+	 * @param name name of the asset, see {@link KeyAsset#getName()}
+	 * @return the asset, or null if the pack doesn't have it
+	 */
+	public KeyAsset get(String name) {
+		return assets.get(name);
+	}
+
+	/**
+	 * Get the first frame of a asset
+	 * @param name name of the asset, see {@link KeyAsset#getName()}
+	 * @return the encoded image, or null if the pack doesn't have it
+	 */
+	public EncodedKeyImage getImage(String name) {
+		KeyAsset asset = assets.get(name);
+		return asset == null ? null : asset.getImage();
+	}
+
+	/**
+	 * @return the names of every asset in the pack, in the order they are stored
+	 */
+	public Set<String> getNames() {
+		return assets.keySet();
+	}
+
+	/**
+	 * @return number of assets in the pack
+	 */
+	public int size() {
+		return assets.size();
+	}
+
+	/**
+	 * @return width and height of every image in the pack
+	 */
+	public int getImageSize() {
+		return imageSize;
+	}
+
+	/**
+	 * @return the model the images in the pack are encoded for
+	 */
+	public DeviceProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Check if the images in the pack can be sent to a model of deck. Models with the same key size, image format and rotation take the same images.
+	 * @param profile the model
+	 * @return true if the images can be sent to it
+	 */
+	public boolean fits(DeviceProfile profile) {
+		return profile == this.profile || (profile.getKeySize() == this.profile.getKeySize() && profile.getImageFormat() == this.profile.getImageFormat()
+				&& profile.getRotation() == this.profile.getRotation() && profile.isFlippedHorizontally() == this.profile.isFlippedHorizontally()
+				&& profile.isFlippedVertically() == this.profile.isFlippedVertically());
+	}
+
+	/**
+	 * @return the file the pack was loaded from
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private static ByteBuffer slice(ByteBuffer map, int offset, int length) {
+		if(offset < 0 || length <= 0 || offset > map.capacity() - length) {
+			throw new IndexOutOfBoundsException("Frame at " + offset + " with length " + length + " is outside of the pack");
+		}
+		ByteBuffer frame = map.duplicate();
+		frame.position(offset);
+		frame.limit(offset + length);
+		return frame;
+	}
+
+}
@@ -0,0 +1,292 @@
+package org.golde.streamdeck.assets;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.golde.streamdeck.DeviceProfile;
+import org.golde.streamdeck.helpers.Gif;
+import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.helpers.TileView;
+
+/**
+ * Compiles images into a {@link AssetPack}. Every image is scaled to the key size, rotated and encoded once, here,
+ * instead of every time the program starts.
+ *
+ * A pack is built for one model of deck, and remembers which one. The model defaults to the XL.
+ *
+ * Can be run from the command line: AssetPackBuilder &lt;image directory&gt; &lt;pack file&gt; [model, like XL, Mini or MK.2]
+ * @author Eric Golde
+ *
+ */
+public class AssetPackBuilder {
+
+	private static final String[] STILL_EXTENSIONS = {".png", ".jpg", ".jpeg", ".bmp"};
+	private static final String GIF_EXTENSION = ".gif";
+
+	private final DeviceProfile profile;
+	private final int imageSize;
+	private final Map<String, CompiledAsset> assets = new ConcurrentHashMap<String, CompiledAsset>();
+
+	/**
+	 * Create a builder for the StreamDeck XL
+	 */
+	public AssetPackBuilder() {
+		this(DeviceProfile.XL);
+	}
+
+	/**
+	 * Create a builder for a model of deck. Images are scaled to its key size and encoded the way it wants them.
+	 * @param profile the model the pack is for
+	 */
+	public AssetPackBuilder(DeviceProfile profile) {
+		this.profile = profile;
+		this.imageSize = profile.getKeySize();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length != 2 && args.length != 3) {
+			System.err.println("Usage: AssetPackBuilder <image directory> <pack file> [model]");
+			System.exit(1);
+		}
+
+		DeviceProfile profile = DeviceProfile.XL;
+		if(args.length == 3) {
+			profile = findProfile(args[2]);
+			if(profile == null) {
+				System.err.println("Unknown model " + args[2] + ", expected one of " + DeviceProfile.values());
+				System.exit(1);
+			}
+		}
+
+		long start = System.currentTimeMillis();
+		AssetPackBuilder builder = new AssetPackBuilder(profile);
+		builder.addDirectory(new File(args[0]));
+		long bytes = builder.write(new File(args[1]));
+		System.out.println("Packed " + builder.size() + " assets into " + args[1] + " (" + bytes + " bytes) in " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	/**
+	 * Add a still image. It is scaled to the key size if needed. Safe to call from many threads at once.
+	 * @param name name to store the image as
+	 * @param image the image
+	 */
+	public void addImage(String name, BufferedImage image) {
+		assets.put(name, new CompiledAsset(new byte[][] {encode(image)}, new int[] {0}));
+	}
+
+	/**
+	 * Add a animation. Every frame is scaled to the key size if needed. Safe to call from many threads at once.
+	 * @param name name to store the animation as
+	 * @param frames the frames of the animation
+	 * @param delayMillis how long every frame is shown for
+	 */
+	public void addAnimation(String name, BufferedImage[] frames, int delayMillis) {
+		byte[][] encoded = new byte[frames.length][];
+		int[] delays = new int[frames.length];
+		for(int i = 0; i < frames.length; i++) {
+			encoded[i] = encode(frames[i]);
+			delays[i] = delayMillis;
+		}
+		assets.put(name, new CompiledAsset(encoded, delays));
+	}
+
+	/**
+	 * Add every image in a directory and its sub directories. Images are compiled in parallel, on every core.
+	 * The name of each asset is its path relative to the directory, without the extension, for example "media/play"
+	 * @param directory the directory
+	 * @throws IOException thrown if the directory or one of the images can't be read
+	 */
+	public void addDirectory(File directory) throws IOException {
+		Path root = directory.toPath();
+
+		List<Path> files;
+		try(Stream<Path> walk = Files.walk(root)) {
+			files = walk.filter(Files::isRegularFile).filter(path -> isImage(path.toString())).collect(Collectors.toList());
+		}
+
+		try {
+			files.parallelStream().forEach(path -> {
+				String relative = root.relativize(path).toString().replace(File.separatorChar, '/');
+				String name = relative.substring(0, relative.lastIndexOf('.'));
+				try {
+					addFile(name, path.toFile());
+				}
+				catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+		catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Add a single image or gif file
+	 * @param name name to store the image as
+	 * @param file the image
+	 * @throws IOException thrown if the image can't be read
+	 */
+	public void addFile(String name, File file) throws IOException {
+		if(file.getName().toLowerCase().endsWith(GIF_EXTENSION)) {
+			Gif gif = new Gif(file);
+			addAnimation(name, gif.getFrames(), (int) gif.getMillisBetweenFrames());
+		}
+		else if(isJpeg(file.getName())) {
+			//Rotated without decoding if possible, so it doesn't lose any quality
+			byte[] jpeg = Files.readAllBytes(file.toPath());
+			byte[] encoded;
+			try {
+				encoded = profile.encode(jpeg).toByteArray();
+			}
+			catch(IllegalArgumentException e) {
+				throw new IOException("Can't read image " + file, e);
+			}
+			assets.put(name, new CompiledAsset(new byte[][] {encoded}, new int[] {0}));
+		}
+		else {
+			BufferedImage image = ImageIO.read(file);
+			if(image == null) {
+				throw new IOException("Can't read image " + file);
+			}
+			addImage(name, image);
+		}
+	}
+
+	/**
+	 * @return the model the pack is for
+	 */
+	public DeviceProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * @return number of assets added so far
+	 */
+	public int size() {
+		return assets.size();
+	}
+
+	/**
+	 * Write every asset added so far into a pack. Assets are stored sorted by name, so the same images always make the same file.
+	 * @param pack the file to write
+	 * @return the size of the pack in bytes
+	 * @throws IOException thrown if the file can't be written
+	 */
+	public long write(File pack) throws IOException {
+		Map<String, CompiledAsset> sorted = new TreeMap<String, CompiledAsset>(assets);
+
+		//Work out how big the index is, so we know where the JPEG data starts
+		List<byte[]> names = new ArrayList<byte[]>();
+		long indexEnd = 4 + 2 + 2 + 2 + 4;
+		for(Map.Entry<String, CompiledAsset> entry : sorted.entrySet()) {
+			byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			if(name.length > 0xFFFF) {
+				throw new IOException("Asset name is too long: " + entry.getKey());
+			}
+			names.add(name);
+			indexEnd += 2 + name.length + 4 + entry.getValue().frames.length * 12L;
+		}
+
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pack)))) {
+			out.writeInt(AssetPack.MAGIC);
+			out.writeShort(AssetPack.VERSION);
+			out.writeShort(imageSize);
+			out.writeShort(profile.getProductIds()[0]);
+			out.writeInt(sorted.size());
+
+			long offset = indexEnd;
+			int i = 0;
+			for(CompiledAsset asset : sorted.values()) {
+				byte[] name = names.get(i++);
+				out.writeShort(name.length);
+				out.write(name);
+				out.writeInt(asset.frames.length);
+				for(int f = 0; f < asset.frames.length; f++) {
+					if(offset + asset.frames[f].length > Integer.MAX_VALUE) {
+						throw new IOException("Asset pack would be bigger than 2GB");
+					}
+					out.writeInt((int) offset);
+					out.writeInt(asset.frames[f].length);
+					out.writeInt(asset.delays[f]);
+					offset += asset.frames[f].length;
+				}
+			}
+
+			for(CompiledAsset asset : sorted.values()) {
+				for(byte[] frame : asset.frames) {
+					out.write(frame);
+				}
+			}
+
+			return offset;
+		}
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private byte[] encode(BufferedImage image) {
+		if(image.getWidth() != imageSize || image.getHeight() != imageSize) {
+			image = ImageUtilities.scaleImage(image, imageSize, imageSize);
+		}
+		return profile.encode(TileView.of(image)).toByteArray();
+	}
+
+	/**
+	 * Find a model by its name, with or without "Stream Deck" in front, ignoring case
+	 */
+	private static DeviceProfile findProfile(String name) {
+		for(DeviceProfile profile : DeviceProfile.values()) {
+			if(profile.getName().equalsIgnoreCase(name) || profile.getName().equalsIgnoreCase("Stream Deck " + name)) {
+				return profile;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isJpeg(String fileName) {
+		String lower = fileName.toLowerCase();
+		return lower.endsWith(".jpg") || lower.endsWith(".jpeg");
+	}
+
+	private static boolean isImage(String fileName) {
+		String lower = fileName.toLowerCase();
+		if(lower.endsWith(GIF_EXTENSION)) {
+			return true;
+		}
+		for(String extension : STILL_EXTENSIONS) {
+			if(lower.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static class CompiledAsset {
+		final byte[][] frames;
+		final int[] delays;
+
+		CompiledAsset(byte[][] frames, int[] delays) {
+			this.frames = frames;
+			this.delays = delays;
+		}
+	}
+
+}
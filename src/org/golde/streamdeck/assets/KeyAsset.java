@@ -0,0 +1,106 @@
+package org.golde.streamdeck.assets;
+
+import org.golde.streamdeck.EncodedKeyImage;
+
+/**
+ * A icon or animation out of a {@link AssetPack}. Every frame is already rotated and encoded,
+ * and points straight into the mapped pack, so sending one costs no decoding and no copying into the heap.
+ * @author Eric Golde
+ *
+ */
+public final class KeyAsset {
+
+	private final String name;
+	private final EncodedKeyImage[] frames;
+	private final int[] delays;
+	private final long duration;
+
+	KeyAsset(String name, EncodedKeyImage[] frames, int[] delays) {
+		this.name = name;
+		this.frames = frames;
+		this.delays = delays;
+
+		long total = 0;
+		for(int delay : delays) {
+			total += delay;
+		}
+		this.duration = total;
+	}
+
+	/**
+	 * Get the name of the asset. This is the path of the source image relative to the directory the pack was built from,
+	 * without the file extension, using / as the separator. For example "media/play"
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return number of frames. 1 for a still image
+	 */
+	public int getFrameCount() {
+		return frames.length;
+	}
+
+	/**
+	 * @return true if the asset has more than one frame
+	 */
+	public boolean isAnimated() {
+		return frames.length > 1;
+	}
+
+	/**
+	 * Get the first frame. For still images this is the only frame.
+	 * @return the encoded frame, ready to be passed to {@link org.golde.streamdeck.IStreamDeck#setKey(int, EncodedKeyImage)}
+	 */
+	public EncodedKeyImage getImage() {
+		return frames[0];
+	}
+
+	/**
+	 * Get a specific frame
+	 * @param frame index of the frame
+	 * @return the encoded frame
+	 */
+	public EncodedKeyImage getFrame(int frame) {
+		return frames[frame];
+	}
+
+	/**
+	 * Get how long a frame should be shown for
+	 * @param frame index of the frame
+	 * @return the delay in millis. 0 for still images
+	 */
+	public int getDelay(int frame) {
+		return delays[frame];
+	}
+
+	/**
+	 * Get the frame that should be showing a amount of time after the animation started. The animation loops forever.
+	 * @param elapsedMillis millis since the animation started
+	 * @return the index of the frame
+	 */
+	public int getFrameIndexAt(long elapsedMillis) {
+		if(duration <= 0) {
+			return 0;
+		}
+		long time = elapsedMillis % duration;
+		for(int i = 0; i < delays.length; i++) {
+			time -= delays[i];
+			if(time < 0) {
+				return i;
+			}
+		}
+		return delays.length - 1;
+	}
+
+	/**
+	 * Get the total length of one loop of the animation
+	 * @return length in millis. 0 for still images
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+}
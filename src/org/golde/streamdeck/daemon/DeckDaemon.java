@@ -0,0 +1,525 @@
+package org.golde.streamdeck.daemon;
+
+import java.awt.image.BufferedImage;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.golde.streamdeck.DeviceProfile;
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.IStreamDeckListener;
+import org.golde.streamdeck.StreamDeckKeyState.State;
+import org.golde.streamdeck.WritePriority;
+
+/**
+ * Owns a deck and shares it with other programs over a Unix domain socket. Only one program can open the HID device,
+ * so the daemon opens it, and every program that wants some keys connects with a {@link RemoteStreamDeck}.
+ *
+ * Clients lease keys. A key belongs to one client at a time, only that client can draw on it and it only hears about presses
+ * of its own keys. Leases end when the client releases them or disconnects. Images come in already encoded, so the daemon
+ * only passes them on to the deck, or as raw pixels for clients that would rather not encode themselves.
+ * See {@link Protocol} for the messages.
+ *
+ * Every client gets a thread that reads its messages, and one that writes replies and key events to it. The threads that have those,
+ * like the key reader and the writer thread of the deck, only queue them, so a client that stops reading never holds up the deck
+ * or the other clients. A client with more than {@value #MAX_QUEUED} bytes waiting is disconnected; {@link RemoteStreamDeck} always reads.
+ * Anybody who can open the socket file can use the deck, so put it somewhere only the right users can get to.
+ * @author Eric Golde
+ *
+ */
+public class DeckDaemon {
+
+	//A client with more than this waiting to be sent is not reading, and is disconnected
+	private static final int MAX_QUEUED = 64 * 1024;
+	//The biggest reply the daemon sends
+	private static final int MAX_MESSAGE = 1024;
+
+	private final IStreamDeck deck;
+	private final DeviceProfile profile;
+	private final Path socket;
+
+	private ServerSocketChannel server;
+	private Thread acceptThread;
+	private volatile boolean running = false;
+	private String serialNumber;
+	private String firmwareVersion;
+
+	//Guarded by this
+	private final List<Session> sessions = new ArrayList<Session>();
+	private final Session[] owners;
+	private final IStreamDeckListener listener = new KeyForwarder();
+
+	private final AtomicLong tilesWritten = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicInteger sessionCount = new AtomicInteger();
+
+	/**
+	 * Create a daemon. Call {@link #start()} to start listening.
+	 * @param deck the deck to share, already connected
+	 * @param socket where to put the socket file. A file that is already there is replaced
+	 */
+	public DeckDaemon(IStreamDeck deck, Path socket) {
+		if(deck.getProfile().getNumberOfKeys() > 64) {
+			throw new IllegalArgumentException("Expected a deck with 64 keys or less");
+		}
+		this.deck = deck;
+		this.profile = deck.getProfile();
+		this.socket = socket;
+		this.owners = new Session[profile.getNumberOfKeys()];
+	}
+
+	/**
+	 * Start listening for clients
+	 * @throws IOException if the socket can't be created
+	 */
+	public synchronized void start() throws IOException {
+		if(running) {
+			return;
+		}
+		serialNumber = deck.getSerialNumber();
+		firmwareVersion = deck.getFirmwareVersion();
+
+		Files.deleteIfExists(socket);
+		server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		server.bind(UnixDomainSocketAddress.of(socket));
+		deck.registerKeyListener(listener);
+
+		running = true;
+		acceptThread = new Thread(this::acceptClients);
+		acceptThread.setName("StreamDeck daemon");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+	}
+
+	/**
+	 * Disconnect every client and remove the socket file. The deck stays connected.
+	 */
+	public void stop() {
+		List<Session> open;
+		synchronized (this) {
+			if(!running) {
+				return;
+			}
+			running = false;
+			open = new ArrayList<Session>(sessions);
+		}
+		deck.unRegisterKeyListener(listener);
+		try {
+			server.close();
+			acceptThread.join();
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for(Session session : open) {
+			session.close();
+		}
+		try {
+			Files.deleteIfExists(socket);
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return number of connected clients
+	 */
+	public int getClientCount() {
+		return sessionCount.get();
+	}
+
+	/**
+	 * @return number of images clients sent that made it to the deck
+	 */
+	public long getTilesWritten() {
+		return tilesWritten.get();
+	}
+
+	/**
+	 * @return number of images that were thrown away because the client did not lease the key
+	 */
+	public long getRejectedTiles() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return number of clients that were disconnected because they stopped reading
+	 */
+	public long getDroppedClients() {
+		return dropped.get();
+	}
+
+	/**
+	 * Get who has a key
+	 * @param key the key
+	 * @return the name the client connected with, or null if nobody leased the key
+	 */
+	public synchronized String getLeaseHolder(int key) {
+		return owners[key] == null ? null : owners[key].name;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private void acceptClients() {
+		int count = 0;
+		while(running) {
+			try {
+				SocketChannel channel = server.accept();
+				Session session = new Session(channel);
+				synchronized (this) {
+					if(!running) {
+						channel.close();
+						break;
+					}
+					sessions.add(session);
+				}
+				sessionCount.incrementAndGet();
+				count++;
+				Thread thread = new Thread(session);
+				thread.setName("StreamDeck daemon client #" + count);
+				thread.setDaemon(true);
+				thread.start();
+				Thread writer = new Thread(session::writeMessages);
+				writer.setName("StreamDeck daemon client #" + count + " writer");
+				writer.setDaemon(true);
+				writer.start();
+			}
+			catch (ClosedChannelException e) {
+				break;
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Lease every key in a mask that is free
+	 * @return every key the session has now, none once it is closed
+	 */
+	private synchronized long lease(Session session, long keys) {
+		//A slow client can be closed by another thread while its reader still has messages to handle
+		if(!sessions.contains(session)) {
+			return 0;
+		}
+		long held = 0;
+		for(int key = 0; key < owners.length; key++) {
+			if((keys & (1L << key)) != 0 && owners[key] == null) {
+				owners[key] = session;
+			}
+			if(owners[key] == session) {
+				held |= 1L << key;
+			}
+		}
+		session.leased = held;
+		return held;
+	}
+
+	private synchronized void release(Session session, long keys) {
+		for(int key = 0; key < owners.length; key++) {
+			if((keys & (1L << key)) != 0 && owners[key] == session) {
+				owners[key] = null;
+			}
+		}
+		session.leased &= ~keys;
+	}
+
+	private synchronized Session getOwner(int key) {
+		return owners[key];
+	}
+
+	private void removed(Session session) {
+		synchronized (this) {
+			if(!sessions.remove(session)) {
+				return;
+			}
+			release(session, -1L);
+		}
+		sessionCount.decrementAndGet();
+	}
+
+	/**
+	 * One connected client
+	 */
+	private class Session implements Runnable {
+
+		private final SocketChannel channel;
+		//Replies and events waiting for the writer thread, and the ones it is writing right now. Guarded by outLock
+		private final Object outLock = new Object();
+		private ByteBuffer out = ByteBuffer.allocate(MAX_QUEUED);
+		private ByteBuffer sending = ByteBuffer.allocate(MAX_QUEUED);
+		private boolean closed = false;
+		private String name = "";
+		//Guarded by DeckDaemon.this
+		private long leased = 0;
+		private volatile boolean subscribed = false;
+
+		Session(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public void run() {
+			Protocol.FrameReader reader = new Protocol.FrameReader(channel);
+			try {
+				while(true) {
+					ByteBuffer frame = reader.next();
+					handle(frame.get(), frame);
+				}
+			}
+			catch (EOFException | ClosedChannelException e) {
+				//Client went away
+			}
+			catch (IOException | RuntimeException e) {
+				if(running) {
+					e.printStackTrace();
+				}
+			}
+			finally {
+				close();
+			}
+		}
+
+		private void handle(byte type, ByteBuffer in) throws IOException {
+			switch(type) {
+			case Protocol.HELLO:
+				int version = in.getInt();
+				if(version != Protocol.VERSION) {
+					throw new IOException("Client speaks protocol version " + version + ", expected " + Protocol.VERSION);
+				}
+				long keys = in.getLong();
+				name = Protocol.getString(in);
+				long held = lease(this, keys);
+				synchronized (outLock) {
+					if(reserve()) {
+						int start = Protocol.begin(out, Protocol.WELCOME);
+						out.putInt(profile.getProductIds()[0]);
+						out.putLong(held);
+						Protocol.putString(out, serialNumber);
+						Protocol.putString(out, firmwareVersion);
+						Protocol.end(out, start);
+					}
+				}
+				break;
+
+			case Protocol.LEASE:
+				long id = in.getLong();
+				long now = lease(this, in.getLong());
+				synchronized (outLock) {
+					if(reserve()) {
+						int start = Protocol.begin(out, Protocol.LEASED);
+						out.putLong(id);
+						out.putLong(now);
+						Protocol.end(out, start);
+					}
+				}
+				break;
+
+			case Protocol.RELEASE:
+				release(this, in.getLong());
+				break;
+
+			case Protocol.TILE:
+				id = in.getLong();
+				int key = in.get();
+				WritePriority priority = WritePriority.values()[in.get()];
+				//The frame buffer is reused for the next message, but the deck holds onto the image until it is written
+				byte[] data = new byte[in.remaining()];
+				in.get(data);
+				write(id, key, EncodedKeyImage.of(data), priority);
+				break;
+
+			case Protocol.RAW:
+				id = in.getLong();
+				key = in.get();
+				priority = WritePriority.values()[in.get()];
+				int width = in.getShort();
+				int height = in.getShort();
+				if(in.remaining() != width * height * 4) {
+					throw new IOException("Expected " + width * height + " pixels");
+				}
+				if(!owns(key)) {
+					done(id, Protocol.STATUS_NOT_LEASED);
+					break;
+				}
+				BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+				int[] pixels = new int[width * height];
+				in.asIntBuffer().get(pixels);
+				img.setRGB(0, 0, width, height, pixels, 0, width);
+				write(id, key, deck.encodeKey(img), priority);
+				break;
+
+			case Protocol.SUBSCRIBE:
+				subscribed = in.get() != 0;
+				break;
+
+			case Protocol.INJECT:
+				key = in.get();
+				if(owns(key)) {
+					deck.injectKeyState(key, in.get() != 0 ? State.PRESSED : State.RELEASED);
+				}
+				break;
+
+			case Protocol.BRIGHTNESS:
+				deck.setBrightness(in.get());
+				break;
+
+			default:
+				throw new IOException("Unknown message " + type);
+			}
+		}
+
+		private boolean owns(int key) {
+			return key >= 0 && key < owners.length && getOwner(key) == this;
+		}
+
+		private void write(long id, int key, EncodedKeyImage img, WritePriority priority) {
+			if(!owns(key)) {
+				rejected.incrementAndGet();
+				done(id, Protocol.STATUS_NOT_LEASED);
+				return;
+			}
+			CompletableFuture<Void> written = deck.submitKey(key, img, priority);
+			//Completes on the writer thread of the deck, which only queues the reply
+			written.whenComplete((v, error) -> {
+				if(error == null) {
+					tilesWritten.incrementAndGet();
+				}
+				done(id, error == null ? Protocol.STATUS_OK : Protocol.STATUS_FAILED);
+			});
+		}
+
+		private void done(long id, byte status) {
+			synchronized (outLock) {
+				if(reserve()) {
+					int start = Protocol.begin(out, Protocol.DONE);
+					out.putLong(id);
+					out.put(status);
+					Protocol.end(out, start);
+				}
+			}
+		}
+
+		void keyChanged(int key, State state, int mask) {
+			//Only tell the client about its own keys
+			int own = mask & (int) leasedNow();
+			synchronized (outLock) {
+				if(reserve()) {
+					int start = Protocol.begin(out, Protocol.KEY);
+					out.put((byte) key);
+					out.put((byte) (state == State.PRESSED ? 1 : 0));
+					out.putInt(own);
+					Protocol.end(out, start);
+				}
+			}
+		}
+
+		private long leasedNow() {
+			synchronized (DeckDaemon.this) {
+				return leased;
+			}
+		}
+
+		/**
+		 * Make sure the next message fits in the out buffer, and wake up the writer thread for it. Called holding outLock.
+		 * @return false if the session is closed, or if the client stopped reading and is disconnected now
+		 */
+		private boolean reserve() {
+			if(closed) {
+				return false;
+			}
+			if(out.remaining() < MAX_MESSAGE) {
+				dropped.incrementAndGet();
+				//Closing the channel also stops a writer thread that is stuck writing to it
+				close();
+				return false;
+			}
+			outLock.notifyAll();
+			return true;
+		}
+
+		/**
+		 * Write the queued replies and events to the client, as many at once as there are
+		 */
+		void writeMessages() {
+			try {
+				while(true) {
+					synchronized (outLock) {
+						while(!closed && out.position() == 0) {
+							outLock.wait();
+						}
+						if(closed) {
+							return;
+						}
+						ByteBuffer queued = out;
+						out = sending;
+						sending = queued;
+					}
+					sending.flip();
+					Protocol.writeFully(channel, sending);
+					sending.clear();
+				}
+			}
+			catch (IOException | InterruptedException e) {
+				//Client went away, or the session was closed while writing
+			}
+			finally {
+				close();
+			}
+		}
+
+		void close() {
+			synchronized (outLock) {
+				closed = true;
+				outLock.notifyAll();
+			}
+			removed(this);
+			try {
+				channel.close();
+			}
+			catch (IOException e) {
+				//Closed anyways
+			}
+		}
+
+	}
+
+	/**
+	 * Hands key presses to the client that leased the key
+	 */
+	private class KeyForwarder implements IStreamDeckListener {
+
+		@Override
+		public void keyStateChanged(int key, State state) {
+			keyStateChanged(key, state, 0, System.nanoTime());
+		}
+
+		@Override
+		public void keyStateChanged(int key, State state, int mask, long nanoTime) {
+			Session owner = key < owners.length ? getOwner(key) : null;
+			if(owner != null && owner.subscribed) {
+				owner.keyChanged(key, state, mask);
+			}
+		}
+
+	}
+
+}
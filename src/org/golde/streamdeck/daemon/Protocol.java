@@ -0,0 +1,179 @@
+package org.golde.streamdeck.daemon;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The messages between a {@link DeckDaemon} and a {@link RemoteStreamDeck}.
+ *
+ * Every message is a frame: a int with the length of the rest of the frame, a byte with the type, and the fields of the type,
+ * big endian. Key images are sent as they are, right after the header, so they are never copied into a bigger buffer.
+ *
+ * <pre>
+ * Client to daemon
+ * HELLO      int version, long keys to lease, string name
+ * LEASE      long id, long keys
+ * RELEASE    long keys
+ * TILE       long id, byte key, byte priority, bytes encoded image
+ * RAW        long id, byte key, byte priority, short width, short height, int[] ARGB pixels
+ * SUBSCRIBE  byte 1 to get key events, 0 to stop
+ * INJECT     byte key, byte 1 pressed or 0 released
+ * BRIGHTNESS byte percentage
+ *
+ * Daemon to client
+ * WELCOME    int product ID, long leased keys, string serial number, string firmware version
+ * LEASED     long id, long every key the client has now
+ * DONE       long id, byte status
+ * KEY        byte key, byte 1 pressed or 0 released, int every key that is down
+ * </pre>
+ * A string is a short with the number of UTF-8 bytes, then the bytes. Keys are leased as a bit mask, bit n is key n.
+ * @author Eric Golde
+ *
+ */
+final class Protocol {
+
+	static final int VERSION = 1;
+	//Biggest frame either side accepts, a raw image of a key is well under this
+	static final int MAX_FRAME = 1024 * 1024;
+
+	static final byte HELLO = 1;
+	static final byte LEASE = 2;
+	static final byte RELEASE = 3;
+	static final byte TILE = 4;
+	static final byte RAW = 5;
+	static final byte SUBSCRIBE = 6;
+	static final byte INJECT = 7;
+	static final byte BRIGHTNESS = 8;
+
+	static final byte WELCOME = 64;
+	static final byte LEASED = 65;
+	static final byte DONE = 66;
+	static final byte KEY = 67;
+
+	static final byte STATUS_OK = 0;
+	static final byte STATUS_NOT_LEASED = 1;
+	static final byte STATUS_FAILED = 2;
+
+	private Protocol() {
+	}
+
+	/**
+	 * Start a frame in a buffer. Call {@link #end(ByteBuffer, int)} once the fields are in.
+	 * @return where the frame starts
+	 */
+	static int begin(ByteBuffer out, byte type) {
+		int start = out.position();
+		out.putInt(0);
+		out.put(type);
+		return start;
+	}
+
+	/**
+	 * Fill in the length of a frame
+	 * @param extra bytes that come after the buffer, like a image that is written with it
+	 */
+	static void end(ByteBuffer out, int start, int extra) {
+		out.putInt(start, out.position() - start - 4 + extra);
+	}
+
+	static void end(ByteBuffer out, int start) {
+		end(out, start, 0);
+	}
+
+	static void putString(ByteBuffer out, String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.putShort((short) bytes.length);
+		out.put(bytes);
+	}
+
+	static String getString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getShort() & 0xFFFF];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write buffers to a blocking channel, all of them
+	 */
+	static void writeFully(SocketChannel channel, ByteBuffer... buffers) throws IOException {
+		ByteBuffer last = buffers[buffers.length - 1];
+		while(last.hasRemaining()) {
+			channel.write(buffers);
+		}
+	}
+
+	/**
+	 * Reads frames from a blocking channel. Reads as much as the channel has at once, so a burst of small frames is one system call.
+	 */
+	static class FrameReader {
+
+		private final SocketChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+		private int frameEnd = 0;
+
+		FrameReader(SocketChannel channel) {
+			this.channel = channel;
+			buffer.flip();
+		}
+
+		/**
+		 * Wait for the next frame
+		 * @return the frame, positioned at the type byte, valid until next() is called again
+		 * @throws EOFException if the other side went away
+		 */
+		ByteBuffer next() throws IOException {
+			buffer.position(frameEnd);
+
+			fill(4);
+			int length = buffer.getInt(buffer.position());
+			if(length <= 0 || length > MAX_FRAME) {
+				throw new IOException("Bad frame length " + length);
+			}
+			fill(4 + length);
+
+			int start = buffer.position() + 4;
+			frameEnd = start + length;
+			ByteBuffer frame = buffer.duplicate();
+			frame.position(start);
+			frame.limit(frameEnd);
+			return frame;
+		}
+
+		/**
+		 * Make sure the buffer has at least this many bytes after the position
+		 */
+		private void fill(int needed) throws IOException {
+			if(buffer.remaining() >= needed) {
+				return;
+			}
+			if(buffer.capacity() - buffer.position() < needed) {
+				//Move what is left to the front, into a bigger buffer if the frame doesn't fit
+				if(needed > buffer.capacity()) {
+					ByteBuffer bigger = ByteBuffer.allocateDirect(Integer.highestOneBit(needed - 1) << 1);
+					bigger.put(buffer);
+					buffer = bigger;
+				}
+				else {
+					buffer.compact();
+				}
+				buffer.flip();
+				frameEnd = 0;
+			}
+			int start = buffer.position();
+			buffer.position(buffer.limit());
+			buffer.limit(buffer.capacity());
+			while(buffer.position() - start < needed) {
+				if(channel.read(buffer) < 0) {
+					throw new EOFException();
+				}
+			}
+			buffer.limit(buffer.position());
+			buffer.position(start);
+		}
+
+	}
+
+}
@@ -0,0 +1,685 @@
+package org.golde.streamdeck.daemon;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.golde.streamdeck.DeviceProfile;
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.IStreamDeckListener;
+import org.golde.streamdeck.KeyCanvas;
+import org.golde.streamdeck.KeyCanvasPool;
+import org.golde.streamdeck.KeyEventPublisher;
+import org.golde.streamdeck.StreamDeckKeyState.State;
+import org.golde.streamdeck.WritePriority;
+import org.golde.streamdeck.WriteScheduler;
+import org.golde.streamdeck.helpers.Gif;
+import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.helpers.TileView;
+
+/**
+ * A deck that is owned by a {@link DeckDaemon} in another program. It works like a deck that is plugged in,
+ * except that it can only draw on the keys it leased, and only hears about presses of those keys.
+ *
+ * Images are encoded in this program, like they are for a local deck, and sent to the daemon as they are. A local
+ * {@link WriteScheduler} decides what to send next, and waits for the daemon to say each image is on the device before sending
+ * the next one, so a fast animation can't pile up in the socket and writes finish when they would on a local deck.
+ *
+ * Listeners run on a thread of their own, not on the one that reads from the daemon, so they can draw on a key and wait for it
+ * like they do on a local deck. The answer they wait for comes in on the reader.
+ * @author Eric Golde
+ *
+ */
+public class RemoteStreamDeck implements IStreamDeck {
+
+	private final Path socket;
+	private final long requestedKeys;
+	private final String name;
+
+	private SocketChannel channel;
+	private Thread reader;
+	private volatile Thread dispatcher;
+	private volatile boolean connected = false;
+
+	private DeviceProfile profile;
+	private String serialNumber;
+	private String firmwareVersion;
+	private volatile long leasedKeys = 0;
+
+	private final ArrayList<IStreamDeckListener> listeners = new ArrayList<IStreamDeckListener>();
+	//Key changes read from the daemon, waiting for the dispatcher. Guarded by itself
+	private final ArrayDeque<KeyChange> events = new ArrayDeque<KeyChange>();
+	private final KeyEventPublisher keyEvents = new KeyEventPublisher(this);
+	private WriteScheduler scheduler;
+	private KeyCanvasPool canvases;
+	//What the last image submitted for every key asked for, so the daemon can put it in line the same way
+	private WritePriority[] priorities;
+
+	//Guarded by out
+	private final ByteBuffer out = ByteBuffer.allocateDirect(1024);
+	private final AtomicLong ids = new AtomicLong();
+	private final ConcurrentHashMap<Long, CompletableFuture<?>> waiting = new ConcurrentHashMap<Long, CompletableFuture<?>>();
+
+	/**
+	 * Create a deck that leases every key nobody else has. Call {@link #connect()} to connect.
+	 * @param socket the socket file of the daemon
+	 */
+	public RemoteStreamDeck(Path socket) {
+		this(socket, String.valueOf(ProcessHandle.current().pid()), -1L);
+	}
+
+	/**
+	 * Create a deck that leases some keys. Call {@link #connect()} to connect.
+	 * @param socket the socket file of the daemon
+	 * @param name a name for this program, shown by {@link DeckDaemon#getLeaseHolder(int)}
+	 * @param keys the keys to lease
+	 */
+	public RemoteStreamDeck(Path socket, String name, int... keys) {
+		this(socket, name, toMask(keys));
+	}
+
+	private RemoteStreamDeck(Path socket, String name, long requestedKeys) {
+		this.socket = socket;
+		this.name = name;
+		this.requestedKeys = requestedKeys;
+	}
+
+	/**
+	 * Connect to the daemon and lease the keys
+	 * @return true if the daemon answered. Check {@link #getLeasedKeys()} to see which keys were free
+	 */
+	@Override
+	public synchronized boolean connect() {
+		if(connected) {
+			return true;
+		}
+		try {
+			channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+			channel.connect(UnixDomainSocketAddress.of(socket));
+			synchronized (out) {
+				int start = Protocol.begin(out, Protocol.HELLO);
+				out.putInt(Protocol.VERSION);
+				out.putLong(requestedKeys);
+				Protocol.putString(out, name);
+				Protocol.end(out, start);
+				send();
+			}
+
+			Protocol.FrameReader frames = new Protocol.FrameReader(channel);
+			ByteBuffer welcome = frames.next();
+			if(welcome.get() != Protocol.WELCOME) {
+				throw new IOException("Expected a welcome from the daemon");
+			}
+			profile = DeviceProfile.forProductId(welcome.getInt());
+			if(profile == null) {
+				throw new IOException("The daemon has a deck this version does not know");
+			}
+			leasedKeys = welcome.getLong();
+			serialNumber = Protocol.getString(welcome);
+			firmwareVersion = Protocol.getString(welcome);
+
+			if(scheduler == null) {
+				scheduler = new WriteScheduler("StreamDeck daemon client writer", profile.getNumberOfKeys(), this::writeImage);
+				priorities = new WritePriority[profile.getNumberOfKeys()];
+				canvases = new KeyCanvasPool(this);
+			}
+			connected = true;
+			synchronized (listeners) {
+				if(!listeners.isEmpty()) {
+					subscribe(true);
+				}
+			}
+
+			synchronized (events) {
+				dispatcher = new Thread(this::dispatchEvents);
+			}
+			dispatcher.setName("StreamDeck daemon client events");
+			dispatcher.setDaemon(true);
+			dispatcher.start();
+
+			reader = new Thread(() -> readMessages(frames));
+			reader.setName("StreamDeck daemon client reader");
+			reader.setDaemon(true);
+			reader.start();
+			return true;
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			close();
+			return false;
+		}
+	}
+
+	/**
+	 * Disconnect from the daemon, which gives the keys back
+	 */
+	@Override
+	public void disconnect() {
+		if(scheduler != null) {
+			scheduler.stop();
+		}
+		close();
+	}
+
+	/**
+	 * @return true while connected to the daemon
+	 */
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/**
+	 * Lease more keys
+	 * @param keys the keys
+	 * @return true if every one of them was free
+	 */
+	public boolean lease(int... keys) {
+		long mask = toMask(keys);
+		long id = ids.incrementAndGet();
+		CompletableFuture<Long> leased = new CompletableFuture<Long>();
+		waiting.put(id, leased);
+		synchronized (out) {
+			int start = Protocol.begin(out, Protocol.LEASE);
+			out.putLong(id);
+			out.putLong(mask);
+			Protocol.end(out, start);
+			sendOrFail(id);
+		}
+		return (leased.join() & mask) == mask;
+	}
+
+	/**
+	 * Give keys back, so other programs can lease them. What is on them stays until the next owner draws on them.
+	 * @param keys the keys
+	 */
+	public void release(int... keys) {
+		long mask = toMask(keys);
+		leasedKeys &= ~mask;
+		synchronized (out) {
+			int start = Protocol.begin(out, Protocol.RELEASE);
+			out.putLong(mask);
+			Protocol.end(out, start);
+			sendOrFail(0);
+		}
+	}
+
+	/**
+	 * @return the leased keys, bit n is key n
+	 */
+	public long getLeasedKeys() {
+		return leasedKeys;
+	}
+
+	/**
+	 * @param key the key
+	 * @return true if this program leased the key
+	 */
+	public boolean isLeased(int key) {
+		return (leasedKeys & (1L << key)) != 0;
+	}
+
+	/**
+	 * Send a image without encoding it, and have the daemon encode it. Costs the daemon CPU, so only use this if this program
+	 * can't encode, or is slower at it than the daemon. Unlike {@link #submitKey(int, EncodedKeyImage, WritePriority)},
+	 * this skips the local write scheduler.
+	 * @param key key to change
+	 * @param img the image, should be the size of a key
+	 * @param priority how urgent the image is
+	 * @return a future that completes once the image is on the device
+	 */
+	public CompletableFuture<Void> submitRawKey(int key, BufferedImage img, WritePriority priority) {
+		checkKey(key);
+		int width = img.getWidth();
+		int height = img.getHeight();
+		ByteBuffer pixels = ByteBuffer.allocate(width * height * 4);
+		pixels.asIntBuffer().put(img.getRGB(0, 0, width, height, null, 0, width));
+		return send(Protocol.RAW, key, priority, pixels, b -> {
+			b.putShort((short) width);
+			b.putShort((short) height);
+		});
+	}
+
+	@Override
+	public String getSerialNumber() {
+		return serialNumber;
+	}
+
+	@Override
+	public String getFirmwareVersion() {
+		return firmwareVersion;
+	}
+
+	@Override
+	public void setKey(int key, Color color) {
+		setKey(key, color.getRGB());
+	}
+
+	@Override
+	public void setKey(int key, int hexColor) {
+		setKey(key, ImageUtilities.createSolidColorImage(profile.getKeySize(), profile.getKeySize(), hexColor));
+	}
+
+	@Override
+	public void setKey(int key, String text, Color backgroundColor) {
+		setKey(key, text, backgroundColor, ImageUtilities.getTextColorForBG(backgroundColor));
+	}
+
+	@Override
+	public void setKey(int key, String text, Color backgroundColor, Color textColor) {
+		BufferedImage img = ImageUtilities.createSolidColorImage(profile.getKeySize(), profile.getKeySize(), backgroundColor);
+		ImageUtilities.drawTextOnImage(img, text, textColor);
+		setKey(key, img);
+	}
+
+	@Override
+	public void setKey(int key, Gif img) {
+		if(img.hasTimeElapsed()) {
+			setKey(key, img.getNextAnimatableFrame());
+		}
+	}
+
+	@Override
+	public void setKey(int key, BufferedImage img) {
+		setKey(key, encodeKey(img));
+	}
+
+	@Override
+	public void setKey(int key, EncodedKeyImage img) {
+		setKey(key, img, Thread.currentThread() == dispatcher ? WritePriority.INTERACTIVE : WritePriority.NORMAL);
+	}
+
+	@Override
+	public void setKey(int key, EncodedKeyImage img, WritePriority priority) {
+		submitKey(key, img, priority).join();
+	}
+
+	/**
+	 * Queue a image that was already encoded for a key, and return right away
+	 * @param key key to change
+	 * @param img the encoded image
+	 * @param priority how urgent the image is
+	 * @return a future that completes once the image is on the device, or once a newer image for the same key replaced it.
+	 * Completes exceptionally if the key is not leased
+	 */
+	@Override
+	public CompletableFuture<Void> submitKey(int key, EncodedKeyImage img, WritePriority priority) {
+		checkKey(key);
+		priorities[key] = priority;
+		return scheduler.submit(key, img, priority);
+	}
+
+	@Override
+	public WriteScheduler getWriteScheduler() {
+		return scheduler;
+	}
+
+	@Override
+	public EncodedKeyImage encodeKey(BufferedImage img) {
+		return encodeKey(TileView.of(img));
+	}
+
+	@Override
+	public void setKey(int key, TileView view) {
+		setKey(key, encodeKey(view));
+	}
+
+	@Override
+	public EncodedKeyImage encodeKey(TileView view) {
+		return profile.encode(view);
+	}
+
+	@Override
+	public KeyCanvas acquireCanvas(int key) {
+		return canvases.acquire(key);
+	}
+
+	@Override
+	public void setKey(int key, byte[] jpeg) {
+		setKey(key, encodeKey(jpeg));
+	}
+
+	@Override
+	public EncodedKeyImage encodeKey(byte[] jpeg) {
+		return profile.encode(jpeg);
+	}
+
+	/**
+	 * @return the model of the deck the daemon has, null until connected
+	 */
+	@Override
+	public DeviceProfile getProfile() {
+		return profile;
+	}
+
+	@Override
+	public void clearKey(int key) {
+		setKey(key, Color.BLACK);
+	}
+
+	/**
+	 * Clear the leased keys. The rest of the deck belongs to other programs.
+	 */
+	@Override
+	public void clearDeck() {
+		for(int key = 0; key < profile.getNumberOfKeys(); key++) {
+			if(isLeased(key)) {
+				clearKey(key);
+			}
+		}
+	}
+
+	/**
+	 * The logo covers the whole deck, so this only clears the leased keys. See {@link #clearDeck()}
+	 */
+	@Override
+	public void resetToLogo() {
+		clearDeck();
+	}
+
+	/**
+	 * Set the brightness of the whole deck, for every program that uses it
+	 * @param percentage 0-100
+	 */
+	@Override
+	public void setBrightness(int percentage) {
+		if (percentage < 0 || percentage > 100) {
+			throw new IndexOutOfBoundsException("Expected brightness percentage to be between 0 and 100");
+		}
+		synchronized (out) {
+			int start = Protocol.begin(out, Protocol.BRIGHTNESS);
+			out.put((byte) percentage);
+			Protocol.end(out, start);
+			sendOrFail(0);
+		}
+	}
+
+	/**
+	 * Register a listener. It hears about presses of the leased keys, one at a time on a thread that only runs listeners.
+	 * @param listener the listener to register
+	 */
+	@Override
+	public void registerKeyListener(IStreamDeckListener listener) {
+		synchronized (listeners) {
+			listeners.add(listener);
+			if(listeners.size() == 1 && connected) {
+				subscribe(true);
+			}
+		}
+	}
+
+	@Override
+	public void unRegisterKeyListener(IStreamDeckListener listener) {
+		synchronized (listeners) {
+			if(listeners.remove(listener) && listeners.isEmpty() && connected) {
+				subscribe(false);
+			}
+		}
+	}
+
+	@Override
+	public KeyEventPublisher getKeyEvents() {
+		return keyEvents;
+	}
+
+	/**
+	 * Have the daemon tell every listener of a leased key that it changed, like it was pressed on the deck
+	 * @param key the key
+	 * @param state the new state
+	 */
+	@Override
+	public void injectKeyState(int key, State state) {
+		checkKey(key);
+		synchronized (out) {
+			int start = Protocol.begin(out, Protocol.INJECT);
+			out.put((byte) key);
+			out.put((byte) (state == State.PRESSED ? 1 : 0));
+			Protocol.end(out, start);
+			sendOrFail(0);
+		}
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private void checkKey(int key) {
+		if(profile == null) {
+			throw new IllegalStateException("Not connected");
+		}
+		if (key < 0 || key >= profile.getNumberOfKeys()) {
+			throw new IndexOutOfBoundsException("Expected key to be between 0 and " + (profile.getNumberOfKeys() - 1));
+		}
+	}
+
+	/**
+	 * Called by the write scheduler, waits for the image to be on the device like a local deck does
+	 */
+	private void writeImage(int key, EncodedKeyImage img) {
+		WritePriority priority = priorities[key];
+		send(Protocol.TILE, key, priority == null ? WritePriority.NORMAL : priority, img.getData(), null).join();
+	}
+
+	/**
+	 * Send a image, with the image bytes written right after the header instead of copied into it
+	 */
+	private CompletableFuture<Void> send(byte type, int key, WritePriority priority, ByteBuffer data, Consumer<ByteBuffer> fields) {
+		long id = ids.incrementAndGet();
+		CompletableFuture<Void> done = new CompletableFuture<Void>();
+		waiting.put(id, done);
+		synchronized (out) {
+			int start = Protocol.begin(out, type);
+			out.putLong(id);
+			out.put((byte) key);
+			out.put((byte) priority.ordinal());
+			if(fields != null) {
+				fields.accept(out);
+			}
+			Protocol.end(out, start, data.remaining());
+			out.flip();
+			try {
+				Protocol.writeFully(channel, out, data);
+			}
+			catch (IOException | RuntimeException e) {
+				waiting.remove(id);
+				done.completeExceptionally(e);
+			}
+			finally {
+				out.clear();
+			}
+		}
+		return done;
+	}
+
+	private void subscribe(boolean on) {
+		synchronized (out) {
+			int start = Protocol.begin(out, Protocol.SUBSCRIBE);
+			out.put((byte) (on ? 1 : 0));
+			Protocol.end(out, start);
+			sendOrFail(0);
+		}
+	}
+
+	/**
+	 * Send the out buffer. Called holding out.
+	 */
+	private void send() throws IOException {
+		out.flip();
+		try {
+			Protocol.writeFully(channel, out);
+		}
+		finally {
+			out.clear();
+		}
+	}
+
+	/**
+	 * Send the out buffer, and fail whoever waits for the answer if that doesn't work. Called holding out.
+	 */
+	private void sendOrFail(long id) {
+		try {
+			if(channel == null) {
+				throw new ClosedChannelException();
+			}
+			send();
+		}
+		catch (IOException e) {
+			CompletableFuture<?> future = waiting.remove(id);
+			if(future != null) {
+				future.completeExceptionally(e);
+			}
+			else {
+				throw new IllegalStateException("Lost the connection to the daemon", e);
+			}
+		}
+	}
+
+	private void readMessages(Protocol.FrameReader frames) {
+		try {
+			while(true) {
+				ByteBuffer in = frames.next();
+				switch(in.get()) {
+				case Protocol.DONE:
+					CompletableFuture<?> done = waiting.remove(in.getLong());
+					byte status = in.get();
+					if(done != null) {
+						if(status == Protocol.STATUS_OK) {
+							done.complete(null);
+						}
+						else {
+							done.completeExceptionally(new IllegalStateException(status == Protocol.STATUS_NOT_LEASED ? "Key is not leased" : "The daemon could not write the image"));
+						}
+					}
+					break;
+				case Protocol.LEASED:
+					@SuppressWarnings("unchecked")
+					CompletableFuture<Long> leased = (CompletableFuture<Long>) waiting.remove(in.getLong());
+					leasedKeys = in.getLong();
+					if(leased != null) {
+						leased.complete(leasedKeys);
+					}
+					break;
+				case Protocol.KEY:
+					int key = in.get();
+					State state = in.get() != 0 ? State.PRESSED : State.RELEASED;
+					int mask = in.getInt();
+					synchronized (events) {
+						events.add(new KeyChange(key, state, mask, System.nanoTime()));
+						events.notifyAll();
+					}
+					break;
+				default:
+					throw new IOException("Unknown message from the daemon");
+				}
+			}
+		}
+		catch (EOFException | ClosedChannelException e) {
+			//Disconnected
+		}
+		catch (IOException | RuntimeException e) {
+			if(connected) {
+				e.printStackTrace();
+			}
+		}
+		finally {
+			close();
+		}
+	}
+
+	/**
+	 * Tell the listeners about every key change the reader queued. Ends once the connection is closed and the queue is empty.
+	 */
+	private void dispatchEvents() {
+		Thread self = Thread.currentThread();
+		while(true) {
+			KeyChange event;
+			synchronized (events) {
+				while(events.isEmpty()) {
+					if(dispatcher != self) {
+						return;
+					}
+					try {
+						events.wait();
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+				event = events.poll();
+			}
+			synchronized (listeners) {
+				for(IStreamDeckListener listener : listeners) {
+					try {
+						listener.keyStateChanged(event.key, event.state, event.mask, event.nanoTime);
+					}
+					catch (RuntimeException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+
+	private void close() {
+		connected = false;
+		leasedKeys = 0;
+		synchronized (events) {
+			dispatcher = null;
+			events.notifyAll();
+		}
+		if(channel != null) {
+			try {
+				channel.close();
+			}
+			catch (IOException e) {
+				//Closed anyways
+			}
+		}
+		IOException lost = new ClosedChannelException();
+		for(Long id : waiting.keySet()) {
+			CompletableFuture<?> future = waiting.remove(id);
+			if(future != null) {
+				future.completeExceptionally(lost);
+			}
+		}
+	}
+
+	private static class KeyChange {
+
+		private final int key;
+		private final State state;
+		private final int mask;
+		private final long nanoTime;
+
+		KeyChange(int key, State state, int mask, long nanoTime) {
+			this.key = key;
+			this.state = state;
+			this.mask = mask;
+			this.nanoTime = nanoTime;
+		}
+
+	}
+
+	private static long toMask(int... keys) {
+		long mask = 0;
+		for(int key : keys) {
+			if(key < 0 || key >= 64) {
+				throw new IndexOutOfBoundsException("Expected key to be between 0 and 63");
+			}
+			mask |= 1L << key;
+		}
+		return mask;
+	}
+
+}
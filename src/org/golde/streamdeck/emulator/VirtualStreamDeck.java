@@ -0,0 +1,560 @@
+package org.golde.streamdeck.emulator;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.golde.streamdeck.DeviceProfile;
+import org.golde.streamdeck.DeviceProfile.ImageFormat;
+import org.golde.streamdeck.DeviceProfile.Protocol;
+import org.golde.streamdeck.StreamDeckGetter;
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.transport.HidTransport;
+
+/**
+ * A Stream Deck that only exists in memory, for running and testing layouts without hardware.
+ * It is a XL unless another {@link DeviceProfile} is given. Plug it into a deck with {@link StreamDeckXL#StreamDeckXL(HidTransport)},
+ * or {@link StreamDeckGetter#createDeck(DeviceProfile, HidTransport)} for other models.
+ *
+ * It speaks the same protocol as the real device: image packets are put back together by their header,
+ * the JPEGs or BMPs are decoded and turned back the right way up into a framebuffer with all the keys,
+ * and the brightness and logo feature reports do what they do on the device. Key presses are sent back as input reports
+ * in the same format as the device, so key listeners work. Anything the real device would not accept is counted as
+ * a protocol error instead of being thrown, so a test can check {@link #getProtocolErrors()} at the end.
+ * @author Eric Golde
+ *
+ */
+public class VirtualStreamDeck implements HidTransport {
+
+	private static final byte GEN1_IMAGE_COMMAND = 0x01;
+	private static final byte GEN2_IMAGE_COMMAND = 0x07;
+
+	private final DeviceProfile profile;
+	private final Protocol protocol;
+	private final int keySize;
+	private final String serialNumber;
+	private final String firmwareVersion;
+
+	private final BufferedImage framebuffer;
+	//Where every decoded pixel goes, the other way around from DeviceProfile#getRasterMap()
+	private final int[] rasterMap;
+	private final ByteArrayOutputStream[] partial;
+	private final int[] nextPart;
+	private final long[] imagesPerKey;
+	private final boolean[] keyStates;
+	private final BlockingQueue<byte[]> inputReports = new LinkedBlockingQueue<byte[]>();
+
+	private volatile boolean open;
+	private int brightness = 100;
+	private boolean showingLogo;
+	private long packets;
+	private long images;
+	private long protocolErrors;
+	private String lastError;
+
+	/**
+	 * Create a emulated XL with a made up serial number
+	 */
+	public VirtualStreamDeck() {
+		this(DeviceProfile.XL);
+	}
+
+	/**
+	 * Create a emulated deck with a made up serial number
+	 * @param profile the model to emulate
+	 */
+	public VirtualStreamDeck(DeviceProfile profile) {
+		this(profile, "VIRTUAL000001", "1.00.006");
+	}
+
+	/**
+	 * Create a emulated XL
+	 * @param serialNumber the serial number it reports
+	 * @param firmwareVersion the firmware version it reports
+	 */
+	public VirtualStreamDeck(String serialNumber, String firmwareVersion) {
+		this(DeviceProfile.XL, serialNumber, firmwareVersion);
+	}
+
+	/**
+	 * Create a emulated deck
+	 * @param profile the model to emulate
+	 * @param serialNumber the serial number it reports
+	 * @param firmwareVersion the firmware version it reports
+	 */
+	public VirtualStreamDeck(DeviceProfile profile, String serialNumber, String firmwareVersion) {
+		this.profile = profile;
+		this.protocol = profile.getProtocol();
+		this.keySize = profile.getKeySize();
+		this.serialNumber = serialNumber;
+		this.firmwareVersion = firmwareVersion;
+
+		int keys = profile.getNumberOfKeys();
+		this.framebuffer = new BufferedImage(profile.getCols() * keySize, profile.getRows() * keySize, BufferedImage.TYPE_INT_RGB);
+		this.partial = new ByteArrayOutputStream[keys];
+		this.nextPart = new int[keys];
+		this.imagesPerKey = new long[keys];
+		this.keyStates = new boolean[keys];
+
+		//ImageIO gives us BMPs top row first, the raster map has them bottom row first like the file
+		int[] map = profile.getRasterMap();
+		this.rasterMap = new int[map.length];
+		for(int y = 0; y < keySize; y++) {
+			int fileRow = profile.getImageFormat() == ImageFormat.BMP ? keySize - 1 - y : y;
+			System.arraycopy(map, fileRow * keySize, rasterMap, y * keySize, keySize);
+		}
+
+		drawLogo();
+	}
+
+	///////////////////////// [ HID ] ////////////////////////////////
+
+	@Override
+	public boolean open() {
+		open = true;
+		return true;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() {
+		open = false;
+	}
+
+	@Override
+	public synchronized int write(byte[] data, int length, byte reportId) {
+		if(!open) {
+			return -1;
+		}
+		packets++;
+
+		int headerLength = protocol.getPacketHeaderLength() - 1;
+		if(reportId != Protocol.IMAGE_REPORT_ID) {
+			return error("Unknown output report " + reportId);
+		}
+		if(length < headerLength || length > profile.getPacketSize() - 1) {
+			return error("Output report of " + length + " bytes");
+		}
+
+		int deviceKey;
+		boolean isLast;
+		int bodyLength;
+		int part;
+		if(protocol == Protocol.GEN1) {
+			if(data[0] != GEN1_IMAGE_COMMAND) {
+				return error("Unknown output command " + data[0]);
+			}
+			part = (data[1] & 0xFF) - profile.getFirstPage();
+			isLast = data[3] != 0;
+			deviceKey = (data[4] & 0xFF) - 1;
+			//No body length, the BMP header says how long the image is
+			bodyLength = length - headerLength;
+		}
+		else {
+			if(data[0] != GEN2_IMAGE_COMMAND) {
+				return error("Unknown output command " + data[0]);
+			}
+			deviceKey = data[1] & 0xFF;
+			isLast = data[2] != 0;
+			bodyLength = (data[3] & 0xFF) | (data[4] & 0xFF) << 8;
+			part = (data[5] & 0xFF) | (data[6] & 0xFF) << 8;
+		}
+
+		if(deviceKey < 0 || deviceKey >= partial.length) {
+			return error("Image for key " + deviceKey + ", there are only " + partial.length);
+		}
+		int key = profile.fromDeviceKey(deviceKey);
+		if(bodyLength > length - headerLength) {
+			partial[key] = null;
+			nextPart[key] = 0;
+			return error("Body of " + bodyLength + " bytes does not fit in a packet of " + length);
+		}
+		if(part != nextPart[key]) {
+			int expected = nextPart[key];
+			partial[key] = null;
+			nextPart[key] = 0;
+			return error("Key " + key + " got part " + part + ", expected part " + expected);
+		}
+
+		if(partial[key] == null) {
+			partial[key] = new ByteArrayOutputStream();
+		}
+		partial[key].write(data, headerLength, bodyLength);
+		nextPart[key]++;
+
+		if(isLast) {
+			byte[] image = partial[key].toByteArray();
+			partial[key] = null;
+			nextPart[key] = 0;
+			showImage(key, image);
+		}
+		return length + 1;
+	}
+
+	@Override
+	public int read(byte[] data, int timeoutMillis) {
+		if(!open) {
+			return -1;
+		}
+		byte[] report;
+		try {
+			report = inputReports.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 0;
+		}
+		if(report == null) {
+			return 0;
+		}
+		int length = Math.min(report.length, data.length);
+		System.arraycopy(report, 0, data, 0, length);
+		return length;
+	}
+
+	@Override
+	public synchronized int getFeatureReport(byte[] data, byte reportId) {
+		if(!open) {
+			return -1;
+		}
+		//Same layout as the device: a few bytes of header, then a string padded with zeros
+		String value;
+		int offset;
+		if(reportId == protocol.getFirmwareReportId()) {
+			value = firmwareVersion;
+			offset = protocol.getFirmwareOffset();
+		}
+		else if(reportId == protocol.getSerialReportId()) {
+			value = serialNumber;
+			offset = protocol.getSerialOffset();
+		}
+		else {
+			return error("Unknown feature report " + reportId);
+		}
+
+		byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+		for(int i = 0; i < data.length; i++) {
+			int index = i - offset;
+			data[i] = index >= 0 && index < bytes.length ? bytes[index] : 0;
+		}
+		return data.length;
+	}
+
+	@Override
+	public synchronized int sendFeatureReport(byte[] data, byte reportId) {
+		if(!open) {
+			return -1;
+		}
+		if(data.length != protocol.getFeatureReportLength()) {
+			return error("Feature report of " + data.length + " bytes, expected " + protocol.getFeatureReportLength());
+		}
+
+		//The commands are the same on every device of a generation, so compare against what the profile would send
+		byte[] reset = protocol.createResetCommand();
+		byte[] brightnessCommand = protocol.createBrightnessCommand(0);
+		int brightnessIndex = protocol == Protocol.GEN1 ? 4 : 1;
+
+		if(reportId == protocol.getBrightnessReportId() && startsWith(data, brightnessCommand, brightnessIndex)) {
+			int percentage = data[brightnessIndex];
+			if(percentage < 0 || percentage > 100) {
+				return error("Brightness of " + percentage + "%");
+			}
+			brightness = percentage;
+		}
+		else if(reportId == protocol.getResetReportId() && data[0] == reset[0]) {
+			for(int key = 0; key < partial.length; key++) {
+				partial[key] = null;
+				nextPart[key] = 0;
+			}
+			drawLogo();
+		}
+		else {
+			return error("Unknown feature report " + reportId + " command " + data[0]);
+		}
+		return data.length + 1;
+	}
+
+	@Override
+	public String getSerialNumber() {
+		return serialNumber;
+	}
+
+	///////////////////////// [ Input ] ////////////////////////////////
+
+	/**
+	 * Press a key down, like a finger would. Key listeners on the deck get a event.
+	 * @param key the key
+	 */
+	public void press(int key) {
+		setKeyState(key, true);
+	}
+
+	/**
+	 * Let go of a key
+	 * @param key the key
+	 */
+	public void release(int key) {
+		setKeyState(key, false);
+	}
+
+	/**
+	 * Press and let go of a key
+	 * @param key the key
+	 */
+	public void tap(int key) {
+		press(key);
+		release(key);
+	}
+
+	/**
+	 * Press or let go of a key. Sends a input report with the state of every key, like the device does.
+	 * @param key the key
+	 * @param pressed true if the key is down
+	 */
+	public void setKeyState(int key, boolean pressed) {
+		if (key < 0 || key >= keyStates.length) {
+			throw new IndexOutOfBoundsException("Expected key to be between 0 and " + (keyStates.length - 1));
+		}
+		int header = protocol.getInputHeaderLength();
+		byte[] report = new byte[header + keyStates.length];
+		synchronized (this) {
+			keyStates[key] = pressed;
+			report[0] = 0x01;
+			if(protocol == Protocol.GEN2) {
+				//4 byte header: report ID, 0, number of keys, 0
+				report[2] = (byte) keyStates.length;
+			}
+			for(int i = 0; i < keyStates.length; i++) {
+				report[header + profile.toDeviceKey(i)] = (byte) (keyStates[i] ? 1 : 0);
+			}
+		}
+		inputReports.add(report);
+	}
+
+	/**
+	 * Send a raw input report to the program, for example one out of a {@link org.golde.streamdeck.transport.HidRecording}.
+	 * The key states of the emulator are not changed.
+	 * @param report the report, starting with the header
+	 */
+	public void sendInputReport(byte[] report) {
+		inputReports.add(report.clone());
+	}
+
+	///////////////////////// [ Screen ] ////////////////////////////////
+
+	/**
+	 * Get what the screen looks like right now, with the brightness applied, like a person would see it
+	 * @return a copy of the screen, {@link #getWidth()}x{@link #getHeight()}
+	 */
+	public synchronized BufferedImage snapshot() {
+		int width = framebuffer.getWidth();
+		int height = framebuffer.getHeight();
+		BufferedImage copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[] row = new int[width];
+		for(int y = 0; y < height; y++) {
+			framebuffer.getRGB(0, y, width, 1, row, 0, width);
+			if(brightness != 100) {
+				for(int x = 0; x < width; x++) {
+					row[x] = dim(row[x], brightness);
+				}
+			}
+			copy.setRGB(0, y, width, 1, row, 0, width);
+		}
+		return copy;
+	}
+
+	/**
+	 * Save what the screen looks like right now to a PNG, for golden image tests
+	 * @param png the file to write
+	 * @throws IOException if the file could not be written
+	 */
+	public void snapshot(File png) throws IOException {
+		ImageIO.write(snapshot(), "png", png);
+	}
+
+	/**
+	 * Get what one key looks like right now, the right way up, without the brightness applied
+	 * @param key the key
+	 * @return a copy of the key, the size of {@link DeviceProfile#getKeySize()}
+	 */
+	public synchronized BufferedImage getKeyImage(int key) {
+		BufferedImage img = new BufferedImage(keySize, keySize, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = framebuffer.getRGB(keyX(key), keyY(key), keySize, keySize, null, 0, keySize);
+		img.setRGB(0, 0, keySize, keySize, pixels, 0, keySize);
+		return img;
+	}
+
+	/**
+	 * @return width of the screen in pixels, all the columns of keys next to each other
+	 */
+	public int getWidth() {
+		return framebuffer.getWidth();
+	}
+
+	/**
+	 * @return height of the screen in pixels, all the rows of keys on top of each other
+	 */
+	public int getHeight() {
+		return framebuffer.getHeight();
+	}
+
+	/**
+	 * @return the model that is emulated
+	 */
+	public DeviceProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * @return the brightness the deck was set to, 0-100
+	 */
+	public synchronized int getBrightness() {
+		return brightness;
+	}
+
+	/**
+	 * @return true if the logo is showing, and no image was sent since it was reset to the logo
+	 */
+	public synchronized boolean isShowingLogo() {
+		return showingLogo;
+	}
+
+	///////////////////////// [ Stats ] ////////////////////////////////
+
+	/**
+	 * @return number of output reports received
+	 */
+	public synchronized long getPacketsReceived() {
+		return packets;
+	}
+
+	/**
+	 * @return number of complete images received and shown
+	 */
+	public synchronized long getImagesReceived() {
+		return images;
+	}
+
+	/**
+	 * @param key the key
+	 * @return number of complete images received and shown on a key
+	 */
+	public synchronized long getImagesReceived(int key) {
+		return imagesPerKey[key];
+	}
+
+	/**
+	 * @return number of reports that the real device would not have accepted
+	 */
+	public synchronized long getProtocolErrors() {
+		return protocolErrors;
+	}
+
+	/**
+	 * @return what was wrong with the last report that was not accepted, or null if there were no errors
+	 */
+	public synchronized String getLastError() {
+		return lastError;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private void showImage(int key, byte[] data) {
+		String format = profile.getImageFormat().name();
+		BufferedImage img;
+		try {
+			img = ImageIO.read(new ByteArrayInputStream(data));
+		}
+		catch (IOException e) {
+			img = null;
+		}
+		if(img == null) {
+			error("Key " + key + " got " + data.length + " bytes that are not a " + format);
+			return;
+		}
+		if(img.getWidth() != keySize || img.getHeight() != keySize) {
+			error("Key " + key + " got a " + img.getWidth() + "x" + img.getHeight() + " " + format);
+			return;
+		}
+
+		//The device shows the image turned and flipped, so turn it back
+		int[] decoded = img.getRGB(0, 0, keySize, keySize, null, 0, keySize);
+		int[] pixels = new int[decoded.length];
+		for(int i = 0; i < decoded.length; i++) {
+			pixels[rasterMap[i]] = decoded[i];
+		}
+		showingLogo = false;
+		framebuffer.setRGB(keyX(key), keyY(key), keySize, keySize, pixels, 0, keySize);
+		images++;
+		imagesPerKey[key]++;
+	}
+
+	private void drawLogo() {
+		int width = framebuffer.getWidth();
+		int height = framebuffer.getHeight();
+		Graphics2D g = framebuffer.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setColor(Color.BLACK);
+		g.fillRect(0, 0, width, height);
+		g.setColor(Color.WHITE);
+		String logo = "STREAM DECK";
+		int fontSize = 66;
+		FontMetrics metrics;
+		do {
+			fontSize -= 2;
+			g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, fontSize));
+			metrics = g.getFontMetrics();
+		} while(metrics.stringWidth(logo) > width - 16);
+		g.drawString(logo, (width - metrics.stringWidth(logo)) / 2, (height - metrics.getHeight()) / 2 + metrics.getAscent());
+		g.dispose();
+		showingLogo = true;
+	}
+
+	private int error(String message) {
+		protocolErrors++;
+		lastError = message;
+		return -1;
+	}
+
+	private int keyX(int key) {
+		return (key % profile.getCols()) * keySize;
+	}
+
+	private int keyY(int key) {
+		return (key / profile.getCols()) * keySize;
+	}
+
+	private static boolean startsWith(byte[] data, byte[] prefix, int length) {
+		for(int i = 0; i < length; i++) {
+			if(data[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int dim(int rgb, int percentage) {
+		int r = ((rgb >> 16) & 0xFF) * percentage / 100;
+		int g = ((rgb >> 8) & 0xFF) * percentage / 100;
+		int b = (rgb & 0xFF) * percentage / 100;
+		return r << 16 | g << 8 | b;
+	}
+
+}
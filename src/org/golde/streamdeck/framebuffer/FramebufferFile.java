@@ -0,0 +1,103 @@
+package org.golde.streamdeck.framebuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.golde.streamdeck.DeviceProfile;
+
+/**
+ * The layout of a shared framebuffer file, used by both sides.
+ *
+ * The file starts with a {@value #HEADER_SIZE} byte header: "SDFB", a version, the bytes per pixel (3), the width and height in pixels,
+ * the size of a tile, the columns and rows of tiles, and the frame counter, which the producer bumps every time it is done with a batch
+ * of tiles. At {@value #OFFSET_TILES} every tile has {@value #TILE_ENTRY_SIZE} bytes: its sequence counter and the
+ * {@link System#nanoTime()} of its last write. Everything is little endian.
+ * After the header come the pixels, row by row from the top, 3 bytes per pixel in R, G, B order, like a raw RGB24 file.
+ *
+ * A tile sequence counter is odd while the tile is being written and even once it is done, so a reader that sees the same
+ * even number before and after copying a tile knows the copy is not torn.
+ * @author Eric Golde
+ *
+ */
+final class FramebufferFile {
+
+	static final int MAGIC = 0x42464453; //SDFB, little endian
+	static final short VERSION = 1;
+	static final int BYTES_PER_PIXEL = 3;
+	static final int MAX_TILES = 64;
+	static final int TILE_ENTRY_SIZE = 16;
+	//Pixels start on their own page
+	static final int HEADER_SIZE = 4096;
+
+	static final int OFFSET_WIDTH = 8;
+	static final int OFFSET_HEIGHT = 12;
+	static final int OFFSET_TILE_SIZE = 16;
+	static final int OFFSET_COLS = 20;
+	static final int OFFSET_ROWS = 24;
+	static final int OFFSET_FRAME = 32;
+	static final int OFFSET_TILES = 64;
+
+	static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private FramebufferFile() {
+	}
+
+	/**
+	 * Map a framebuffer file, creating it if it does not exist or has a different layout
+	 * @param file the file
+	 * @param profile the model the framebuffer is for, which decides the size
+	 * @return the mapped file
+	 * @throws IOException if the file can't be created or mapped
+	 */
+	static MappedByteBuffer map(File file, DeviceProfile profile) throws IOException {
+		int tileSize = profile.getKeySize();
+		int cols = profile.getCols();
+		int rows = profile.getRows();
+		if(cols * rows > MAX_TILES) {
+			throw new IllegalArgumentException("Expected a deck with " + MAX_TILES + " keys or less");
+		}
+		int width = cols * tileSize;
+		int height = rows * tileSize;
+		long size = HEADER_SIZE + (long) width * height * BYTES_PER_PIXEL;
+
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			boolean reuse = channel.size() == size;
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if(reuse) {
+				reuse = buffer.getInt(0) == MAGIC && buffer.getShort(4) == VERSION && buffer.getShort(6) == BYTES_PER_PIXEL
+						&& buffer.getInt(OFFSET_WIDTH) == width && buffer.getInt(OFFSET_HEIGHT) == height && buffer.getInt(OFFSET_TILE_SIZE) == tileSize;
+			}
+			if(!reuse) {
+				for(int i = 0; i < HEADER_SIZE; i += 8) {
+					buffer.putLong(i, 0);
+				}
+				buffer.putShort(4, VERSION);
+				buffer.putShort(6, (short) BYTES_PER_PIXEL);
+				buffer.putInt(OFFSET_WIDTH, width);
+				buffer.putInt(OFFSET_HEIGHT, height);
+				buffer.putInt(OFFSET_TILE_SIZE, tileSize);
+				buffer.putInt(OFFSET_COLS, cols);
+				buffer.putInt(OFFSET_ROWS, rows);
+				//Magic last, so the other side never sees a half written header as a framebuffer
+				buffer.putInt(0, MAGIC);
+			}
+			return buffer;
+		}
+	}
+
+	static int sequenceOffset(int tile) {
+		return OFFSET_TILES + tile * TILE_ENTRY_SIZE;
+	}
+
+	static int writtenOffset(int tile) {
+		return OFFSET_TILES + tile * TILE_ENTRY_SIZE + 8;
+	}
+
+}
@@ -0,0 +1,337 @@
+package org.golde.streamdeck.framebuffer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.golde.streamdeck.DeviceProfile;
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.WritePriority;
+import org.golde.streamdeck.helpers.TileView;
+
+/**
+ * Shows a framebuffer file that another program draws into on a deck. Producers that render fast, like capture tools and
+ * game overlays, write their pixels straight into the mapped file and bump a counter per tile, instead of sending whole images
+ * through a socket. Write to it from Java with a {@link SharedFramebufferWriter}, the layout is in {@link FramebufferFile}.
+ *
+ * The caster watches the frame counter in the file: it spins for a little while, then checks every {@link #setPollInterval(long)}.
+ * Once the counter moves, only tiles whose counter moved since they were last sent are copied out, encoded on every core
+ * and sent as {@link WritePriority#BACKGROUND}. If the producer is faster than the deck, the frames in between are skipped.
+ * @author Eric Golde
+ *
+ */
+public class SharedFramebufferCaster {
+
+	private static final long DEFAULT_POLL_NANOS = 1_000_000L;
+	//How long to spin on the frame counter before sleeping, a frame usually comes right after the last one at high rates
+	private static final long SPIN_NANOS = 20_000L;
+
+	private final IStreamDeck deck;
+	private final File file;
+	private final MappedByteBuffer buffer;
+	private final int width;
+	private final int tileSize;
+	private final int cols;
+	private final int tiles;
+
+	private final BufferedImage[] canvases;
+	private final int[][] canvasPixels;
+	private final TileView[] views;
+	private final long[] sent;
+	private final byte[] row;
+
+	private volatile long pollNanos = DEFAULT_POLL_NANOS;
+	private volatile boolean running = false;
+	private Thread thread;
+	private ExecutorService encoder;
+
+	private final AtomicLong framesSeen = new AtomicLong();
+	private final AtomicLong tilesSent = new AtomicLong();
+	private final AtomicLong tornReads = new AtomicLong();
+	private final AtomicLong latencyTotalNanos = new AtomicLong();
+	private final AtomicLong latencyMaxNanos = new AtomicLong();
+
+	/**
+	 * Open a framebuffer file for a deck, creating it if it does not exist. Call {@link #start()} to start showing it.
+	 * @param deck the deck to show it on
+	 * @param file the file
+	 * @throws IOException if the file can't be created or mapped
+	 */
+	public SharedFramebufferCaster(IStreamDeck deck, File file) throws IOException {
+		DeviceProfile profile = deck.getProfile();
+		this.deck = deck;
+		this.file = file;
+		this.buffer = FramebufferFile.map(file, profile);
+		this.tileSize = profile.getKeySize();
+		this.cols = profile.getCols();
+		this.tiles = profile.getNumberOfKeys();
+		this.width = cols * tileSize;
+
+		this.canvases = new BufferedImage[tiles];
+		this.canvasPixels = new int[tiles][];
+		this.views = new TileView[tiles];
+		for(int tile = 0; tile < tiles; tile++) {
+			canvases[tile] = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_RGB);
+			canvasPixels[tile] = ((DataBufferInt) canvases[tile].getRaster().getDataBuffer()).getData();
+			views[tile] = TileView.of(canvases[tile]);
+		}
+		this.sent = new long[tiles];
+		this.row = new byte[tileSize * FramebufferFile.BYTES_PER_PIXEL];
+	}
+
+	/**
+	 * Start showing the framebuffer. Every tile the producer wrote so far is sent once.
+	 */
+	public synchronized void start() {
+		if(running) {
+			return;
+		}
+		running = true;
+		for(int tile = 0; tile < tiles; tile++) {
+			sent[tile] = 0;
+		}
+		encoder = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new EncoderThreadFactory());
+		thread = new Thread(this::run);
+		thread.setName("StreamDeck framebuffer caster");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop showing the framebuffer, and wait for the caster thread to finish
+	 */
+	public synchronized void stop() {
+		if(!running) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		encoder.shutdownNow();
+	}
+
+	/**
+	 * Set how often to check the frame counter once spinning gave up. Lower reacts faster but costs more CPU while nothing changes.
+	 * @param nanos time between checks. Default 1 milli
+	 */
+	public void setPollInterval(long nanos) {
+		if(nanos <= 0) {
+			throw new IllegalArgumentException("Expected poll interval to be more than 0");
+		}
+		this.pollNanos = nanos;
+	}
+
+	/**
+	 * @return the framebuffer file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return number of times the frame counter moved and the caster looked at the tiles
+	 */
+	public long getFramesSeen() {
+		return framesSeen.get();
+	}
+
+	/**
+	 * @return number of tiles sent to the deck
+	 */
+	public long getTilesSent() {
+		return tilesSent.get();
+	}
+
+	/**
+	 * @return number of tiles that changed while they were being copied out, and were copied again on the next pass
+	 */
+	public long getTornReads() {
+		return tornReads.get();
+	}
+
+	/**
+	 * @return average time from the producer finishing a tile to the tile being on the deck, in nanos
+	 */
+	public long getAverageLatencyNanos() {
+		long count = tilesSent.get();
+		return count == 0 ? 0 : latencyTotalNanos.get() / count;
+	}
+
+	/**
+	 * @return longest time from the producer finishing a tile to the tile being on the deck, in nanos
+	 */
+	public long getMaxLatencyNanos() {
+		return latencyMaxNanos.get();
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private void run() {
+		long lastFrame = -1;
+		int[] dirty = new int[tiles];
+		long[] written = new long[tiles];
+		List<Callable<EncodedKeyImage>> tasks = new ArrayList<Callable<EncodedKeyImage>>(tiles);
+
+		boolean torn = false;
+		while(running) {
+			long frame = waitForFrame(lastFrame, torn);
+			if(!running) {
+				break;
+			}
+			if(frame != lastFrame) {
+				framesSeen.incrementAndGet();
+			}
+			lastFrame = frame;
+
+			int count = 0;
+			torn = false;
+			for(int tile = 0; tile < tiles; tile++) {
+				int sequenceOffset = FramebufferFile.sequenceOffset(tile);
+				long before = (long) FramebufferFile.LONGS.getAcquire(buffer, sequenceOffset);
+				if(before == sent[tile]) {
+					continue;
+				}
+				if((before & 1) != 0) {
+					//Being written right now, get it on the next pass
+					torn = true;
+					continue;
+				}
+				copyTile(tile);
+				written[tile] = buffer.getLong(FramebufferFile.writtenOffset(tile));
+				//Every pixel has to be read before the counter is read again
+				VarHandle.loadLoadFence();
+				if((long) FramebufferFile.LONGS.getOpaque(buffer, sequenceOffset) != before) {
+					tornReads.incrementAndGet();
+					torn = true;
+					continue;
+				}
+				sent[tile] = before;
+				dirty[count++] = tile;
+			}
+			if(count > 0) {
+				send(dirty, count, written, tasks);
+			}
+		}
+	}
+
+	/**
+	 * Wait for the frame counter to be something else than last time. With a torn tile left over, only wait one poll interval
+	 * without spinning, then look at the tiles again anyways: a producer that died halfway through a tile never moves the counter.
+	 */
+	private long waitForFrame(long lastFrame, boolean torn) {
+		long now = System.nanoTime();
+		long spinUntil = torn ? now : now + SPIN_NANOS;
+		long giveUpAt = now + pollNanos;
+		while(running) {
+			long frame = (long) FramebufferFile.LONGS.getAcquire(buffer, FramebufferFile.OFFSET_FRAME);
+			if(frame != lastFrame) {
+				return frame;
+			}
+			now = System.nanoTime();
+			if(torn && now - giveUpAt >= 0) {
+				return frame;
+			}
+			if(now < spinUntil) {
+				Thread.onSpinWait();
+			}
+			else {
+				LockSupport.parkNanos(pollNanos);
+			}
+		}
+		return lastFrame;
+	}
+
+	/**
+	 * Copy a tile out of the file into its canvas, turning RGB bytes into ints
+	 */
+	private void copyTile(int tile) {
+		int[] dst = canvasPixels[tile];
+		int x = (tile % cols) * tileSize;
+		int y = (tile / cols) * tileSize;
+		for(int r = 0; r < tileSize; r++) {
+			buffer.get(FramebufferFile.HEADER_SIZE + ((y + r) * width + x) * FramebufferFile.BYTES_PER_PIXEL, row);
+			for(int i = 0, p = r * tileSize; i < row.length; p++) {
+				dst[p] = (row[i++] & 0xFF) << 16 | (row[i++] & 0xFF) << 8 | (row[i++] & 0xFF);
+			}
+		}
+	}
+
+	/**
+	 * Encode the dirty tiles on every core and queue them. Returns once they are encoded, so the canvases can be used again.
+	 */
+	private void send(int[] dirty, int count, long[] written, List<Callable<EncodedKeyImage>> tasks) {
+		EncodedKeyImage[] encoded = new EncodedKeyImage[count];
+		if(count == 1) {
+			encoded[0] = deck.encodeKey(views[dirty[0]]);
+		}
+		else {
+			tasks.clear();
+			for(int i = 0; i < count; i++) {
+				TileView view = views[dirty[i]];
+				tasks.add(() -> deck.encodeKey(view));
+			}
+			try {
+				List<Future<EncodedKeyImage>> futures = encoder.invokeAll(tasks);
+				for(int i = 0; i < count; i++) {
+					encoded[i] = futures.get(i).get();
+				}
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+				return;
+			}
+		}
+
+		for(int i = 0; i < count; i++) {
+			long producedAt = written[dirty[i]];
+			deck.submitKey(dirty[i], encoded[i], WritePriority.BACKGROUND).thenRun(() -> {
+				long latency = System.nanoTime() - producedAt;
+				tilesSent.incrementAndGet();
+				latencyTotalNanos.addAndGet(latency);
+				long max;
+				while((max = latencyMaxNanos.get()) < latency && !latencyMaxNanos.compareAndSet(max, latency));
+			});
+		}
+	}
+
+	/**
+	 * Names the encoder threads and makes sure they don't keep the JVM alive
+	 */
+	private static class EncoderThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r);
+			thread.setName("StreamDeck framebuffer encoder #" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
@@ -0,0 +1,188 @@
+package org.golde.streamdeck.framebuffer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+
+import org.golde.streamdeck.DeviceProfile;
+
+/**
+ * Draws into a shared framebuffer file from Java, for producers that run in their own program, like a game overlay.
+ * The deck side is a {@link SharedFramebufferCaster}. Producers in other languages can write the file themselves,
+ * the layout is described in {@link FramebufferFile}.
+ *
+ * Only tiles that are different from what this writer wrote last time are written and marked dirty,
+ * so a frame where little moved costs the caster little. Not thread safe, use one writer per thread.
+ * @author Eric Golde
+ *
+ */
+public class SharedFramebufferWriter {
+
+	private final MappedByteBuffer buffer;
+	private final int width;
+	private final int height;
+	private final int tileSize;
+	private final int cols;
+	private final int tiles;
+
+	//What was written last, to skip tiles that did not change
+	private final int[] last;
+	private final int[] pixels;
+	private final byte[] row;
+	private boolean first = true;
+	private long tilesWritten = 0;
+
+	/**
+	 * Open a framebuffer for a Stream Deck XL, creating the file if it does not exist
+	 * @param file the file
+	 * @throws IOException if the file can't be created or mapped
+	 */
+	public SharedFramebufferWriter(File file) throws IOException {
+		this(file, DeviceProfile.XL);
+	}
+
+	/**
+	 * Open a framebuffer, creating the file if it does not exist
+	 * @param file the file
+	 * @param profile the model of the deck it is shown on, which decides the size
+	 * @throws IOException if the file can't be created or mapped
+	 */
+	public SharedFramebufferWriter(File file, DeviceProfile profile) throws IOException {
+		this.buffer = FramebufferFile.map(file, profile);
+		this.tileSize = profile.getKeySize();
+		this.cols = profile.getCols();
+		this.tiles = profile.getNumberOfKeys();
+		this.width = cols * tileSize;
+		this.height = profile.getRows() * tileSize;
+		this.last = new int[width * height];
+		this.pixels = new int[width * height];
+		this.row = new byte[tileSize * FramebufferFile.BYTES_PER_PIXEL];
+	}
+
+	/**
+	 * Write a whole frame. Tiles that look the same as last time are skipped.
+	 * @param frame a image of {@link #getWidth()} by {@link #getHeight()} pixels
+	 * @return number of tiles that were written
+	 */
+	public int writeFrame(BufferedImage frame) {
+		if(frame.getWidth() != width || frame.getHeight() != height) {
+			throw new IllegalArgumentException("Expected a frame of " + width + "x" + height);
+		}
+		int[] src;
+		if(frame.getType() == BufferedImage.TYPE_INT_RGB && frame.getRaster().getDataBuffer() instanceof DataBufferInt
+				&& frame.getRaster().getWidth() == width && frame.getRaster().getSampleModelTranslateX() == 0) {
+			src = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+		}
+		else {
+			frame.getRGB(0, 0, width, height, pixels, 0, width);
+			src = pixels;
+		}
+
+		int written = 0;
+		for(int tile = 0; tile < tiles; tile++) {
+			int x = (tile % cols) * tileSize;
+			int y = (tile / cols) * tileSize;
+			if(first || changed(src, x, y)) {
+				writeTile(tile, src, y * width + x, width);
+				written++;
+			}
+		}
+		first = false;
+		if(written > 0) {
+			ringDoorbell();
+		}
+		return written;
+	}
+
+	/**
+	 * Write one tile, whether it changed or not
+	 * @param tile the tile, which is the key it is shown on
+	 * @param img a image the size of a key
+	 */
+	public void writeTile(int tile, BufferedImage img) {
+		if(img.getWidth() != tileSize || img.getHeight() != tileSize) {
+			throw new IllegalArgumentException("Expected a tile of " + tileSize + "x" + tileSize);
+		}
+		int[] src = img.getRGB(0, 0, tileSize, tileSize, null, 0, tileSize);
+		writeTile(tile, src, 0, tileSize);
+		ringDoorbell();
+	}
+
+	/**
+	 * @return width of a frame in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return height of a frame in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return number of tiles written since the writer was opened
+	 */
+	public long getTilesWritten() {
+		return tilesWritten;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private boolean changed(int[] src, int x, int y) {
+		for(int r = 0; r < tileSize; r++) {
+			int start = (y + r) * width + x;
+			if(!Arrays.equals(src, start, start + tileSize, last, start, start + tileSize)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Write a tile between a odd and a even sequence number, see {@link FramebufferFile}
+	 */
+	private void writeTile(int tile, int[] src, int srcOffset, int srcStride) {
+		if(tile < 0 || tile >= tiles) {
+			throw new IndexOutOfBoundsException("Expected tile to be between 0 and " + (tiles - 1));
+		}
+		int x = (tile % cols) * tileSize;
+		int y = (tile / cols) * tileSize;
+		int sequenceOffset = FramebufferFile.sequenceOffset(tile);
+		long sequence = (long) FramebufferFile.LONGS.getOpaque(buffer, sequenceOffset);
+		if((sequence & 1) != 0) {
+			//A writer died halfway through this tile
+			sequence++;
+		}
+
+		FramebufferFile.LONGS.setOpaque(buffer, sequenceOffset, sequence + 1);
+		//The odd number has to be visible before any pixel is
+		VarHandle.storeStoreFence();
+		for(int r = 0; r < tileSize; r++) {
+			int from = srcOffset + r * srcStride;
+			for(int i = 0, p = from; i < row.length; p++) {
+				int rgb = src[p];
+				row[i++] = (byte) (rgb >> 16);
+				row[i++] = (byte) (rgb >> 8);
+				row[i++] = (byte) rgb;
+			}
+			buffer.put(FramebufferFile.HEADER_SIZE + ((y + r) * width + x) * FramebufferFile.BYTES_PER_PIXEL, row);
+			System.arraycopy(src, from, last, (y + r) * width + x, tileSize);
+		}
+		buffer.putLong(FramebufferFile.writtenOffset(tile), System.nanoTime());
+		FramebufferFile.LONGS.setRelease(buffer, sequenceOffset, sequence + 2);
+		tilesWritten++;
+	}
+
+	private void ringDoorbell() {
+		long frame = (long) FramebufferFile.LONGS.getOpaque(buffer, FramebufferFile.OFFSET_FRAME);
+		FramebufferFile.LONGS.setRelease(buffer, FramebufferFile.OFFSET_FRAME, frame + 1);
+	}
+
+}
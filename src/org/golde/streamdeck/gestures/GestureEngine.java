@@ -0,0 +1,376 @@
+package org.golde.streamdeck.gestures;
+
+import java.util.Arrays;
+
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.IStreamDeckListener;
+import org.golde.streamdeck.StreamDeckKeyState.State;
+
+/**
+ * Turns the raw key presses of a deck into gestures: press and release, tap, long press, double tap and chords.
+ *
+ * The engine listens to the deck like any other {@link IStreamDeckListener}, so presses and releases are sent on the thread
+ * that reads the deck, as soon as they come in. Everything that waits for a deadline, like a long press, runs on one
+ * timing wheel thread that is shared by every key, instead of a thread or a sleep per gesture, and is decided within a
+ * millisecond of its deadline. Nothing is allocated per key press.
+ * @author Eric Golde
+ *
+ */
+public class GestureEngine implements IStreamDeckListener {
+
+	private static final long TICK_NANOS = 500_000L;
+	private static final GestureListener[] NONE = new GestureListener[0];
+
+	private final IStreamDeck deck;
+	private final int numberOfKeys;
+	private final TimingWheel wheel;
+	private volatile GestureListener[] listeners = NONE;
+	private boolean started = false;
+
+	private long longPressNanos = 500_000_000L;
+	private long doubleTapNanos = 250_000_000L;
+	private long chordNanos = 50_000_000L;
+
+	private int mask;
+	private final boolean[] down;
+	private final long[] pressedAt;
+	private final boolean[] longPressed;
+	//Part of a chord, so it doesn't send anything but press and release until it goes up
+	private final boolean[] inChord;
+	//Tapped once, waiting to see if a second tap comes
+	private final boolean[] tapPending;
+	private final long[] tapDeadline;
+	//Pressed again while a tap was pending
+	private final boolean[] secondTap;
+
+	private int chordKeys;
+	private int chordLastKey;
+	private long chordLastPress;
+	private long chordDeadline;
+	private boolean chordDecided = true;
+
+	private final TimingWheel.Timeout[] longPressTimeouts;
+	private final TimingWheel.Timeout[] tapTimeouts;
+	private final TimingWheel.Timeout chordTimeout;
+
+	/**
+	 * Create a gesture engine for a deck. Call {@link #start()} to start listening to it.
+	 * @param deck the deck
+	 */
+	public GestureEngine(IStreamDeck deck) {
+		this.deck = deck;
+		this.numberOfKeys = Math.min(deck.getProfile().getNumberOfKeys(), 32);
+		this.wheel = new TimingWheel("StreamDeck gestures", TICK_NANOS, 1024);
+
+		this.down = new boolean[numberOfKeys];
+		this.pressedAt = new long[numberOfKeys];
+		this.longPressed = new boolean[numberOfKeys];
+		this.inChord = new boolean[numberOfKeys];
+		this.tapPending = new boolean[numberOfKeys];
+		this.tapDeadline = new long[numberOfKeys];
+		this.secondTap = new boolean[numberOfKeys];
+
+		this.longPressTimeouts = new TimingWheel.Timeout[numberOfKeys];
+		this.tapTimeouts = new TimingWheel.Timeout[numberOfKeys];
+		for(int key = 0; key < numberOfKeys; key++) {
+			final int k = key;
+			longPressTimeouts[key] = new TimingWheel.Timeout() {
+				@Override
+				void expired(long now) {
+					longPressExpired(k, now);
+				}
+			};
+			tapTimeouts[key] = new TimingWheel.Timeout() {
+				@Override
+				void expired(long now) {
+					tapExpired(k, now);
+				}
+			};
+		}
+		this.chordTimeout = new TimingWheel.Timeout() {
+			@Override
+			void expired(long now) {
+				chordExpired(now);
+			}
+		};
+	}
+
+	/**
+	 * Start listening to the deck
+	 */
+	public synchronized void start() {
+		if(!started) {
+			started = true;
+			deck.registerKeyListener(this);
+		}
+	}
+
+	/**
+	 * Stop listening to the deck, and stop the timer thread. The engine can't be started again afterwards.
+	 */
+	public synchronized void stop() {
+		if(started) {
+			started = false;
+			deck.unRegisterKeyListener(this);
+		}
+		wheel.stop();
+	}
+
+	/**
+	 * Add a listener for gestures
+	 * @param listener the listener
+	 */
+	public synchronized void addListener(GestureListener listener) {
+		GestureListener[] now = Arrays.copyOf(listeners, listeners.length + 1);
+		now[now.length - 1] = listener;
+		listeners = now;
+	}
+
+	/**
+	 * Remove a listener
+	 * @param listener the listener
+	 */
+	public synchronized void removeListener(GestureListener listener) {
+		for(int i = 0; i < listeners.length; i++) {
+			if(listeners[i] == listener) {
+				GestureListener[] now = new GestureListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, now, 0, i);
+				System.arraycopy(listeners, i + 1, now, i, listeners.length - i - 1);
+				listeners = now;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Set how long a key has to be held for a long press. Defaults to 500ms.
+	 * @param millis time in millis
+	 */
+	public synchronized void setLongPressTime(long millis) {
+		if(millis <= 0) {
+			throw new IllegalArgumentException("Expected long press time to be more than 0");
+		}
+		longPressNanos = millis * 1_000_000L;
+	}
+
+	/**
+	 * @return how long a key has to be held for a long press, in millis
+	 */
+	public synchronized long getLongPressTime() {
+		return longPressNanos / 1_000_000L;
+	}
+
+	/**
+	 * Set how quickly a second tap has to follow the first for a double tap. While this is on, a tap is only sent once this much
+	 * time passed without a second tap. Defaults to 250ms.
+	 * @param millis time in millis, or 0 to turn double taps off and send taps right away
+	 */
+	public synchronized void setDoubleTapTime(long millis) {
+		if(millis < 0) {
+			throw new IllegalArgumentException("Expected double tap time to be 0 or more");
+		}
+		doubleTapNanos = millis * 1_000_000L;
+	}
+
+	/**
+	 * @return how quickly a second tap has to follow the first for a double tap, in millis. 0 if double taps are off
+	 */
+	public synchronized long getDoubleTapTime() {
+		return doubleTapNanos / 1_000_000L;
+	}
+
+	/**
+	 * Set how close together keys have to be pressed to count as a chord. Defaults to 50ms.
+	 * @param millis time in millis, or 0 to turn chords off
+	 */
+	public synchronized void setChordTime(long millis) {
+		if(millis < 0) {
+			throw new IllegalArgumentException("Expected chord time to be 0 or more");
+		}
+		chordNanos = millis * 1_000_000L;
+	}
+
+	/**
+	 * @return how close together keys have to be pressed to count as a chord, in millis. 0 if chords are off
+	 */
+	public synchronized long getChordTime() {
+		return chordNanos / 1_000_000L;
+	}
+
+	/**
+	 * @return how late the latest timed gesture was decided, compared to its deadline, in nanos
+	 */
+	public long getWorstLatenessNanos() {
+		return wheel.getWorstLateness();
+	}
+
+	/**
+	 * Feed a key change to the engine. Called by the deck, without the mask and time.
+	 */
+	@Override
+	public void keyStateChanged(int key, State state) {
+		int mask;
+		synchronized (this) {
+			mask = this.mask;
+		}
+		if(key < 32) {
+			mask = state == State.PRESSED ? mask | (1 << key) : mask & ~(1 << key);
+		}
+		keyStateChanged(key, state, mask, System.nanoTime());
+	}
+
+	/**
+	 * Feed a key change to the engine. Called by the deck.
+	 */
+	@Override
+	public synchronized void keyStateChanged(int key, State state, int mask, long nanoTime) {
+		if(key < 0 || key >= numberOfKeys || down[key] == (state == State.PRESSED)) {
+			return;
+		}
+		this.mask = mask;
+		if(state == State.PRESSED) {
+			pressed(key, nanoTime);
+		}
+		else {
+			released(key, nanoTime);
+		}
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	/**
+	 * Must be called while holding the lock
+	 */
+	private void pressed(int key, long now) {
+		down[key] = true;
+		pressedAt[key] = now;
+		longPressed[key] = false;
+		inChord[key] = false;
+		emit(GestureType.PRESS, key, mask, now);
+
+		if(chordNanos > 0) {
+			if(!chordDecided && now - chordLastPress <= chordNanos && (chordKeys & mask) == chordKeys) {
+				chordKeys |= 1 << key;
+			}
+			else {
+				chordKeys = 1 << key;
+				chordDecided = false;
+			}
+			chordLastKey = key;
+			chordLastPress = now;
+			if(Integer.bitCount(chordKeys) > 1) {
+				chordDeadline = now + chordNanos;
+				wheel.schedule(chordTimeout, chordDeadline);
+			}
+		}
+
+		if(tapPending[key]) {
+			tapPending[key] = false;
+			wheel.cancel(tapTimeouts[key]);
+			secondTap[key] = true;
+		}
+		wheel.schedule(longPressTimeouts[key], now + longPressNanos);
+	}
+
+	/**
+	 * Must be called while holding the lock
+	 */
+	private void released(int key, long now) {
+		down[key] = false;
+		wheel.cancel(longPressTimeouts[key]);
+
+		//Released before the chord was decided, so the chord is as big as it will get
+		if(!chordDecided && (chordKeys & (1 << key)) != 0) {
+			if(Integer.bitCount(chordKeys) > 1) {
+				chord(now);
+			}
+			else {
+				chordDecided = true;
+			}
+		}
+
+		emit(GestureType.RELEASE, key, mask, now);
+
+		if(inChord[key] || longPressed[key]) {
+			secondTap[key] = false;
+		}
+		else if(secondTap[key]) {
+			secondTap[key] = false;
+			emit(GestureType.DOUBLE_TAP, key, mask, now);
+		}
+		else if(doubleTapNanos > 0) {
+			tapPending[key] = true;
+			tapDeadline[key] = now + doubleTapNanos;
+			wheel.schedule(tapTimeouts[key], tapDeadline[key]);
+		}
+		else {
+			emit(GestureType.TAP, key, mask, now);
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock
+	 */
+	private void chord(long now) {
+		chordDecided = true;
+		wheel.cancel(chordTimeout);
+		for(int key = 0; key < numberOfKeys; key++) {
+			if((chordKeys & (1 << key)) != 0) {
+				inChord[key] = true;
+				wheel.cancel(longPressTimeouts[key]);
+				if(tapPending[key]) {
+					//The first tap was a tap after all, the second one is part of the chord
+					tapPending[key] = false;
+					wheel.cancel(tapTimeouts[key]);
+					emit(GestureType.TAP, key, mask, now);
+				}
+				if(secondTap[key]) {
+					secondTap[key] = false;
+					emit(GestureType.TAP, key, mask, now);
+				}
+			}
+		}
+		emit(GestureType.CHORD, chordLastKey, chordKeys, now);
+	}
+
+	private synchronized void longPressExpired(int key, long now) {
+		//The key may have been released and pressed again after the timeout was picked up
+		if(!down[key] || longPressed[key] || inChord[key] || now - pressedAt[key] < longPressNanos) {
+			return;
+		}
+		longPressed[key] = true;
+		if(secondTap[key]) {
+			secondTap[key] = false;
+			emit(GestureType.TAP, key, mask, now);
+		}
+		emit(GestureType.LONG_PRESS, key, mask, now);
+	}
+
+	private synchronized void tapExpired(int key, long now) {
+		if(!tapPending[key] || now < tapDeadline[key]) {
+			return;
+		}
+		tapPending[key] = false;
+		emit(GestureType.TAP, key, mask, now);
+	}
+
+	private synchronized void chordExpired(long now) {
+		if(chordDecided || now < chordDeadline || Integer.bitCount(chordKeys) < 2) {
+			return;
+		}
+		chord(now);
+	}
+
+	private void emit(GestureType type, int key, int mask, long now) {
+		GestureListener[] listeners = this.listeners;
+		for(int i = 0; i < listeners.length; i++) {
+			try {
+				listeners[i].gestureRecognised(type, key, mask, now);
+			}
+			catch(RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+}
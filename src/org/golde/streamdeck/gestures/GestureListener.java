@@ -0,0 +1,21 @@
+package org.golde.streamdeck.gestures;
+
+/**
+ * Gets the gestures recognised by a {@link GestureEngine}.
+ * Called on the thread that read the keys, or on the timer thread of the engine, so it should return quickly.
+ * @author Eric Golde
+ *
+ */
+@FunctionalInterface
+public interface GestureListener {
+
+	/**
+	 * Called when a gesture is recognised
+	 * @param type the gesture
+	 * @param key the key, for a chord the key that was pressed last
+	 * @param mask for a chord the keys of the chord, for anything else every key that is down. One bit per key
+	 * @param nanoTime {@link System#nanoTime()} when the gesture was recognised
+	 */
+	public void gestureRecognised(GestureType type, int key, int mask, long nanoTime);
+
+}
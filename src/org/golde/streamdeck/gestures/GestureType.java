@@ -0,0 +1,40 @@
+package org.golde.streamdeck.gestures;
+
+/**
+ * The gestures a {@link GestureEngine} recognises
+ * @author Eric Golde
+ *
+ */
+public enum GestureType {
+
+	/**
+	 * A key went down. Sent right away, before anything else is known about the gesture.
+	 */
+	PRESS,
+
+	/**
+	 * A key went up. Sent right away, whatever the gesture turned out to be.
+	 */
+	RELEASE,
+
+	/**
+	 * A key was pressed and released quickly. If double taps are on, this is only sent once it is clear no second tap is coming.
+	 */
+	TAP,
+
+	/**
+	 * A key was held down for the long press time. Sent while the key is still down, no TAP follows.
+	 */
+	LONG_PRESS,
+
+	/**
+	 * A key was tapped twice, quickly
+	 */
+	DOUBLE_TAP,
+
+	/**
+	 * Two or more keys were pressed at about the same time. The keys of a chord don't send TAP, LONG_PRESS or DOUBLE_TAP.
+	 */
+	CHORD;
+
+}
@@ -0,0 +1,191 @@
+package org.golde.streamdeck.gestures;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs timeouts on one thread, without allocating. Every timeout goes into a slot of a wheel by the tick its deadline falls on,
+ * and the thread only wakes up once per tick while something is scheduled, so a timeout runs at most one tick late.
+ * Timeouts further away than one turn of the wheel stay in their slot until their turn comes around.
+ * @author Eric Golde
+ *
+ */
+class TimingWheel {
+
+	private final long tickNanos;
+	private final Timeout[] slots;
+	private final int mask;
+	private final long start;
+
+	private long currentTick = 0;
+	private int pending = 0;
+	private long worstLateness = 0;
+
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	/**
+	 * @param name name of the thread
+	 * @param tickNanos how long a tick is
+	 * @param size number of slots, a power of 2
+	 */
+	TimingWheel(String name, long tickNanos, int size) {
+		if(Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("Expected size to be a power of 2");
+		}
+		this.tickNanos = tickNanos;
+		this.slots = new Timeout[size];
+		this.mask = size - 1;
+		this.start = System.nanoTime();
+		for(int i = 0; i < size; i++) {
+			//Every slot is a circular list with a empty timeout at the head
+			Timeout head = new Head();
+			head.prev = head;
+			head.next = head;
+			slots[i] = head;
+		}
+
+		thread = new Thread(this::run);
+		thread.setName(name);
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Schedule a timeout, or move it if it is already scheduled
+	 * @param timeout the timeout
+	 * @param deadline {@link System#nanoTime()} to run it at
+	 */
+	synchronized void schedule(Timeout timeout, long deadline) {
+		unlink(timeout);
+		long tick = Math.max((deadline - start + tickNanos - 1) / tickNanos, currentTick + 1);
+		timeout.deadline = deadline;
+		timeout.tick = tick;
+
+		Timeout head = slots[(int) (tick & mask)];
+		timeout.prev = head.prev;
+		timeout.next = head;
+		head.prev.next = timeout;
+		head.prev = timeout;
+
+		if(pending++ == 0) {
+			//The thread sleeps until something is scheduled
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Stop a timeout from running. Does nothing if it is not scheduled.
+	 * @param timeout the timeout
+	 */
+	synchronized void cancel(Timeout timeout) {
+		unlink(timeout);
+	}
+
+	/**
+	 * @return how late the latest running timeout ran, in nanos
+	 */
+	synchronized long getWorstLateness() {
+		return worstLateness;
+	}
+
+	/**
+	 * Stop the thread. Scheduled timeouts never run.
+	 */
+	void stop() {
+		running = false;
+		LockSupport.unpark(thread);
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private void unlink(Timeout timeout) {
+		if(timeout.next != null) {
+			timeout.prev.next = timeout.next;
+			timeout.next.prev = timeout.prev;
+			timeout.prev = null;
+			timeout.next = null;
+			pending--;
+		}
+	}
+
+	private void run() {
+		while(running) {
+			long now = System.nanoTime();
+			Timeout expired = null;
+			boolean idle;
+			long wakeUp;
+
+			synchronized (this) {
+				long nowTick = (now - start) / tickNanos;
+				while(currentTick < nowTick && pending > 0) {
+					currentTick++;
+					Timeout head = slots[(int) (currentTick & mask)];
+					Timeout timeout = head.next;
+					while(timeout != head) {
+						Timeout next = timeout.next;
+						if(timeout.tick <= currentTick) {
+							unlink(timeout);
+							timeout.nextExpired = expired;
+							expired = timeout;
+							worstLateness = Math.max(worstLateness, now - timeout.deadline);
+						}
+						timeout = next;
+					}
+				}
+				if(pending == 0) {
+					//Nothing is scheduled, so there is nothing in the slots that are skipped
+					currentTick = nowTick;
+				}
+				idle = pending == 0;
+				wakeUp = start + (currentTick + 1) * tickNanos;
+			}
+
+			while(expired != null) {
+				Timeout timeout = expired;
+				expired = timeout.nextExpired;
+				timeout.nextExpired = null;
+				try {
+					timeout.expired(now);
+				}
+				catch(Throwable t) {
+					t.printStackTrace();
+				}
+			}
+
+			if(idle) {
+				LockSupport.park(this);
+			}
+			else {
+				LockSupport.parkNanos(this, wakeUp - System.nanoTime());
+			}
+		}
+	}
+
+	/**
+	 * Something to run at a deadline. Timeouts are reused, and can be scheduled again from inside {@link #expired(long)}.
+	 */
+	static abstract class Timeout {
+
+		private long deadline;
+		private long tick;
+		private Timeout prev;
+		private Timeout next;
+		private Timeout nextExpired;
+
+		/**
+		 * Called on the thread of the wheel once the deadline passed
+		 * @param now {@link System#nanoTime()} when the wheel woke up
+		 */
+		abstract void expired(long now);
+
+	}
+
+	private static class Head extends Timeout {
+
+		@Override
+		void expired(long now) {}
+
+	}
+
+}
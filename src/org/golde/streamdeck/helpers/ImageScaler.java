@@ -0,0 +1,378 @@
+package org.golde.streamdeck.helpers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import org.golde.streamdeck.StreamDeckXL;
+
+/**
+ * Fast image scaling that works directly on the pixels of a image, instead of going through
+ * {@link java.awt.Image#getScaledInstance(int, int, int)} and Java2D.
+ *
+ * The sampling positions and weights for every (source size, target size) pair are only worked out once, and
+ * the result can be written into a image you already have, so scaling the same size over and over again
+ * (like a screencast or a GIF) does not allocate anything.
+ * @author Eric Golde
+ *
+ */
+public class ImageScaler {
+
+	/**
+	 * How the scaler picks the color of a output pixel
+	 * @author Eric Golde
+	 *
+	 */
+	public enum Filter {
+		/**
+		 * Take the closest source pixel. Fastest, but blocky and shimmers when scaling down a lot.
+		 */
+		NEAREST,
+		/**
+		 * Blend the 4 closest source pixels. Smooth when scaling up or down a little.
+		 */
+		BILINEAR,
+		/**
+		 * Average every source pixel that is covered by the output pixel. Best looking when scaling down a lot.
+		 */
+		AREA_AVERAGE;
+	}
+
+	//Weights are fixed point numbers with this many fraction bits, so we never need floating point math per pixel.
+	//255 times a full weight has to fit in a 21 bit lane, see horizontalPass
+	private static final int WEIGHT_BITS = 12;
+	private static final long LANE_MASK = (1 << 21) - 1;
+	private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+
+	//After the horizontal pass we keep this many fraction bits, so the vertical pass still fits into a int
+	private static final int MID_BITS = 8;
+
+	//Rows are handed out to threads in bands this big, so every thread reads source rows that are close together
+	private static final int ROWS_PER_BAND = 8;
+
+	private static final int MAX_CACHED_TABLES = 64;
+	private static final Map<Long, SamplingTable> TABLES = new ConcurrentHashMap<Long, SamplingTable>();
+
+	private static final ThreadLocal<int[]> SCRATCH = new ThreadLocal<int[]>();
+
+	private final Filter filter;
+	private final boolean parallel;
+
+	/**
+	 * Create a scaler that works on a single thread
+	 * @param filter the filter to use
+	 */
+	public ImageScaler(Filter filter) {
+		this(filter, false);
+	}
+
+	/**
+	 * Create a scaler
+	 * @param filter the filter to use
+	 * @param parallel split the rows of large images over every core
+	 */
+	public ImageScaler(Filter filter, boolean parallel) {
+		this.filter = filter;
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Scale a image into a new image
+	 * @param src image in
+	 * @param width new width
+	 * @param height new height
+	 * @return a new {@value StreamDeckXL#IMG_TYPE} image with the new size
+	 */
+	public BufferedImage scale(BufferedImage src, int width, int height) {
+		return scale(src, new BufferedImage(width, height, StreamDeckXL.IMG_TYPE));
+	}
+
+	/**
+	 * Scale a image into a image you already have. Nothing is allocated if the same sizes are used again.
+	 * @param src image in
+	 * @param dst image to write into, must be TYPE_INT_RGB or TYPE_INT_ARGB. Its size is the size we scale to.
+	 * @return dst
+	 */
+	public BufferedImage scale(BufferedImage src, BufferedImage dst) {
+		if(dst.getType() != BufferedImage.TYPE_INT_RGB && dst.getType() != BufferedImage.TYPE_INT_ARGB) {
+			throw new IllegalArgumentException("Expected destination image to be TYPE_INT_RGB or TYPE_INT_ARGB");
+		}
+
+		final Pixels in = Pixels.of(src);
+		final Pixels out = Pixels.of(dst);
+		final int dstWidth = dst.getWidth();
+		final int dstHeight = dst.getHeight();
+
+		if(filter == Filter.NEAREST) {
+			final int[] xs = table(Filter.NEAREST, src.getWidth(), dstWidth).index;
+			final int[] ys = table(Filter.NEAREST, src.getHeight(), dstHeight).index;
+			forEachBand(dstHeight, (from, to) -> {
+				for(int y = from; y < to; y++) {
+					int srcRow = in.offset + ys[y] * in.stride;
+					int dstRow = out.offset + y * out.stride;
+					for(int x = 0; x < dstWidth; x++) {
+						//A TYPE_INT_RGB source has no alpha bits, which would make a TYPE_INT_ARGB destination see through
+						out.data[dstRow + x] = 0xFF000000 | in.argbToRgb(in.data[srcRow + xs[x]]);
+					}
+				}
+			});
+			return dst;
+		}
+
+		final SamplingTable xTable = table(filter, src.getWidth(), dstWidth);
+		final SamplingTable yTable = table(filter, src.getHeight(), dstHeight);
+
+		//Scale every source row we need horizontally first, then blend those rows together vertically.
+		//Output rows use source rows in order, so only the last few horizontally scaled rows are kept around, in a small ring.
+		forEachBand(dstHeight, (from, to) -> {
+			final int ringSize = yTable.taps;
+			final int rowLength = dstWidth * 3;
+			final int[] ring = scratch(ringSize * rowLength + ringSize);
+			final int slots = ringSize * rowLength;
+			Arrays.fill(ring, slots, slots + ringSize, -1);
+
+			for(int y = from; y < to; y++) {
+				for(int t = 0, i = y * yTable.taps; t < yTable.taps; t++, i++) {
+					int srcRow = yTable.index[i];
+					int slot = srcRow % ringSize;
+					if(yTable.weight[i] != 0 && ring[slots + slot] != srcRow) {
+						horizontalPass(in, srcRow, xTable, ring, slot * rowLength, dstWidth);
+						ring[slots + slot] = srcRow;
+					}
+				}
+				verticalPass(ring, ringSize, yTable, y, out.data, out.offset + y * out.stride, dstWidth);
+			}
+		});
+
+		return dst;
+	}
+
+	/**
+	 * Scale one source row horizontally into mid, one R, G and B value per output column.
+	 * The results keep {@value #MID_BITS} fraction bits.
+	 */
+	private static void horizontalPass(Pixels in, int srcRow, SamplingTable xTable, int[] mid, int midOffset, int dstWidth) {
+		final int shift = WEIGHT_BITS - MID_BITS;
+		final int round = 1 << (shift - 1);
+		final int taps = xTable.taps;
+		final int[] index = xTable.index;
+		final int[] weight = xTable.weight;
+		final int[] data = in.data;
+		final int row = in.offset + srcRow * in.stride;
+		final boolean alpha = in.alpha;
+
+		for(int x = 0, m = midOffset; x < dstWidth; x++, m += 3) {
+			//R, G and B are spread out into their own 21 bit lanes of a long, so one multiply weighs all 3 channels at once
+			long sum = 0;
+			for(int t = 0, i = x * taps; t < taps; t++, i++) {
+				int rgb = data[row + index[i]];
+				if(alpha) {
+					rgb = in.argbToRgb(rgb);
+				}
+				long lanes = (rgb & 0xFFL) | ((rgb & 0xFF00L) << 13) | ((rgb & 0xFF0000L) << 26);
+				sum += lanes * weight[i];
+			}
+			mid[m] = ((int) (sum >>> 42) + round) >> shift;
+			mid[m + 1] = ((int) ((sum >>> 21) & LANE_MASK) + round) >> shift;
+			mid[m + 2] = ((int) (sum & LANE_MASK) + round) >> shift;
+		}
+	}
+
+	/**
+	 * Blend the horizontally scaled source rows in the ring together into a output row
+	 */
+	private static void verticalPass(int[] mid, int ringSize, SamplingTable yTable, int y, int[] out, int outOffset, int dstWidth) {
+		final int shift = WEIGHT_BITS + MID_BITS;
+		final int round = 1 << (shift - 1);
+		final int taps = yTable.taps;
+		final int rowLength = dstWidth * 3;
+
+		for(int x = 0; x < dstWidth; x++) {
+			int r = 0, g = 0, b = 0;
+			for(int t = 0, i = y * taps; t < taps; t++, i++) {
+				int w = yTable.weight[i];
+				int m = (yTable.index[i] % ringSize) * rowLength + x * 3;
+				r += mid[m] * w;
+				g += mid[m + 1] * w;
+				b += mid[m + 2] * w;
+			}
+			r = Math.min(255, (r + round) >> shift);
+			g = Math.min(255, (g + round) >> shift);
+			b = Math.min(255, (b + round) >> shift);
+			out[outOffset + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+		}
+	}
+
+	/**
+	 * Run a task over every row, in bands, on one or every core
+	 */
+	private void forEachBand(int rows, BandTask task) {
+		int bands = (rows + ROWS_PER_BAND - 1) / ROWS_PER_BAND;
+		if(!parallel || bands < 2) {
+			task.run(0, rows);
+			return;
+		}
+		IntStream.range(0, bands).parallel().forEach(band -> {
+			task.run(band * ROWS_PER_BAND, Math.min(rows, (band + 1) * ROWS_PER_BAND));
+		});
+	}
+
+	private interface BandTask {
+		void run(int fromRow, int toRow);
+	}
+
+	/**
+	 * Per thread scratch space, so scaling does not allocate once it has run a few times
+	 */
+	private static int[] scratch(int length) {
+		int[] arr = SCRATCH.get();
+		if(arr == null || arr.length < length) {
+			arr = new int[length];
+			SCRATCH.set(arr);
+		}
+		return arr;
+	}
+
+	/**
+	 * Get the sampling table for scaling one direction from srcSize to dstSize, creating it the first time
+	 */
+	private static SamplingTable table(Filter filter, int srcSize, int dstSize) {
+		long key = ((long) filter.ordinal() << 62) | ((long) srcSize << 31) | dstSize;
+		SamplingTable table = TABLES.get(key);
+		if(table == null) {
+			if(TABLES.size() >= MAX_CACHED_TABLES) {
+				TABLES.clear();
+			}
+			table = SamplingTable.create(filter, srcSize, dstSize);
+			TABLES.put(key, table);
+		}
+		return table;
+	}
+
+	/**
+	 * Which source pixels, and how much of each, make up every output pixel along one direction.
+	 * Every output pixel has the same number of taps, unused taps have a weight of 0.
+	 */
+	private static class SamplingTable {
+
+		private final int taps;
+		private final int[] index;
+		private final int[] weight;
+
+		private SamplingTable(int taps, int dstSize) {
+			this.taps = taps;
+			this.index = new int[taps * dstSize];
+			this.weight = new int[taps * dstSize];
+		}
+
+		static SamplingTable create(Filter filter, int srcSize, int dstSize) {
+			final double scale = srcSize / (double) dstSize;
+
+			switch (filter) {
+			case NEAREST: {
+				SamplingTable table = new SamplingTable(1, dstSize);
+				for(int d = 0; d < dstSize; d++) {
+					table.index[d] = Math.min(srcSize - 1, (int) ((d + 0.5) * scale));
+					table.weight[d] = WEIGHT_ONE;
+				}
+				return table;
+			}
+			case BILINEAR: {
+				SamplingTable table = new SamplingTable(2, dstSize);
+				for(int d = 0; d < dstSize; d++) {
+					double center = Math.max(0, (d + 0.5) * scale - 0.5);
+					int i0 = Math.min(srcSize - 1, (int) center);
+					int i1 = Math.min(srcSize - 1, i0 + 1);
+					int w1 = (int) Math.round((center - i0) * WEIGHT_ONE);
+					table.index[d * 2] = i0;
+					table.index[d * 2 + 1] = i1;
+					table.weight[d * 2] = WEIGHT_ONE - w1;
+					table.weight[d * 2 + 1] = w1;
+				}
+				return table;
+			}
+			default: {
+				//A output pixel covers [d * scale, (d + 1) * scale) of the source, which can touch up to ceil(scale) + 1 pixels
+				int taps = (int) Math.ceil(scale) + 1;
+				SamplingTable table = new SamplingTable(taps, dstSize);
+				for(int d = 0; d < dstSize; d++) {
+					double start = d * scale;
+					double end = Math.min(srcSize, (d + 1) * scale);
+					int first = (int) start;
+					int sum = 0;
+					int biggest = 0;
+					for(int t = 0; t < taps; t++) {
+						int i = Math.min(srcSize - 1, first + t);
+						double covered = Math.min(end, first + t + 1) - Math.max(start, first + t);
+						int w = covered <= 0 ? 0 : (int) Math.round(covered / (end - start) * WEIGHT_ONE);
+						table.index[d * taps + t] = i;
+						table.weight[d * taps + t] = w;
+						sum += w;
+						if(w > table.weight[d * taps + biggest]) {
+							biggest = t;
+						}
+					}
+					//Rounding can leave the weights a tiny bit off, give the difference to the biggest tap
+					table.weight[d * taps + biggest] += WEIGHT_ONE - sum;
+				}
+				return table;
+			}
+			}
+		}
+
+	}
+
+	/**
+	 * Direct access to the ARGB pixels of a image. Images that don't store their pixels as ints get converted once.
+	 */
+	private static class Pixels {
+
+		private final int[] data;
+		private final int offset;
+		private final int stride;
+		private final boolean alpha;
+
+		private Pixels(int[] data, int offset, int stride, boolean alpha) {
+			this.data = data;
+			this.offset = offset;
+			this.stride = stride;
+			this.alpha = alpha;
+		}
+
+		static Pixels of(BufferedImage img) {
+			Raster raster = img.getRaster();
+			int type = img.getType();
+			if((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) && raster.getDataBuffer() instanceof DataBufferInt) {
+				int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+				int offset = raster.getDataBuffer().getOffset() - raster.getSampleModelTranslateX() - raster.getSampleModelTranslateY() * stride;
+				return new Pixels(((DataBufferInt) raster.getDataBuffer()).getData(), offset, stride, type == BufferedImage.TYPE_INT_ARGB);
+			}
+			int[] data = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+			return new Pixels(data, 0, img.getWidth(), img.getColorModel().hasAlpha());
+		}
+
+		/**
+		 * Drop the alpha channel, blending the pixel on top of black like drawing it on a empty RGB image would
+		 */
+		int argbToRgb(int argb) {
+			if(!alpha) {
+				return argb;
+			}
+			int a = argb >>> 24;
+			if(a == 0xFF) {
+				return argb;
+			}
+			int r = ((argb >> 16) & 0xFF) * a / 255;
+			int g = ((argb >> 8) & 0xFF) * a / 255;
+			int b = (argb & 0xFF) * a / 255;
+			return 0xFF000000 | (r << 16) | (g << 8) | b;
+		}
+
+	}
+
+}
@@ -5,10 +5,11 @@ import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 
 import org.golde.streamdeck.StreamDeckXL;
 
@@ -40,18 +41,19 @@ public class ImageUtilities {
 		 return (luminance < 140) ? Color.WHITE : Color.BLACK;
 	}
 	
+	private static final ImageScaler SCALER = new ImageScaler(ImageScaler.Filter.AREA_AVERAGE);
+
 	/**
 	 * Scale a image to a desired width and height
+	 * Uses a {@link ImageScaler} with the {@link ImageScaler.Filter#AREA_AVERAGE} filter. Use your own ImageScaler if you want
+	 * to pick the filter or reuse the output image.
 	 * @param in Image in
 	 * @param width new width
 	 * @param height new height
 	 * @return New image with a new size
 	 */
 	public static final BufferedImage scaleImage(BufferedImage in, int width, int height) {
-		Image resultingImage = in.getScaledInstance(width, height, Image.SCALE_DEFAULT);
-		BufferedImage outputImage = new BufferedImage(width, height, StreamDeckXL.IMG_TYPE);
-		outputImage.getGraphics().drawImage(resultingImage, 0, 0, null);
-		return outputImage;
+		return SCALER.scale(in, width, height);
 	}
 	
 	/**
@@ -89,11 +91,8 @@ public class ImageUtilities {
 	public static final BufferedImage createSolidColorImage(int width, int height, int hexColor) {
 		BufferedImage img = new BufferedImage(width, height, StreamDeckXL.IMG_TYPE);
 
-		for(int x = 0; x < width; x++) {
-			for(int y = 0; y < height; y++) {
-				img.setRGB(x, y, hexColor);
-			}
-		}
+		//Straight into the pixels, setRGB makes a little array for every pixel
+		Arrays.fill(((DataBufferInt) img.getRaster().getDataBuffer()).getData(), hexColor & 0xFFFFFF);
 		
 		return img;
 	}
@@ -107,14 +106,38 @@ public class ImageUtilities {
 	public static void drawTextOnImage(BufferedImage image, String text, Color textColor) {
 
         Graphics g = image.getGraphics();
-        Rectangle rect = new Rectangle(image.getWidth(), image.getHeight());
+        drawText(g, image.getWidth(), image.getHeight(), text, textColor);
+        g.dispose();
+       
+    }
+
+	/**
+	 * Draw text in the middle of a area, like {@link #drawTextOnImage(BufferedImage, String, Color)}, with a graphics you already have.
+	 * The font and color of the graphics are put back afterwards.
+	 * @param g graphics to draw with
+	 * @param width width of the area, starting at 0,0
+	 * @param height height of the area, starting at 0,0
+	 * @param text Text to draw
+	 * @param textColor the color of the text
+	 */
+	public static void drawText(Graphics g, int width, int height, String text, Color textColor) {
+
+        Rectangle rect = new Rectangle(width, height);
+        Font origFont = g.getFont();
+
+        //Measure without the transform, a rotated or flipped graphics rounds the widths differently
+        Graphics measure = g;
+        if(g instanceof Graphics2D && !((Graphics2D) g).getTransform().isIdentity()) {
+            measure = g.create();
+            ((Graphics2D) measure).setTransform(new AffineTransform());
+        }
 
         int fontSize = 98;
         FontMetrics metrics;
         do {
             fontSize -= 2;
             g.setFont(g.getFont().deriveFont((float) fontSize));
-            metrics = g.getFontMetrics(g.getFont());
+            metrics = measure.getFontMetrics(g.getFont());
         } while (metrics.stringWidth(text) > rect.width);
         
         Font font = g.getFont();
@@ -122,7 +145,10 @@ public class ImageUtilities {
         g.setColor(textColor);
         
         
-        metrics = g.getFontMetrics(font);
+        metrics = measure.getFontMetrics(font);
+        if(measure != g) {
+            measure.dispose();
+        }
         int x = rect.x + (rect.width - metrics.stringWidth(text)) / 2;
         int y = rect.y + ((rect.height - metrics.getHeight()) / 2) + metrics.getAscent();
         g.setFont(font);
@@ -130,7 +156,7 @@ public class ImageUtilities {
         
         
         g.setColor(origColor);
-        g.dispose();
+        g.setFont(origFont);
        
     }
 	
@@ -143,11 +169,38 @@ public class ImageUtilities {
 	 */
 	public static final BufferedImage[] splitImage(BufferedImage image, int rows, int cols) {
 
-		final int chunks = rows * cols;
 		int chunkWidth = image.getWidth() / cols; // determines the chunk width and height
 		int chunkHeight = image.getHeight() / rows;
+
+		int[] xOffsets = new int[cols];
+		int[] yOffsets = new int[rows];
+		for (int y = 0; y < cols; y++) {
+			xOffsets[y] = chunkWidth * y;
+		}
+		for (int x = 0; x < rows; x++) {
+			yOffsets[x] = chunkHeight * x;
+		}
+
+		return splitImage(image, xOffsets, yOffsets, chunkWidth, chunkHeight);
+	}
+
+	/**
+	 * Split a image into mutiple images, where every chunk starts at a given pixel offset.
+	 * Unlike {@link #splitImage(BufferedImage, int, int)} the chunks don't have to touch each other,
+	 * so you can skip over pixels that would end up hidden behind a bezel or a gap between keys.
+	 * @param image Image to split up
+	 * @param xOffsets left edge of every column, in pixels
+	 * @param yOffsets top edge of every row, in pixels
+	 * @param chunkWidth width of every chunk
+	 * @param chunkHeight height of every chunk
+	 * @return An array of buffered images. Rows than columns.
+	 */
+	public static final BufferedImage[] splitImage(BufferedImage image, int[] xOffsets, int[] yOffsets, int chunkWidth, int chunkHeight) {
+
+		final int rows = yOffsets.length;
+		final int cols = xOffsets.length;
 		int count = 0;
-		BufferedImage imgs[] = new BufferedImage[chunks]; //Image array to hold image chunks
+		BufferedImage imgs[] = new BufferedImage[rows * cols]; //Image array to hold image chunks
 		for (int x = 0; x < rows; x++) {
 			for (int y = 0; y < cols; y++) {
 				//Initialize the image array with image chunks
@@ -155,13 +208,65 @@ public class ImageUtilities {
 
 				// draws the image chunk
 				Graphics2D gr = imgs[count++].createGraphics();
-				gr.drawImage(image, 0, 0, chunkWidth, chunkHeight, chunkWidth * y, chunkHeight * x, chunkWidth * y + chunkWidth, chunkHeight * x + chunkHeight, null);
+				gr.drawImage(image, 0, 0, chunkWidth, chunkHeight, xOffsets[y], yOffsets[x], xOffsets[y] + chunkWidth, yOffsets[x] + chunkHeight, null);
 				gr.dispose();
 			}
 		}
 		return imgs;
 	}
 
+	/**
+	 * Split a image into views, based on number of rows and colums. No pixels are copied.
+	 * Pass the views from the last call back in, and nothing gets allocated either.
+	 * @param image Image to split up
+	 * @param rows Number of rows to split the image into
+	 * @param cols Number of colums to split the image into
+	 * @param views views to reuse, or null to create new ones
+	 * @return An array of views. Rows than columns.
+	 */
+	public static final TileView[] splitImage(BufferedImage image, int rows, int cols, TileView[] views) {
+		int chunkWidth = image.getWidth() / cols;
+		int chunkHeight = image.getHeight() / rows;
+
+		if(views == null || views.length != rows * cols) {
+			views = new TileView[rows * cols];
+		}
+
+		int count = 0;
+		for (int x = 0; x < rows; x++) {
+			for (int y = 0; y < cols; y++) {
+				if(views[count] == null) {
+					views[count] = new TileView(image, chunkWidth * y, chunkHeight * x, chunkWidth, chunkHeight);
+				}
+				else {
+					views[count].set(image, chunkWidth * y, chunkHeight * x, chunkWidth, chunkHeight);
+				}
+				count++;
+			}
+		}
+		return views;
+	}
+
+	/**
+	 * Split a image into views, where every view starts at a given pixel offset. No pixels are copied.
+	 * @param image Image to split up
+	 * @param xOffsets left edge of every column, in pixels
+	 * @param yOffsets top edge of every row, in pixels
+	 * @param chunkWidth width of every view
+	 * @param chunkHeight height of every view
+	 * @return An array of views. Rows than columns.
+	 */
+	public static final TileView[] splitImageViews(BufferedImage image, int[] xOffsets, int[] yOffsets, int chunkWidth, int chunkHeight) {
+		TileView[] views = new TileView[yOffsets.length * xOffsets.length];
+		int count = 0;
+		for (int x = 0; x < yOffsets.length; x++) {
+			for (int y = 0; y < xOffsets.length; y++) {
+				views[count++] = new TileView(image, xOffsets[y], yOffsets[x], chunkWidth, chunkHeight);
+			}
+		}
+		return views;
+	}
+
 	/**
 	 * Apply a AffineTransform to a buffered image
 	 * @param image Buffered image in
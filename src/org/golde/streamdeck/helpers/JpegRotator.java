@@ -0,0 +1,795 @@
+package org.golde.streamdeck.helpers;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Rotates a JPEG by 180 degrees without decoding it to pixels, the same way jpegtran -rotate 180 does.
+ * The quantized DCT coefficients are read out of the file, the blocks are put in the reverse order, and every
+ * coefficient with a odd horizontal + vertical frequency has its sign flipped. The coefficients are then Huffman
+ * coded again with optimized tables. Nothing gets quantized a second time, so the rotated image is exactly as good as the source.
+ *
+ * Only baseline (and extended sequential Huffman, 8 bit) JPEGs with every component in one scan are supported, and the
+ * width and height must be a multiple of the MCU size, otherwise the padding blocks would end up in the top left corner.
+ * {@link #rotate180(byte[])} returns null for everything else, so the caller can fall back to decoding the image.
+ * @author Eric Golde
+ *
+ */
+public class JpegRotator {
+
+	private JpegRotator() {}
+
+	private static final int SOF0 = 0xC0;
+	private static final int SOF1 = 0xC1;
+	private static final int DHT = 0xC4;
+	private static final int SOI = 0xD8;
+	private static final int EOI = 0xD9;
+	private static final int SOS = 0xDA;
+	private static final int DQT = 0xDB;
+	private static final int DRI = 0xDD;
+	private static final int APP0 = 0xE0;
+	private static final int APP14 = 0xEE;
+	private static final int RST0 = 0xD0;
+
+	/**
+	 * Natural (row major) position of every zig-zag index
+	 */
+	private static final int[] ZIGZAG = {
+			0,  1,  8, 16,  9,  2,  3, 10,
+			17, 24, 32, 25, 18, 11,  4,  5,
+			12, 19, 26, 33, 40, 48, 41, 34,
+			27, 20, 13,  6,  7, 14, 21, 28,
+			35, 42, 49, 56, 57, 50, 43, 36,
+			29, 22, 15, 23, 30, 37, 44, 51,
+			58, 59, 52, 45, 38, 31, 39, 46,
+			53, 60, 61, 54, 47, 55, 62, 63
+	};
+
+	/**
+	 * True for every zig-zag index whose coefficient changes sign when the block is rotated by 180 degrees.
+	 * Flipping a block horizontally negates the odd columns, flipping it vertically negates the odd rows.
+	 */
+	private static final boolean[] FLIP_SIGN = new boolean[64];
+	static {
+		for(int i = 0; i < 64; i++) {
+			int row = ZIGZAG[i] / 8;
+			int col = ZIGZAG[i] % 8;
+			FLIP_SIGN[i] = ((row + col) & 1) == 1;
+		}
+	}
+
+	/**
+	 * Get the width and height of a JPEG, without decoding it
+	 * @param jpeg the JPEG file
+	 * @return {width, height}, or null if no frame header was found
+	 */
+	public static int[] getSize(byte[] jpeg) {
+		if(jpeg.length < 4 || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != SOI) {
+			return null;
+		}
+		int pos = 2;
+		while(pos + 4 <= jpeg.length) {
+			if((jpeg[pos] & 0xFF) != 0xFF) {
+				return null;
+			}
+			int marker = jpeg[pos + 1] & 0xFF;
+			if(marker == 0xFF) {
+				pos++;
+				continue;
+			}
+			int length = readShort(jpeg, pos + 2);
+			//Every SOFn except DHT (C4), JPG (C8) and DAC (CC)
+			if(marker >= 0xC0 && marker <= 0xCF && marker != DHT && marker != 0xC8 && marker != 0xCC) {
+				if(pos + 9 > jpeg.length) {
+					return null;
+				}
+				return new int[] {readShort(jpeg, pos + 7), readShort(jpeg, pos + 5)};
+			}
+			if(marker == SOS || marker == EOI) {
+				return null;
+			}
+			pos += 2 + length;
+		}
+		return null;
+	}
+
+	/**
+	 * Rotate a JPEG by 180 degrees, without losing any quality
+	 * @param jpeg the JPEG file
+	 * @return the rotated JPEG file, or null if this kind of JPEG is not supported
+	 */
+	public static byte[] rotate180(byte[] jpeg) {
+		try {
+			Decoder decoder = new Decoder(jpeg);
+			if(!decoder.decode()) {
+				return null;
+			}
+			decoder.rotate();
+			return new Encoder(decoder).encode();
+		}
+		catch(IndexOutOfBoundsException | IllegalStateException e) {
+			//Truncated or corrupt file
+			return null;
+		}
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private static int readShort(byte[] data, int pos) {
+		return ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+	}
+
+	private static class Component {
+		int id;
+		int h;
+		int v;
+		int dcTable;
+		int acTable;
+		int blocksPerLine;
+		int blocksPerColumn;
+		short[] coefficients;
+	}
+
+	private static class HuffmanDecodeTable {
+		final int[] maxCode = new int[18];
+		final int[] valOffset = new int[17];
+		final byte[] values;
+
+		HuffmanDecodeTable(int[] counts, byte[] values) {
+			this.values = values;
+			int code = 0;
+			int k = 0;
+			for(int length = 1; length <= 16; length++) {
+				valOffset[length] = k - code;
+				code += counts[length - 1];
+				k += counts[length - 1];
+				maxCode[length] = counts[length - 1] == 0 ? -1 : code - 1;
+				code <<= 1;
+			}
+			maxCode[17] = Integer.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Reads the quantized coefficients out of a baseline JPEG
+	 */
+	private static class Decoder {
+
+		final byte[] data;
+		int pos;
+
+		//Segments that are copied into the rotated file as they are
+		final ByteArrayOutputStream tables = new ByteArrayOutputStream();
+		byte[] frameHeader;
+		int frameMarker;
+
+		int width;
+		int height;
+		Component[] components;
+		int maxH = 1;
+		int maxV = 1;
+		int mcusPerLine;
+		int mcusPerColumn;
+		int restartInterval;
+
+		final HuffmanDecodeTable[] dcTables = new HuffmanDecodeTable[4];
+		final HuffmanDecodeTable[] acTables = new HuffmanDecodeTable[4];
+
+		//Bit reader
+		int bitBuffer;
+		int bitCount;
+
+		Decoder(byte[] data) {
+			this.data = data;
+		}
+
+		/**
+		 * @return false if the JPEG is not supported
+		 */
+		boolean decode() {
+			if(readShort(data, 0) != (0xFF00 | SOI)) {
+				return false;
+			}
+			pos = 2;
+
+			while(true) {
+				if((data[pos] & 0xFF) != 0xFF) {
+					return false;
+				}
+				int marker = data[pos + 1] & 0xFF;
+				if(marker == 0xFF) {
+					pos++;
+					continue;
+				}
+				if(marker == EOI) {
+					return false;
+				}
+				int length = readShort(data, pos + 2);
+				int start = pos + 4;
+				int end = pos + 2 + length;
+
+				if(marker == SOF0 || marker == SOF1) {
+					if(!readFrameHeader(start)) {
+						return false;
+					}
+					frameMarker = marker;
+					frameHeader = new byte[length - 2];
+					System.arraycopy(data, start, frameHeader, 0, frameHeader.length);
+				}
+				else if(marker >= 0xC0 && marker <= 0xCF && marker != DHT && marker != 0xC8 && marker != 0xCC) {
+					//Progressive, lossless, hierarchical or arithmetic coded
+					return false;
+				}
+				else if(marker == 0xCC) {
+					//Arithmetic coding conditioning
+					return false;
+				}
+				else if(marker == DHT) {
+					readHuffmanTables(start, end);
+				}
+				else if(marker == DQT || marker == APP0 || marker == APP14) {
+					//Quantization tables are reused as they are, the JFIF and Adobe headers tell decoders what color space we are in
+					tables.write(data, pos, 2 + length);
+				}
+				else if(marker == DRI) {
+					restartInterval = readShort(data, start);
+				}
+				else if(marker == SOS) {
+					if(frameHeader == null || !readScan(start)) {
+						return false;
+					}
+					pos = end;
+					decodeScan();
+					return hasOnlyOneScan();
+				}
+				pos = end;
+			}
+		}
+
+		boolean readFrameHeader(int start) {
+			if((data[start] & 0xFF) != 8) {
+				return false;
+			}
+			height = readShort(data, start + 1);
+			width = readShort(data, start + 3);
+			int count = data[start + 5] & 0xFF;
+			if(width == 0 || height == 0 || count == 0 || count > 4) {
+				return false;
+			}
+
+			components = new Component[count];
+			for(int i = 0; i < count; i++) {
+				Component c = new Component();
+				c.id = data[start + 6 + i * 3] & 0xFF;
+				c.h = (data[start + 7 + i * 3] & 0xFF) >> 4;
+				c.v = data[start + 7 + i * 3] & 0x0F;
+				if(c.h < 1 || c.h > 4 || c.v < 1 || c.v > 4) {
+					return false;
+				}
+				maxH = Math.max(maxH, c.h);
+				maxV = Math.max(maxV, c.v);
+				components[i] = c;
+			}
+
+			if(count == 1) {
+				//A single component scan is not interleaved, so its MCU is one block no matter what the sampling factors say
+				components[0].h = 1;
+				components[0].v = 1;
+				maxH = 1;
+				maxV = 1;
+			}
+
+			//Blocks that are only there to pad the image out to a whole MCU would end up in the top left corner
+			if(width % (8 * maxH) != 0 || height % (8 * maxV) != 0) {
+				return false;
+			}
+
+			mcusPerLine = width / (8 * maxH);
+			mcusPerColumn = height / (8 * maxV);
+			for(Component c : components) {
+				c.blocksPerLine = mcusPerLine * c.h;
+				c.blocksPerColumn = mcusPerColumn * c.v;
+				c.coefficients = new short[c.blocksPerLine * c.blocksPerColumn * 64];
+			}
+			return true;
+		}
+
+		void readHuffmanTables(int start, int end) {
+			int p = start;
+			while(p < end) {
+				int tableClass = (data[p] & 0xFF) >> 4;
+				int id = data[p] & 0x0F;
+				int[] counts = new int[16];
+				int total = 0;
+				for(int i = 0; i < 16; i++) {
+					counts[i] = data[p + 1 + i] & 0xFF;
+					total += counts[i];
+				}
+				byte[] values = new byte[total];
+				System.arraycopy(data, p + 17, values, 0, total);
+				p += 17 + total;
+
+				HuffmanDecodeTable table = new HuffmanDecodeTable(counts, values);
+				if(tableClass == 0) {
+					dcTables[id & 3] = table;
+				}
+				else {
+					acTables[id & 3] = table;
+				}
+			}
+		}
+
+		boolean readScan(int start) {
+			int count = data[start] & 0xFF;
+			if(count != components.length) {
+				//The components are split over more than one scan
+				return false;
+			}
+			for(int i = 0; i < count; i++) {
+				int id = data[start + 1 + i * 2] & 0xFF;
+				int tables = data[start + 2 + i * 2] & 0xFF;
+				if(components[i].id != id) {
+					return false;
+				}
+				components[i].dcTable = tables >> 4;
+				components[i].acTable = tables & 0x0F;
+				if(components[i].dcTable > 3 || components[i].acTable > 3 || dcTables[components[i].dcTable] == null || acTables[components[i].acTable] == null) {
+					return false;
+				}
+			}
+			int spectralStart = data[start + 1 + count * 2] & 0xFF;
+			int spectralEnd = data[start + 2 + count * 2] & 0xFF;
+			int approximation = data[start + 3 + count * 2] & 0xFF;
+			return spectralStart == 0 && spectralEnd == 63 && approximation == 0;
+		}
+
+		void decodeScan() {
+			int[] predictions = new int[components.length];
+			int mcus = mcusPerLine * mcusPerColumn;
+
+			for(int mcu = 0; mcu < mcus; mcu++) {
+				if(restartInterval > 0 && mcu > 0 && mcu % restartInterval == 0) {
+					readRestartMarker();
+					for(int i = 0; i < predictions.length; i++) {
+						predictions[i] = 0;
+					}
+				}
+
+				int mcuX = mcu % mcusPerLine;
+				int mcuY = mcu / mcusPerLine;
+				for(int i = 0; i < components.length; i++) {
+					Component c = components[i];
+					for(int v = 0; v < c.v; v++) {
+						for(int h = 0; h < c.h; h++) {
+							int block = (mcuY * c.v + v) * c.blocksPerLine + mcuX * c.h + h;
+							predictions[i] = decodeBlock(c, block * 64, predictions[i]);
+						}
+					}
+				}
+			}
+		}
+
+		int decodeBlock(Component c, int offset, int prediction) {
+			short[] coefficients = c.coefficients;
+
+			int category = decodeHuffman(dcTables[c.dcTable]);
+			int dc = prediction + (category == 0 ? 0 : extend(readBits(category), category));
+			coefficients[offset] = (short) dc;
+
+			HuffmanDecodeTable ac = acTables[c.acTable];
+			for(int k = 1; k < 64;) {
+				int symbol = decodeHuffman(ac);
+				int run = symbol >> 4;
+				int size = symbol & 0x0F;
+				if(size == 0) {
+					if(run != 15) {
+						break; //End of block
+					}
+					k += 16;
+					continue;
+				}
+				k += run;
+				if(k > 63) {
+					throw new IllegalStateException("Coefficient outside of block");
+				}
+				coefficients[offset + k] = (short) extend(readBits(size), size);
+				k++;
+			}
+			return dc;
+		}
+
+		int decodeHuffman(HuffmanDecodeTable table) {
+			int code = 0;
+			for(int length = 1; length <= 16; length++) {
+				code = (code << 1) | readBit();
+				if(code <= table.maxCode[length]) {
+					return table.values[table.valOffset[length] + code] & 0xFF;
+				}
+			}
+			throw new IllegalStateException("Bad Huffman code");
+		}
+
+		int readBits(int count) {
+			int value = 0;
+			for(int i = 0; i < count; i++) {
+				value = (value << 1) | readBit();
+			}
+			return value;
+		}
+
+		int readBit() {
+			if(bitCount == 0) {
+				int b = data[pos++] & 0xFF;
+				if(b == 0xFF) {
+					int next = data[pos] & 0xFF;
+					if(next != 0) {
+						throw new IllegalStateException("Unexpected marker in scan");
+					}
+					pos++; //Stuffed zero byte
+				}
+				bitBuffer = b;
+				bitCount = 8;
+			}
+			bitCount--;
+			return (bitBuffer >> bitCount) & 1;
+		}
+
+		void readRestartMarker() {
+			//Whatever is left of the current byte is padding
+			bitCount = 0;
+			while((data[pos] & 0xFF) == 0xFF && (data[pos + 1] & 0xFF) == 0xFF) {
+				pos++;
+			}
+			int marker = data[pos + 1] & 0xFF;
+			if((data[pos] & 0xFF) != 0xFF || marker < RST0 || marker > RST0 + 7) {
+				throw new IllegalStateException("Expected restart marker");
+			}
+			pos += 2;
+		}
+
+		/**
+		 * A second scan would mean this is not a simple sequential JPEG after all
+		 */
+		boolean hasOnlyOneScan() {
+			while(pos + 1 < data.length) {
+				if((data[pos] & 0xFF) == 0xFF) {
+					int marker = data[pos + 1] & 0xFF;
+					if(marker == EOI) {
+						return true;
+					}
+					if(marker != 0 && marker != 0xFF && (marker < RST0 || marker > RST0 + 7)) {
+						return false;
+					}
+				}
+				pos++;
+			}
+			//Missing EOI, but we have every block
+			return true;
+		}
+
+		/**
+		 * Put the blocks of every component in the reverse order, and rotate every block
+		 */
+		void rotate() {
+			for(Component c : components) {
+				short[] src = c.coefficients;
+				short[] dst = new short[src.length];
+				int blocks = c.blocksPerLine * c.blocksPerColumn;
+				for(int block = 0; block < blocks; block++) {
+					int from = block * 64;
+					int to = (blocks - 1 - block) * 64;
+					for(int k = 0; k < 64; k++) {
+						dst[to + k] = FLIP_SIGN[k] ? (short) -src[from + k] : src[from + k];
+					}
+				}
+				c.coefficients = dst;
+			}
+		}
+
+		static int extend(int value, int size) {
+			return value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+		}
+
+	}
+
+	/**
+	 * Huffman codes the coefficients again, with tables built for exactly these coefficients
+	 */
+	private static class Encoder {
+
+		final Decoder decoded;
+		final ByteArrayOutputStream out;
+
+		//[table id][symbol]
+		final int[][] dcFrequencies = new int[4][];
+		final int[][] acFrequencies = new int[4][];
+		final int[][] dcCodes = new int[4][];
+		final int[][] dcLengths = new int[4][];
+		final int[][] acCodes = new int[4][];
+		final int[][] acLengths = new int[4][];
+
+		//Bit writer
+		int bitBuffer;
+		int bitCount;
+
+		Encoder(Decoder decoded) {
+			this.decoded = decoded;
+			this.out = new ByteArrayOutputStream(decoded.data.length);
+		}
+
+		byte[] encode() {
+			for(Component c : decoded.components) {
+				if(dcFrequencies[c.dcTable] == null) {
+					dcFrequencies[c.dcTable] = new int[257];
+				}
+				if(acFrequencies[c.acTable] == null) {
+					acFrequencies[c.acTable] = new int[257];
+				}
+			}
+
+			//First pass only counts symbols
+			encodeScan(true);
+
+			out.write(0xFF);
+			out.write(SOI);
+			byte[] tables = decoded.tables.toByteArray();
+			out.write(tables, 0, tables.length);
+
+			writeMarker(decoded.frameMarker, decoded.frameHeader.length);
+			out.write(decoded.frameHeader, 0, decoded.frameHeader.length);
+
+			for(int id = 0; id < 4; id++) {
+				if(dcFrequencies[id] != null) {
+					writeHuffmanTable(0, id, dcFrequencies[id], dcCodes, dcLengths);
+				}
+				if(acFrequencies[id] != null) {
+					writeHuffmanTable(1, id, acFrequencies[id], acCodes, acLengths);
+				}
+			}
+
+			Component[] components = decoded.components;
+			writeMarker(SOS, 1 + components.length * 2 + 3);
+			out.write(components.length);
+			for(Component c : components) {
+				out.write(c.id);
+				out.write((c.dcTable << 4) | c.acTable);
+			}
+			out.write(0);
+			out.write(63);
+			out.write(0);
+
+			encodeScan(false);
+			flushBits();
+
+			out.write(0xFF);
+			out.write(EOI);
+			return out.toByteArray();
+		}
+
+		void encodeScan(boolean countOnly) {
+			Component[] components = decoded.components;
+			int[] predictions = new int[components.length];
+			int mcus = decoded.mcusPerLine * decoded.mcusPerColumn;
+
+			for(int mcu = 0; mcu < mcus; mcu++) {
+				int mcuX = mcu % decoded.mcusPerLine;
+				int mcuY = mcu / decoded.mcusPerLine;
+				for(int i = 0; i < components.length; i++) {
+					Component c = components[i];
+					for(int v = 0; v < c.v; v++) {
+						for(int h = 0; h < c.h; h++) {
+							int block = (mcuY * c.v + v) * c.blocksPerLine + mcuX * c.h + h;
+							predictions[i] = encodeBlock(c, block * 64, predictions[i], countOnly);
+						}
+					}
+				}
+			}
+		}
+
+		int encodeBlock(Component c, int offset, int prediction, boolean countOnly) {
+			short[] coefficients = c.coefficients;
+
+			int dc = coefficients[offset];
+			int diff = dc - prediction;
+			int size = bitLength(diff);
+			if(countOnly) {
+				dcFrequencies[c.dcTable][size]++;
+			}
+			else {
+				writeBits(dcCodes[c.dcTable][size], dcLengths[c.dcTable][size]);
+				writeBits(diff < 0 ? diff - 1 : diff, size);
+			}
+
+			int[] frequencies = acFrequencies[c.acTable];
+			int[] codes = acCodes[c.acTable];
+			int[] lengths = acLengths[c.acTable];
+			int run = 0;
+			for(int k = 1; k < 64; k++) {
+				int value = coefficients[offset + k];
+				if(value == 0) {
+					run++;
+					continue;
+				}
+				while(run > 15) {
+					if(countOnly) {
+						frequencies[0xF0]++;
+					}
+					else {
+						writeBits(codes[0xF0], lengths[0xF0]);
+					}
+					run -= 16;
+				}
+				size = bitLength(value);
+				int symbol = (run << 4) | size;
+				if(countOnly) {
+					frequencies[symbol]++;
+				}
+				else {
+					writeBits(codes[symbol], lengths[symbol]);
+					writeBits(value < 0 ? value - 1 : value, size);
+				}
+				run = 0;
+			}
+			if(run > 0) {
+				//End of block
+				if(countOnly) {
+					frequencies[0x00]++;
+				}
+				else {
+					writeBits(codes[0x00], lengths[0x00]);
+				}
+			}
+			return dc;
+		}
+
+		/**
+		 * Build a optimal Huffman table for the counted symbols, the way Annex K.2 of the JPEG spec describes, and write it
+		 */
+		void writeHuffmanTable(int tableClass, int id, int[] frequencies, int[][] codes, int[][] lengths) {
+			int[] freq = frequencies.clone();
+			freq[256] = 1; //Reserve one code, so no code is all 1 bits
+
+			int[] codeSize = new int[257];
+			int[] others = new int[257];
+			for(int i = 0; i < 257; i++) {
+				others[i] = -1;
+			}
+
+			while(true) {
+				int v1 = -1;
+				int v2 = -1;
+				//Find the two least frequent symbols, picking the highest symbol on ties
+				for(int i = 0; i < 257; i++) {
+					if(freq[i] == 0) {
+						continue;
+					}
+					if(v1 == -1 || freq[i] <= freq[v1]) {
+						v2 = v1;
+						v1 = i;
+					}
+					else if(v2 == -1 || freq[i] <= freq[v2]) {
+						v2 = i;
+					}
+				}
+				if(v2 == -1) {
+					break;
+				}
+
+				freq[v1] += freq[v2];
+				freq[v2] = 0;
+
+				codeSize[v1]++;
+				while(others[v1] != -1) {
+					v1 = others[v1];
+					codeSize[v1]++;
+				}
+				others[v1] = v2;
+
+				codeSize[v2]++;
+				while(others[v2] != -1) {
+					v2 = others[v2];
+					codeSize[v2]++;
+				}
+			}
+
+			int[] bits = new int[33];
+			for(int i = 0; i < 257; i++) {
+				if(codeSize[i] > 0) {
+					bits[codeSize[i]]++;
+				}
+			}
+
+			//Codes can be at most 16 bits long
+			for(int i = 32; i > 16; i--) {
+				while(bits[i] > 0) {
+					int j = i - 2;
+					while(bits[j] == 0) {
+						j--;
+					}
+					bits[i] -= 2;
+					bits[i - 1]++;
+					bits[j + 1] += 2;
+					bits[j]--;
+				}
+			}
+			//Remove the reserved code
+			int longest = 16;
+			while(longest > 0 && bits[longest] == 0) {
+				longest--;
+			}
+			if(longest > 0) {
+				bits[longest]--;
+			}
+
+			//Symbols sorted by code length
+			int[] symbols = new int[256];
+			int count = 0;
+			for(int length = 1; length <= 32; length++) {
+				for(int symbol = 0; symbol < 256; symbol++) {
+					if(codeSize[symbol] == length) {
+						symbols[count++] = symbol;
+					}
+				}
+			}
+
+			codes[id] = new int[256];
+			lengths[id] = new int[256];
+			int code = 0;
+			int k = 0;
+			for(int length = 1; length <= 16; length++) {
+				for(int i = 0; i < bits[length]; i++) {
+					codes[id][symbols[k]] = code++;
+					lengths[id][symbols[k]] = length;
+					k++;
+				}
+				code <<= 1;
+			}
+
+			writeMarker(DHT, 1 + 16 + k);
+			out.write((tableClass << 4) | id);
+			for(int length = 1; length <= 16; length++) {
+				out.write(bits[length]);
+			}
+			for(int i = 0; i < k; i++) {
+				out.write(symbols[i]);
+			}
+		}
+
+		void writeMarker(int marker, int bodyLength) {
+			out.write(0xFF);
+			out.write(marker);
+			out.write((bodyLength + 2) >> 8);
+			out.write((bodyLength + 2) & 0xFF);
+		}
+
+		void writeBits(int value, int count) {
+			for(int i = count - 1; i >= 0; i--) {
+				bitBuffer = (bitBuffer << 1) | ((value >> i) & 1);
+				if(++bitCount == 8) {
+					writeByte(bitBuffer);
+					bitBuffer = 0;
+					bitCount = 0;
+				}
+			}
+		}
+
+		void flushBits() {
+			//Pad the last byte with 1 bits
+			while(bitCount != 0) {
+				writeBits(1, 1);
+			}
+		}
+
+		void writeByte(int b) {
+			out.write(b);
+			if(b == 0xFF) {
+				out.write(0);
+			}
+		}
+
+		static int bitLength(int value) {
+			return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+		}
+
+	}
+
+}
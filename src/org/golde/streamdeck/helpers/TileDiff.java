@@ -0,0 +1,194 @@
+package org.golde.streamdeck.helpers;
+
+/**
+ * Remembers what every tile looked like when it was last sent, and tells you if a new version of the tile
+ * is different enough to be worth encoding and sending again.
+ *
+ * A pixel counts as changed when one of its channels moved more than the channel delta.
+ * A tile counts as changed when more than the changed fraction of its pixels changed.
+ * With both set to 0 only a exact match counts as unchanged.
+ *
+ * Pixels are read straight out of the {@link TileView}, nothing is copied unless the tile changed.
+ * @author Eric Golde
+ *
+ */
+public class TileDiff {
+
+	private final int channelDelta;
+	private final double changedFraction;
+	private final int[][] previous;
+
+	/**
+	 * Create a diff that only treats exactly equal tiles as unchanged
+	 * @param tiles number of tiles to keep track of
+	 * @return a new TileDiff
+	 */
+	public static TileDiff exact(int tiles) {
+		return new TileDiff(tiles, 0, 0);
+	}
+
+	/**
+	 * Create a diff that ignores small changes in color, like JPEG or dithering noise
+	 * @param tiles number of tiles to keep track of
+	 * @param channelDelta how much a channel (0-255) of any pixel has to move for the tile to count as changed
+	 * @return a new TileDiff
+	 */
+	public static TileDiff maxChannelDelta(int tiles, int channelDelta) {
+		return new TileDiff(tiles, channelDelta, 0);
+	}
+
+	/**
+	 * Create a diff that ignores tiles where only a few pixels changed, like a blinking cursor
+	 * @param tiles number of tiles to keep track of
+	 * @param channelDelta how much a channel (0-255) of a pixel has to move for the pixel to count as changed
+	 * @param changedFraction how much of the tile (0-1) has to change for the tile to count as changed
+	 * @return a new TileDiff
+	 */
+	public static TileDiff changedFraction(int tiles, int channelDelta, double changedFraction) {
+		return new TileDiff(tiles, channelDelta, changedFraction);
+	}
+
+	private TileDiff(int tiles, int channelDelta, double changedFraction) {
+		if(channelDelta < 0 || channelDelta > 255) {
+			throw new IllegalArgumentException("Expected channel delta to be between 0 and 255");
+		}
+		if(changedFraction < 0 || changedFraction > 1) {
+			throw new IllegalArgumentException("Expected changed fraction to be between 0 and 1");
+		}
+		this.channelDelta = channelDelta;
+		this.changedFraction = changedFraction;
+		this.previous = new int[tiles][];
+	}
+
+	/**
+	 * Check if a tile changed since it was last sent. If it did, the new pixels are remembered,
+	 * so only call this when you are going to send the tile if it changed.
+	 * @param tile index of the tile
+	 * @param view the new version of the tile
+	 * @return true if the tile should be sent
+	 */
+	public boolean hasChanged(int tile, TileView view) {
+		if(!isDifferent(tile, view)) {
+			return false;
+		}
+		update(tile, view);
+		return true;
+	}
+
+	/**
+	 * Check if a tile changed since it was last sent, without remembering the new pixels
+	 * @param tile index of the tile
+	 * @param view the new version of the tile
+	 * @return true if the tile is different enough to be sent
+	 */
+	public boolean isDifferent(int tile, TileView view) {
+		int[] prev = previous[tile];
+		final int width = view.getWidth();
+		final int height = view.getHeight();
+
+		if(prev == null || prev.length != width * height) {
+			return true;
+		}
+
+		int[] data = view.directData();
+		if(data == null) {
+			//Can't read this image directly, compare a copy
+			data = new int[width * height];
+			view.copyTo(data, 0, width);
+			return compare(data, 0, width, prev, width, height);
+		}
+		return compare(data, view.directRowOffset(0), view.directStride(), prev, width, height);
+	}
+
+	/**
+	 * Remember a tile as sent, without checking if it changed
+	 * @param tile index of the tile
+	 * @param view the tile that was sent
+	 */
+	public void update(int tile, TileView view) {
+		int length = view.getWidth() * view.getHeight();
+		if(previous[tile] == null || previous[tile].length != length) {
+			previous[tile] = new int[length];
+		}
+		view.copyTo(previous[tile], 0, view.getWidth());
+	}
+
+	/**
+	 * Forget what a tile looked like, so the next version of it always counts as changed
+	 * @param tile index of the tile
+	 */
+	public void invalidate(int tile) {
+		previous[tile] = null;
+	}
+
+	/**
+	 * Forget what every tile looked like
+	 */
+	public void invalidateAll() {
+		for(int i = 0; i < previous.length; i++) {
+			previous[i] = null;
+		}
+	}
+
+	/**
+	 * Get the number of tiles this keeps track of
+	 * @return number of tiles
+	 */
+	public int getTileCount() {
+		return previous.length;
+	}
+
+	private boolean compare(int[] data, int offset, int stride, int[] prev, int width, int height) {
+		if(channelDelta == 0 && changedFraction == 0) {
+			return compareExact(data, offset, stride, prev, width, height);
+		}
+		return compareThreshold(data, offset, stride, prev, width, height);
+	}
+
+	/**
+	 * OR together the XOR of every pixel of a row, without branching per pixel.
+	 * The JIT turns this kind of loop into vector instructions on its own. We only bail out between rows.
+	 */
+	private static boolean compareExact(int[] data, int offset, int stride, int[] prev, int width, int height) {
+		for(int y = 0; y < height; y++) {
+			int row = offset + y * stride;
+			int prevRow = y * width;
+			int bits = 0;
+			for(int x = 0; x < width; x++) {
+				bits |= data[row + x] ^ prev[prevRow + x];
+			}
+			if((bits & 0xFFFFFF) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean compareThreshold(int[] data, int offset, int stride, int[] prev, int width, int height) {
+		final int delta = channelDelta;
+		final int allowed = (int) (changedFraction * width * height);
+		int changed = 0;
+
+		for(int y = 0; y < height; y++) {
+			int row = offset + y * stride;
+			int prevRow = y * width;
+			for(int x = 0; x < width; x++) {
+				int a = data[row + x];
+				int b = prev[prevRow + x];
+				if(((a ^ b) & 0xFFFFFF) == 0) {
+					continue;
+				}
+				int dr = Math.abs(((a >> 16) & 0xFF) - ((b >> 16) & 0xFF));
+				int dg = Math.abs(((a >> 8) & 0xFF) - ((b >> 8) & 0xFF));
+				int db = Math.abs((a & 0xFF) - (b & 0xFF));
+				if(dr > delta || dg > delta || db > delta) {
+					if(++changed > allowed) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+}
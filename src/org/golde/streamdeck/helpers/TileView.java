@@ -0,0 +1,242 @@
+package org.golde.streamdeck.helpers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * A window into part of a image, without copying any pixels.
+ * Use this instead of cutting a image up into a lot of smaller images, for example to send one big image to every key.
+ * The pixels are only copied once, when the key gets encoded.
+ *
+ * A view can be pointed somewhere else with {@link #set(BufferedImage, int, int, int, int)}, so the same views
+ * can be reused for every frame of a animation or screencast.
+ * @author Eric Golde
+ *
+ */
+public class TileView {
+
+	private BufferedImage image;
+	private int x;
+	private int y;
+	private int width;
+	private int height;
+
+	//Direct access to the pixels, if the image stores them as ints. data is null otherwise.
+	private int[] data;
+	private int offset;
+	private int stride;
+	private boolean alpha;
+
+	/**
+	 * Create a view of part of a image
+	 * @param image the image
+	 * @param x left edge of the view
+	 * @param y top edge of the view
+	 * @param width width of the view
+	 * @param height height of the view
+	 */
+	public TileView(BufferedImage image, int x, int y, int width, int height) {
+		set(image, x, y, width, height);
+	}
+
+	/**
+	 * Create a view of a entire image
+	 * @param image the image
+	 * @return a view the size of the image
+	 */
+	public static TileView of(BufferedImage image) {
+		return new TileView(image, 0, 0, image.getWidth(), image.getHeight());
+	}
+
+	/**
+	 * Point this view at a different part of a image, or a different image
+	 * @param image the image
+	 * @param x left edge of the view
+	 * @param y top edge of the view
+	 * @param width width of the view
+	 * @param height height of the view
+	 */
+	public void set(BufferedImage image, int x, int y, int width, int height) {
+		if(x < 0 || y < 0 || width < 0 || height < 0 || x + width > image.getWidth() || y + height > image.getHeight()) {
+			throw new IndexOutOfBoundsException("View " + width + "x" + height + " at " + x + "," + y + " is outside of the " + image.getWidth() + "x" + image.getHeight() + " image");
+		}
+
+		if(this.image != image) {
+			Raster raster = image.getRaster();
+			int type = image.getType();
+			if((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) && raster.getDataBuffer() instanceof DataBufferInt) {
+				this.stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+				this.offset = raster.getDataBuffer().getOffset() - raster.getSampleModelTranslateX() - raster.getSampleModelTranslateY() * stride;
+				this.data = ((DataBufferInt) raster.getDataBuffer()).getData();
+				this.alpha = type == BufferedImage.TYPE_INT_ARGB;
+			}
+			else {
+				this.data = null;
+				this.alpha = image.getColorModel().hasAlpha();
+			}
+		}
+
+		this.image = image;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Get the image this is a view of
+	 * @return the image
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	/**
+	 * @return left edge of the view in the image
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * @return top edge of the view in the image
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * @return width of the view
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return height of the view
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * The int pixels backing the image, for helpers that want to read them directly
+	 * @return the pixels, or null if the image does not store opaque pixels as ints
+	 */
+	int[] directData() {
+		return alpha ? null : data;
+	}
+
+	/**
+	 * Where a row of the view starts in {@link #directData()}
+	 * @param row row of the view
+	 * @return index of the first pixel of the row
+	 */
+	int directRowOffset(int row) {
+		return offset + (y + row) * stride + x;
+	}
+
+	/**
+	 * Distance between two rows in {@link #directData()}
+	 * @return the scanline stride
+	 */
+	int directStride() {
+		return stride;
+	}
+
+	/**
+	 * Get a pixel of the view
+	 * @param x x position, relative to the view
+	 * @param y y position, relative to the view
+	 * @return the pixel as ARGB
+	 */
+	public int getRGB(int x, int y) {
+		if(data != null) {
+			int argb = data[offset + (this.y + y) * stride + this.x + x];
+			return alpha ? argb : 0xFF000000 | argb;
+		}
+		return image.getRGB(this.x + x, this.y + y);
+	}
+
+	/**
+	 * Copy the pixels of the view into a int array, as RGB. Transparent pixels are blended on top of black.
+	 * @param dst array to copy into
+	 * @param dstOffset where the top left pixel goes
+	 * @param dstStride distance between rows in dst
+	 */
+	public void copyTo(int[] dst, int dstOffset, int dstStride) {
+		copy(dst, dstOffset, dstStride, false);
+	}
+
+	/**
+	 * Copy the pixels of the view into a int array, rotated by 180 degrees, as RGB. Transparent pixels are blended on top of black.
+	 * This is what the stream deck wants, so a key can be encoded straight from a view.
+	 * @param dst array to copy into
+	 * @param dstOffset where the top left pixel of the rotated view goes
+	 * @param dstStride distance between rows in dst
+	 */
+	public void copyRotated180To(int[] dst, int dstOffset, int dstStride) {
+		copy(dst, dstOffset, dstStride, true);
+	}
+
+	private void copy(int[] dst, int dstOffset, int dstStride, boolean rotate) {
+		int[] row = data == null ? new int[width] : null;
+
+		for(int sy = 0; sy < height; sy++) {
+			int[] src;
+			int srcOffset;
+			if(data != null) {
+				src = data;
+				srcOffset = offset + (y + sy) * stride + x;
+			}
+			else {
+				image.getRGB(x, y + sy, width, 1, row, 0, width);
+				src = row;
+				srcOffset = 0;
+			}
+
+			if(!rotate) {
+				int d = dstOffset + sy * dstStride;
+				if(alpha) {
+					for(int sx = 0; sx < width; sx++) {
+						dst[d + sx] = blendOnBlack(src[srcOffset + sx]);
+					}
+				}
+				else {
+					System.arraycopy(src, srcOffset, dst, d, width);
+				}
+			}
+			else {
+				//Last pixel of the last row ends up first
+				int d = dstOffset + (height - 1 - sy) * dstStride + width - 1;
+				if(alpha) {
+					for(int sx = 0; sx < width; sx++) {
+						dst[d - sx] = blendOnBlack(src[srcOffset + sx]);
+					}
+				}
+				else {
+					for(int sx = 0; sx < width; sx++) {
+						dst[d - sx] = src[srcOffset + sx];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drop the alpha channel, blending the pixel on top of black like drawing it on a empty RGB image would
+	 */
+	private static int blendOnBlack(int argb) {
+		int a = argb >>> 24;
+		if(a == 0xFF) {
+			return argb & 0xFFFFFF;
+		}
+		int r = ((argb >> 16) & 0xFF) * a / 255;
+		int g = ((argb >> 8) & 0xFF) * a / 255;
+		int b = (argb & 0xFF) * a / 255;
+		return (r << 16) | (g << 8) | b;
+	}
+
+}
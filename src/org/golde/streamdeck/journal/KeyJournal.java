@@ -0,0 +1,299 @@
+package org.golde.streamdeck.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.IStreamDeckListener;
+import org.golde.streamdeck.StreamDeckKeyState.State;
+
+/**
+ * Records every key press and release of one or more decks into a memory mapped ring file, for auditing and for
+ * finding out how people use the deck. Read it, even while it is being written and from another program, with a {@link KeyJournalReader}.
+ *
+ * Writing a event marks its record as being written, then is a few stores into the mapped file and one ordered store of its sequence number,
+ * which tells readers the record is complete. There is no system call per event, the operating system writes the pages out on its own.
+ * Once the ring is full, the oldest events are overwritten.
+ *
+ * Any number of threads can record at once, every attached deck records from its own reader thread. They don't wait for each other,
+ * events can become complete out of order. Because a record is marked before any of it is overwritten, a reader always finds out
+ * if a event changed while it read it, and never returns half of one event and half of another.
+ *
+ * The file starts with a {@value #HEADER_SIZE} byte header: "SDKJ", a version, the record size, the number of records,
+ * the time the journal was created, and a table with the serial number of every deck. Then every record is {@value #RECORD_SIZE}
+ * bytes: the sequence number + 1 (0 for a empty record, negative while it is being written), {@link System#nanoTime()}, the wall clock time in millis (worked out from
+ * nanoTime and the wall clock when the journal was opened), the deck,
+ * the key, the state and the state of every key as a bit mask. Everything is little endian.
+ * @author Eric Golde
+ *
+ */
+public class KeyJournal {
+
+	static final int MAGIC = 0x4A4B4453; //SDKJ, little endian
+	static final short VERSION = 1;
+	static final int RECORD_SIZE = 32;
+	static final int MAX_DECKS = 16;
+	static final int SERIAL_SIZE = 64;
+	static final int HEADER_SIZE = 64 + MAX_DECKS * SERIAL_SIZE;
+
+	static final int OFFSET_CAPACITY = 8;
+	static final int OFFSET_CREATED_MILLIS = 16;
+	static final int OFFSET_CREATED_NANOS = 24;
+	static final int OFFSET_DECK_COUNT = 32;
+
+	//Aligned 8 byte access to the mapped file, with ordered stores and loads
+	static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final File file;
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private final AtomicLong sequence;
+	//Reading the wall clock costs as much as the rest of a event, so it is worked out from nanoTime and these
+	private final long baseMillis = System.currentTimeMillis();
+	private final long baseNanos = System.nanoTime();
+	private final Map<IStreamDeck, DeckListener> decks = new IdentityHashMap<IStreamDeck, DeckListener>();
+	private int deckCount;
+
+	/**
+	 * Open a journal, or create it if the file does not exist. A existing journal is written to after its last event,
+	 * unless it has a different number of records, then it is started over.
+	 * @param file the file
+	 * @param capacity how many events to keep before the oldest ones are overwritten, rounded up to a power of 2
+	 * @throws IOException if the file can't be created or mapped
+	 */
+	public KeyJournal(File file, int capacity) throws IOException {
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("Expected capacity to be more than 0");
+		}
+		this.file = file;
+		//A power of 2, so finding the slot of a event is a mask instead of a division
+		this.capacity = Integer.bitCount(capacity) == 1 ? capacity : Integer.highestOneBit(capacity) << 1;
+		capacity = this.capacity;
+		long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			boolean reuse = channel.size() == size;
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if(reuse) {
+				reuse = buffer.getInt(0) == MAGIC && buffer.getShort(4) == VERSION && buffer.getShort(6) == RECORD_SIZE
+						&& buffer.getInt(OFFSET_CAPACITY) == capacity;
+			}
+
+			if(reuse) {
+				deckCount = buffer.getInt(OFFSET_DECK_COUNT);
+				//Events the last program was in the middle of writing when it died are never finished
+				for(int i = 0; i < capacity; i++) {
+					int offset = HEADER_SIZE + i * RECORD_SIZE;
+					if(buffer.getLong(offset) < 0) {
+						buffer.putLong(offset, 0);
+					}
+				}
+				sequence = new AtomicLong(findEnd(buffer, capacity));
+			}
+			else {
+				for(int i = 0; i < size; i += 8) {
+					buffer.putLong(i, 0);
+				}
+				buffer.putShort(4, VERSION);
+				buffer.putShort(6, (short) RECORD_SIZE);
+				buffer.putInt(OFFSET_CAPACITY, capacity);
+				buffer.putLong(OFFSET_CREATED_MILLIS, System.currentTimeMillis());
+				buffer.putLong(OFFSET_CREATED_NANOS, System.nanoTime());
+				//Magic last, so a reader never sees a half written header as a journal
+				buffer.putInt(0, MAGIC);
+				sequence = new AtomicLong();
+			}
+		}
+	}
+
+	/**
+	 * Start recording the key presses of a deck
+	 * @param deck the deck
+	 * @return the id of the deck in the journal
+	 */
+	public synchronized int attach(IStreamDeck deck) {
+		DeckListener listener = decks.get(deck);
+		if(listener == null) {
+			listener = new DeckListener(addDeck(deck.getSerialNumber()));
+			decks.put(deck, listener);
+			deck.registerKeyListener(listener);
+		}
+		return listener.deckId;
+	}
+
+	/**
+	 * Stop recording the key presses of a deck
+	 * @param deck the deck
+	 */
+	public synchronized void detach(IStreamDeck deck) {
+		DeckListener listener = decks.remove(deck);
+		if(listener != null) {
+			deck.unRegisterKeyListener(listener);
+		}
+	}
+
+	/**
+	 * Add a deck to the table in the header, or find it if it is there already
+	 * @param serialNumber serial number of the deck, or null if it is not known
+	 * @return the id of the deck
+	 */
+	public synchronized int addDeck(String serialNumber) {
+		byte[] serial = (serialNumber == null ? "" : serialNumber).getBytes(StandardCharsets.UTF_8);
+		int length = Math.min(serial.length, SERIAL_SIZE - 2);
+		for(int id = 0; id < deckCount; id++) {
+			int offset = 64 + id * SERIAL_SIZE;
+			if(buffer.getShort(offset) == length && sameBytes(offset + 2, serial, length)) {
+				return id;
+			}
+		}
+		if(deckCount == MAX_DECKS) {
+			throw new IllegalStateException("A journal can only hold " + MAX_DECKS + " decks");
+		}
+
+		int id = deckCount++;
+		int offset = 64 + id * SERIAL_SIZE;
+		for(int i = 0; i < length; i++) {
+			buffer.put(offset + 2 + i, serial[i]);
+		}
+		buffer.putShort(offset, (short) length);
+		//Written before any event of the deck, and the ordered store of that event makes it visible to readers
+		buffer.putInt(OFFSET_DECK_COUNT, deckCount);
+		return id;
+	}
+
+	/**
+	 * Write a event. Called for you for every deck that is attached, call it yourself for events from somewhere else.
+	 * Safe to call from many threads at once.
+	 * @param deckId the id of the deck from {@link #addDeck(String)}
+	 * @param key the key
+	 * @param pressed true if the key went down
+	 * @param mask every key that is down, one bit per key
+	 * @param nanoTime {@link System#nanoTime()} when it happened
+	 */
+	public void record(int deckId, int key, boolean pressed, int mask, long nanoTime) {
+		long seq = sequence.getAndIncrement();
+		int offset = HEADER_SIZE + (int) (seq & (capacity - 1)) * RECORD_SIZE;
+
+		//Mark the record as being written before any of it changes, so a reader that is reading the old event sees that it changed.
+		//Only complete events are taken over. A older event that is still being written here means the ring went all the way around
+		//while its thread was switched out, which is waited for. A newer event that got here first means this one is already overwritten.
+		for(int spins = 0; ; spins++) {
+			long stored = (long) LONGS.getVolatile(buffer, offset);
+			if(stored > seq + 1 || -stored > seq + 1) {
+				return;
+			}
+			if(stored >= 0 && LONGS.compareAndSet(buffer, offset, stored, -(seq + 1))) {
+				break;
+			}
+			if(spins < 100) {
+				Thread.onSpinWait();
+			}
+			else {
+				Thread.yield();
+			}
+		}
+		buffer.putLong(offset + 8, nanoTime);
+		buffer.putLong(offset + 16, baseMillis + (nanoTime - baseNanos) / 1_000_000L);
+		buffer.putShort(offset + 24, (short) deckId);
+		buffer.put(offset + 26, (byte) key);
+		buffer.put(offset + 27, (byte) (pressed ? 1 : 0));
+		buffer.putInt(offset + 28, mask);
+		LONGS.setRelease(buffer, offset, seq + 1);
+	}
+
+	/**
+	 * @return number of events written since the journal was created
+	 */
+	public long getWritten() {
+		return sequence.get();
+	}
+
+	/**
+	 * @return how many events fit before the oldest ones are overwritten
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Detach every deck, and write the file out to disk
+	 */
+	public synchronized void close() {
+		for(Map.Entry<IStreamDeck, DeckListener> entry : decks.entrySet()) {
+			entry.getKey().unRegisterKeyListener(entry.getValue());
+		}
+		decks.clear();
+		buffer.force();
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private boolean sameBytes(int offset, byte[] bytes, int length) {
+		for(int i = 0; i < length; i++) {
+			if(buffer.get(offset + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find the number of events in a journal. Sequence numbers only go up, so it is the biggest one in the ring.
+	 */
+	static long findEnd(MappedByteBuffer buffer, int capacity) {
+		long end = 0;
+		for(int i = 0; i < capacity; i++) {
+			//Records that are being written are negative, and don't count
+			end = Math.max(end, (long) LONGS.getAcquire(buffer, HEADER_SIZE + i * RECORD_SIZE));
+		}
+		return end;
+	}
+
+	/**
+	 * Records the key presses of one deck
+	 */
+	private class DeckListener implements IStreamDeckListener {
+
+		private final int deckId;
+		//Only used by decks that don't pass the mask along
+		private int mask;
+
+		DeckListener(int deckId) {
+			this.deckId = deckId;
+		}
+
+		@Override
+		public void keyStateChanged(int key, State state) {
+			if(key < 32) {
+				mask = state == State.PRESSED ? mask | (1 << key) : mask & ~(1 << key);
+			}
+			record(deckId, key, state == State.PRESSED, mask, System.nanoTime());
+		}
+
+		@Override
+		public void keyStateChanged(int key, State state, int mask, long nanoTime) {
+			this.mask = mask;
+			record(deckId, key, state == State.PRESSED, mask, nanoTime);
+		}
+
+	}
+
+}
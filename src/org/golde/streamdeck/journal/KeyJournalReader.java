@@ -0,0 +1,297 @@
+package org.golde.streamdeck.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import org.golde.streamdeck.StreamDeckKeyState.State;
+
+import static org.golde.streamdeck.journal.KeyJournal.HEADER_SIZE;
+import static org.golde.streamdeck.journal.KeyJournal.LONGS;
+import static org.golde.streamdeck.journal.KeyJournal.MAGIC;
+import static org.golde.streamdeck.journal.KeyJournal.MAX_DECKS;
+import static org.golde.streamdeck.journal.KeyJournal.OFFSET_CAPACITY;
+import static org.golde.streamdeck.journal.KeyJournal.OFFSET_CREATED_MILLIS;
+import static org.golde.streamdeck.journal.KeyJournal.OFFSET_DECK_COUNT;
+import static org.golde.streamdeck.journal.KeyJournal.RECORD_SIZE;
+import static org.golde.streamdeck.journal.KeyJournal.SERIAL_SIZE;
+import static org.golde.streamdeck.journal.KeyJournal.VERSION;
+import static org.golde.streamdeck.journal.KeyJournal.findEnd;
+
+/**
+ * Reads the events out of a {@link KeyJournal}, oldest first. The journal can be read while it is being written,
+ * from the same program or from another one, and {@link #take(long)} waits for the next event, like tail -f.
+ *
+ * A reader that falls so far behind that the ring overwrites events it did not read yet skips ahead to the oldest event
+ * that is still there, and counts the events it missed in {@link #getLost()}.
+ * @author Eric Golde
+ *
+ */
+public class KeyJournalReader {
+
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private long next;
+	private long lost = 0;
+
+	/**
+	 * Open a journal, starting at the oldest event in it
+	 * @param file the file
+	 * @throws IOException if the file can't be read, or is not a key journal
+	 */
+	public KeyJournalReader(File file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if(channel.size() < HEADER_SIZE) {
+				throw new IOException("Not a key journal: " + file);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if(buffer.getInt(0) != MAGIC || buffer.getShort(6) != RECORD_SIZE) {
+			throw new IOException("Not a key journal: " + file);
+		}
+		if(buffer.getShort(4) != VERSION) {
+			throw new IOException("Unsupported key journal version " + buffer.getShort(4));
+		}
+		capacity = buffer.getInt(OFFSET_CAPACITY);
+		if(Integer.bitCount(capacity) != 1) {
+			throw new IOException("Key journal is broken, the number of records is not a power of 2: " + file);
+		}
+		if(buffer.capacity() != HEADER_SIZE + (long) capacity * RECORD_SIZE) {
+			throw new IOException("Key journal is cut off: " + file);
+		}
+		seekToStart();
+	}
+
+	/**
+	 * Go back to the oldest event that is still in the ring
+	 */
+	public void seekToStart() {
+		next = Math.max(0, findEnd(buffer, capacity) - capacity);
+	}
+
+	/**
+	 * Skip every event that is in the journal already, so only new events are read
+	 */
+	public void seekToEnd() {
+		next = findEnd(buffer, capacity);
+	}
+
+	/**
+	 * Read the next event
+	 * @return the event, or null if there is no new event yet
+	 */
+	public Entry poll() {
+		while(true) {
+			int offset = offsetOf(next);
+			long stored = (long) LONGS.getAcquire(buffer, offset);
+			//Negative while a event is being written into the record
+			long written = Math.abs(stored);
+			if(written < next + 1 || stored == -(next + 1)) {
+				//Not written yet, or not done being written
+				return null;
+			}
+			if(written > next + 1) {
+				//The writer went around the ring and overwrote this event. Events after the one that is here now may be overwritten any moment.
+				skipTo(written - capacity);
+				continue;
+			}
+
+			long nanoTime = buffer.getLong(offset + 8);
+			long wallMillis = buffer.getLong(offset + 16);
+			int deckId = buffer.getShort(offset + 24);
+			int key = buffer.get(offset + 26) & 0xFF;
+			boolean pressed = buffer.get(offset + 27) != 0;
+			int mask = buffer.getInt(offset + 28);
+
+			//A writer marks the record before it changes any of it, so if the sequence number is still the same, nothing read above was overwritten
+			VarHandle.loadLoadFence();
+			long again = (long) LONGS.getAcquire(buffer, offset);
+			if(again != stored) {
+				skipTo(next + 1);
+				continue;
+			}
+
+			return new Entry(next++, nanoTime, wallMillis, deckId, getDeckSerial(deckId), key, pressed, mask);
+		}
+	}
+
+	/**
+	 * Wait for the next event
+	 * @param timeoutMillis how long to wait at most
+	 * @return the event, or null if there was no new event in time
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public Entry take(long timeoutMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+		Entry entry = poll();
+		while(entry == null && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+			entry = poll();
+		}
+		return entry;
+	}
+
+	/**
+	 * @return the sequence number of the next event that will be read
+	 */
+	public long getPosition() {
+		return next;
+	}
+
+	/**
+	 * @return how many events were overwritten before they could be read
+	 */
+	public long getLost() {
+		return lost;
+	}
+
+	/**
+	 * @return how many events the ring holds
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the wall clock time the journal was created, in millis
+	 */
+	public long getCreatedMillis() {
+		return buffer.getLong(OFFSET_CREATED_MILLIS);
+	}
+
+	/**
+	 * @return number of decks in the journal
+	 */
+	public int getDeckCount() {
+		return buffer.getInt(OFFSET_DECK_COUNT);
+	}
+
+	/**
+	 * Get the serial number of a deck
+	 * @param deckId the id of the deck
+	 * @return the serial number, or null if there is no deck with that id
+	 */
+	public String getDeckSerial(int deckId) {
+		if(deckId < 0 || deckId >= Math.min(getDeckCount(), MAX_DECKS)) {
+			return null;
+		}
+		int offset = 64 + deckId * SERIAL_SIZE;
+		byte[] serial = new byte[Math.min(buffer.getShort(offset), SERIAL_SIZE - 2)];
+		for(int i = 0; i < serial.length; i++) {
+			serial[i] = buffer.get(offset + 2 + i);
+		}
+		return new String(serial, StandardCharsets.UTF_8);
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private int offsetOf(long sequence) {
+		return HEADER_SIZE + (int) (sequence & (capacity - 1)) * RECORD_SIZE;
+	}
+
+	private void skipTo(long sequence) {
+		if(sequence > next) {
+			lost += sequence - next;
+			next = sequence;
+		}
+	}
+
+	/**
+	 * One key press or release out of a journal
+	 */
+	public static class Entry {
+
+		private final long sequence;
+		private final long nanoTime;
+		private final long wallMillis;
+		private final int deckId;
+		private final String deckSerial;
+		private final int key;
+		private final boolean pressed;
+		private final int mask;
+
+		Entry(long sequence, long nanoTime, long wallMillis, int deckId, String deckSerial, int key, boolean pressed, int mask) {
+			this.sequence = sequence;
+			this.nanoTime = nanoTime;
+			this.wallMillis = wallMillis;
+			this.deckId = deckId;
+			this.deckSerial = deckSerial;
+			this.key = key;
+			this.pressed = pressed;
+			this.mask = mask;
+		}
+
+		/**
+		 * @return the number of the event, counting from 0 when the journal was created
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * @return {@link System#nanoTime()} when it happened, in the program that wrote it
+		 */
+		public long getNanoTime() {
+			return nanoTime;
+		}
+
+		/**
+		 * @return the wall clock time when it was written, in millis
+		 */
+		public long getWallMillis() {
+			return wallMillis;
+		}
+
+		/**
+		 * @return the id of the deck in the journal
+		 */
+		public int getDeckId() {
+			return deckId;
+		}
+
+		/**
+		 * @return the serial number of the deck
+		 */
+		public String getDeckSerial() {
+			return deckSerial;
+		}
+
+		/**
+		 * @return the key
+		 */
+		public int getKey() {
+			return key;
+		}
+
+		/**
+		 * @return the new state of the key
+		 */
+		public State getState() {
+			return State.fromBoolean(pressed);
+		}
+
+		/**
+		 * @return every key that was down right after this event, one bit per key
+		 */
+		public int getMask() {
+			return mask;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String toString() {
+			return "Entry[" + sequence + ", deck=" + deckSerial + ", key=" + key + ", state=" + getState()
+					+ ", mask=" + Integer.toBinaryString(mask) + ", wallMillis=" + wallMillis + "]";
+		}
+
+	}
+
+}
@@ -0,0 +1,184 @@
+package org.golde.streamdeck.pages;
+
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.IStreamDeck;
+
+/**
+ * One screen full of keys. Every key has a {@link PageTile} that is rendered and encoded in the background as soon as it is set,
+ * so by the time the page is shown with {@link PageManager#showPage(Page)}, all that is left to do is send it.
+ *
+ * Changing a single key only re-encodes that key. If the page is showing, the key is sent once it is encoded.
+ * Create pages with {@link PageManager#createPage(String)}.
+ * @author Eric Golde
+ *
+ */
+public class Page {
+
+	private final PageManager manager;
+	private final String name;
+
+	private final PageTile[] tiles;
+	private final EncodedKeyImage[] encoded;
+	//Bumped every time a key changes, so a encode that finishes after the key changed again is thrown away
+	private final int[] versions;
+
+	Page(PageManager manager, String name, int numberOfKeys) {
+		this.manager = manager;
+		this.name = name;
+		this.tiles = new PageTile[numberOfKeys];
+		this.encoded = new EncodedKeyImage[numberOfKeys];
+		this.versions = new int[numberOfKeys];
+	}
+
+	/**
+	 * @return the name of the page
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return number of keys on the page
+	 */
+	public int getNumberOfKeys() {
+		return tiles.length;
+	}
+
+	/**
+	 * Set what a key looks like. The tile is rendered and encoded in the background.
+	 * @param key the key
+	 * @param tile the tile, or null for a black key
+	 */
+	public void setKey(int key, PageTile tile) {
+		synchronized (this) {
+			tiles[key] = tile;
+			encoded[key] = null;
+			versions[key]++;
+		}
+		manager.scheduleEncode(this, key);
+	}
+
+	/**
+	 * Set a key to a image that is already encoded, for example out of a {@link org.golde.streamdeck.assets.AssetPack}
+	 * @param key the key
+	 * @param img the encoded image
+	 */
+	public void setKey(int key, EncodedKeyImage img) {
+		synchronized (this) {
+			tiles[key] = null;
+			encoded[key] = img;
+			versions[key]++;
+		}
+		manager.tileReady(this, key, img);
+	}
+
+	/**
+	 * Make a key black
+	 * @param key the key
+	 */
+	public void clearKey(int key) {
+		setKey(key, (PageTile) null);
+	}
+
+	/**
+	 * Render and encode a key again, for tiles that draw something different every time, like a clock
+	 * @param key the key
+	 */
+	public void invalidate(int key) {
+		synchronized (this) {
+			if(tiles[key] == null) {
+				//Already encoded images and black keys never change
+				return;
+			}
+			encoded[key] = null;
+			versions[key]++;
+		}
+		manager.scheduleEncode(this, key);
+	}
+
+	/**
+	 * Get the tile of a key
+	 * @param key the key
+	 * @return the tile, or null if the key is black or was set to a encoded image
+	 */
+	public synchronized PageTile getTile(int key) {
+		return tiles[key];
+	}
+
+	/**
+	 * @return true if every key is encoded, and showing the page only has to send it
+	 */
+	public synchronized boolean isReady() {
+		for(int key = 0; key < encoded.length; key++) {
+			if(encoded[key] == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	/**
+	 * @return the encoded key, or null if it is not encoded yet
+	 */
+	synchronized EncodedKeyImage getEncoded(int key) {
+		return encoded[key];
+	}
+
+	/**
+	 * Render and encode a key, unless that already happened
+	 * @return the encoded key, or null if the key changed while it was being encoded
+	 */
+	EncodedKeyImage encode(int key) {
+		PageTile tile;
+		int version;
+		synchronized (this) {
+			if(encoded[key] != null) {
+				return encoded[key];
+			}
+			tile = tiles[key];
+			version = versions[key];
+		}
+
+		//Render and encode without holding the lock, so the page can be changed in the mean time
+		IStreamDeck deck = manager.getDeck();
+		EncodedKeyImage img = tile == null ? manager.getBlankImage() : deck.encodeKey(tile.render(deck.getProfile().getKeySize()));
+
+		synchronized (this) {
+			if(versions[key] != version) {
+				return null;
+			}
+			encoded[key] = img;
+			notifyAll();
+			return img;
+		}
+	}
+
+	/**
+	 * Encode a key on this thread, or if it changes while that happens, wait for the background encode of the newest version
+	 * @return the encoded key
+	 */
+	EncodedKeyImage awaitEncoded(int key) {
+		EncodedKeyImage img = encode(key);
+		if(img != null) {
+			return img;
+		}
+		synchronized (this) {
+			boolean interrupted = false;
+			while(encoded[key] == null) {
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return encoded[key];
+		}
+	}
+
+}
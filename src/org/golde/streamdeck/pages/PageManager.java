@@ -0,0 +1,235 @@
+package org.golde.streamdeck.pages;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.WritePriority;
+import org.golde.streamdeck.helpers.ImageUtilities;
+
+/**
+ * Flips a deck between pages of keys. Every page is rendered and encoded in the background while it is being built,
+ * so a page flip is just a burst of already encoded images, and only takes as long as sending them over USB.
+ *
+ * The manager remembers what is on every key, and skips keys that look the same on both pages, like a navigation bar.
+ * Don't call setKey on the deck yourself while using pages, or call {@link #refresh()} afterwards.
+ * @author Eric Golde
+ *
+ */
+public class PageManager {
+
+	private final IStreamDeck deck;
+	private final EncodedKeyImage blank;
+	private final ExecutorService encoder;
+
+	private final Map<String, Page> pages = new LinkedHashMap<String, Page>();
+	private Page current;
+	//What is on every key of the deck right now
+	private final EncodedKeyImage[] shown;
+
+	/**
+	 * Create a page manager. Pages are encoded on one background thread per core.
+	 * @param deck the deck to show the pages on
+	 */
+	public PageManager(IStreamDeck deck) {
+		this(deck, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a page manager
+	 * @param deck the deck to show the pages on
+	 * @param encoderThreads number of background threads to encode pages on
+	 */
+	public PageManager(IStreamDeck deck, int encoderThreads) {
+		this.deck = deck;
+		int size = deck.getProfile().getKeySize();
+		this.blank = deck.encodeKey(ImageUtilities.createSolidColorImage(size, size, Color.BLACK));
+		this.shown = new EncodedKeyImage[deck.getProfile().getNumberOfKeys()];
+		this.encoder = Executors.newFixedThreadPool(encoderThreads, new PageThreadFactory());
+	}
+
+	/**
+	 * Create a new, black page. If a page with the same name already exists, it is replaced.
+	 * @param name name of the page
+	 * @return the page
+	 */
+	public Page createPage(String name) {
+		Page page = new Page(this, name, shown.length);
+		synchronized (this) {
+			pages.put(name, page);
+		}
+		return page;
+	}
+
+	/**
+	 * Get a page by name
+	 * @param name name of the page
+	 * @return the page, or null if there is no page with that name
+	 */
+	public synchronized Page getPage(String name) {
+		return pages.get(name);
+	}
+
+	/**
+	 * Forget a page. If it is showing, it stays on the deck until another page is shown.
+	 * @param name name of the page
+	 */
+	public synchronized void removePage(String name) {
+		pages.remove(name);
+	}
+
+	/**
+	 * @return the names of every page, in the order they were created
+	 */
+	public synchronized List<String> getPageNames() {
+		return new ArrayList<String>(pages.keySet());
+	}
+
+	/**
+	 * @return the page that is showing, or null if no page was shown yet
+	 */
+	public synchronized Page getCurrentPage() {
+		return current;
+	}
+
+	/**
+	 * Show a page by name. See {@link #showPage(Page)}
+	 * @param name name of the page
+	 */
+	public void showPage(String name) {
+		Page page = getPage(name);
+		if(page == null) {
+			throw new IllegalArgumentException("No page called " + name);
+		}
+		showPage(page);
+	}
+
+	/**
+	 * Show a page, and wait until it is on the deck. Only keys that look different than they do right now are sent.
+	 * Page flips are sent as {@link WritePriority#INTERACTIVE}, since they are almost always the answer to a key press.
+	 * Keys that are not encoded yet are encoded right away, on every core.
+	 * @param page the page
+	 */
+	public void showPage(Page page) {
+		final int keys = page.getNumberOfKeys();
+
+		//Normally everything is encoded already, this only does something if the page was changed right before it was shown
+		IntStream.range(0, keys).parallel().forEach(page::awaitEncoded);
+
+		List<CompletableFuture<Void>> writes = new ArrayList<CompletableFuture<Void>>();
+		synchronized (this) {
+			current = page;
+			for(int key = 0; key < keys; key++) {
+				EncodedKeyImage img = page.getEncoded(key);
+				if(img == null) {
+					//Changed again just now, it is sent by tileReady once it is encoded
+					continue;
+				}
+				if(!isSameImage(shown[key], img)) {
+					shown[key] = img;
+					writes.add(deck.submitKey(key, img, WritePriority.INTERACTIVE));
+				}
+			}
+		}
+
+		CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+	}
+
+	/**
+	 * Send every key of the current page again, for example after something else drew on the deck
+	 */
+	public void refresh() {
+		Page page;
+		synchronized (this) {
+			page = current;
+			for(int key = 0; key < shown.length; key++) {
+				shown[key] = null;
+			}
+		}
+		if(page != null) {
+			showPage(page);
+		}
+	}
+
+	/**
+	 * Stop the background encoder threads
+	 */
+	public void shutdown() {
+		encoder.shutdownNow();
+	}
+
+	/**
+	 * @return the deck the pages are shown on
+	 */
+	public IStreamDeck getDeck() {
+		return deck;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	EncodedKeyImage getBlankImage() {
+		return blank;
+	}
+
+	/**
+	 * Encode a key of a page in the background
+	 */
+	void scheduleEncode(Page page, int key) {
+		encoder.execute(() -> {
+			EncodedKeyImage img = page.encode(key);
+			if(img != null) {
+				tileReady(page, key, img);
+			}
+		});
+	}
+
+	/**
+	 * A key of a page was encoded, send it if the page is showing.
+	 * Encoders finish in any order, so a image the key no longer has is thrown away instead of replacing a newer one.
+	 */
+	synchronized void tileReady(Page page, int key, EncodedKeyImage img) {
+		if(current == page && img == page.getEncoded(key) && !isSameImage(shown[key], img)) {
+			shown[key] = img;
+			deck.submitKey(key, img, WritePriority.NORMAL);
+		}
+	}
+
+	private static boolean isSameImage(EncodedKeyImage a, EncodedKeyImage b) {
+		if(a == b) {
+			return true;
+		}
+		if(a == null || b == null || a.getLength() != b.getLength()) {
+			return false;
+		}
+		return a.getData().equals(b.getData());
+	}
+
+	/**
+	 * Names the encoder threads and makes sure they don't keep the JVM alive
+	 */
+	private static class PageThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r);
+			thread.setName("StreamDeck page encoder #" + count.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+
+	}
+
+}
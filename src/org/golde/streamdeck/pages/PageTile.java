@@ -0,0 +1,97 @@
+package org.golde.streamdeck.pages;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.helpers.ImageUtilities;
+
+/**
+ * Draws what one key of a {@link Page} looks like. Tiles are rendered and encoded in the background,
+ * so render() may be called from any thread, and should always draw the same thing until the tile is invalidated
+ * with {@link Page#invalidate(int)}.
+ * @author Eric Golde
+ *
+ */
+@FunctionalInterface
+public interface PageTile {
+
+	/**
+	 * Draw the tile
+	 * @return a image the size of a key
+	 */
+	public BufferedImage render();
+
+	/**
+	 * Draw the tile for a deck with keys of a given size. {@link Page} calls this with the key size of its deck.
+	 * Tiles that draw themselves, like {@link #color(Color)} and {@link #text(String, Color)}, draw at that size,
+	 * the rest return {@link #render()} and leave the scaling to the encoder.
+	 * @param keySize width and height of a key of the deck, in pixels
+	 * @return a image the size of a key
+	 */
+	public default BufferedImage render(int keySize) {
+		return render();
+	}
+
+	/**
+	 * A tile filled with one color
+	 * @param color the color
+	 * @return the tile
+	 */
+	public static PageTile color(Color color) {
+		return new PageTile() {
+			@Override
+			public BufferedImage render() {
+				return render(StreamDeckXL.IMG_SIZE);
+			}
+
+			@Override
+			public BufferedImage render(int keySize) {
+				return ImageUtilities.createSolidColorImage(keySize, keySize, color);
+			}
+		};
+	}
+
+	/**
+	 * A tile with text on it. The text color is picked by {@link ImageUtilities#getTextColorForBG(Color)}
+	 * @param text text to write on the key
+	 * @param backgroundColor background color
+	 * @return the tile
+	 */
+	public static PageTile text(String text, Color backgroundColor) {
+		return text(text, backgroundColor, ImageUtilities.getTextColorForBG(backgroundColor));
+	}
+
+	/**
+	 * A tile with text on it
+	 * @param text text to write on the key
+	 * @param backgroundColor background color
+	 * @param textColor text color
+	 * @return the tile
+	 */
+	public static PageTile text(String text, Color backgroundColor, Color textColor) {
+		return new PageTile() {
+			@Override
+			public BufferedImage render() {
+				return render(StreamDeckXL.IMG_SIZE);
+			}
+
+			@Override
+			public BufferedImage render(int keySize) {
+				BufferedImage img = ImageUtilities.createSolidColorImage(keySize, keySize, backgroundColor);
+				ImageUtilities.drawTextOnImage(img, text, textColor);
+				return img;
+			}
+		};
+	}
+
+	/**
+	 * A tile that shows a image. The image must not be changed afterwards, unless the tile is invalidated.
+	 * @param img a image the size of a key
+	 * @return the tile
+	 */
+	public static PageTile image(BufferedImage img) {
+		return () -> img;
+	}
+
+}
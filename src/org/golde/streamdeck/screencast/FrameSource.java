@@ -0,0 +1,19 @@
+package org.golde.streamdeck.screencast;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Something that produces frames for a {@link ScreenCastPipeline}, like the screen or a synthetic test pattern.
+ * @author Eric Golde
+ *
+ */
+public interface FrameSource {
+
+	/**
+	 * Grab the next frame. Called over and over again from the capture thread of the pipeline.
+	 * The returned image is handed to other threads, so don't draw into it again afterwards.
+	 * @return the frame, any size. It gets scaled down to fit the deck.
+	 */
+	public BufferedImage capture();
+
+}
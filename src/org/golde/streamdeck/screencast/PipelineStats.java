@@ -0,0 +1,135 @@
+package org.golde.streamdeck.screencast;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A snapshot of how well a {@link ScreenCastPipeline} is keeping up
+ * @author Eric Golde
+ *
+ */
+public class PipelineStats {
+
+	private final double seconds;
+	private final long framesSent;
+	private final long framesDropped;
+	private final long framesFailed;
+	private final long tilesSent;
+	private final long tilesSkipped;
+	private final double averageLatencyMillis;
+	private final double maxLatencyMillis;
+	private final Map<String, Double> utilisation;
+
+	PipelineStats(double seconds, long framesSent, long framesDropped, long framesFailed, long tilesSent, long tilesSkipped, double averageLatencyMillis, double maxLatencyMillis, Map<String, Double> utilisation) {
+		this.seconds = seconds;
+		this.framesSent = framesSent;
+		this.framesDropped = framesDropped;
+		this.framesFailed = framesFailed;
+		this.tilesSent = tilesSent;
+		this.tilesSkipped = tilesSkipped;
+		this.averageLatencyMillis = averageLatencyMillis;
+		this.maxLatencyMillis = maxLatencyMillis;
+		this.utilisation = Collections.unmodifiableMap(new LinkedHashMap<String, Double>(utilisation));
+	}
+
+	/**
+	 * How long the pipeline has been running
+	 * @return seconds since start
+	 */
+	public double getSeconds() {
+		return seconds;
+	}
+
+	/**
+	 * Frames that made it all the way to the deck, per second, since the pipeline started
+	 * @return sustained frames per second
+	 */
+	public double getFps() {
+		return seconds <= 0 ? 0 : framesSent / seconds;
+	}
+
+	/**
+	 * Frames that made it all the way to the deck
+	 * @return number of frames
+	 */
+	public long getFramesSent() {
+		return framesSent;
+	}
+
+	/**
+	 * Frames that were thrown away because a later stage was still busy
+	 * @return number of frames
+	 */
+	public long getFramesDropped() {
+		return framesDropped;
+	}
+
+	/**
+	 * Frames that were thrown away because a stage failed on them, like a capture that threw or a write the deck did not take
+	 * @return number of frames
+	 */
+	public long getFramesFailed() {
+		return framesFailed;
+	}
+
+	/**
+	 * Tiles that changed and were encoded and sent to the deck
+	 * @return number of tiles
+	 */
+	public long getTilesSent() {
+		return tilesSent;
+	}
+
+	/**
+	 * Tiles that did not change since the last frame, so they were never encoded
+	 * @return number of tiles
+	 */
+	public long getTilesSkipped() {
+		return tilesSkipped;
+	}
+
+	/**
+	 * Average time from a frame being captured to the last of its tiles being sent
+	 * @return latency in milliseconds
+	 */
+	public double getAverageLatencyMillis() {
+		return averageLatencyMillis;
+	}
+
+	/**
+	 * Worst time from a frame being captured to the last of its tiles being sent
+	 * @return latency in milliseconds
+	 */
+	public double getMaxLatencyMillis() {
+		return maxLatencyMillis;
+	}
+
+	/**
+	 * How much of the time each stage was busy, from 0 to 1. The busiest stage is the bottleneck.
+	 * @return stage name to utilisation, in pipeline order
+	 */
+	public Map<String, Double> getUtilisation() {
+		return utilisation;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("%.1f fps, latency avg %.1fms max %.1fms, %d dropped, %d failed, tiles %d sent %d skipped [", getFps(), averageLatencyMillis, maxLatencyMillis, framesDropped, framesFailed, tilesSent, tilesSkipped));
+		boolean first = true;
+		for(Map.Entry<String, Double> entry : utilisation.entrySet()) {
+			if(!first) {
+				builder.append(", ");
+			}
+			builder.append(entry.getKey()).append(" ").append(String.format("%.0f%%", entry.getValue() * 100));
+			first = false;
+		}
+		builder.append("]");
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,42 @@
+package org.golde.streamdeck.screencast;
+
+import java.awt.AWTException;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+
+/**
+ * Captures the screen using a AWT {@link Robot}
+ * @author Eric Golde
+ *
+ */
+public class RobotFrameSource implements FrameSource {
+
+	private final Robot robot;
+	private final Rectangle area;
+
+	/**
+	 * Capture the entire primary screen
+	 * @throws AWTException thrown if the platform does not allow screen capturing
+	 */
+	public RobotFrameSource() throws AWTException {
+		this(new Rectangle(Toolkit.getDefaultToolkit().getScreenSize()));
+	}
+
+	/**
+	 * Capture a part of the screen
+	 * @param area the area of the screen to capture
+	 * @throws AWTException thrown if the platform does not allow screen capturing
+	 */
+	public RobotFrameSource(Rectangle area) throws AWTException {
+		this.robot = new Robot();
+		this.area = new Rectangle(area);
+	}
+
+	@Override
+	public BufferedImage capture() {
+		return robot.createScreenCapture(area);
+	}
+
+}
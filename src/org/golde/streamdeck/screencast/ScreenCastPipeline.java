@@ -0,0 +1,500 @@
+package org.golde.streamdeck.screencast;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.golde.streamdeck.DeviceProfile;
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.StreamDeckXL;
+import org.golde.streamdeck.WritePriority;
+import org.golde.streamdeck.helpers.ImageScaler;
+import org.golde.streamdeck.helpers.ImageUtilities;
+import org.golde.streamdeck.helpers.TileDiff;
+import org.golde.streamdeck.helpers.TileView;
+
+/**
+ * Casts a {@link FrameSource} to every key of a stream deck, as fast as the deck can keep up.
+ *
+ * Every frame goes through these stages, each on its own thread:
+ * capture -> scale down -> split into tiles & find changed tiles -> encode (in parallel) -> send
+ *
+ * Stages hand frames to each other through queues that only hold one frame.
+ * When the deck falls behind, captured frames that were not looked at yet are dropped, so what ends up
+ * on the deck is always the newest frame, instead of a backlog that gets older and older.
+ * Tiles that did not change since the last frame are never encoded or sent.
+ *
+ * A frame that fails in any stage, like a capture that throws or a write the deck did not take, is counted in
+ * {@link PipelineStats#getFramesFailed()} and skipped, and the pipeline goes on with the next one.
+ * @author Eric Golde
+ *
+ */
+public class ScreenCastPipeline {
+
+	//How long a stage waits after a frame failed, so a source that keeps throwing doesn't take a whole core
+	private static final long FAILURE_PAUSE_MILLIS = 100;
+
+	private final IStreamDeck deck;
+	private final FrameSource source;
+	private final TileDiff tileDiff;
+
+	private final DeviceProfile profile;
+	private final int width;
+	private final int height;
+
+	private final BlockingQueue<Frame> captured = new ArrayBlockingQueue<Frame>(1);
+	private final BlockingQueue<Frame> scaled = new ArrayBlockingQueue<Frame>(1);
+	private final BlockingQueue<Frame> diffed = new ArrayBlockingQueue<Frame>(1);
+	private final BlockingQueue<Frame> encoded = new ArrayBlockingQueue<Frame>(1);
+
+	//Scaled images that are free to be drawn into again. A frame in every queue plus one per stage is the most we ever need.
+	private final BlockingQueue<Canvas> freeCanvases = new ArrayBlockingQueue<Canvas>(8);
+
+	private final Stage[] stages = {
+		new CaptureStage(),
+		new ScaleStage(),
+		new DiffStage(),
+		new EncodeStage(),
+		new SendStage()
+	};
+
+	private ExecutorService encodeService;
+	private final List<Thread> threads = new ArrayList<Thread>();
+	private volatile boolean running = false;
+	//Set when tiles the diff counts as sent may not be on the deck, so the next frame sends every tile
+	private volatile boolean resync = false;
+
+	private final AtomicLong framesSent = new AtomicLong();
+	private final AtomicLong framesDropped = new AtomicLong();
+	private final AtomicLong framesFailed = new AtomicLong();
+	private final AtomicLong tilesSent = new AtomicLong();
+	private final AtomicLong tilesSkipped = new AtomicLong();
+	private final AtomicLong latencyTotalNanos = new AtomicLong();
+	private final AtomicLong latencyMaxNanos = new AtomicLong();
+	private long startNanos;
+
+	/**
+	 * Create a pipeline. Nothing happens until {@link #start()} is called.
+	 * @param deck the deck to cast to
+	 * @param source where frames come from
+	 */
+	public ScreenCastPipeline(IStreamDeck deck, FrameSource source) {
+		this(deck, source, TileDiff.exact(deck.getProfile().getNumberOfKeys()));
+	}
+
+	/**
+	 * Create a pipeline that decides which tiles changed using the given diff. Nothing happens until {@link #start()} is called.
+	 * @param deck the deck to cast to
+	 * @param source where frames come from
+	 * @param tileDiff decides if a tile changed enough to be sent, must track one tile for every key of the deck
+	 */
+	public ScreenCastPipeline(IStreamDeck deck, FrameSource source, TileDiff tileDiff) {
+		this.deck = deck;
+		this.source = source;
+		this.tileDiff = tileDiff;
+		this.profile = deck.getProfile();
+		this.width = profile.getCols() * profile.getKeySize();
+		this.height = profile.getRows() * profile.getKeySize();
+	}
+
+	/**
+	 * Start every stage of the pipeline
+	 */
+	public synchronized void start() {
+		if(running) {
+			return;
+		}
+		running = true;
+		framesSent.set(0);
+		framesDropped.set(0);
+		framesFailed.set(0);
+		resync = false;
+		tilesSent.set(0);
+		tilesSkipped.set(0);
+		latencyTotalNanos.set(0);
+		latencyMaxNanos.set(0);
+		startNanos = System.nanoTime();
+		encodeService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new EncoderThreadFactory());
+
+		for(Stage stage : stages) {
+			stage.busyNanos.set(0);
+			stage.reset();
+			Thread thread = new Thread(stage);
+			thread.setName("StreamDeck screencast " + stage.name);
+			thread.setDaemon(true);
+			threads.add(thread);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stop every stage of the pipeline, and wait for them to finish
+	 */
+	public synchronized void stop() {
+		if(!running) {
+			return;
+		}
+		running = false;
+		for(Thread thread : threads) {
+			thread.interrupt();
+		}
+		for(Thread thread : threads) {
+			try {
+				thread.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		threads.clear();
+		encodeService.shutdownNow();
+		captured.clear();
+		scaled.clear();
+		diffed.clear();
+		encoded.clear();
+	}
+
+	/**
+	 * Is the pipeline running?
+	 * @return true if started and not stopped yet
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Get the current performance numbers of the pipeline
+	 * @return a snapshot of the stats
+	 */
+	public PipelineStats getStats() {
+		long elapsed = Math.max(1, System.nanoTime() - startNanos);
+		long sent = framesSent.get();
+
+		Map<String, Double> utilisation = new LinkedHashMap<String, Double>();
+		for(Stage stage : stages) {
+			utilisation.put(stage.name, Math.min(1d, stage.busyNanos.get() / (double) elapsed));
+		}
+
+		return new PipelineStats(elapsed / 1e9, sent, framesDropped.get(), framesFailed.get(), tilesSent.get(), tilesSkipped.get(),
+				sent == 0 ? 0 : latencyTotalNanos.get() / (double) sent / 1e6, latencyMaxNanos.get() / 1e6, utilisation);
+	}
+
+	/**
+	 * A scaled down frame, and views of every key in it. Reused for frame after frame.
+	 */
+	private static class Canvas {
+		private final BufferedImage image;
+		private final TileView[] tiles;
+
+		Canvas(BufferedImage image, DeviceProfile profile) {
+			this.image = image;
+			this.tiles = ImageUtilities.splitImage(image, profile.getRows(), profile.getCols(), null);
+		}
+	}
+
+	/**
+	 * A frame on its way through the pipeline
+	 */
+	private static class Frame {
+		private final long captureNanos;
+		private BufferedImage image;
+		private Canvas canvas;
+		private int[] changedKeys;
+		private EncodedKeyImage[] encoded;
+
+		Frame(long captureNanos, BufferedImage image) {
+			this.captureNanos = captureNanos;
+			this.image = image;
+		}
+	}
+
+	/**
+	 * One stage of the pipeline, running on its own thread.
+	 */
+	private abstract class Stage implements Runnable {
+
+		private final String name;
+		private final BlockingQueue<Frame> in;
+		private final BlockingQueue<Frame> out;
+		private final boolean dropWhenFull;
+		private final AtomicLong busyNanos = new AtomicLong();
+
+		/**
+		 * @param name name of the stage, used for stats and the thread name
+		 * @param in queue to take frames from, or null if this stage creates frames
+		 * @param out queue to give frames to, or null if this is the last stage
+		 * @param dropWhenFull replace the frame waiting in the out queue instead of waiting for the next stage
+		 */
+		Stage(String name, BlockingQueue<Frame> in, BlockingQueue<Frame> out, boolean dropWhenFull) {
+			this.name = name;
+			this.in = in;
+			this.out = out;
+			this.dropWhenFull = dropWhenFull;
+		}
+
+		/**
+		 * Do the work of this stage
+		 * @param frame the frame, or null for the first stage
+		 * @return the frame to hand to the next stage
+		 */
+		protected abstract Frame process(Frame frame) throws Exception;
+
+		/**
+		 * Forget any state from a previous run, called before the stage is started
+		 */
+		protected void reset() {}
+
+		/**
+		 * Called when a frame this stage handed off was thrown away before the next stage got to it
+		 * @param frame the dropped frame
+		 */
+		protected void dropped(Frame frame) {}
+
+		/**
+		 * Called when {@link #process(Frame)} threw, before the frame is thrown away
+		 * @param frame the frame, or null for the first stage
+		 */
+		protected void failed(Frame frame) {}
+
+		@Override
+		public void run() {
+			try {
+				while(running) {
+					Frame frame = in == null ? null : in.take();
+
+					long start = System.nanoTime();
+					try {
+						frame = process(frame);
+					}
+					catch (InterruptedException e) {
+						throw e;
+					}
+					catch (Exception e) {
+						busyNanos.addAndGet(System.nanoTime() - start);
+						if(!running) {
+							break;
+						}
+						//One bad frame must not stall the whole pipeline
+						e.printStackTrace();
+						framesFailed.incrementAndGet();
+						failed(frame);
+						Thread.sleep(FAILURE_PAUSE_MILLIS);
+						continue;
+					}
+					busyNanos.addAndGet(System.nanoTime() - start);
+
+					if(out == null || frame == null) {
+						continue;
+					}
+
+					if(dropWhenFull) {
+						while(!out.offer(frame)) {
+							Frame old = out.poll();
+							if(old != null) {
+								framesDropped.incrementAndGet();
+								dropped(old);
+							}
+						}
+					}
+					else {
+						out.put(frame);
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				//stop() was called
+			}
+		}
+
+	}
+
+	private class CaptureStage extends Stage {
+
+		CaptureStage() {
+			super("capture", null, captured, true);
+		}
+
+		@Override
+		protected Frame process(Frame frame) {
+			long now = System.nanoTime();
+			return new Frame(now, source.capture());
+		}
+
+	}
+
+	private class ScaleStage extends Stage {
+
+		private final ImageScaler scaler = new ImageScaler(ImageScaler.Filter.AREA_AVERAGE, true);
+
+		ScaleStage() {
+			super("scale", captured, scaled, true);
+		}
+
+		@Override
+		protected void reset() {
+			freeCanvases.clear();
+		}
+
+		@Override
+		protected Frame process(Frame frame) {
+			Canvas canvas = freeCanvases.poll();
+			if(canvas == null) {
+				canvas = new Canvas(new BufferedImage(width, height, StreamDeckXL.IMG_TYPE), profile);
+			}
+			scaler.scale(frame.image, canvas.image);
+			frame.image = null;
+			frame.canvas = canvas;
+			return frame;
+		}
+
+		@Override
+		protected void dropped(Frame frame) {
+			freeCanvases.offer(frame.canvas);
+		}
+
+	}
+
+	private class DiffStage extends Stage {
+
+		DiffStage() {
+			super("diff", scaled, diffed, false);
+		}
+
+		@Override
+		protected void reset() {
+			tileDiff.invalidateAll();
+		}
+
+		@Override
+		protected Frame process(Frame frame) {
+			if(resync) {
+				resync = false;
+				tileDiff.invalidateAll();
+			}
+			TileView[] tiles = frame.canvas.tiles;
+
+			//Every frame that leaves this stage is sent, so the diff always compares against what the deck shows
+			int[] changed = new int[tiles.length];
+			int count = 0;
+			for(int key = 0; key < tiles.length; key++) {
+				if(tileDiff.hasChanged(key, tiles[key])) {
+					changed[count++] = key;
+				}
+			}
+
+			tilesSkipped.addAndGet(tiles.length - count);
+			frame.changedKeys = Arrays.copyOf(changed, count);
+			return frame;
+		}
+
+		@Override
+		protected void failed(Frame frame) {
+			freeCanvases.offer(frame.canvas);
+			resync = true;
+		}
+
+	}
+
+	private class EncodeStage extends Stage {
+
+		EncodeStage() {
+			super("encode", diffed, encoded, false);
+		}
+
+		@Override
+		protected Frame process(final Frame frame) throws InterruptedException, ExecutionException {
+			final TileView[] tiles = frame.canvas.tiles;
+			frame.encoded = new EncodedKeyImage[tiles.length];
+
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(frame.changedKeys.length);
+			for(final int key : frame.changedKeys) {
+				tasks.add(() -> {
+					frame.encoded[key] = deck.encodeKey(tiles[key]);
+					return null;
+				});
+			}
+			for(Future<Void> future : encodeService.invokeAll(tasks)) {
+				future.get();
+			}
+
+			//The tiles have been copied into the encoded images, so the canvas can be drawn into again
+			freeCanvases.offer(frame.canvas);
+			frame.canvas = null;
+			return frame;
+		}
+
+		@Override
+		protected void failed(Frame frame) {
+			freeCanvases.offer(frame.canvas);
+			resync = true;
+		}
+
+	}
+
+	private class SendStage extends Stage {
+
+		SendStage() {
+			super("send", encoded, null, false);
+		}
+
+		@Override
+		protected Frame process(Frame frame) throws InterruptedException, ExecutionException {
+			//Queue the whole frame at once, key presses still get to go first
+			CompletableFuture<?>[] writes = new CompletableFuture<?>[frame.changedKeys.length];
+			for(int i = 0; i < writes.length; i++) {
+				int key = frame.changedKeys[i];
+				writes[i] = deck.submitKey(key, frame.encoded[key], WritePriority.BACKGROUND);
+			}
+			//get() and not join(), so stop() can interrupt a deck that is stuck writing
+			CompletableFuture.allOf(writes).get();
+			tilesSent.addAndGet(frame.changedKeys.length);
+
+			long latency = System.nanoTime() - frame.captureNanos;
+			latencyTotalNanos.addAndGet(latency);
+			long max;
+			while((max = latencyMaxNanos.get()) < latency && !latencyMaxNanos.compareAndSet(max, latency));
+			framesSent.incrementAndGet();
+			return null;
+		}
+
+		@Override
+		protected void failed(Frame frame) {
+			resync = true;
+		}
+
+	}
+
+	/**
+	 * Names the encoder threads and makes sure they don't keep the JVM alive
+	 */
+	private static class EncoderThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r);
+			thread.setName("StreamDeck screencast encoder #" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
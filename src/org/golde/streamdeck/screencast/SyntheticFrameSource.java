@@ -0,0 +1,82 @@
+package org.golde.streamdeck.screencast;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Generates a moving test pattern instead of capturing the screen, so a pipeline can run on machines without a display.
+ * Most of the frame stays the same between frames, like a real desktop, and a box moves across it.
+ * @author Eric Golde
+ *
+ */
+public class SyntheticFrameSource implements FrameSource {
+
+	private final int width;
+	private final int height;
+	private final long frameNanos;
+
+	private long nextFrame = 0;
+	private int frame = 0;
+
+	/**
+	 * Create a synthetic source that generates frames as fast as it is asked for them
+	 * @param width width of the frames
+	 * @param height height of the frames
+	 */
+	public SyntheticFrameSource(int width, int height) {
+		this(width, height, 0);
+	}
+
+	/**
+	 * Create a synthetic source that generates frames at a fixed rate, like a real screen does
+	 * @param width width of the frames
+	 * @param height height of the frames
+	 * @param fps frames per second. 0 for no limit
+	 */
+	public SyntheticFrameSource(int width, int height, int fps) {
+		this.width = width;
+		this.height = height;
+		this.frameNanos = fps <= 0 ? 0 : 1_000_000_000L / fps;
+	}
+
+	@Override
+	public BufferedImage capture() {
+
+		if(frameNanos > 0) {
+			long now = System.nanoTime();
+			if(nextFrame > now) {
+				try {
+					Thread.sleep((nextFrame - now) / 1_000_000, (int) ((nextFrame - now) % 1_000_000));
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			nextFrame = Math.max(nextFrame, now) + frameNanos;
+		}
+
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = img.createGraphics();
+
+		//Static "desktop" background
+		g.setColor(new Color(0x1e3a5f));
+		g.fillRect(0, 0, width, height);
+		g.setColor(new Color(0x2d5a8a));
+		for(int x = 0; x < width; x += width / 16 + 1) {
+			g.drawLine(x, 0, x, height);
+		}
+
+		//Moving "window"
+		int boxSize = Math.max(1, Math.min(width, height) / 4);
+		int boxX = (frame * 7) % Math.max(1, width - boxSize);
+		int boxY = (frame * 3) % Math.max(1, height - boxSize);
+		g.setColor(Color.getHSBColor((frame % 360) / 360f, 0.8f, 1f));
+		g.fillRect(boxX, boxY, boxSize, boxSize);
+
+		g.dispose();
+		frame++;
+		return img;
+	}
+
+}
@@ -0,0 +1,142 @@
+package org.golde.streamdeck.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * One client of a {@link DeckServer}. Only ever touched by the selector thread.
+ * @author Eric Golde
+ *
+ */
+class Connection {
+
+	/**
+	 * What the connection is used for after its first request
+	 */
+	enum Mode {
+		/**
+		 * Normal requests and responses
+		 */
+		HTTP,
+		/**
+		 * Server sent events, key presses and image changes
+		 */
+		EVENTS,
+		/**
+		 * A MJPEG stream of one key
+		 */
+		STREAM;
+	}
+
+	private static final int INITIAL_INPUT = 1024;
+
+	final SocketChannel channel;
+	final SelectionKey selectionKey;
+	ByteBuffer in = ByteBuffer.allocate(INITIAL_INPUT);
+	private final ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+	private long queued = 0;
+
+	Mode mode = Mode.HTTP;
+	int streamKey = -1;
+	//A new frame came in while the last one was still being sent
+	boolean framePending = false;
+	boolean closeWhenSent = false;
+	//A request is being handled on the worker, don't read the next one until it is answered
+	boolean busy = false;
+	boolean closed = false;
+
+	Connection(SocketChannel channel, SelectionKey selectionKey) {
+		this.channel = channel;
+		this.selectionKey = selectionKey;
+	}
+
+	/**
+	 * Queue bytes to send. They are sent by {@link #flush()}.
+	 * @param data the bytes, not copied
+	 */
+	void queue(ByteBuffer data) {
+		out.add(data);
+		queued += data.remaining();
+	}
+
+	/**
+	 * @return bytes waiting to be sent
+	 */
+	long getQueued() {
+		return queued;
+	}
+
+	/**
+	 * Send as much as the socket takes without blocking, and ask the selector to say when it takes more
+	 * @return bytes sent
+	 * @throws IOException if the client went away
+	 */
+	long flush() throws IOException {
+		long sent = 0;
+		while(!out.isEmpty()) {
+			ByteBuffer head = out.peek();
+			int written = channel.write(head);
+			sent += written;
+			queued -= written;
+			if(head.hasRemaining()) {
+				break;
+			}
+			out.poll();
+		}
+		if(!closed) {
+			selectionKey.interestOps(out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+		return sent;
+	}
+
+	/**
+	 * Make room in the input buffer, growing it if a request does not fit
+	 * @param max the biggest the buffer may get
+	 * @return false if it is already as big as it may get
+	 */
+	boolean growInput(int max) {
+		if(in.hasRemaining()) {
+			return true;
+		}
+		if(in.capacity() >= max) {
+			return false;
+		}
+		ByteBuffer bigger = ByteBuffer.allocate(Math.min(max, in.capacity() * 2));
+		in.flip();
+		bigger.put(in);
+		in = bigger;
+		return true;
+	}
+
+	/**
+	 * Go back to a small input buffer once a big upload is done
+	 */
+	void shrinkInput() {
+		if(in.capacity() > INITIAL_INPUT && in.position() <= INITIAL_INPUT) {
+			ByteBuffer small = ByteBuffer.allocate(INITIAL_INPUT);
+			in.flip();
+			small.put(in);
+			in = small;
+		}
+	}
+
+	void close() {
+		if(closed) {
+			return;
+		}
+		closed = true;
+		out.clear();
+		queued = 0;
+		selectionKey.cancel();
+		try {
+			channel.close();
+		}
+		catch (IOException e) {
+			//Closed anyways
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.golde.streamdeck.server;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The page a {@link DeckServer} shows at /. Everything it needs comes from /info, /key/{n}/stream and /events.
+ * @author Eric Golde
+ *
+ */
+final class Dashboard {
+
+	static final byte[] HTML = (""
+			+ "<!DOCTYPE html>\n"
+			+ "<html>\n"
+			+ "<head>\n"
+			+ "<meta charset=\"utf-8\">\n"
+			+ "<title>Stream Deck</title>\n"
+			+ "<style>\n"
+			+ "body { background: #222; color: #ddd; font-family: sans-serif; }\n"
+			+ "#deck { display: inline-grid; gap: 12px; padding: 16px; background: #000; border-radius: 16px; }\n"
+			+ "#deck img { border-radius: 8px; cursor: pointer; background: #111; }\n"
+			+ "#deck img.down { outline: 3px solid #4af; }\n"
+			+ "#deck img.over { outline: 3px dashed #fa4; }\n"
+			+ "</style>\n"
+			+ "</head>\n"
+			+ "<body>\n"
+			+ "<h3 id=\"model\"></h3>\n"
+			+ "<div id=\"deck\"></div>\n"
+			+ "<p>Click a key to press it, drop a image on a key to set it.</p>\n"
+			+ "<script>\n"
+			+ "fetch('/info').then(r => r.json()).then(info => {\n"
+			+ "  document.getElementById('model').textContent = info.model;\n"
+			+ "  const deck = document.getElementById('deck');\n"
+			+ "  deck.style.gridTemplateColumns = 'repeat(' + info.cols + ', ' + info.keySize + 'px)';\n"
+			+ "  const keys = [];\n"
+			+ "  for (let key = 0; key < info.keys; key++) {\n"
+			+ "    const img = document.createElement('img');\n"
+			+ "    img.width = img.height = info.keySize;\n"
+			+ "    img.style.transform = info.transform;\n"
+			+ "    img.src = '/key/' + key + '/stream';\n"
+			+ "    img.onmousedown = () => fetch('/key/' + key + '/down', {method: 'POST'});\n"
+			+ "    img.onmouseup = () => fetch('/key/' + key + '/up', {method: 'POST'});\n"
+			+ "    img.ondragover = e => { e.preventDefault(); img.classList.add('over'); };\n"
+			+ "    img.ondragleave = () => img.classList.remove('over');\n"
+			+ "    img.ondrop = e => {\n"
+			+ "      e.preventDefault();\n"
+			+ "      img.classList.remove('over');\n"
+			+ "      const file = e.dataTransfer.files[0];\n"
+			+ "      if (file) fetch('/key/' + key + '/image', {method: 'PUT', headers: {'Content-Type': file.type}, body: file});\n"
+			+ "    };\n"
+			+ "    deck.appendChild(img);\n"
+			+ "    keys.push(img);\n"
+			+ "  }\n"
+			+ "  const events = new EventSource('/events');\n"
+			+ "  events.addEventListener('key', e => {\n"
+			+ "    const event = JSON.parse(e.data);\n"
+			+ "    keys[event.key].classList.toggle('down', event.state === 'PRESSED');\n"
+			+ "  });\n"
+			+ "});\n"
+			+ "</script>\n"
+			+ "</body>\n"
+			+ "</html>\n").getBytes(StandardCharsets.UTF_8);
+
+	private Dashboard() {
+	}
+
+}
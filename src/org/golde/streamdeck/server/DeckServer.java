@@ -0,0 +1,709 @@
+package org.golde.streamdeck.server;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import org.golde.streamdeck.DeviceProfile;
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.KeyEvent;
+import org.golde.streamdeck.OverflowStrategy;
+import org.golde.streamdeck.StreamDeckKeyState.State;
+import org.golde.streamdeck.WriteScheduler;
+
+/**
+ * A small HTTP server that shows a deck in a browser and lets it be used from there. Only listens on the loopback address,
+ * unless it is given another address.
+ *
+ * The server runs on one thread with a NIO selector, so hundreds of viewers cost a few KB each and no threads.
+ * Key images are taken from the {@link WriteScheduler} as they are sent to the device, and sent to viewers as they are,
+ * so nothing is encoded twice. Models that take JPEGs get JPEGs, models that take BMPs get BMPs, rotated the way the device
+ * wants them: the CSS transform to turn them upright is in /info.
+ *
+ * <pre>
+ * GET  /                  a page that shows the deck, click a key to press it, drop a image on a key to set it
+ * GET  /info              the model, as JSON
+ * GET  /key/{n}           the image on a key
+ * GET  /key/{n}/stream    every image that is sent to a key, as a MJPEG stream
+ * GET  /events            key presses and image changes, as server sent events
+ * POST /key/{n}/press     press and release a key
+ * POST /key/{n}/down      press a key
+ * POST /key/{n}/up        release a key
+ * PUT  /key/{n}/image     set a key to a image in the body. JPEGs the size of a key are not encoded again
+ * </pre>
+ *
+ * Web pages open in the same browser are kept out. Requests are refused when their Host is a name other than localhost
+ * or a name added with {@link #addAllowedHost(String)}, which stops DNS rebinding, and POST and PUT requests are refused when
+ * they come from a page on another origin, so a page can't press keys or change images.
+ * @author Eric Golde
+ *
+ */
+public class DeckServer {
+
+	private static final int MAX_REQUEST = 2 * 1024 * 1024;
+	//A viewer with more than this waiting to be sent is too slow to keep up, and is dropped
+	private static final long MAX_QUEUED = 1024 * 1024;
+	private static final byte[] CRLF = {'\r', '\n'};
+
+	private final IStreamDeck deck;
+	private final DeviceProfile profile;
+	private final InetSocketAddress address;
+	private final String imageType;
+	private final Set<String> allowedHosts = ConcurrentHashMap.newKeySet();
+
+	private Selector selector;
+	private ServerSocketChannel server;
+	private Thread thread;
+	private volatile boolean running = false;
+	private ExecutorService worker;
+	private volatile Flow.Subscription subscription;
+
+	//Guarded by images
+	private final EncodedKeyImage[] images;
+	private final long[] versions;
+	//Keys that got a new image since the selector thread last looked, one bit per key
+	private final AtomicLong changedKeys = new AtomicLong();
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	//Only touched by the selector thread
+	private final List<Connection> connections = new ArrayList<Connection>();
+	private final WriteScheduler.KeyWriter observer = this::imageSent;
+
+	private final AtomicLong framesSent = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final AtomicLong requests = new AtomicLong();
+	private volatile int clientCount = 0;
+
+	/**
+	 * Create a server on the loopback address. Call {@link #start()} to start it.
+	 * @param deck the deck to show
+	 * @param port the port, or 0 to pick a free one
+	 */
+	public DeckServer(IStreamDeck deck, int port) {
+		this(deck, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+	}
+
+	/**
+	 * Create a server. Anybody who can reach the address can use the deck, so think twice before using anything but loopback.
+	 * @param deck the deck to show
+	 * @param address the address to listen on
+	 */
+	public DeckServer(IStreamDeck deck, InetSocketAddress address) {
+		if(deck.getProfile().getNumberOfKeys() > 64) {
+			throw new IllegalArgumentException("Expected a deck with 64 keys or less");
+		}
+		this.deck = deck;
+		this.profile = deck.getProfile();
+		this.address = address;
+		this.imageType = profile.getImageFormat() == DeviceProfile.ImageFormat.BMP ? "image/bmp" : "image/jpeg";
+		this.images = new EncodedKeyImage[profile.getNumberOfKeys()];
+		this.versions = new long[profile.getNumberOfKeys()];
+	}
+
+	/**
+	 * Start listening
+	 * @throws IOException if the address can't be bound
+	 */
+	public synchronized void start() throws IOException {
+		if(running) {
+			return;
+		}
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(address, 1024);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+
+		worker = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r);
+			thread.setName("StreamDeck server worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		deck.getWriteScheduler().addObserver(observer);
+		deck.getKeyEvents().subscribe(new KeySubscriber(), OverflowStrategy.BUFFER);
+
+		running = true;
+		thread = new Thread(this::run);
+		thread.setName("StreamDeck server");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop the server and disconnect every client
+	 */
+	public synchronized void stop() {
+		if(!running) {
+			return;
+		}
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		deck.getWriteScheduler().removeObserver(observer);
+		Flow.Subscription subscription = this.subscription;
+		if(subscription != null) {
+			subscription.cancel();
+		}
+		worker.shutdownNow();
+	}
+
+	/**
+	 * Let browsers in that reach the server by a name other than localhost, for example the name of the machine when it listens
+	 * on more than loopback. IP addresses are always let in.
+	 * @param host the name, without the port
+	 */
+	public void addAllowedHost(String host) {
+		allowedHosts.add(host.toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * @return the port the server listens on, useful when it was started on port 0
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * @return number of connected clients
+	 */
+	public int getClientCount() {
+		return clientCount;
+	}
+
+	/**
+	 * @return number of MJPEG frames sent, added up over every viewer
+	 */
+	public long getFramesSent() {
+		return framesSent.get();
+	}
+
+	/**
+	 * @return number of bytes sent to clients
+	 */
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	/**
+	 * @return number of requests handled
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	///////////////////////// [ Selector thread ] ////////////////////////////////
+
+	private void run() {
+		while(running) {
+			try {
+				selector.select();
+
+				Runnable task;
+				while((task = tasks.poll()) != null) {
+					task.run();
+				}
+				long changed = changedKeys.getAndSet(0);
+				if(changed != 0) {
+					imagesChanged(changed);
+				}
+
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while(it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					if(!key.isValid()) {
+						continue;
+					}
+					if(key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					Connection c = (Connection) key.attachment();
+					if(key.isReadable()) {
+						read(c);
+					}
+					if(key.isValid() && key.isWritable()) {
+						write(c);
+					}
+				}
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		for(int i = connections.size() - 1; i >= 0; i--) {
+			close(connections.get(i));
+		}
+		try {
+			server.close();
+			selector.close();
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while((channel = server.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			Connection c = new Connection(channel, key);
+			key.attach(c);
+			connections.add(c);
+			clientCount = connections.size();
+		}
+	}
+
+	private void read(Connection c) {
+		int read;
+		try {
+			read = c.channel.read(c.in);
+		}
+		catch (IOException e) {
+			read = -1;
+		}
+		if(read < 0) {
+			close(c);
+			return;
+		}
+		if(c.mode != Connection.Mode.HTTP) {
+			//Streams don't take requests, just throw it away
+			c.in.clear();
+			return;
+		}
+		if(c.busy && !c.in.hasRemaining()) {
+			//Stop reading until the request on the worker is answered, instead of waking up for a full buffer over and over
+			c.selectionKey.interestOps(c.selectionKey.interestOps() & ~SelectionKey.OP_READ);
+			return;
+		}
+		handleRequests(c);
+	}
+
+	private void write(Connection c) {
+		try {
+			bytesSent.addAndGet(c.flush());
+			if(c.getQueued() == 0) {
+				if(c.closeWhenSent) {
+					close(c);
+				}
+				else if(c.framePending) {
+					c.framePending = false;
+					queueFrame(c);
+					bytesSent.addAndGet(c.flush());
+				}
+			}
+		}
+		catch (IOException e) {
+			close(c);
+		}
+	}
+
+	private void close(Connection c) {
+		c.close();
+		connections.remove(c);
+		clientCount = connections.size();
+	}
+
+	/**
+	 * Send new images to the viewers of the keys that changed
+	 */
+	private void imagesChanged(long changed) {
+		for(int key = 0; key < images.length; key++) {
+			if((changed & (1L << key)) == 0) {
+				continue;
+			}
+			long version;
+			synchronized (images) {
+				version = versions[key];
+			}
+			ByteBuffer event = ascii("event: image\ndata: {\"key\":" + key + ",\"version\":" + version + "}\n\n");
+
+			for(int i = connections.size() - 1; i >= 0; i--) {
+				Connection c = connections.get(i);
+				if(c.mode == Connection.Mode.EVENTS) {
+					queueEvent(c, event.duplicate());
+				}
+				else if(c.mode == Connection.Mode.STREAM && c.streamKey == key) {
+					if(c.getQueued() == 0) {
+						queueFrame(c);
+						write(c);
+					}
+					else {
+						//Still sending the last frame, send the newest one once that is done and skip everything in between
+						c.framePending = true;
+					}
+				}
+			}
+		}
+	}
+
+	private void keyChanged(KeyEvent event) {
+		ByteBuffer data = ascii("event: key\ndata: {\"key\":" + event.getKey() + ",\"state\":\"" + event.getState() + "\",\"mask\":"
+				+ (event.getMask() & 0xFFFFFFFFL) + "}\n\n");
+		for(int i = connections.size() - 1; i >= 0; i--) {
+			Connection c = connections.get(i);
+			if(c.mode == Connection.Mode.EVENTS) {
+				queueEvent(c, data.duplicate());
+			}
+		}
+	}
+
+	private void queueEvent(Connection c, ByteBuffer data) {
+		if(c.getQueued() > MAX_QUEUED) {
+			close(c);
+			return;
+		}
+		c.queue(data);
+		write(c);
+	}
+
+	private void queueFrame(Connection c) {
+		EncodedKeyImage img;
+		synchronized (images) {
+			img = images[c.streamKey];
+		}
+		if(img == null) {
+			return;
+		}
+		c.queue(ascii("--frame\r\nContent-Type: " + imageType + "\r\nContent-Length: " + img.getLength() + "\r\n\r\n"));
+		//The same bytes that went to the device, not copied
+		c.queue(img.getData());
+		c.queue(ByteBuffer.wrap(CRLF));
+		framesSent.incrementAndGet();
+	}
+
+	///////////////////////// [ Requests ] ////////////////////////////////
+
+	private void handleRequests(Connection c) {
+		while(!c.busy && !c.closed && c.mode == Connection.Mode.HTTP) {
+			Request request;
+			try {
+				request = Request.parse(c.in, MAX_REQUEST);
+			}
+			catch (IllegalArgumentException e) {
+				c.in.clear();
+				respond(c, 400, "text/plain", ascii(e.getMessage()), false);
+				return;
+			}
+			if(request == null) {
+				if(!c.growInput(Math.max(MAX_REQUEST, c.in.capacity()))) {
+					respond(c, 413, "text/plain", ascii("Request too big"), false);
+				}
+				return;
+			}
+			if(request.getTotalLength() > MAX_REQUEST) {
+				c.in.clear();
+				respond(c, 413, "text/plain", ascii("Request too big"), false);
+				return;
+			}
+			if(request.getTotalLength() > c.in.capacity()) {
+				//Have the headers, make room for the body
+				c.in = grow(c.in, request.getTotalLength());
+				return;
+			}
+			if(request.getTotalLength() > c.in.position()) {
+				return;
+			}
+
+			request.readBody(c.in);
+			c.shrinkInput();
+			requests.incrementAndGet();
+			handle(c, request);
+		}
+	}
+
+	private void handle(Connection c, Request request) {
+		String path = request.getPath();
+		String method = request.getMethod();
+		boolean keepAlive = request.isKeepAlive();
+
+		if(!isAllowedHost(request.getHost())) {
+			respond(c, 403, "text/plain", ascii("Host not allowed"), false);
+			return;
+		}
+		if((method.equals("POST") || method.equals("PUT")) && !isSameOrigin(request)) {
+			respond(c, 403, "text/plain", ascii("Requests from other origins are not allowed"), false);
+			return;
+		}
+
+		if(path.equals("/")) {
+			respond(c, 200, "text/html; charset=utf-8", ByteBuffer.wrap(Dashboard.HTML), keepAlive);
+			return;
+		}
+		if(path.equals("/info")) {
+			respond(c, 200, "application/json", ascii(info()), keepAlive);
+			return;
+		}
+		if(path.equals("/events")) {
+			c.mode = Connection.Mode.EVENTS;
+			c.queue(ascii("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nCache-Control: no-cache\r\nConnection: keep-alive\r\n\r\nretry: 1000\n\n"));
+			write(c);
+			return;
+		}
+
+		String[] parts = path.split("/");
+		int key = parts.length >= 3 && parts[1].equals("key") ? parseKey(parts[2]) : -1;
+		if(key < 0) {
+			respond(c, 404, "text/plain", ascii("Not found"), keepAlive);
+			return;
+		}
+		String action = parts.length >= 4 ? parts[3] : "";
+
+		if(action.isEmpty() && method.equals("GET")) {
+			EncodedKeyImage img;
+			synchronized (images) {
+				img = images[key];
+			}
+			if(img == null) {
+				respond(c, 404, "text/plain", ascii("Nothing was sent to key " + key + " yet"), keepAlive);
+			}
+			else {
+				respond(c, 200, imageType, img.getData(), keepAlive);
+			}
+		}
+		else if(action.equals("stream") && method.equals("GET")) {
+			c.mode = Connection.Mode.STREAM;
+			c.streamKey = key;
+			c.queue(ascii("HTTP/1.1 200 OK\r\nContent-Type: multipart/x-mixed-replace; boundary=frame\r\nCache-Control: no-cache\r\nConnection: close\r\n\r\n"));
+			queueFrame(c);
+			write(c);
+		}
+		else if((action.equals("press") || action.equals("down") || action.equals("up")) && method.equals("POST")) {
+			//Listeners may take a while, so they don't run on the selector thread
+			c.busy = true;
+			worker.execute(() -> {
+				if(!action.equals("up")) {
+					deck.injectKeyState(key, State.PRESSED);
+				}
+				if(!action.equals("down")) {
+					deck.injectKeyState(key, State.RELEASED);
+				}
+				answer(c, 204, ascii(""), keepAlive);
+			});
+		}
+		else if(action.equals("image") && (method.equals("PUT") || method.equals("POST"))) {
+			c.busy = true;
+			byte[] body = request.getBody();
+			boolean jpeg = request.getContentType().startsWith("image/jpeg");
+			worker.execute(() -> {
+				try {
+					if(jpeg) {
+						deck.setKey(key, body);
+					}
+					else {
+						BufferedImage img = ImageIO.read(new ByteArrayInputStream(body));
+						if(img == null) {
+							answer(c, 415, ascii("Not a image ImageIO can read"), keepAlive);
+							return;
+						}
+						deck.setKey(key, img);
+					}
+					answer(c, 204, ascii(""), keepAlive);
+				}
+				catch (IOException | RuntimeException e) {
+					answer(c, 400, ascii(String.valueOf(e.getMessage())), keepAlive);
+				}
+			});
+		}
+		else {
+			respond(c, 404, "text/plain", ascii("Not found"), keepAlive);
+		}
+	}
+
+	/**
+	 * Answer a request from the worker thread
+	 */
+	private void answer(Connection c, int status, ByteBuffer body, boolean keepAlive) {
+		tasks.add(() -> {
+			c.busy = false;
+			if(!c.closed) {
+				respond(c, status, "text/plain", body, keepAlive);
+				handleRequests(c);
+			}
+		});
+		selector.wakeup();
+	}
+
+	private void respond(Connection c, int status, String contentType, ByteBuffer body, boolean keepAlive) {
+		StringBuilder header = new StringBuilder();
+		header.append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+		if(status != 204) {
+			header.append("Content-Type: ").append(contentType).append("\r\n");
+			header.append("Content-Length: ").append(body.remaining()).append("\r\n");
+		}
+		header.append("Cache-Control: no-cache\r\n");
+		header.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+		c.queue(ascii(header.toString()));
+		if(status != 204) {
+			c.queue(body);
+		}
+		c.closeWhenSent = !keepAlive;
+		write(c);
+	}
+
+	/**
+	 * A name in the Host header can be pointed anywhere by DNS rebinding, so only names we know are ours are let in.
+	 * Browsers always send the IP address as it is when the page was loaded by address.
+	 */
+	private boolean isAllowedHost(String host) {
+		if(host == null) {
+			//Not a browser, they always send one
+			return true;
+		}
+		if(host.startsWith("[")) {
+			int end = host.indexOf(']');
+			if(end < 0) {
+				return false;
+			}
+			//A IPv6 address
+			return host.substring(1, end).matches("[0-9a-f:.]+");
+		}
+		int colon = host.lastIndexOf(':');
+		String name = colon >= 0 ? host.substring(0, colon) : host;
+		return name.equals("localhost") || name.matches("\\d{1,3}(\\.\\d{1,3}){3}") || allowedHosts.contains(name);
+	}
+
+	/**
+	 * Browsers send a Origin with every POST and PUT. Other programs don't, and are let in.
+	 */
+	private boolean isSameOrigin(Request request) {
+		String origin = request.getOrigin();
+		if(origin == null) {
+			return true;
+		}
+		return request.getHost() != null && origin.equals("http://" + request.getHost());
+	}
+
+	private String info() {
+		return String.format(Locale.ROOT, "{\"model\":\"%s\",\"rows\":%d,\"cols\":%d,\"keys\":%d,\"keySize\":%d,\"imageType\":\"%s\",\"transform\":\"%s\"}",
+				profile.getName(), profile.getRows(), profile.getCols(), profile.getNumberOfKeys(), profile.getKeySize(), imageType, cssTransform(profile));
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	/**
+	 * Called on the writer thread of the deck, for every image that made it to the device
+	 */
+	private void imageSent(int key, EncodedKeyImage img) {
+		synchronized (images) {
+			images[key] = img;
+			versions[key]++;
+		}
+		//Only wake the selector up once for a burst of images
+		if(changedKeys.getAndAccumulate(1L << key, (a, b) -> a | b) == 0) {
+			selector.wakeup();
+		}
+	}
+
+	private int parseKey(String key) {
+		try {
+			int n = Integer.parseInt(key);
+			return n >= 0 && n < images.length ? n : -1;
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static ByteBuffer grow(ByteBuffer in, int size) {
+		ByteBuffer bigger = ByteBuffer.allocate(size);
+		in.flip();
+		bigger.put(in);
+		return bigger;
+	}
+
+	private static ByteBuffer ascii(String text) {
+		return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String reason(int status) {
+		switch(status) {
+		case 200: return "OK";
+		case 204: return "No Content";
+		case 400: return "Bad Request";
+		case 403: return "Forbidden";
+		case 404: return "Not Found";
+		case 413: return "Payload Too Large";
+		case 415: return "Unsupported Media Type";
+		default: return "Unknown";
+		}
+	}
+
+	/**
+	 * Work out the CSS transform that turns a image the way the device wants it back upright, from where the corners of the key end up
+	 */
+	static String cssTransform(DeviceProfile profile) {
+		int size = profile.getKeySize();
+		int[] map = profile.getRasterMap();
+		//BMPs are stored bottom row first, but browsers show them the right way up
+		boolean bottomUp = profile.getImageFormat() == DeviceProfile.ImageFormat.BMP;
+		int origin = map[(bottomUp ? size - 1 : 0) * size];
+		int right = map[(bottomUp ? size - 1 : 0) * size + size - 1];
+		int down = map[(bottomUp ? 0 : size - 1) * size];
+		int a = Integer.signum(right % size - origin % size);
+		int b = Integer.signum(right / size - origin / size);
+		int c = Integer.signum(down % size - origin % size);
+		int d = Integer.signum(down / size - origin / size);
+		return "matrix(" + a + "," + b + "," + c + "," + d + ",0,0)";
+	}
+
+	/**
+	 * Hands key presses to the selector thread
+	 */
+	private class KeySubscriber implements Flow.Subscriber<KeyEvent> {
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			DeckServer.this.subscription = subscription;
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(KeyEvent event) {
+			tasks.add(() -> keyChanged(event));
+			selector.wakeup();
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			throwable.printStackTrace();
+		}
+
+		@Override
+		public void onComplete() {
+		}
+
+	}
+
+}
@@ -0,0 +1,164 @@
+package org.golde.streamdeck.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A HTTP request, parsed straight out of the input buffer of a {@link Connection}
+ * @author Eric Golde
+ *
+ */
+class Request {
+
+	private final String method;
+	private final String path;
+	private final boolean keepAlive;
+	private final String contentType;
+	private final String host;
+	private final String origin;
+	private final int headerLength;
+	private final int contentLength;
+	private byte[] body;
+
+	private Request(String method, String path, boolean keepAlive, String contentType, String host, String origin, int headerLength, int contentLength) {
+		this.method = method;
+		this.path = path;
+		this.keepAlive = keepAlive;
+		this.contentType = contentType;
+		this.host = host;
+		this.origin = origin;
+		this.headerLength = headerLength;
+		this.contentLength = contentLength;
+	}
+
+	/**
+	 * Parse the headers of the first request in a buffer
+	 * @param in the buffer, in write mode, with the request at the start
+	 * @param max the biggest a request may be
+	 * @return the request, or null if the headers did not all come in yet
+	 * @throws IllegalArgumentException if the request is not valid HTTP
+	 */
+	static Request parse(ByteBuffer in, int max) {
+		byte[] data = in.array();
+		int end = -1;
+		for(int i = 3; i < in.position(); i++) {
+			if(data[i] == '\n' && data[i - 1] == '\r' && data[i - 2] == '\n' && data[i - 3] == '\r') {
+				end = i + 1;
+				break;
+			}
+		}
+		if(end < 0) {
+			return null;
+		}
+
+		String[] lines = new String(data, 0, end - 4, StandardCharsets.ISO_8859_1).split("\r\n");
+		String[] requestLine = lines[0].split(" ");
+		if(requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+			throw new IllegalArgumentException("Bad request line");
+		}
+		boolean keepAlive = requestLine[2].equals("HTTP/1.1");
+		String contentType = "";
+		String host = null;
+		String origin = null;
+		long contentLength = 0;
+		for(int i = 1; i < lines.length; i++) {
+			int colon = lines[i].indexOf(':');
+			if(colon <= 0) {
+				throw new IllegalArgumentException("Bad header");
+			}
+			String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+			String value = lines[i].substring(colon + 1).trim();
+			if(name.equals("content-length")) {
+				try {
+					contentLength = Long.parseLong(value);
+				}
+				catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Bad Content-Length");
+				}
+			}
+			else if(name.equals("content-type")) {
+				contentType = value.toLowerCase(Locale.ROOT);
+			}
+			else if(name.equals("host")) {
+				host = value.toLowerCase(Locale.ROOT);
+			}
+			else if(name.equals("origin")) {
+				origin = value.toLowerCase(Locale.ROOT);
+			}
+			else if(name.equals("connection")) {
+				keepAlive = !value.equalsIgnoreCase("close");
+			}
+			else if(name.equals("transfer-encoding")) {
+				throw new IllegalArgumentException("Chunked requests are not supported, send a Content-Length");
+			}
+		}
+		if(contentLength < 0) {
+			throw new IllegalArgumentException("Bad Content-Length");
+		}
+
+		String path = requestLine[1];
+		int query = path.indexOf('?');
+		if(query >= 0) {
+			path = path.substring(0, query);
+		}
+		return new Request(requestLine[0], path, keepAlive, contentType, host, origin, end, (int) Math.min(contentLength, max + 1L));
+	}
+
+	/**
+	 * Take the body out of the buffer, and move whatever comes after it to the start
+	 * @param in the buffer, in write mode, with the whole request in it
+	 */
+	void readBody(ByteBuffer in) {
+		body = Arrays.copyOfRange(in.array(), headerLength, getTotalLength());
+		in.flip();
+		in.position(getTotalLength());
+		in.compact();
+	}
+
+	/**
+	 * @return the headers and body together, in bytes
+	 */
+	int getTotalLength() {
+		return headerLength + contentLength;
+	}
+
+	String getMethod() {
+		return method;
+	}
+
+	String getPath() {
+		return path;
+	}
+
+	boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * @return the content type in lower case, or a empty string if there was none
+	 */
+	String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return the Host header in lower case, or null if there was none
+	 */
+	String getHost() {
+		return host;
+	}
+
+	/**
+	 * @return the Origin header in lower case, or null if there was none. Browsers send it with every POST and PUT.
+	 */
+	String getOrigin() {
+		return origin;
+	}
+
+	byte[] getBody() {
+		return body;
+	}
+
+}
@@ -0,0 +1,68 @@
+package org.golde.streamdeck.transport;
+
+import org.hid4java.HidDevice;
+
+/**
+ * A transport that talks to a real device through hid4java
+ * @author Eric Golde
+ *
+ */
+public class Hid4JavaTransport implements HidTransport {
+
+	private final HidDevice device;
+
+	/**
+	 * @param device the HID device
+	 */
+	public Hid4JavaTransport(HidDevice device) {
+		this.device = device;
+	}
+
+	@Override
+	public boolean open() {
+		return device.open();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return device.isOpen();
+	}
+
+	@Override
+	public void close() {
+		device.close();
+	}
+
+	@Override
+	public int write(byte[] data, int length, byte reportId) {
+		return device.write(data, length, reportId);
+	}
+
+	@Override
+	public int read(byte[] data, int timeoutMillis) {
+		return device.read(data, timeoutMillis);
+	}
+
+	@Override
+	public int getFeatureReport(byte[] data, byte reportId) {
+		return device.getFeatureReport(data, reportId);
+	}
+
+	@Override
+	public int sendFeatureReport(byte[] data, byte reportId) {
+		return device.sendFeatureReport(data, reportId);
+	}
+
+	@Override
+	public String getSerialNumber() {
+		return device.getSerialNumber();
+	}
+
+	/**
+	 * @return the hid4java device
+	 */
+	public HidDevice getDevice() {
+		return device;
+	}
+
+}
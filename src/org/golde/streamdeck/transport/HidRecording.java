@@ -0,0 +1,236 @@
+package org.golde.streamdeck.transport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A recording of every report that went between a program and a deck, made with a {@link RecordingTransport}.
+ * Play it back with a {@link HidReplayer}.
+ *
+ * The file starts with a header: "SDHR", a version, and the wall clock time the recording started in millis.
+ * Then one record after the other: the type, the nanos since the record before it, the report ID,
+ * the length of the data and the data. The nanos and the length are varints, so a record is only a few bytes bigger than its report.
+ * @author Eric Golde
+ *
+ */
+public class HidRecording {
+
+	static final int MAGIC = 0x53444852; //SDHR
+	static final short VERSION = 1;
+
+	/**
+	 * What kind of report a record is
+	 */
+	public enum Type {
+		/**
+		 * A output report the program sent, like a image packet
+		 */
+		WRITE,
+		/**
+		 * A feature report the program sent, like a brightness change
+		 */
+		SEND_FEATURE,
+		/**
+		 * A feature report the program asked for, with the answer from the device
+		 */
+		GET_FEATURE,
+		/**
+		 * A input report the device sent, like a key press
+		 */
+		READ;
+
+		private static final Type[] VALUES = values();
+
+		static Type fromId(int id) {
+			return id >= 0 && id < VALUES.length ? VALUES[id] : null;
+		}
+	}
+
+	/**
+	 * One report out of a recording
+	 */
+	public static class Record {
+
+		private final Type type;
+		private final long nanos;
+		private final byte reportId;
+		private final ByteBuffer data;
+
+		Record(Type type, long nanos, byte reportId, ByteBuffer data) {
+			this.type = type;
+			this.nanos = nanos;
+			this.reportId = reportId;
+			this.data = data;
+		}
+
+		/**
+		 * @return what kind of report it is
+		 */
+		public Type getType() {
+			return type;
+		}
+
+		/**
+		 * @return nanos since the recording started
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return the report ID
+		 */
+		public byte getReportId() {
+			return reportId;
+		}
+
+		/**
+		 * @return number of bytes of data
+		 */
+		public int getLength() {
+			return data.remaining();
+		}
+
+		/**
+		 * @return the data of the report, without the report ID. Read only, straight out of the file.
+		 */
+		public ByteBuffer getData() {
+			return data.duplicate();
+		}
+
+		/**
+		 * Copy the data into a array
+		 * @param dst the array, at least {@link #getLength()} long
+		 */
+		public void copyData(byte[] dst) {
+			data.duplicate().get(dst, 0, data.remaining());
+		}
+
+	}
+
+	private final File file;
+	private final long startMillis;
+	private final List<Record> records;
+
+	private HidRecording(File file, long startMillis, List<Record> records) {
+		this.file = file;
+		this.startMillis = startMillis;
+		this.records = records;
+	}
+
+	/**
+	 * Memory map a recording. The file must not be changed while the recording is in use.
+	 * @param file the recording file
+	 * @return the loaded recording
+	 * @throws IOException thrown if the file can't be read, or is not a valid recording
+	 */
+	public static HidRecording load(File file) throws IOException {
+		MappedByteBuffer map;
+		//The mapping stays valid after the channel is closed
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Recording " + file + " is bigger than 2GB");
+			}
+			map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		try {
+			if(map.getInt() != MAGIC) {
+				throw new IOException(file + " is not a HID recording");
+			}
+			short version = map.getShort();
+			if(version != VERSION) {
+				throw new IOException("Unsupported HID recording version " + version + " in " + file);
+			}
+			long startMillis = map.getLong();
+
+			List<Record> records = new ArrayList<Record>();
+			long nanos = 0;
+			while(map.hasRemaining()) {
+				Type type = Type.fromId(map.get());
+				if(type == null) {
+					throw new IOException("Unknown record type in " + file + " at " + (map.position() - 1));
+				}
+				nanos += readVarLong(map);
+				byte reportId = map.get();
+				int length = (int) readVarLong(map);
+
+				ByteBuffer data = map.duplicate();
+				data.limit(map.position() + length);
+				map.position(map.position() + length);
+				records.add(new Record(type, nanos, reportId, data.slice().asReadOnlyBuffer()));
+			}
+
+			return new HidRecording(file, startMillis, Collections.unmodifiableList(records));
+		}
+		catch(RuntimeException e) {
+			//BufferUnderflowException or IllegalArgumentException, the file was cut off
+			throw new IOException("Recording " + file + " is corrupt", e);
+		}
+	}
+
+	/**
+	 * @return every record, in the order they happened
+	 */
+	public List<Record> getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return number of records
+	 */
+	public int size() {
+		return records.size();
+	}
+
+	/**
+	 * @return nanos from the start of the recording to the last record
+	 */
+	public long getDurationNanos() {
+		return records.isEmpty() ? 0 : records.get(records.size() - 1).getNanos();
+	}
+
+	/**
+	 * @return the wall clock time the recording started, in millis since the epoch
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	/**
+	 * @return the file the recording was loaded from
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	static void writeVarLong(ByteBuffer buffer, long value) {
+		while((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static long readVarLong(ByteBuffer buffer) {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if(b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Varint is too long");
+	}
+
+}
@@ -0,0 +1,156 @@
+package org.golde.streamdeck.transport;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.golde.streamdeck.transport.HidRecording.Record;
+
+/**
+ * Plays a {@link HidRecording} back into a transport, like a {@link org.golde.streamdeck.emulator.VirtualStreamDeck},
+ * so a session from the field can be run again as often as needed, and timed like a benchmark.
+ *
+ * Output and feature reports are sent to the transport in the same order as they were recorded. Input reports
+ * came from the device, so they go to the input sink instead, if there is one.
+ * @author Eric Golde
+ *
+ */
+public class HidReplayer {
+
+	/**
+	 * Speed to replay as fast as the transport can take it, without waiting between records
+	 */
+	public static final double MAX_SPEED = 0;
+
+	//Sleeping is not accurate enough for short waits, spin for the last bit
+	private static final long SPIN_NANOS = 1_000_000L;
+
+	private final HidRecording recording;
+	private Consumer<byte[]> inputSink;
+
+	private long recordsReplayed;
+	private long bytesReplayed;
+	private long errors;
+
+	/**
+	 * @param recording the recording to play back
+	 */
+	public HidReplayer(HidRecording recording) {
+		this.recording = recording;
+	}
+
+	/**
+	 * Set where input reports go, for example {@link org.golde.streamdeck.emulator.VirtualStreamDeck#sendInputReport(byte[])}
+	 * @param inputSink gets a copy of every input report, or null to skip them
+	 */
+	public void setInputSink(Consumer<byte[]> inputSink) {
+		this.inputSink = inputSink;
+	}
+
+	/**
+	 * Play the recording back, and wait until it is done
+	 * @param transport the transport to send the reports to. It must be open.
+	 * @param speed 1 to replay with the original timing, 2 for twice as fast, or {@link #MAX_SPEED} to not wait at all
+	 * @return nanos it took
+	 */
+	public long replay(HidTransport transport, double speed) {
+		if(speed < 0) {
+			throw new IllegalArgumentException("Expected speed to be 0 or more");
+		}
+		recordsReplayed = 0;
+		bytesReplayed = 0;
+		errors = 0;
+
+		byte[] data = new byte[0];
+		long start = System.nanoTime();
+
+		for(Record record : recording.getRecords()) {
+			if(speed != MAX_SPEED) {
+				waitUntil(start + (long) (record.getNanos() / speed));
+			}
+
+			int length = record.getLength();
+			if(data.length < length) {
+				data = new byte[length];
+			}
+			record.copyData(data);
+
+			int result;
+			switch(record.getType()) {
+			case WRITE:
+				result = transport.write(data, length, record.getReportId());
+				break;
+			case SEND_FEATURE:
+				result = transport.sendFeatureReport(trim(data, length), record.getReportId());
+				break;
+			case GET_FEATURE:
+				result = transport.getFeatureReport(new byte[length], record.getReportId());
+				break;
+			case READ:
+				if(inputSink != null) {
+					inputSink.accept(trim(data, length));
+				}
+				result = 0;
+				break;
+			default:
+				result = -1;
+			}
+
+			if(result < 0) {
+				errors++;
+			}
+			recordsReplayed++;
+			bytesReplayed += length;
+		}
+
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * @return number of records played back by the last replay
+	 */
+	public long getRecordsReplayed() {
+		return recordsReplayed;
+	}
+
+	/**
+	 * @return number of bytes of reports played back by the last replay
+	 */
+	public long getBytesReplayed() {
+		return bytesReplayed;
+	}
+
+	/**
+	 * @return number of reports the transport returned a error for, in the last replay
+	 */
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return the recording
+	 */
+	public HidRecording getRecording() {
+		return recording;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private static void waitUntil(long deadline) {
+		long remaining;
+		while((remaining = deadline - System.nanoTime()) > 0) {
+			if(remaining > SPIN_NANOS) {
+				LockSupport.parkNanos(remaining - SPIN_NANOS);
+			}
+			else {
+				Thread.yield();
+			}
+		}
+	}
+
+	private static byte[] trim(byte[] data, int length) {
+		byte[] copy = new byte[length];
+		System.arraycopy(data, 0, copy, 0, length);
+		return copy;
+	}
+
+}
@@ -0,0 +1,68 @@
+package org.golde.streamdeck.transport;
+
+/**
+ * The raw HID connection to a stream deck. The deck classes only talk to the device through this,
+ * so it can be a real USB device, or something else that speaks the same protocol, like a
+ * {@link org.golde.streamdeck.emulator.VirtualStreamDeck}.
+ *
+ * The methods work like the ones in hid4java's HidDevice: the report ID is passed separately and is not part of the data.
+ * @author Eric Golde
+ *
+ */
+public interface HidTransport {
+
+	/**
+	 * Open the connection
+	 * @return true if the connection is open
+	 */
+	public boolean open();
+
+	/**
+	 * @return true if the connection is open
+	 */
+	public boolean isOpen();
+
+	/**
+	 * Close the connection
+	 */
+	public void close();
+
+	/**
+	 * Send a output report
+	 * @param data the report, without the report ID
+	 * @param length number of bytes of data to send
+	 * @param reportId the report ID
+	 * @return number of bytes sent, or -1 if it failed
+	 */
+	public int write(byte[] data, int length, byte reportId);
+
+	/**
+	 * Wait for a input report
+	 * @param data buffer to read the report into
+	 * @param timeoutMillis how long to wait
+	 * @return number of bytes read, 0 if nothing came in before the timeout, or -1 if it failed
+	 */
+	public int read(byte[] data, int timeoutMillis);
+
+	/**
+	 * Ask the device for a feature report
+	 * @param data buffer to read the report into
+	 * @param reportId the report ID
+	 * @return number of bytes read, or -1 if it failed
+	 */
+	public int getFeatureReport(byte[] data, byte reportId);
+
+	/**
+	 * Send the device a feature report
+	 * @param data the report, without the report ID
+	 * @param reportId the report ID
+	 * @return number of bytes sent, or -1 if it failed
+	 */
+	public int sendFeatureReport(byte[] data, byte reportId);
+
+	/**
+	 * @return the serial number the device reports over USB, or null if it is not known
+	 */
+	public String getSerialNumber();
+
+}
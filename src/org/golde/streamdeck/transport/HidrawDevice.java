@@ -0,0 +1,169 @@
+package org.golde.streamdeck.transport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.golde.streamdeck.DeviceProfile;
+
+/**
+ * A hidraw device node found in sysfs, like /dev/hidraw3. Find them with {@link #findAll()}, and open one with {@link #open()}.
+ * @author Eric Golde
+ *
+ */
+public class HidrawDevice {
+
+	private static final File SYSFS_HIDRAW = new File("/sys/class/hidraw");
+	private static final File DEV = new File("/dev");
+
+	private final File path;
+	private final int vendorId;
+	private final int productId;
+	private final String serialNumber;
+	private final String name;
+
+	/**
+	 * @param path the device node
+	 * @param vendorId USB vendor ID
+	 * @param productId USB product ID
+	 * @param serialNumber serial number, or null if it is not known
+	 * @param name product name, or null if it is not known
+	 */
+	public HidrawDevice(File path, int vendorId, int productId, String serialNumber, String name) {
+		this.path = path;
+		this.vendorId = vendorId;
+		this.productId = productId;
+		this.serialNumber = serialNumber;
+		this.name = name;
+	}
+
+	/**
+	 * @return true if this machine has hidraw devices, which is most Linux machines
+	 */
+	public static boolean isSupported() {
+		return SYSFS_HIDRAW.isDirectory();
+	}
+
+	/**
+	 * Find every supported stream deck in /sys/class/hidraw
+	 * @return the devices, or a empty list if there are none, or this is not Linux
+	 */
+	public static List<HidrawDevice> findAll() {
+		return findAll(SYSFS_HIDRAW, DEV);
+	}
+
+	/**
+	 * Find every supported stream deck in a sysfs like directory. Every hidrawN directory in it needs a device/uevent file.
+	 * @param sysfs the directory with one directory per hidraw device, normally /sys/class/hidraw
+	 * @param dev the directory the device nodes are in, normally /dev
+	 * @return the devices, or a empty list if there are none
+	 */
+	public static List<HidrawDevice> findAll(File sysfs, File dev) {
+		List<HidrawDevice> devices = new ArrayList<HidrawDevice>();
+		String[] nodes = sysfs.list();
+		if(nodes == null) {
+			return devices;
+		}
+		Arrays.sort(nodes);
+
+		for(String node : nodes) {
+			File uevent = new File(sysfs, node + "/device/uevent");
+			List<String> lines;
+			try {
+				lines = Files.readAllLines(uevent.toPath(), StandardCharsets.UTF_8);
+			}
+			catch (IOException e) {
+				continue;
+			}
+
+			int vendorId = -1;
+			int productId = -1;
+			String serialNumber = null;
+			String name = null;
+			for(String line : lines) {
+				if(line.startsWith("HID_ID=")) {
+					//HID_ID=0003:00000FD9:0000006C, bus:vendor:product
+					String[] parts = line.substring(7).split(":");
+					if(parts.length == 3) {
+						try {
+							vendorId = Integer.parseInt(parts[1], 16);
+							productId = Integer.parseInt(parts[2], 16);
+						}
+						catch (NumberFormatException e) {}
+					}
+				}
+				else if(line.startsWith("HID_UNIQ=")) {
+					serialNumber = line.substring(9);
+				}
+				else if(line.startsWith("HID_NAME=")) {
+					name = line.substring(9);
+				}
+			}
+
+			if(vendorId == DeviceProfile.VENDOR_ID && DeviceProfile.forProductId(productId) != null) {
+				devices.add(new HidrawDevice(new File(dev, node), vendorId, productId, serialNumber, name));
+			}
+		}
+		return devices;
+	}
+
+	/**
+	 * Create a transport for the device. It still needs to be opened.
+	 * @return the transport
+	 */
+	public HidrawTransport open() {
+		return new HidrawTransport(path, serialNumber);
+	}
+
+	/**
+	 * @return the model of the device, or null if it is not a supported stream deck
+	 */
+	public DeviceProfile getProfile() {
+		return vendorId == DeviceProfile.VENDOR_ID ? DeviceProfile.forProductId(productId) : null;
+	}
+
+	/**
+	 * @return the device node, like /dev/hidraw3
+	 */
+	public File getPath() {
+		return path;
+	}
+
+	/**
+	 * @return USB vendor ID
+	 */
+	public int getVendorId() {
+		return vendorId;
+	}
+
+	/**
+	 * @return USB product ID
+	 */
+	public int getProductId() {
+		return productId;
+	}
+
+	/**
+	 * @return serial number, or null if it is not known
+	 */
+	public String getSerialNumber() {
+		return serialNumber;
+	}
+
+	/**
+	 * @return product name, or null if it is not known
+	 */
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return path + " (" + name + ", " + serialNumber + ")";
+	}
+
+}
@@ -0,0 +1,316 @@
+package org.golde.streamdeck.transport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Talks to a stream deck through a Linux /dev/hidrawN node directly, without hid4java, JNA and hidapi in the way.
+ *
+ * Output reports are copied into a direct buffer that is reused for every packet, and written with a FileChannel,
+ * so sending a packet is one copy and one write system call. Input reports are read by a dedicated reader thread that
+ * blocks on its own channel, and are handed to {@link #read(byte[], int)} through a queue. Only the feature reports
+ * need ioctls, which go through a tiny JNA binding to libc.
+ *
+ * The output and input can also be any other file, like /dev/null or a named pipe, to test and benchmark without a device.
+ * Find real devices with {@link HidrawDevice#findAll()}.
+ * @author Eric Golde
+ *
+ */
+public class HidrawTransport implements HidTransport {
+
+	private static final int MAX_INPUT_REPORT_SIZE = 1024;
+	//If nobody reads the key presses, only keep the newest ones
+	private static final int MAX_QUEUED_REPORTS = 64;
+
+	private final File output;
+	private final File input;
+	private final String serialNumber;
+
+	private FileChannel writeChannel;
+	private FileChannel readChannel;
+	private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(1024);
+	private final Object writeLock = new Object();
+
+	private final BlockingQueue<byte[]> inputReports = new LinkedBlockingQueue<byte[]>(MAX_QUEUED_REPORTS);
+	private Thread reader;
+	private int ioctlFd = -1;
+	private volatile boolean open;
+
+	private final AtomicLong packetsWritten = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	/**
+	 * Create a transport for a hidraw device. It still needs to be opened.
+	 * @param device the device node, like /dev/hidraw3
+	 * @param serialNumber the serial number from sysfs, or null if it is not known
+	 */
+	public HidrawTransport(File device, String serialNumber) {
+		this(device, device, serialNumber);
+	}
+
+	/**
+	 * Create a transport that writes and reads different files, for example /dev/null and a named pipe to test without a device.
+	 * Feature reports only work if the output is a real hidraw device.
+	 * @param output where output reports are written
+	 * @param input where input reports are read from
+	 * @param serialNumber the serial number to report, or null
+	 */
+	public HidrawTransport(File output, File input, String serialNumber) {
+		this.output = output;
+		this.input = input;
+		this.serialNumber = serialNumber;
+	}
+
+	@Override
+	public synchronized boolean open() {
+		if(open) {
+			return true;
+		}
+		try {
+			//Separate channels, a FileChannel can't read and write at the same time
+			writeChannel = FileChannel.open(output.toPath(), StandardOpenOption.WRITE);
+			readChannel = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			closeChannels();
+			return false;
+		}
+
+		open = true;
+		inputReports.clear();
+		reader = new Thread(new ReaderTask(readChannel));
+		reader.setName("StreamDeck hidraw reader");
+		reader.setDaemon(true);
+		reader.start();
+		return true;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public synchronized void close() {
+		if(!open) {
+			return;
+		}
+		open = false;
+		//Closing the channel wakes up the reader
+		closeChannels();
+		reader = null;
+		LinuxHidraw.close(ioctlFd);
+		ioctlFd = -1;
+	}
+
+	@Override
+	public int write(byte[] data, int length, byte reportId) {
+		synchronized (writeLock) {
+			if(!open) {
+				return -1;
+			}
+			//close() only takes the channel away while holding this lock, so it stays open until the write is done
+			FileChannel channel = writeChannel;
+			if(channel == null) {
+				return -1;
+			}
+			if(writeBuffer.capacity() < length + 1) {
+				writeBuffer = ByteBuffer.allocateDirect(length + 1);
+			}
+			writeBuffer.clear();
+			writeBuffer.put(reportId);
+			writeBuffer.put(data, 0, length);
+			writeBuffer.flip();
+			try {
+				//hidraw takes a whole report per write, so this is normally one system call
+				while(writeBuffer.hasRemaining()) {
+					channel.write(writeBuffer);
+				}
+			}
+			catch (IOException e) {
+				return -1;
+			}
+		}
+		packetsWritten.incrementAndGet();
+		bytesWritten.addAndGet(length + 1);
+		return length + 1;
+	}
+
+	@Override
+	public int read(byte[] data, int timeoutMillis) {
+		if(!open && inputReports.isEmpty()) {
+			return -1;
+		}
+		byte[] report;
+		try {
+			report = inputReports.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 0;
+		}
+		if(report == null) {
+			return 0;
+		}
+		int length = Math.min(report.length, data.length);
+		System.arraycopy(report, 0, data, 0, length);
+		return length;
+	}
+
+	@Override
+	public synchronized int getFeatureReport(byte[] data, byte reportId) {
+		int fd = ioctlFd();
+		if(fd < 0) {
+			return -1;
+		}
+		byte[] report = new byte[data.length + 1];
+		report[0] = reportId;
+		int read = LinuxHidraw.getFeatureReport(fd, report);
+		if(read < 0) {
+			return -1;
+		}
+		//Like hid4java, the report ID is not part of the data
+		int length = Math.max(0, Math.min(read - 1, data.length));
+		System.arraycopy(report, 1, data, 0, length);
+		return length;
+	}
+
+	@Override
+	public synchronized int sendFeatureReport(byte[] data, byte reportId) {
+		int fd = ioctlFd();
+		if(fd < 0) {
+			return -1;
+		}
+		byte[] report = new byte[data.length + 1];
+		report[0] = reportId;
+		System.arraycopy(data, 0, report, 1, data.length);
+		return LinuxHidraw.sendFeatureReport(fd, report);
+	}
+
+	@Override
+	public String getSerialNumber() {
+		return serialNumber;
+	}
+
+	/**
+	 * @return number of output reports written since the transport was created
+	 */
+	public long getPacketsWritten() {
+		return packetsWritten.get();
+	}
+
+	/**
+	 * @return number of bytes of output reports written, including the report IDs
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	/**
+	 * @return where output reports are written
+	 */
+	public File getOutput() {
+		return output;
+	}
+
+	/**
+	 * @return where input reports are read from
+	 */
+	public File getInput() {
+		return input;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	/**
+	 * The ioctls need a plain file descriptor, which a FileChannel doesn't give out, so libc opens the device once more
+	 * @return the file descriptor, or -1 if the device can't be opened that way
+	 */
+	private int ioctlFd() {
+		if(!open) {
+			return -1;
+		}
+		if(ioctlFd < 0) {
+			ioctlFd = LinuxHidraw.open(output.getPath());
+		}
+		return ioctlFd;
+	}
+
+	private void closeChannels() {
+		//Under the write lock, so a write that is going on finishes first, and the next one sees there is no channel
+		synchronized (writeLock) {
+			closeChannel(writeChannel);
+			writeChannel = null;
+		}
+		closeChannel(readChannel);
+		readChannel = null;
+	}
+
+	private static void closeChannel(FileChannel channel) {
+		if(channel == null) {
+			return;
+		}
+		try {
+			channel.close();
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Blocks on the input channel, and queues every report that comes in
+	 */
+	private class ReaderTask implements Runnable {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_INPUT_REPORT_SIZE);
+
+		ReaderTask(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while(open) {
+					buffer.clear();
+					//hidraw gives one whole report per read
+					int read = channel.read(buffer);
+					if(read < 0) {
+						//End of a file stand-in
+						return;
+					}
+					if(read == 0) {
+						continue;
+					}
+					buffer.flip();
+					byte[] report = new byte[read];
+					buffer.get(report);
+					while(!inputReports.offer(report)) {
+						inputReports.poll();
+					}
+				}
+			}
+			catch (ClosedChannelException e) {
+				//The transport was closed
+			}
+			catch (IOException e) {
+				if(open) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.golde.streamdeck.transport;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+
+/**
+ * The few libc calls the hidraw transport needs that Java can't do on its own: the feature report ioctls.
+ * Everything else goes through a FileChannel.
+ * @author Eric Golde
+ *
+ */
+final class LinuxHidraw {
+
+	private static final int O_RDWR = 2;
+
+	private static final int IOC_READ_WRITE = 3;
+	private static final int HID_IOCTL_TYPE = 'H';
+	private static final int HIDIOCSFEATURE = 0x06;
+	private static final int HIDIOCGFEATURE = 0x07;
+
+	private interface LibC extends Library {
+		int open(String path, int flags);
+		int close(int fd);
+		int ioctl(int fd, NativeLong request, byte[] data);
+	}
+
+	private static LibC libc;
+	private static boolean loaded;
+
+	private LinuxHidraw() {}
+
+	/**
+	 * @return libc, or null if it can't be loaded, for example because this is not Linux
+	 */
+	private static synchronized LibC libc() {
+		if(!loaded) {
+			loaded = true;
+			try {
+				libc = (LibC) Native.loadLibrary("c", LibC.class);
+			}
+			catch (UnsatisfiedLinkError e) {
+				libc = null;
+			}
+		}
+		return libc;
+	}
+
+	/**
+	 * Open a file descriptor for the ioctls
+	 * @return the file descriptor, or -1 if it failed
+	 */
+	static int open(String path) {
+		LibC c = libc();
+		return c == null ? -1 : c.open(path, O_RDWR);
+	}
+
+	static void close(int fd) {
+		LibC c = libc();
+		if(c != null && fd >= 0) {
+			c.close(fd);
+		}
+	}
+
+	/**
+	 * @param report the report, starting with the report ID
+	 * @return number of bytes sent, or -1 if it failed
+	 */
+	static int sendFeatureReport(int fd, byte[] report) {
+		return libc().ioctl(fd, request(HIDIOCSFEATURE, report.length), report);
+	}
+
+	/**
+	 * @param report buffer for the report, with the report ID in the first byte
+	 * @return number of bytes read including the report ID, or -1 if it failed
+	 */
+	static int getFeatureReport(int fd, byte[] report) {
+		return libc().ioctl(fd, request(HIDIOCGFEATURE, report.length), report);
+	}
+
+	/**
+	 * The _IOC macro from the kernel headers
+	 */
+	private static NativeLong request(int number, int length) {
+		return new NativeLong((long) IOC_READ_WRITE << 30 | (long) length << 16 | HID_IOCTL_TYPE << 8 | number);
+	}
+
+}
@@ -0,0 +1,194 @@
+package org.golde.streamdeck.transport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.golde.streamdeck.transport.HidRecording.Type;
+
+/**
+ * Wraps a transport and records every report that goes through it, with a nanosecond timestamp, to reproduce problems later.
+ * Every output report, every feature report in both directions and every input report is written to a {@link HidRecording} file.
+ *
+ * Records are collected in a direct buffer and written to the file with a FileChannel when the buffer fills up,
+ * so recording costs a copy per report, not a system call. If writing the file fails, the recording stops but the deck keeps working.
+ * @author Eric Golde
+ *
+ */
+public class RecordingTransport implements HidTransport {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	//Type, nanos, report ID and length
+	private static final int MAX_RECORD_HEADER = 1 + 10 + 1 + 5;
+
+	private final HidTransport transport;
+	private final File file;
+
+	private FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private long lastNanos;
+	private long records;
+
+	/**
+	 * Start recording. The file is overwritten if it exists.
+	 * @param transport the transport to record
+	 * @param file the file to record to
+	 * @throws IOException if the file could not be created
+	 */
+	public RecordingTransport(HidTransport transport, File file) throws IOException {
+		this.transport = transport;
+		this.file = file;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		buffer.putInt(HidRecording.MAGIC);
+		buffer.putShort(HidRecording.VERSION);
+		buffer.putLong(System.currentTimeMillis());
+		lastNanos = System.nanoTime();
+	}
+
+	@Override
+	public boolean open() {
+		return transport.open();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return transport.isOpen();
+	}
+
+	/**
+	 * Close the transport and finish the recording
+	 */
+	@Override
+	public void close() {
+		transport.close();
+		stopRecording();
+	}
+
+	@Override
+	public int write(byte[] data, int length, byte reportId) {
+		record(Type.WRITE, reportId, data, length);
+		return transport.write(data, length, reportId);
+	}
+
+	@Override
+	public int read(byte[] data, int timeoutMillis) {
+		int read = transport.read(data, timeoutMillis);
+		if(read > 0) {
+			record(Type.READ, (byte) 0, data, read);
+		}
+		return read;
+	}
+
+	@Override
+	public int getFeatureReport(byte[] data, byte reportId) {
+		int read = transport.getFeatureReport(data, reportId);
+		record(Type.GET_FEATURE, reportId, data, data.length);
+		return read;
+	}
+
+	@Override
+	public int sendFeatureReport(byte[] data, byte reportId) {
+		record(Type.SEND_FEATURE, reportId, data, data.length);
+		return transport.sendFeatureReport(data, reportId);
+	}
+
+	@Override
+	public String getSerialNumber() {
+		return transport.getSerialNumber();
+	}
+
+	/**
+	 * Write what is left to the file and stop recording. The transport keeps working.
+	 */
+	public synchronized void stopRecording() {
+		if(channel == null) {
+			return;
+		}
+		try {
+			flush();
+			channel.close();
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		channel = null;
+	}
+
+	/**
+	 * @return true until the recording is stopped, or writing the file failed
+	 */
+	public synchronized boolean isRecording() {
+		return channel != null;
+	}
+
+	/**
+	 * @return number of reports recorded
+	 */
+	public synchronized long getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * @return the file that is being recorded to
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the transport that is being recorded
+	 */
+	public HidTransport getTransport() {
+		return transport;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	private synchronized void record(Type type, byte reportId, byte[] data, int length) {
+		if(channel == null) {
+			return;
+		}
+		long now = System.nanoTime();
+		try {
+			if(buffer.remaining() < MAX_RECORD_HEADER + length) {
+				flush();
+			}
+			buffer.put((byte) type.ordinal());
+			HidRecording.writeVarLong(buffer, now - lastNanos);
+			buffer.put(reportId);
+			HidRecording.writeVarLong(buffer, length);
+			if(buffer.remaining() >= length) {
+				buffer.put(data, 0, length);
+			}
+			else {
+				//Bigger than the buffer, write it straight to the file
+				flush();
+				ByteBuffer big = ByteBuffer.wrap(data, 0, length);
+				while(big.hasRemaining()) {
+					channel.write(big);
+				}
+			}
+			lastNanos = now;
+			records++;
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			try {
+				channel.close();
+			}
+			catch (IOException e1) {}
+			channel = null;
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+}
@@ -0,0 +1,47 @@
+package org.golde.streamdeck.widgets;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+
+/**
+ * Fills the whole key with one color
+ * @author Eric Golde
+ *
+ */
+public class BackgroundWidget extends Widget {
+
+	private Color color;
+
+	/**
+	 * @param color the background color
+	 */
+	public BackgroundWidget(Color color) {
+		this.color = color;
+	}
+
+	/**
+	 * @param color the new background color
+	 */
+	public void setColor(Color color) {
+		boolean changed;
+		synchronized (this) {
+			changed = !this.color.equals(color);
+			this.color = color;
+		}
+		changed(changed);
+	}
+
+	/**
+	 * @return the background color
+	 */
+	public synchronized Color getColor() {
+		return color;
+	}
+
+	@Override
+	protected void paint(Graphics2D g, int width, int height) {
+		g.setColor(color);
+		g.fillRect(0, 0, width, height);
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.golde.streamdeck.widgets;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+import org.golde.streamdeck.helpers.ImageUtilities;
+
+/**
+ * A small colored circle with a count or a few letters in it, in the top right corner of the key by default.
+ * The badge is hidden while its text is empty.
+ * @author Eric Golde
+ *
+ */
+public class BadgeWidget extends Widget {
+
+	private static final int SIZE = 32;
+	private static final int MARGIN = 4;
+
+	private String text;
+	private Color color;
+
+	/**
+	 * Create a badge in the top right corner
+	 * @param text the text, or a empty string to hide the badge
+	 * @param color the color of the circle
+	 */
+	public BadgeWidget(String text, Color color) {
+		this.text = text;
+		this.color = color;
+	}
+
+	/**
+	 * Create a badge anywhere on the key
+	 * @param text the text, or a empty string to hide the badge
+	 * @param color the color of the circle
+	 * @param x left edge, in pixels from the left of the key
+	 * @param y top edge, in pixels from the top of the key
+	 * @param size width and height of the circle
+	 */
+	public BadgeWidget(String text, Color color, int x, int y, int size) {
+		super(x, y, size, size);
+		this.text = text;
+		this.color = color;
+	}
+
+	/**
+	 * @param text the new text, or a empty string to hide the badge
+	 */
+	public void setText(String text) {
+		boolean changed;
+		synchronized (this) {
+			changed = !this.text.equals(text);
+			this.text = text;
+		}
+		changed(changed);
+	}
+
+	/**
+	 * Show a count, or hide the badge if the count is 0. Counts over 99 are shown as 99+
+	 * @param count the count
+	 */
+	public void setCount(int count) {
+		setText(count <= 0 ? "" : count > 99 ? "99+" : Integer.toString(count));
+	}
+
+	/**
+	 * @return the text
+	 */
+	public synchronized String getText() {
+		return text;
+	}
+
+	/**
+	 * @param color the new color of the circle
+	 */
+	public void setColor(Color color) {
+		boolean changed;
+		synchronized (this) {
+			changed = !this.color.equals(color);
+			this.color = color;
+		}
+		changed(changed);
+	}
+
+	@Override
+	protected void paint(Graphics2D g, int width, int height) {
+		if(text.isEmpty()) {
+			return;
+		}
+
+		g.setColor(color);
+		g.fillOval(0, 0, width, height);
+
+		int size = height * 2 / 3;
+		FontMetrics metrics;
+		do {
+			g.setFont(g.getFont().deriveFont((float) size--));
+			metrics = g.getFontMetrics();
+		} while(size > 6 && metrics.stringWidth(text) > width - 4);
+
+		g.setColor(ImageUtilities.getTextColorForBG(color));
+		g.drawString(text, (width - metrics.stringWidth(text)) / 2, (height - metrics.getHeight()) / 2 + metrics.getAscent());
+	}
+
+	@Override
+	protected Rectangle getDefaultBounds(int keySize) {
+		//Top right corner
+		return new Rectangle(keySize - SIZE - MARGIN, MARGIN, SIZE, SIZE);
+	}
+
+}
@@ -0,0 +1,71 @@
+package org.golde.streamdeck.widgets;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.golde.streamdeck.helpers.ImageUtilities;
+
+/**
+ * Draws a image, scaled to the size of the widget
+ * @author Eric Golde
+ *
+ */
+public class IconWidget extends Widget {
+
+	private BufferedImage icon;
+
+	/**
+	 * Create a icon that covers the whole key
+	 * @param icon the image
+	 */
+	public IconWidget(BufferedImage icon) {
+		this.icon = icon;
+	}
+
+	/**
+	 * Create a icon that covers part of the key
+	 * @param icon the image
+	 * @param x left edge, in pixels from the left of the key
+	 * @param y top edge, in pixels from the top of the key
+	 * @param width width in pixels
+	 * @param height height in pixels
+	 */
+	public IconWidget(BufferedImage icon, int x, int y, int width, int height) {
+		super(x, y, width, height);
+		this.icon = icon;
+	}
+
+	/**
+	 * Change the image. Changing the pixels of the image you passed in is not noticed, call {@link #markDirty()} if you do that.
+	 * @param icon the new image, or null for no image
+	 */
+	public void setIcon(BufferedImage icon) {
+		boolean changed;
+		synchronized (this) {
+			changed = this.icon != icon;
+			this.icon = icon;
+		}
+		changed(changed);
+	}
+
+	/**
+	 * @return the image
+	 */
+	public synchronized BufferedImage getIcon() {
+		return icon;
+	}
+
+	@Override
+	protected void paint(Graphics2D g, int width, int height) {
+		if(icon == null) {
+			return;
+		}
+		if(icon.getWidth() == width && icon.getHeight() == height) {
+			g.drawImage(icon, 0, 0, null);
+		}
+		else {
+			g.drawImage(ImageUtilities.scaleImage(icon, width, height), 0, 0, null);
+		}
+	}
+
+}
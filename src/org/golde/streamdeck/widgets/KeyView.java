@@ -0,0 +1,107 @@
+package org.golde.streamdeck.widgets;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.golde.streamdeck.helpers.TileView;
+
+/**
+ * The stack of widgets on one key. Get it with {@link WidgetScreen#getKey(int)}.
+ * @author Eric Golde
+ *
+ */
+public class KeyView {
+
+	private final WidgetScreen screen;
+	private final int key;
+	private final List<Widget> widgets = new CopyOnWriteArrayList<Widget>();
+
+	//Only touched by the thread that is flushing
+	private final BufferedImage canvas;
+	private final TileView canvasView;
+
+	KeyView(WidgetScreen screen, int key, int size) {
+		this.screen = screen;
+		this.key = key;
+		this.canvas = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		this.canvasView = TileView.of(canvas);
+	}
+
+	/**
+	 * Put a widget on top of the others
+	 * @param widget the widget
+	 * @return the widget, so it can be created and added in one line
+	 */
+	public <T extends Widget> T add(T widget) {
+		widget.attach(this);
+		widgets.add(widget);
+		widgetChanged();
+		return widget;
+	}
+
+	/**
+	 * Take a widget off the key
+	 * @param widget the widget
+	 */
+	public void remove(Widget widget) {
+		if(widgets.remove(widget)) {
+			widget.attach(null);
+			widgetChanged();
+		}
+	}
+
+	/**
+	 * Take every widget off the key, leaving it black
+	 */
+	public void clear() {
+		for(Widget widget : widgets) {
+			remove(widget);
+		}
+	}
+
+	/**
+	 * @return the widgets on the key, bottom first
+	 */
+	public List<Widget> getWidgets() {
+		return widgets;
+	}
+
+	/**
+	 * @return width and height of the key in pixels
+	 */
+	public int getSize() {
+		return canvas.getWidth();
+	}
+
+	/**
+	 * @return the key this view draws on
+	 */
+	public int getKey() {
+		return key;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	void widgetChanged() {
+		screen.keyChanged(key);
+	}
+
+	/**
+	 * Draw every widget onto the key, from their cached layers
+	 * @return the key, only valid until the next call
+	 */
+	TileView composite() {
+		Graphics2D g = canvas.createGraphics();
+		g.setColor(Color.BLACK);
+		g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+		for(Widget widget : widgets) {
+			widget.compositeOnto(g);
+		}
+		g.dispose();
+		return canvasView;
+	}
+
+}
@@ -0,0 +1,108 @@
+package org.golde.streamdeck.widgets;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+
+/**
+ * Draws a line of text, centered in the widget. The font size is picked so the text fits, unless it is set with {@link #setFontSize(int)}.
+ * @author Eric Golde
+ *
+ */
+public class LabelWidget extends Widget {
+
+	private static final int MAX_AUTO_FONT_SIZE = 32;
+
+	private String text;
+	private Color color;
+	private int fontSize;
+
+	/**
+	 * Create a label that covers the whole key
+	 * @param text the text
+	 * @param color the text color
+	 */
+	public LabelWidget(String text, Color color) {
+		this.text = text;
+		this.color = color;
+	}
+
+	/**
+	 * Create a label that covers part of the key
+	 * @param text the text
+	 * @param color the text color
+	 * @param x left edge, in pixels from the left of the key
+	 * @param y top edge, in pixels from the top of the key
+	 * @param width width in pixels
+	 * @param height height in pixels
+	 */
+	public LabelWidget(String text, Color color, int x, int y, int width, int height) {
+		super(x, y, width, height);
+		this.text = text;
+		this.color = color;
+	}
+
+	/**
+	 * @param text the new text
+	 */
+	public void setText(String text) {
+		boolean changed;
+		synchronized (this) {
+			changed = !this.text.equals(text);
+			this.text = text;
+		}
+		changed(changed);
+	}
+
+	/**
+	 * @return the text
+	 */
+	public synchronized String getText() {
+		return text;
+	}
+
+	/**
+	 * @param color the new text color
+	 */
+	public void setColor(Color color) {
+		boolean changed;
+		synchronized (this) {
+			changed = !this.color.equals(color);
+			this.color = color;
+		}
+		changed(changed);
+	}
+
+	/**
+	 * @param fontSize font size in pixels, or 0 to pick the biggest size that fits
+	 */
+	public void setFontSize(int fontSize) {
+		boolean changed;
+		synchronized (this) {
+			changed = this.fontSize != fontSize;
+			this.fontSize = fontSize;
+		}
+		changed(changed);
+	}
+
+	@Override
+	protected void paint(Graphics2D g, int width, int height) {
+		if(text.isEmpty()) {
+			return;
+		}
+
+		int size = fontSize > 0 ? fontSize : Math.min(MAX_AUTO_FONT_SIZE, height);
+		FontMetrics metrics;
+		do {
+			g.setFont(g.getFont().deriveFont((float) size));
+			metrics = g.getFontMetrics();
+			size--;
+		} while(fontSize <= 0 && size > 6 && (metrics.stringWidth(text) > width || metrics.getHeight() > height));
+
+		g.setColor(color);
+		int x = (width - metrics.stringWidth(text)) / 2;
+		int y = (height - metrics.getHeight()) / 2 + metrics.getAscent();
+		g.drawString(text, x, y);
+	}
+
+}
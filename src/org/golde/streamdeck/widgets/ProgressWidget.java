@@ -0,0 +1,99 @@
+package org.golde.streamdeck.widgets;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+
+/**
+ * A horizontal progress bar, along the bottom of the key by default.
+ * Changing the value only marks the widget dirty when the filled part of the bar changes by at least one pixel,
+ * so a value that creeps up slowly doesn't cause the key to be sent again for nothing.
+ * @author Eric Golde
+ *
+ */
+public class ProgressWidget extends Widget {
+
+	private static final int HEIGHT = 10;
+	private static final int MARGIN = 8;
+
+	private double value;
+	private int filled;
+	private Color color;
+	private Color trackColor;
+
+	/**
+	 * Create a progress bar along the bottom of the key
+	 * @param color color of the filled part
+	 * @param trackColor color of the empty part
+	 */
+	public ProgressWidget(Color color, Color trackColor) {
+		this.color = color;
+		this.trackColor = trackColor;
+	}
+
+	/**
+	 * Create a progress bar anywhere on the key
+	 * @param color color of the filled part
+	 * @param trackColor color of the empty part
+	 * @param x left edge, in pixels from the left of the key
+	 * @param y top edge, in pixels from the top of the key
+	 * @param width width in pixels
+	 * @param height height in pixels
+	 */
+	public ProgressWidget(Color color, Color trackColor, int x, int y, int width, int height) {
+		super(x, y, width, height);
+		this.color = color;
+		this.trackColor = trackColor;
+	}
+
+	/**
+	 * @param value how full the bar is, from 0 to 1
+	 */
+	public void setValue(double value) {
+		value = Math.max(0, Math.min(1, value));
+		boolean changed;
+		synchronized (this) {
+			this.value = value;
+			int filled = (int) Math.round(value * getWidth());
+			changed = this.filled != filled;
+			this.filled = filled;
+		}
+		changed(changed);
+	}
+
+	/**
+	 * @return how full the bar is, from 0 to 1
+	 */
+	public synchronized double getValue() {
+		return value;
+	}
+
+	/**
+	 * @param color the new color of the filled part
+	 */
+	public void setColor(Color color) {
+		boolean changed;
+		synchronized (this) {
+			changed = !this.color.equals(color);
+			this.color = color;
+		}
+		changed(changed);
+	}
+
+	@Override
+	protected void paint(Graphics2D g, int width, int height) {
+		g.setColor(trackColor);
+		g.fillRoundRect(0, 0, width, height, height, height);
+		if(filled > 0) {
+			g.setColor(color);
+			g.fillRoundRect(0, 0, (int) Math.round(value * width), height, height, height);
+		}
+	}
+
+	@Override
+	protected Rectangle getDefaultBounds(int keySize) {
+		//Along the bottom
+		return new Rectangle(MARGIN, keySize - HEIGHT - MARGIN, keySize - MARGIN * 2, HEIGHT);
+	}
+
+}
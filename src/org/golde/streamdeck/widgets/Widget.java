@@ -0,0 +1,224 @@
+package org.golde.streamdeck.widgets;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import org.golde.streamdeck.DeviceProfile;
+
+/**
+ * Something drawn on a key, like a label or a progress bar. Widgets are stacked on a {@link KeyView}, first added at the bottom.
+ *
+ * Every widget draws into its own transparent layer, which is kept until the widget changes.
+ * Setters only mark the widget dirty if the value actually changed, and only keys with a dirty widget get composited,
+ * encoded and sent on the next {@link WidgetScreen#flush()}.
+ * @author Eric Golde
+ *
+ */
+public abstract class Widget {
+
+	private int x;
+	private int y;
+	private int width;
+	private int height;
+	private boolean visible = true;
+	//False while the widget is where it goes by default, then it is fit to the key size of every key it is added to
+	private boolean placed;
+
+	private KeyView view;
+	private BufferedImage layer;
+	private boolean dirty = true;
+
+	/**
+	 * Create a widget that goes where {@link #getDefaultBounds(int)} puts it, on the whole key unless a widget says otherwise.
+	 * Until it is added to a key it is laid out for a XL.
+	 */
+	protected Widget() {
+		Rectangle bounds = getDefaultBounds(DeviceProfile.XL.getKeySize());
+		this.x = bounds.x;
+		this.y = bounds.y;
+		this.width = bounds.width;
+		this.height = bounds.height;
+	}
+
+	/**
+	 * Create a widget that covers part of the key
+	 * @param x left edge, in pixels from the left of the key
+	 * @param y top edge, in pixels from the top of the key
+	 * @param width width in pixels
+	 * @param height height in pixels
+	 */
+	protected Widget(int x, int y, int width, int height) {
+		if(width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Expected width and height to be more than 0");
+		}
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.placed = true;
+	}
+
+	/**
+	 * Draw the widget. Called with a transparent graphics the size of the widget, only when the widget changed.
+	 * @param g graphics to draw with, 0,0 is the top left of the widget
+	 * @param width width of the widget
+	 * @param height height of the widget
+	 */
+	protected abstract void paint(Graphics2D g, int width, int height);
+
+	/**
+	 * Move or resize the widget
+	 * @param x left edge, in pixels from the left of the key
+	 * @param y top edge, in pixels from the top of the key
+	 * @param width width in pixels
+	 * @param height height in pixels
+	 */
+	public void setBounds(int x, int y, int width, int height) {
+		if(width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Expected width and height to be more than 0");
+		}
+		synchronized (this) {
+			placed = true;
+			if(this.x == x && this.y == y && this.width == width && this.height == height) {
+				return;
+			}
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+		markDirty();
+	}
+
+	/**
+	 * Show or hide the widget
+	 * @param visible true to show it
+	 */
+	public void setVisible(boolean visible) {
+		synchronized (this) {
+			if(this.visible == visible) {
+				return;
+			}
+			this.visible = visible;
+		}
+		markDirty();
+	}
+
+	/**
+	 * @return true if the widget is drawn
+	 */
+	public synchronized boolean isVisible() {
+		return visible;
+	}
+
+	/**
+	 * @return left edge, in pixels from the left of the key
+	 */
+	public synchronized int getX() {
+		return x;
+	}
+
+	/**
+	 * @return top edge, in pixels from the top of the key
+	 */
+	public synchronized int getY() {
+		return y;
+	}
+
+	/**
+	 * @return width in pixels
+	 */
+	public synchronized int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return height in pixels
+	 */
+	public synchronized int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Redraw the widget on the next flush. Setters call this for you, only call it yourself if the widget draws something
+	 * that changed without a setter being called.
+	 */
+	public void markDirty() {
+		KeyView view;
+		synchronized (this) {
+			dirty = true;
+			view = this.view;
+		}
+		if(view != null) {
+			view.widgetChanged();
+		}
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	/**
+	 * Where the widget goes on a key of the given size, if it was created without a position
+	 * @param keySize width and height of the key in pixels
+	 * @return the bounds of the widget, the whole key by default
+	 */
+	protected Rectangle getDefaultBounds(int keySize) {
+		return new Rectangle(0, 0, keySize, keySize);
+	}
+
+	/**
+	 * Mark the widget dirty if a setter changed something. Call it after leaving synchronized blocks.
+	 * @param changed true if the new value is different than the old one
+	 */
+	protected final void changed(boolean changed) {
+		if(changed) {
+			markDirty();
+		}
+	}
+
+	synchronized void attach(KeyView view) {
+		if(this.view != null && view != null) {
+			throw new IllegalStateException("Widget is already on a key");
+		}
+		this.view = view;
+		if(view != null && !placed) {
+			Rectangle bounds = getDefaultBounds(view.getSize());
+			x = bounds.x;
+			y = bounds.y;
+			width = bounds.width;
+			height = bounds.height;
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Draw the widget layer onto the key, drawing the layer again first if the widget changed
+	 */
+	synchronized void compositeOnto(Graphics2D key) {
+		if(!visible) {
+			dirty = false;
+			return;
+		}
+
+		if(dirty || layer == null) {
+			if(layer == null || layer.getWidth() != width || layer.getHeight() != height) {
+				layer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			}
+			Graphics2D g = layer.createGraphics();
+			//Start from a empty layer
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, width, height);
+			g.setComposite(AlphaComposite.SrcOver);
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			paint(g, width, height);
+			g.dispose();
+			dirty = false;
+		}
+
+		key.drawImage(layer, x, y, null);
+	}
+
+}
@@ -0,0 +1,226 @@
+package org.golde.streamdeck.widgets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import org.golde.streamdeck.EncodedKeyImage;
+import org.golde.streamdeck.IStreamDeck;
+import org.golde.streamdeck.WritePriority;
+import org.golde.streamdeck.helpers.TileDiff;
+import org.golde.streamdeck.helpers.TileView;
+
+/**
+ * Draws every key of a deck from a stack of {@link Widget}s, and only sends the keys that changed.
+ *
+ * Changing a widget does nothing right away, it just marks its key dirty. {@link #flush()} composites the dirty keys
+ * from the cached widget layers, throws away keys that came out pixel for pixel the same as what is on the deck,
+ * encodes the rest on every core and sends them in one batch. A dashboard that updates dozens of values a second
+ * only pays for the keys that actually look different.
+ *
+ * Call flush yourself after a round of updates, or let {@link #startAutoFlush(int)} call it a few times a second.
+ * Don't call setKey on the deck yourself while using widgets, or call {@link #refresh()} afterwards.
+ * @author Eric Golde
+ *
+ */
+public class WidgetScreen {
+
+	private final IStreamDeck deck;
+	private final KeyView[] keys;
+	private final TileDiff tileDiff;
+	private final Object flushLock = new Object();
+
+	private boolean[] dirty;
+	private boolean anyDirty;
+	private ScheduledExecutorService autoFlush;
+
+	private final AtomicLong keysComposited = new AtomicLong();
+	private final AtomicLong keysSent = new AtomicLong();
+	private final AtomicLong keysUnchanged = new AtomicLong();
+
+	/**
+	 * Create a screen. Every key starts black, and is sent on the first flush.
+	 * @param deck the deck to draw on
+	 */
+	public WidgetScreen(IStreamDeck deck) {
+		this.deck = deck;
+		int numberOfKeys = deck.getProfile().getNumberOfKeys();
+		this.keys = new KeyView[numberOfKeys];
+		this.tileDiff = TileDiff.exact(numberOfKeys);
+		this.dirty = new boolean[numberOfKeys];
+		for(int key = 0; key < keys.length; key++) {
+			keys[key] = new KeyView(this, key, deck.getProfile().getKeySize());
+			dirty[key] = true;
+		}
+		anyDirty = true;
+	}
+
+	/**
+	 * Get the widgets of a key
+	 * @param key the key
+	 * @return the view of the key
+	 */
+	public KeyView getKey(int key) {
+		return keys[key];
+	}
+
+	/**
+	 * Composite, encode and send every key that changed since the last flush, and wait until they are on the deck
+	 * @return number of keys that were sent
+	 */
+	public int flush() {
+		synchronized (flushLock) {
+			boolean[] toDraw;
+			synchronized (this) {
+				if(!anyDirty) {
+					return 0;
+				}
+				toDraw = dirty;
+				dirty = new boolean[keys.length];
+				anyDirty = false;
+			}
+
+			//Compositing is cheap, and tells us which keys really need the expensive part
+			List<Integer> changed = new ArrayList<Integer>();
+			List<TileView> views = new ArrayList<TileView>();
+			for(int key = 0; key < keys.length; key++) {
+				if(!toDraw[key]) {
+					continue;
+				}
+				TileView view = keys[key].composite();
+				keysComposited.incrementAndGet();
+				if(tileDiff.hasChanged(key, view)) {
+					changed.add(key);
+					views.add(view);
+				}
+				else {
+					keysUnchanged.incrementAndGet();
+				}
+			}
+			if(changed.isEmpty()) {
+				return 0;
+			}
+
+			EncodedKeyImage[] encoded = new EncodedKeyImage[changed.size()];
+			if(encoded.length == 1) {
+				encoded[0] = deck.encodeKey(views.get(0));
+			}
+			else {
+				IntStream.range(0, encoded.length).parallel().forEach(i -> encoded[i] = deck.encodeKey(views.get(i)));
+			}
+
+			CompletableFuture<?>[] writes = new CompletableFuture<?>[encoded.length];
+			for(int i = 0; i < encoded.length; i++) {
+				writes[i] = deck.submitKey(changed.get(i), encoded[i], WritePriority.NORMAL);
+			}
+			CompletableFuture.allOf(writes).join();
+			keysSent.addAndGet(encoded.length);
+			return encoded.length;
+		}
+	}
+
+	/**
+	 * Send every key again on the next flush, for example after something else drew on the deck
+	 */
+	public void refresh() {
+		synchronized (flushLock) {
+			tileDiff.invalidateAll();
+			synchronized (this) {
+				for(int key = 0; key < keys.length; key++) {
+					dirty[key] = true;
+				}
+				anyDirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Flush on a background thread, a number of times a second. Does nothing if it is already running.
+	 * @param fps flushes per second
+	 */
+	public synchronized void startAutoFlush(int fps) {
+		if(fps <= 0) {
+			throw new IllegalArgumentException("Expected fps to be more than 0");
+		}
+		if(autoFlush != null) {
+			return;
+		}
+		autoFlush = Executors.newSingleThreadScheduledExecutor(new FlushThreadFactory());
+		long period = 1_000_000_000L / fps;
+		autoFlush.scheduleWithFixedDelay(() -> {
+			try {
+				flush();
+			}
+			catch(RuntimeException e) {
+				e.printStackTrace();
+			}
+		}, 0, period, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Stop flushing in the background
+	 */
+	public synchronized void stopAutoFlush() {
+		if(autoFlush != null) {
+			autoFlush.shutdownNow();
+			autoFlush = null;
+		}
+	}
+
+	/**
+	 * @return how many keys were composited since the screen was created
+	 */
+	public long getKeysComposited() {
+		return keysComposited.get();
+	}
+
+	/**
+	 * @return how many keys were encoded and sent since the screen was created
+	 */
+	public long getKeysSent() {
+		return keysSent.get();
+	}
+
+	/**
+	 * @return how many composited keys came out the same as what was on the deck, and were not sent
+	 */
+	public long getKeysUnchanged() {
+		return keysUnchanged.get();
+	}
+
+	/**
+	 * @return the deck the screen draws on
+	 */
+	public IStreamDeck getDeck() {
+		return deck;
+	}
+
+	///////////////////////// [ Helpers ] ////////////////////////////////
+
+	synchronized void keyChanged(int key) {
+		dirty[key] = true;
+		anyDirty = true;
+	}
+
+	/**
+	 * Names the flush thread and makes sure it doesn't keep the JVM alive
+	 */
+	private static class FlushThreadFactory implements ThreadFactory {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r);
+			thread.setName("StreamDeck widget flush");
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}